@@ -11,6 +11,8 @@ public class ConnectSimulatorsDialog extends JDialog implements Flow.Subscriber
     private JLabel connectedCountLabel;
     private JLabel warningLabel;
     private JButton buttonOK;
+    /** Button adding a simulator running in the masters process. */
+    private JButton buttonLocal;
     private SimulatorConnectionAcceptor acceptor;
     private Flow.Subscription acceptorSubscription;
 
@@ -27,6 +29,7 @@ public class ConnectSimulatorsDialog extends JDialog implements Flow.Subscriber
         setTitle("Connect simulators");
 
         buttonOK.addActionListener(e -> onOK());
+        buttonLocal.addActionListener(e -> onLocal());
 
         setDefaultCloseOperation(DO_NOTHING_ON_CLOSE);
         addWindowListener(new WindowAdapter() {
@@ -66,6 +69,11 @@ public class ConnectSimulatorsDialog extends JDialog implements Flow.Subscriber
         contentPane.add(connectedCountLabel);
         contentPane.add(Box.createRigidArea(new Dimension(0,10)));
 
+        buttonLocal = new JButton("Run simulator in this process");
+        buttonLocal.setAlignmentX(Component.CENTER_ALIGNMENT);
+        contentPane.add(buttonLocal);
+        contentPane.add(Box.createRigidArea(new Dimension(0,5)));
+
         buttonOK = new JButton("OK");
         buttonOK.setAlignmentX(Component.CENTER_ALIGNMENT);
         contentPane.add(buttonOK);
@@ -79,6 +87,11 @@ public class ConnectSimulatorsDialog extends JDialog implements Flow.Subscriber
         dispose();
     }
 
+    /** Adds a simulator running in this process, using all available processors. */
+    private void onLocal(){
+        acceptor.addLocalSimulator(Runtime.getRuntime().availableProcessors());
+    }
+
     private void onCancel(){
         acceptor.stopAccepting();
         acceptor.disconnectSimulators();
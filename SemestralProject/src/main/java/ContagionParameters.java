@@ -35,6 +35,10 @@ public class ContagionParameters {
     /** Factor by witch to multiply spread probability when masks are mandatory */
     public double masksMultiplier;
 
+    /** Whether the spread is calculated by the closed-form kernel (one draw per healthy person
+     * with chance 1-(1-p)^k for k infectious visitors) instead of one draw per infectious-healthy pair. */
+    public boolean closedFormSpread;
+
     /**
      * Parses contagion parameters from predefined text format.
      * @param contagionParametersString formatted string with contagion parameters.
@@ -61,7 +65,78 @@ public class ContagionParameters {
         parameters.restaurantSpreadMultiplier = Float.parseFloat(split[12]);
         parameters.masks = Boolean.parseBoolean(split[13]);
         parameters.masksMultiplier = Float.parseFloat(split[14]);
+        if(split.length > 15)
+            parameters.closedFormSpread = Boolean.parseBoolean(split[15]);
+
+        return parameters;
+    }
 
+    /** Writes binary representation of the contagion parameters, in the order of the text format.
+     * @param buffer buffer to write to. */
+    public void writeTo(WireBuffer buffer){
+        buffer.putFloat(defaultSpreadChance);
+        buffer.putFloat(recoveryChance);
+        buffer.putFloat(deathChance);
+        buffer.putFloat(quarantineChance);
+        buffer.putBoolean(restaurantsOpen);
+        buffer.putBoolean(freeTimeBan);
+        buffer.putBoolean(workOnSite);
+        buffer.putBoolean(schoolsOpen);
+        buffer.putDouble(homeSpreadMultiplier);
+        buffer.putDouble(workplaceSpreadMultiplier);
+        buffer.putDouble(schoolSpreadMultiplier);
+        buffer.putDouble(restaurantSpreadMultiplier);
+        buffer.putBoolean(masks);
+        buffer.putDouble(masksMultiplier);
+        buffer.putBoolean(closedFormSpread);
+    }
+
+    /**
+     * Reads contagion parameters from their binary representation (see writeTo).
+     * @param buffer buffer to read from.
+     * @return ContagionParameters - contagion parameters read from the buffer.
+     */
+    public static ContagionParameters readFrom(WireBuffer buffer){
+        ContagionParameters parameters = new ContagionParameters();
+        parameters.defaultSpreadChance = buffer.getFloat();
+        parameters.recoveryChance = buffer.getFloat();
+        parameters.deathChance = buffer.getFloat();
+        parameters.quarantineChance = buffer.getFloat();
+        parameters.restaurantsOpen = buffer.getBoolean();
+        parameters.freeTimeBan = buffer.getBoolean();
+        parameters.workOnSite = buffer.getBoolean();
+        parameters.schoolsOpen = buffer.getBoolean();
+        parameters.homeSpreadMultiplier = buffer.getDouble();
+        parameters.workplaceSpreadMultiplier = buffer.getDouble();
+        parameters.schoolSpreadMultiplier = buffer.getDouble();
+        parameters.restaurantSpreadMultiplier = buffer.getDouble();
+        parameters.masks = buffer.getBoolean();
+        parameters.masksMultiplier = buffer.getDouble();
+        parameters.closedFormSpread = buffer.getBoolean();
+        return parameters;
+    }
+
+    /**
+     * Returns a copy of the contagion parameters, later changes of this instance don't affect the copy.
+     * @return ContagionParameters - new contagion parameters with the same values.
+     */
+    public ContagionParameters copy(){
+        ContagionParameters parameters = new ContagionParameters();
+        parameters.defaultSpreadChance = defaultSpreadChance;
+        parameters.recoveryChance = recoveryChance;
+        parameters.deathChance = deathChance;
+        parameters.quarantineChance = quarantineChance;
+        parameters.restaurantsOpen = restaurantsOpen;
+        parameters.freeTimeBan = freeTimeBan;
+        parameters.workOnSite = workOnSite;
+        parameters.schoolsOpen = schoolsOpen;
+        parameters.homeSpreadMultiplier = homeSpreadMultiplier;
+        parameters.workplaceSpreadMultiplier = workplaceSpreadMultiplier;
+        parameters.schoolSpreadMultiplier = schoolSpreadMultiplier;
+        parameters.restaurantSpreadMultiplier = restaurantSpreadMultiplier;
+        parameters.masks = masks;
+        parameters.masksMultiplier = masksMultiplier;
+        parameters.closedFormSpread = closedFormSpread;
         return parameters;
     }
 
@@ -69,10 +144,10 @@ public class ContagionParameters {
      * @return String - formatted contagion parameters string representation. */
     @Override
     public String toString() {
-        return String.format("ContagionParameters:%f:%f:%f:%f:%b:%b:%b:%b:%f:%f:%f:%f:%b:%f",
+        return String.format("ContagionParameters:%f:%f:%f:%f:%b:%b:%b:%b:%f:%f:%f:%f:%b:%f:%b",
                 defaultSpreadChance, recoveryChance, deathChance, quarantineChance,
                 restaurantsOpen, freeTimeBan, workOnSite, schoolsOpen,
                 homeSpreadMultiplier, workplaceSpreadMultiplier, schoolSpreadMultiplier, restaurantSpreadMultiplier,
-                masks, masksMultiplier);
+                masks, masksMultiplier, closedFormSpread);
     }
 }
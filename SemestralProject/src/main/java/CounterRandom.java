@@ -0,0 +1,107 @@
+import java.util.Random;
+
+/**
+ * Counter-based random numbers built on the SplitMix64 mixing function.
+ * <p>Every number is a pure function of a stream key and a counter, keys are derived from the simulation seed,
+ * personal number, round and purpose of the draw. Results don't depend on order of evaluation, on thread
+ * or simulator the draw is made by and there is no shared state to contend for.</p>
+ * <p>Instances are sequential streams usable where java.util.Random is expected (world generation),
+ * static helpers draw without any allocation.</p>
+ */
+public class CounterRandom extends Random {
+    /** Purpose of a draw, draws for different purposes use different streams. */
+    public enum Purpose {
+        /** Random moves of a person. */
+        move,
+        /** Infection tries of a person. */
+        infection,
+        /** Health changes of an infectious person. */
+        healthChange,
+        /** World generation. */
+        generator,
+        /** Infection tries of a person by another person. */
+        contact
+    }
+
+    /** Serialization version, Random is serializable. */
+    private static final long serialVersionUID = 1L;
+    /** Odd constant (golden ratio) the counters are multiplied with. */
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    /** Key of this stream. */
+    private final long key;
+    /** Index of the next draw of this stream. */
+    private long counter;
+
+    /** Counter random constructor, creates a sequential stream.
+     * @param key key of the stream, see key methods. */
+    public CounterRandom(long key){
+        super(0);
+        this.key = key;
+        counter = 0;
+    }
+
+    /** Returns next random bits of this stream.
+     * @param bits number of random bits.
+     * @return int with random lowest bits. */
+    @Override
+    protected int next(int bits){
+        return (int) (nextLong() >>> (64 - bits));
+    }
+
+    /** Returns next random long of this stream.
+     * @return random long. */
+    @Override
+    public long nextLong(){
+        return draw(key, counter++);
+    }
+
+    /** SplitMix64 finalizer, bijective mixing of the bits.
+     * @param z value to mix.
+     * @return long - mixed value. */
+    public static long mix(long z){
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /** Derives key of a person's streams.
+     * @param seed simulation seed.
+     * @param personalNumber personal number of the person.
+     * @return long - key of the person. */
+    public static long key(long seed, int personalNumber){
+        return mix(mix(seed + GOLDEN_GAMMA) + personalNumber * GOLDEN_GAMMA);
+    }
+
+    /** Derives key of a stream for one round and purpose.
+     * @param key key of the person (or seed).
+     * @param round round (simulated hour) of the draws.
+     * @param purpose purpose of the draws.
+     * @return long - key of the stream. */
+    public static long key(long key, int round, Purpose purpose){
+        return mix(key ^ mix((((long) round << 8) | purpose.ordinal()) * GOLDEN_GAMMA));
+    }
+
+    /** Returns random long of the stream with given counter.
+     * @param key key of the stream.
+     * @param counter index of the draw in the stream.
+     * @return long - random number. */
+    public static long draw(long key, long counter){
+        return mix(key + (counter + 1) * GOLDEN_GAMMA);
+    }
+
+    /** Converts random bits to float uniformly distributed in [0, 1).
+     * @param bits random long.
+     * @return float in range [0, 1). */
+    public static float toFloat(long bits){
+        return (bits >>> 40) * 0x1.0p-24f;
+    }
+
+    /** Converts random bits to int uniformly distributed in [0, bound).
+     * @param bits random long.
+     * @param bound upper bound (exclusive), must be positive.
+     * @return int in range [0, bound). */
+    public static int toInt(long bits, int bound){
+        return (int) (((bits >>> 33) * bound) >>> 31);
+    }
+}
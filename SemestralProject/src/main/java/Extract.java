@@ -1,9 +1,30 @@
-/** Class representing simple extract of an area, contains ExtractLocations */
+import java.util.Arrays;
+
+/** Class representing simple extract of an area, contains ExtractLocations.
+ * <p>Locations are held in square chunks of primitive cells - type and visitor counts, so filling the extract
+ * doesn't allocate per location. An extract of the same area as the previous one shares its chunks
+ * and copies only the chunks it changes, so a delta costs only the changed chunks, not the whole area.</p> */
 public class Extract {
+    /** Binary logarithm of the chunks side. */
+    private static final int CHUNK_BITS = 4;
+    /** Mask of the position inside a chunk. */
+    private static final int CHUNK_MASK = (1 << CHUNK_BITS) - 1;
+    /** Health statuses by their ordinal. */
+    private static final PersonHealth[] HEALTH = PersonHealth.values();
+    /** Location types by their ordinal. */
+    private static final ExtractLocation.Type[] TYPES = ExtractLocation.Type.values();
+    /** Number of ints of a cell - type ordinal + 1 (0 if there is no location) followed by counts by PersonHealth ordinal. */
+    private static final int CELL = HEALTH.length + 1;
     private Position topLeft;
     private Position size;
 
-    private ExtractLocation[][] extracts;
+    /** Chunks of the extracted locations indexed by chunk x * chunksY + chunk y,
+     * cells indexed by x * chunk side + y inside the chunk. Null chunks contain no locations. */
+    private final int[][] chunks;
+    /** Number of chunks in the y axis. */
+    private final int chunksY;
+    /** True for chunks owned by this extract, other chunks are shared and copied before they are changed. */
+    private final boolean[] ownedChunks;
 
     /** Creates a new empty extract of given size
      * @param topLeft topLeft corner of extracted location
@@ -12,15 +33,27 @@ public class Extract {
         this.topLeft = topLeft;
         this.size = size;
 
-        extracts = new ExtractLocation[size.getX()][size.getY()];
+        int chunksX = (size.getX() + CHUNK_MASK) >> CHUNK_BITS;
+        chunksY = (size.getY() + CHUNK_MASK) >> CHUNK_BITS;
+        chunks = new int[chunksX * chunksY][];
+        ownedChunks = new boolean[chunks.length];
     }
 
     /** Creates a new extract of given size and filles intersecting areas from previous extract.
+     * If the area is the same, the chunks of the previous extract are shared, not copied.
+     * The previous extract must not be changed afterwards.
      * @param topLeft topLeft corner of extracted area.
      * @param size size of the extracted area.
      * @param previous Extract to fill intersectiong positions from.*/
     public Extract(Position topLeft, Position size, Extract previous){
         this(topLeft, size);
+        if(topLeft.equals(previous.topLeft) && size.equals(previous.size)){
+            synchronized(previous){
+                System.arraycopy(previous.chunks, 0, chunks, 0, chunks.length);
+                Arrays.fill(previous.ownedChunks, false);
+            }
+            return;
+        }
         //find bottom right corners of extracts
         Position previousBottomRight = previous.topLeft.add(previous.size);
         Position bottomRight = topLeft.add(size);
@@ -37,15 +70,15 @@ public class Extract {
         //copy intersecting locations from previous extract to the new extract
         for(int x = 0; x < intersectionSizeX; x++){
             for(int y = 0; y < intersectionSizeY; y++){
-                ExtractLocation el = previous.getExtractedLocation(
-                        intersectionTopLeftX - previous.topLeft.getX() + x,
-                        intersectionTopLeftY - previous.topLeft.getY() + y
-                );
-                addExtractedLocation(
-                        intersectionTopLeftX - topLeft.getX() + x,
-                        intersectionTopLeftY - topLeft.getY() + y,
-                        el
-                );
+                int previousX = intersectionTopLeftX - previous.topLeft.getX() + x;
+                int previousY = intersectionTopLeftY - previous.topLeft.getY() + y;
+                int[] previousChunk = previous.chunks[previous.chunkIndex(previousX, previousY)];
+                if(previousChunk == null || previousChunk[cellIndex(previousX, previousY)] == 0)
+                    continue;
+                int newX = intersectionTopLeftX - topLeft.getX() + x;
+                int newY = intersectionTopLeftY - topLeft.getY() + y;
+                System.arraycopy(previousChunk, cellIndex(previousX, previousY), chunkForWrite(newX, newY, true),
+                        cellIndex(newX, newY), CELL);
             }
         }
     }
@@ -54,26 +87,151 @@ public class Extract {
      * @param locationExtractString formatted text representation of the extracted location. */
     public void addExtractedLocation(String locationExtractString){
         String[] split = locationExtractString.split(";");
-        Position pos = Position.parsePosition(split[0]);
-        if(pos.isInArea(topLeft, size)){
+        long pos = PackedPosition.parse(split[0]);
+        int x = PackedPosition.getX(pos);
+        int y = PackedPosition.getY(pos);
+        if(PackedPosition.isInArea(x, y, topLeft, size)){
             ExtractLocation.Type type = ExtractLocation.Type.fromString(split[1]);
             Stats stats = Stats.parseStats(split[2]);
-            Position index = pos.subtract(topLeft);
-            addExtractedLocation(index.getX(), index.getY(), new ExtractLocation(type, stats));
+            addExtractedLocation(x - topLeft.getX(), y - topLeft.getY(), type, stats);
+        }
+    }
+
+    /** Adds the extracted location to the extract if it is in the area.
+     * @param packedPosition packed position of the location in the whole simulated world.
+     * @param type type of the location.
+     * @param stats stats of the locations visitors. */
+    public void addExtractedLocation(long packedPosition, ExtractLocation.Type type, Stats stats){
+        int x = PackedPosition.getX(packedPosition);
+        int y = PackedPosition.getY(packedPosition);
+        if(PackedPosition.isInArea(x, y, topLeft, size)){
+            addExtractedLocation(x - topLeft.getX(), y - topLeft.getY(), type, stats);
+        }
+    }
+
+    /** Adds the location to the extract if it is in the area, it's visitor counts are copied straight into the extract.
+     * @param location location to add. */
+    public synchronized void addExtractedLocation(Location location){
+        int x = location.getPosition().getX();
+        int y = location.getPosition().getY();
+        if(PackedPosition.isInArea(x, y, topLeft, size)){
+            x -= topLeft.getX();
+            y -= topLeft.getY();
+            int[] chunk = chunkForWrite(x, y, true);
+            int cell = cellIndex(x, y);
+            chunk[cell] = location.getType().ordinal() + 1;
+            location.copyHealthCounts(chunk, cell + 1);
+        }
+    }
+
+    private synchronized void addExtractedLocation(int x, int y, ExtractLocation.Type type, Stats stats){
+        int[] chunk = chunkForWrite(x, y, true);
+        int cell = cellIndex(x, y);
+        chunk[cell] = type.ordinal() + 1;
+        for(PersonHealth health : HEALTH){
+            chunk[cell + 1 + health.ordinal()] = stats.get(health);
+        }
+    }
+
+    /** Removes the extracted location from the extract if it is in the area.
+     * @param packedPosition packed position of the location in the whole simulated world. */
+    public synchronized void removeExtractedLocation(long packedPosition){
+        int x = PackedPosition.getX(packedPosition);
+        int y = PackedPosition.getY(packedPosition);
+        if(PackedPosition.isInArea(x, y, topLeft, size)){
+            remove(x - topLeft.getX(), y - topLeft.getY());
+        }
+    }
+
+    /** Removes all extracted locations in the area's intersection with this extract.
+     * @param areaTopLeft top-left corner of the area in the whole simulated world.
+     * @param areaSize size of the area. */
+    public synchronized void clearArea(Position areaTopLeft, Position areaSize){
+        int fromX = Math.max(areaTopLeft.getX() - topLeft.getX(), 0);
+        int fromY = Math.max(areaTopLeft.getY() - topLeft.getY(), 0);
+        int toX = Math.min(areaTopLeft.getX() + areaSize.getX() - topLeft.getX(), size.getX());
+        int toY = Math.min(areaTopLeft.getY() + areaSize.getY() - topLeft.getY(), size.getY());
+        for(int x = fromX; x < toX; x++){
+            for(int y = fromY; y < toY; y++){
+                remove(x, y);
+            }
         }
     }
 
-    private synchronized void addExtractedLocation(int x, int y, ExtractLocation extractLocation){
-        extracts[x][y] = extractLocation;
+    /** Removes the location on the index in this extract.
+     * @param x x index of the location.
+     * @param y y index of the location. */
+    private void remove(int x, int y){
+        int[] chunk = chunks[chunkIndex(x, y)];
+        if(chunk != null && chunk[cellIndex(x, y)] != 0)
+            chunkForWrite(x, y, false)[cellIndex(x, y)] = 0;
+    }
+
+    /** Returns chunk of the index that can be changed, copies the chunk first if it is shared.
+     * @param x x index of a location in the chunk.
+     * @param y y index of a location in the chunk.
+     * @param create true to create the chunk if it doesn't exist.
+     * @return chunk owned by this extract, null if it doesn't exist and create is false. */
+    private int[] chunkForWrite(int x, int y, boolean create){
+        int index = chunkIndex(x, y);
+        int[] chunk = chunks[index];
+        if(chunk == null){
+            if(!create)
+                return null;
+            chunk = new int[CELL << (2 * CHUNK_BITS)];
+            chunks[index] = chunk;
+            ownedChunks[index] = true;
+        }else if(!ownedChunks[index]){
+            chunk = chunk.clone();
+            chunks[index] = chunk;
+            ownedChunks[index] = true;
+        }
+        return chunk;
+    }
+
+    /** Returns index of the chunk containing the index in this extract.
+     * @param x x index of the location.
+     * @param y y index of the location.
+     * @return index of the chunk in chunks. */
+    private int chunkIndex(int x, int y){
+        return (x >> CHUNK_BITS) * chunksY + (y >> CHUNK_BITS);
+    }
+
+    /** Returns index of the first int of the cell of the index inside it's chunk.
+     * @param x x index of the location.
+     * @param y y index of the location.
+     * @return index of the cell in the chunk. */
+    private static int cellIndex(int x, int y){
+        return (((x & CHUNK_MASK) << CHUNK_BITS) | (y & CHUNK_MASK)) * CELL;
+    }
+
+    /** TopLeft getter.
+     * @return topLeft corner of the extracted area. */
+    public Position getTopLeft(){
+        return topLeft;
+    }
+
+    /** Size getter.
+     * @return size of the extracted area. */
+    public Position getSize(){
+        return size;
     }
 
     /** Returns the locationExtract of location on the given position, if it is in the area.
      * @param position position of the requested position in the whole simulated world.
      * @return ExtractLocation - extract of location on given position or null. */
     public ExtractLocation getExtractedLocation(Position position){
-        if(position.isInArea(topLeft, size)){
-            Position index = position.subtract(topLeft);
-            return getExtractedLocation(index.getX(),index.getY());
+        return getExtractedLocation(PackedPosition.pack(position));
+    }
+
+    /** Returns the locationExtract of location on the given packed position, if it is in the area.
+     * @param packedPosition packed position of the requested location in the whole simulated world.
+     * @return ExtractLocation - extract of location on given position or null. */
+    public ExtractLocation getExtractedLocation(long packedPosition){
+        int x = PackedPosition.getX(packedPosition);
+        int y = PackedPosition.getY(packedPosition);
+        if(PackedPosition.isInArea(x, y, topLeft, size)){
+            return getExtractedLocation(x - topLeft.getX(), y - topLeft.getY());
         }
         return  null;
     }
@@ -84,6 +242,35 @@ public class Extract {
      * @param y - y index of requested location.
      * @return ExtractLocation - extract location on given index in this extract*/
     public ExtractLocation getExtractedLocation(int x, int y){
-        return extracts[x][y];
+        if(x < 0 || x >= size.getX() || y < 0 || y >= size.getY())
+            throw new ArrayIndexOutOfBoundsException("Position " + x + "," + y + " is outside of the extract.");
+        int[] chunk = chunks[chunkIndex(x, y)];
+        int cell = cellIndex(x, y);
+        if(chunk == null || chunk[cell] == 0)
+            return null;
+        Stats stats = new Stats();
+        for(PersonHealth health : HEALTH){
+            stats.count(health, chunk[cell + 1 + health.ordinal()]);
+        }
+        return new ExtractLocation(TYPES[chunk[cell] - 1], stats);
+    }
+
+    /** Adds visitor counts of the location on the given packed position to the stats, if it is in the area. Doesn't allocate.
+     * @param packedPosition packed position of the location in the whole simulated world.
+     * @param stats stats to add the counts to.
+     * @return true if there is a location on the position, false otherwise. */
+    public boolean addStats(long packedPosition, Stats stats){
+        int x = PackedPosition.getX(packedPosition) - topLeft.getX();
+        int y = PackedPosition.getY(packedPosition) - topLeft.getY();
+        if(x < 0 || x >= size.getX() || y < 0 || y >= size.getY())
+            return false;
+        int[] chunk = chunks[chunkIndex(x, y)];
+        int cell = cellIndex(x, y);
+        if(chunk == null || chunk[cell] == 0)
+            return false;
+        for(PersonHealth health : HEALTH){
+            stats.count(health, chunk[cell + 1 + health.ordinal()]);
+        }
+        return true;
     }
 }
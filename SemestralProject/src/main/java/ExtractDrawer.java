@@ -135,18 +135,22 @@ public class ExtractDrawer extends JPanel {
         //Get aggregated location extracts and draw them
         for(int i = 0; i < partCountX; i++){
             for(int j = 0; j < partCountY; j++){
-                Stats stats = getStats(extractTopLeft.add(new Position(i * locationsPerDot, j * locationsPerDot)), locationsPerDot);
+                Stats stats = getStats(extractTopLeft.getX() + i * locationsPerDot, extractTopLeft.getY() + j * locationsPerDot, locationsPerDot);
                 drawPart(g2d, startX + i * DOTSIZE, startY + j * DOTSIZE, stats);
             }
         }
     }
 
-    private Stats getStats(Position topLeft, int locationsPerPart){
+    /** Sums stats of locations in a square part of the extract.
+     * @param topLeftX x coordinate of the top-left location of the part.
+     * @param topLeftY y coordinate of the top-left location of the part.
+     * @param locationsPerPart size of the part's side in locations.
+     * @return Stats of the locations in the part. */
+    private Stats getStats(int topLeftX, int topLeftY, int locationsPerPart){
         Stats stats = new Stats();
         for(int x = 0; x < locationsPerPart; x++){
             for(int y = 0; y < locationsPerPart; y++){
-                ExtractLocation loc = extract.getExtractedLocation(topLeft.add(new Position(x, y)));
-                if(loc != null) stats.update(loc.getStats());
+                extract.addStats(PackedPosition.pack(topLeftX + x, topLeftY + y), stats);
             }
         }
         return stats;
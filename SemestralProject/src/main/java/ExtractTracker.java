@@ -0,0 +1,152 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Remembers the last extract a simulator sent to master, so the next extract of the same area can be sent as delta -
+ * only locations whose type or visitor counts changed and positions of locations that disappeared from the area.
+ * <p>Extracts are tagged with a version (round of the simulation), master asks for delta against the version it holds.</p>
+ * <p>Snapshots of the sent locations are kept in primitive square chunks of the area, created with the first location
+ * in them and dropped with the last one, so tracking the locations doesn't allocate per location.</p>
+ */
+public class ExtractTracker {
+    /** Version meaning no extract was sent. */
+    public static final int NO_VERSION = -1;
+    /** Index of the location type ordinal in snapshots. */
+    private static final int TYPE = PersonHealth.values().length;
+    /** Index of the number of the last extract that contained the location in snapshots, 0 if there is no location. */
+    private static final int PASS = TYPE + 1;
+    /** Number of ints of a snapshot. */
+    private static final int SNAPSHOT = PASS + 1;
+    /** Binary logarithm of the chunks side. */
+    private static final int CHUNK_BITS = 4;
+    /** Mask of the position inside a chunk. */
+    private static final int CHUNK_MASK = (1 << CHUNK_BITS) - 1;
+
+    /** Top-left corner of the last sent extract. */
+    private Position topLeft;
+    /** Size of the last sent extract. */
+    private Position size;
+    /** Version of the last sent extract. */
+    private int version;
+    /** Number of extracts sent, used to find locations that weren't in the last one. */
+    private int pass;
+    /** Chunks of snapshots of sent locations - visitor counts, type ordinal and pass, indexed by chunk x * chunksY + chunk y.
+     * Snapshots are indexed by x * chunk side + y inside the chunk. */
+    private int[][] chunks;
+    /** Number of sent locations in the chunks. */
+    private int[] chunkCounts;
+    /** Number of chunks in the y axis. */
+    private int chunksY;
+    /** Buffer collecting positions of removed locations. */
+    private long[] removedBuffer;
+
+    /** Extract tracker constructor, no extract is sent yet. */
+    public ExtractTracker(){
+        version = NO_VERSION;
+        pass = 0;
+        chunks = new int[0][];
+        chunkCounts = new int[0];
+        removedBuffer = new long[16];
+    }
+
+    /**
+     * Starts a new extract. The extract is delta if master holds the last sent extract of the same area,
+     * otherwise the tracker is reset and the extract contains all locations.
+     * @param topLeft top-left corner of the requested area.
+     * @param size size of the requested area.
+     * @param baseVersion version of the extract master holds, NO_VERSION if master wants full extract.
+     * @param version version of the new extract.
+     * @return true if the extract is delta, false if it is full.
+     */
+    public boolean start(Position topLeft, Position size, int baseVersion, int version){
+        boolean delta = baseVersion != NO_VERSION && baseVersion == this.version
+                && topLeft.equals(this.topLeft) && size.equals(this.size);
+        if(!delta){
+            if(!size.equals(this.size)){
+                chunksY = (size.getY() + CHUNK_MASK) >> CHUNK_BITS;
+                int chunksX = (size.getX() + CHUNK_MASK) >> CHUNK_BITS;
+                chunks = new int[chunksX * chunksY][];
+                chunkCounts = new int[chunks.length];
+            }else{
+                Arrays.fill(chunks, null);
+                Arrays.fill(chunkCounts, 0);
+            }
+            this.topLeft = topLeft;
+            this.size = size;
+        }
+        this.version = version;
+        pass++;
+        return delta;
+    }
+
+    /**
+     * Returns locations of the area that changed since the last extract and remembers their state.
+     * @param area all locations in the requested area.
+     * @return array of new locations and locations with changed type or visitor counts.
+     */
+    public Location[] changed(Location[] area){
+        List<Location> changed = new ArrayList<>();
+        for(Location location : area){
+            int x = location.getPosition().getX() - topLeft.getX();
+            int y = location.getPosition().getY() - topLeft.getY();
+            if(x < 0 || x >= size.getX() || y < 0 || y >= size.getY()){
+                //not tracked, always sent
+                changed.add(location);
+                continue;
+            }
+            int index = (x >> CHUNK_BITS) * chunksY + (y >> CHUNK_BITS);
+            int[] chunk = chunks[index];
+            if(chunk == null){
+                chunk = new int[SNAPSHOT << (2 * CHUNK_BITS)];
+                chunks[index] = chunk;
+            }
+            int snapshot = (((x & CHUNK_MASK) << CHUNK_BITS) | (y & CHUNK_MASK)) * SNAPSHOT;
+            boolean isNew = chunk[snapshot + PASS] == 0;
+            if(isNew)
+                chunkCounts[index]++;
+            int type = location.getType().ordinal();
+            boolean typeChanged = chunk[snapshot + TYPE] != type;
+            chunk[snapshot + TYPE] = type;
+            chunk[snapshot + PASS] = pass;
+            if(location.updateSnapshot(chunk, snapshot) || typeChanged || isNew)
+                changed.add(location);
+        }
+        return changed.toArray(new Location[0]);
+    }
+
+    /**
+     * Returns positions of locations sent in the last extract, that are not in the area anymore, and forgets them.
+     * Must be called after changed.
+     * @return array of packed positions of removed locations.
+     */
+    public long[] removed(){
+        int removed = 0;
+        for(int index = 0; index < chunks.length; index++){
+            int[] chunk = chunks[index];
+            if(chunk == null)
+                continue;
+            for(int snapshot = 0; snapshot < chunk.length; snapshot += SNAPSHOT){
+                if(chunk[snapshot + PASS] == 0 || chunk[snapshot + PASS] == pass)
+                    continue;
+                Arrays.fill(chunk, snapshot, snapshot + SNAPSHOT, 0);
+                chunkCounts[index]--;
+                int cell = snapshot / SNAPSHOT;
+                int x = topLeft.getX() + ((index / chunksY) << CHUNK_BITS) + (cell >> CHUNK_BITS);
+                int y = topLeft.getY() + ((index % chunksY) << CHUNK_BITS) + (cell & CHUNK_MASK);
+                if(removed == removedBuffer.length)
+                    removedBuffer = Arrays.copyOf(removedBuffer, removed * 2);
+                removedBuffer[removed++] = PackedPosition.pack(x, y);
+            }
+            if(chunkCounts[index] == 0)
+                chunks[index] = null;
+        }
+        return Arrays.copyOf(removedBuffer, removed);
+    }
+
+    /** Version getter.
+     * @return version of the last started extract. */
+    public int getVersion(){
+        return version;
+    }
+}
@@ -3,6 +3,7 @@ import java.awt.*;
 import java.awt.event.KeyEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.util.Random;
 
 /**
  * Dialog class of dialog responsible for setting up simulated world.
@@ -20,6 +21,7 @@ public class GenerateWorldDialog extends JDialog {
     private JSpinner restaurantCountSpinner;
     private JSpinner homeCountSpinner;
     private JSpinner populationSizeSpinner;
+    private JSpinner seedSpinner;
     private JSlider infectedRateSlider;
     private JSlider curedRateSlider;
     private JSlider vaccinatedRateSlider;
@@ -33,6 +35,7 @@ public class GenerateWorldDialog extends JDialog {
     private JCheckBox restaurantBanCheckBox;
     private JCheckBox workFromHomeCheckBox;
     private JCheckBox schoolFromHomeCheckBox;
+    private JCheckBox closedFormSpreadCheckBox;
     private JLabel infectedRateLabel;
     private JLabel curedRateLabel;
     private JLabel vaccinatedRateLabel;
@@ -102,6 +105,7 @@ public class GenerateWorldDialog extends JDialog {
         int workplacesCount = (int)workplaceCountSpinner.getValue();
         int restaurantsCount = (int)restaurantCountSpinner.getValue();
         int homeCount = (int)homeCountSpinner.getValue();
+        long seed = (int)seedSpinner.getValue();
 
         //Population
         int populationSize = (int)populationSizeSpinner.getValue();
@@ -125,6 +129,7 @@ public class GenerateWorldDialog extends JDialog {
         boolean restaurantBan = restaurantBanCheckBox.isSelected();
         boolean workFromHome = workFromHomeCheckBox.isSelected();
         boolean schoolFromHome = schoolFromHomeCheckBox.isSelected();
+        boolean closedFormSpread = closedFormSpreadCheckBox.isSelected();
 
         //Set up generator
         Position worldSize = new Position(width, height);
@@ -142,10 +147,11 @@ public class GenerateWorldDialog extends JDialog {
         parameters.restaurantSpreadMultiplier = restaurantMultiplier;
         parameters.masks = masks;
         parameters.masksMultiplier = maskMultiplier;
+        parameters.closedFormSpread = closedFormSpread;
 
         worldGenerator.setUpGenerator(worldSize,parameters,
                 homeCount, restaurantsCount, schoolsCount, workplacesCount,
-                populationSize, infectedRate, curedRate, vaccinatedRate);
+                populationSize, infectedRate, curedRate, vaccinatedRate, seed);
     }
 
     private boolean checkInputSemantics(){
@@ -206,9 +212,21 @@ public class GenerateWorldDialog extends JDialog {
             JOptionPane.showMessageDialog(this,
                     "World size has to be between [10,10] and [" + Master.MAX_WORLD_SIZE + "," + Master.MAX_WORLD_SIZE + "]",
                     "Wrong input", JOptionPane.WARNING_MESSAGE);
+            return false;
         }
 
-        return ret;
+        //every simulator needs at least one tile
+        int simCount = worldGenerator.getSimulators().length;
+        if((long)width * height < simCount){
+            worldSizeXSpinner.getEditor().getComponent(0).setBackground(new Color(255,153,153));
+            worldSizeYSpinner.getEditor().getComponent(0).setBackground(new Color(255,153,153));
+            JOptionPane.showMessageDialog(this,
+                    "World has to have at least one tile per simulator (" + simCount + " tiles)",
+                    "Wrong input", JOptionPane.WARNING_MESSAGE);
+            return false;
+        }
+
+        return true;
     }
 
     private boolean checkLocationsCount(int width, int height){
@@ -343,6 +361,7 @@ public class GenerateWorldDialog extends JDialog {
         schoolCountSpinner.setValue(15);
         restaurantCountSpinner.setValue(10);
         workplaceCountSpinner.setValue(30);
+        seedSpinner.setValue(new Random().nextInt(1000000));
 
         populationSizeSpinner.setValue(500);
         infectedRateSlider.setValue(30);
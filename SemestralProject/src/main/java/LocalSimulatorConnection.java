@@ -0,0 +1,295 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Logger;
+
+/**
+ * Connection to a simulator running in the masters process.
+ * <p>Commands are executed on the connections own thread in order they were sent, as a simulator application
+ * executes received messages. Nothing is encoded - people, locations, stats and extracts are passed as objects,
+ * people and contagion parameters are copied so the simulator doesn't share them with the master or other simulators.</p>
+ * <p>The simulator doesn't link peers, people leaving it's area are passed through master.</p>
+ */
+public class LocalSimulatorConnection implements SimulatorConnection {
+    private static final Logger log = Logger.getLogger(LocalSimulatorConnection.class.getName());
+
+    /** Simulator driven by this connection. */
+    private final Simulator simulator;
+    /** Thread executing the commands on the simulator. */
+    private final ExecutorService executor;
+    /** Last extract passed to the master, next extracts of the same area are passed as deltas. */
+    private final ExtractTracker extractTracker;
+    /** People waiting to be added to the simulator and confirmations waiting to be passed to it. */
+    private final WaitingQueue waiting;
+    /** top-left corner of the simulators area. */
+    private Position topLeft;
+    /** size of the simulators area. */
+    private Position size;
+    /** Version of the last extract passed to the master. */
+    private volatile int extractVersion;
+    /** Capacity of the simulator, measured when the connection is created. */
+    private final SimulatorCapacity capacity;
+
+    /**
+     * Local simulator connection constructor. Creates the simulator and the thread executing commands on it.
+     * @param threads number of worker threads of the simulator.
+     */
+    public LocalSimulatorConnection(int threads){
+        simulator = new Simulator(threads);
+        executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "LocalSimulator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        extractTracker = new ExtractTracker();
+        waiting = new WaitingQueue();
+        extractVersion = ExtractTracker.NO_VERSION;
+        capacity = SimulatorCapacity.measure(simulator.getThreadCount(), Boolean.getBoolean(SimulatorCapacity.BENCHMARK_PROPERTY));
+    }
+
+    @Override
+    public CompletableFuture<Void> sendPing(){
+        return submit(() -> {});
+    }
+
+    @Override
+    public void initSimulator(Position topLeft, Position size, long seed) throws SimulatorConnectionException {
+        this.topLeft = topLeft;
+        this.size = size;
+        SimulatorConnection.await(submit(() -> simulator.setSimulator(topLeft, size, seed)));
+    }
+
+    @Override
+    public void addToWaitingPeople(WaitingPerson person){
+        waiting.addPerson(person);
+    }
+
+    /**
+     * Adds all waiting people to the simulator and passes confirmations to the simulator of origin.
+     * Simulators copy the people to their tables, so the people can be passed without copying.
+     * Simulator of origin doesn't change the people until they're confirmed.
+     * @return future completed when all the people are confirmed, or completed exceptionally if the simulator exited.
+     */
+    @Override
+    public CompletableFuture<Void> resolveWaitingPeople(){
+        List<WaitingPerson> people = waiting.drainPeople();
+        if(people.isEmpty())
+            return CompletableFuture.completedFuture(null);
+        return submit(() -> {
+            for(WaitingPerson wp : people){
+                boolean accepted = simulator.addPerson(wp.getPerson(), wp.getTargetPosition());
+                SimulatorConnection origin = wp.getOrigin();
+                if(origin != null){
+                    origin.addToWaitingConfirmations(new WaitingPersonConfirmation(wp.getPerson().getPersonalNumber(), accepted));
+                }else if(!accepted){
+                    log.severe("Person sent without origin wasn't received by target simulator.");
+                }
+            }
+        });
+    }
+
+    @Override
+    public void addToWaitingConfirmations(WaitingPersonConfirmation confirmation){
+        waiting.addConfirmation(confirmation);
+    }
+
+    @Override
+    public CompletableFuture<Void> resolveWaitingConfirmations(){
+        List<WaitingPersonConfirmation> confirmations = waiting.drainConfirmations();
+        if(confirmations.isEmpty())
+            return CompletableFuture.completedFuture(null);
+        return submit(() -> {
+            for(WaitingPersonConfirmation wc : confirmations){
+                simulator.confirmPerson(wc.getPersonalNumber(), wc.getConfirmation());
+            }
+        });
+    }
+
+    @Override
+    public boolean containsPosition(Position position){
+        return position.isInArea(topLeft, size);
+    }
+
+    @Override
+    public Position getTopLeft(){
+        return topLeft;
+    }
+
+    @Override
+    public Position getSize(){
+        return size;
+    }
+
+    /**
+     * Returns capacity of the simulator. Simulators in the masters process share it's processors and heap,
+     * so they differ only in number of worker threads (and benchmark score).
+     * @return SimulatorCapacity of the simulator.
+     */
+    @Override
+    public SimulatorCapacity getCapacity(){
+        return capacity;
+    }
+
+    /**
+     * Simulators in the masters process don't accept peer connections.
+     * @return null.
+     */
+    @Override
+    public PeerAddress getPeerAddress(){
+        return null;
+    }
+
+    /**
+     * Simulators in the masters process don't link peers, all people leaving their areas are passed through master.
+     * @param expected number of peers that will connect to the simulator, always 0.
+     * @param peers peers the simulator should connect to, always empty.
+     * @return completed future.
+     */
+    @Override
+    public CompletableFuture<Void> sendPeers(int expected, List<PeerAddress> peers){
+        if(expected > 0 || !peers.isEmpty())
+            log.severe("Simulator in masters process can't link peers.");
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /** Timetable patterns are shared by the whole process, nothing needs to be registered. */
+    @Override
+    public void sendTimetablePatterns(){
+    }
+
+    @Override
+    public void sendLocation(Location location) throws SimulatorConnectionException {
+        try {
+            executor.execute(() -> simulator.addLocation(location));
+        } catch (RejectedExecutionException e) {
+            throw new SimulatorConnectionException();
+        }
+    }
+
+    /**
+     * Makes the simulator move people in it's area and passes people leaving it's area to the master.
+     * @param master master instance to handle people transfers between simulators.
+     * @return future completed when the simulator moved the people, or completed exceptionally if the simulator exited.
+     */
+    @Override
+    public CompletableFuture<Void> sendMoveCommand(Master master){
+        return submit(() -> {
+            for(WaitingPerson wp : simulator.movePeople()){
+                master.forwardPerson(wp.getPerson(), wp.getTargetPosition(), this);
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> sendCalculateHealthCommand(){
+        return submit(simulator::calculateHealth);
+    }
+
+    @Override
+    public CompletableFuture<Void> sendContagionParameters(ContagionParameters contagionParameters){
+        ContagionParameters copy = contagionParameters.copy();
+        return submit(() -> simulator.setContagionParameters(copy));
+    }
+
+    @Override
+    public CompletableFuture<Void> sendSendExtractCommand(Position topLeft, Position size, Extract extract, boolean delta){
+        return submit(() -> fillExtract(topLeft, size, extract, delta));
+    }
+
+    @Override
+    public CompletableFuture<Void> sendRoundCommand(Master master, Position topLeft, Position size, Extract extract, boolean delta){
+        return submit(() -> {
+            simulator.calculateHealth();
+            master.updateStats(simulator.getStats());
+            fillExtract(topLeft, size, extract, delta);
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> sendSendStatsCommand(Master master){
+        return submit(() -> master.updateStats(simulator.getStats()));
+    }
+
+    /**
+     * Changes the simulators area between rounds and passes the released locations and people to the master.
+     * @param master master to pass the released locations and people to.
+     * @param topLeft new top-left corner of the simulators area.
+     * @param size new size of the simulators area.
+     * @return future completed when all released locations and people are passed, or completed exceptionally if the simulator exited.
+     */
+    @Override
+    public CompletableFuture<Void> sendResizeCommand(Master master, Position topLeft, Position size){
+        this.topLeft = topLeft;
+        this.size = size;
+        return submit(() -> {
+            List<Location> locations = new ArrayList<>();
+            List<WaitingPerson> people = new ArrayList<>();
+            simulator.resize(topLeft, size, locations, people);
+            for(Location location : locations){
+                master.addReleasedLocation(location);
+            }
+            master.addReleasedPeople(people);
+        });
+    }
+
+    /**
+     * Adds people released by another simulator to the simulator.
+     * @param people people with positions they stand on.
+     * @return future completed when the simulator adopted the people, or completed exceptionally if the simulator exited.
+     */
+    @Override
+    public CompletableFuture<Void> sendAdoptCommand(List<WaitingPerson> people){
+        if(people.isEmpty())
+            return CompletableFuture.completedFuture(null);
+        return submit(() -> simulator.adoptPeople(people));
+    }
+
+    /** Stops the simulator after it finishes the commands sent before. */
+    @Override
+    public void sendExitSim(){
+        try {
+            executor.execute(simulator::shutdown);
+        } catch (RejectedExecutionException e) {
+            return;
+        }
+        executor.shutdown();
+    }
+
+    /**
+     * Fills the extract with locations of the simulator in the area, versioned the same way as extracts sent over network.
+     * @param topLeft top-left corner of the requested area.
+     * @param size size of the requested area.
+     * @param extract extract to fill, a copy of the previous extract of the area if delta is true.
+     * @param delta true to update only locations that changed since the last extract.
+     */
+    private void fillExtract(Position topLeft, Position size, Extract extract, boolean delta){
+        int baseVersion = delta ? extractVersion : ExtractTracker.NO_VERSION;
+        boolean isDelta = extractTracker.start(topLeft, size, baseVersion, simulator.getHour());
+        Location[] changed = extractTracker.changed(simulator.getArea(topLeft, size));
+        if(!isDelta)
+            extract.clearArea(this.topLeft, this.size);
+        for(Location location : changed){
+            extract.addExtractedLocation(location);
+        }
+        for(long position : extractTracker.removed()){
+            extract.removeExtractedLocation(position);
+        }
+        extractVersion = extractTracker.getVersion();
+    }
+
+    /**
+     * Runs the command on the simulators thread after the previously sent commands.
+     * @param command command to run.
+     * @return future completed when the command is done, or completed exceptionally if the command failed or the simulator exited.
+     */
+    private CompletableFuture<Void> submit(Runnable command){
+        try {
+            return CompletableFuture.runAsync(command, executor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(new SimulatorConnectionException());
+        }
+    }
+}
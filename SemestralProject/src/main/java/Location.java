@@ -1,41 +1,152 @@
-import java.util.ArrayList;
-import java.util.List;
 import java.util.logging.Logger;
 
 /**
  * Base location class, contains information about a single tile in the simulated world.
- * Knows which persons are present, person class instance can visit or leave a location.
+ * Knows which persons are present, persons of a PeopleTable can visit or leave a location.
  */
 public class Location {
     /** Position of the location in the whole simulated world */
     protected Position position;
-    /** List of persons currently present at the locations position */
-    protected List<Person> visitors;
+    /** Set of persons currently present at the locations position */
+    protected VisitorSet visitors;
+    /** Table of the visitors, null until the location is first visited. */
+    protected PeopleTable people;
+    /** Number of visitors that can infect others (infected or quarantined). */
+    protected int infectiousCount;
+    /** Number of visitors of every health status, indexed by PersonHealth ordinal. */
+    protected final int[] healthCounts;
+    /** Grid holding this location, notified when the location gets infectious visitors. Null for standalone locations. */
+    private TileGrid grid;
 
     /** Location constructor
      * @param position position of the Location. */
     public Location(Position position){
         this.position = position;
-        visitors = new ArrayList<>();
+        visitors = new VisitorSet();
+        people = null;
+        infectiousCount = 0;
+        healthCounts = new int[PersonHealth.values().length];
+        grid = null;
     }
 
-    /** Accepts the person, adds it to the visitors list.
-     * @param person person to visit this location.
+    /** Accepts the person, adds it to the visitors set.
+     * <p>The person must not be visiting other location, use PeopleTable.visit to relocate persons.
+     * All visitors of a location are from the same table.</p>
+     * @param people table of the person.
+     * @param row row of the person to visit this location.
      * @param parameters currently active contagion parameters
      * @return true if the person can visit this location, false if the person isn't allowed there.
      * */
-    public synchronized boolean visit(Person person, ContagionParameters parameters){
-        if(visitors.contains(person))
-            return false;
+    public synchronized boolean visit(PeopleTable people, int row, ContagionParameters parameters){
+        return addVisitor(people, row);
+    }
+
+    /** Accepts the person, adds it to the visitors set. The person joins the table of the visitors first.
+     * @param person person to visit this location.
+     * @param parameters currently active contagion parameters
+     * @return true if the person can visit this location, false if the person isn't allowed there. */
+    public boolean visit(Person person, ContagionParameters parameters){
+        PeopleTable table = person.joinTable(getVisitorsTable());
+        return visit(table, person.getRow(), parameters);
+    }
+
+    /** Adds the person back to visitors after it failed to visit other location. Location rules aren't checked.
+     * @param people table of the person.
+     * @param row row of the person returning to this location.
+     * @return true if the person was added, false if it already was visitor of this location. */
+    public synchronized boolean rejoin(PeopleTable people, int row){
+        return addVisitor(people, row);
+    }
 
-        visitors.add(person);
+    /** Adds the person to visitors set and updates infectious visitors count.
+     * @param people table of the person.
+     * @param row row of the person to add.
+     * @return true if the person was added, false if it already was visitor of this location. */
+    private boolean addVisitor(PeopleTable people, int row){
+        this.people = people;
+        if(!visitors.add(people, row))
+            return false;
+        countVisitor(people.getHealth(row), 1);
         return true;
     }
 
-    /** Removes the person from visitors list.
+    /** Removes the person from visitors set.
+     * @param people table of the person.
+     * @param row row of the person that is leaving this location. */
+    public synchronized void leave(PeopleTable people, int row){
+        if(visitors.remove(people, row))
+            countVisitor(people.getHealth(row), -1);
+    }
+
+    /** Removes the person from visitors set.
      * @param person person that is leaving this location. */
     public synchronized void leave(Person person){
-        visitors.remove(person);
+        if(people != null && person.getTable() == people)
+            leave(people, person.getRow());
+    }
+
+    /** Returns table of the visitors.
+     * @return table of the visitors, null if the location has no visitors. */
+    public synchronized PeopleTable getVisitorsTable(){
+        return visitors.isEmpty() ? null : people;
+    }
+
+    /** Updates visitors counts after visitor's health changed.
+     * @param previous visitor's health before the change.
+     * @param current visitor's health after the change. */
+    public synchronized void visitorHealthChanged(PersonHealth previous, PersonHealth current){
+        countVisitor(previous, -1);
+        countVisitor(current, 1);
+    }
+
+    /** Returns true if any of the visitors can infect others.
+     * @return true if there is an infected or quarantined visitor, false otherwise. */
+    public synchronized boolean hasInfectiousVisitors(){
+        return infectiousCount > 0;
+    }
+
+    /** Sets grid to notify when this location gets infectious visitors or it's visitors counts change.
+     * Visitors already present are moved from counts of the previous grid to counts of the new one.
+     * @param grid grid holding this location. */
+    public synchronized void setGrid(TileGrid grid){
+        for(PersonHealth health : PersonHealth.values()){
+            int count = healthCounts[health.ordinal()];
+            if(count != 0){
+                if(this.grid != null)
+                    this.grid.visitorsCounted(health, -count);
+                if(grid != null)
+                    grid.visitorsCounted(health, count);
+            }
+        }
+        this.grid = grid;
+        if(grid != null && infectiousCount > 0)
+            grid.markActive(this);
+    }
+
+    /** Changes visitors count of the health status, also in the grid counts.
+     * @param health health status of the visitors.
+     * @param difference number of visitors added (negative if removed). */
+    private void countVisitor(PersonHealth health, int difference){
+        healthCounts[health.ordinal()] += difference;
+        if(grid != null)
+            grid.visitorsCounted(health, difference);
+        if(health.isInfectious())
+            infectiousCountChanged(difference);
+    }
+
+    /** Changes infectious visitors count, marks the location active in it's grid when it gets the first one.
+     * @param difference number of infectious visitors added (negative if removed). */
+    private void infectiousCountChanged(int difference){
+        boolean wasActive = infectiousCount > 0;
+        infectiousCount += difference;
+        if(!wasActive && infectiousCount > 0 && grid != null)
+            grid.markActive(this);
+    }
+
+    /** Returns true if the location holds no information and can be dropped from a sparse grid until visited again.
+     * @return true for default locations without visitors, false otherwise. */
+    public boolean isDisposable(){
+        return getClass() == Location.class && visitors.isEmpty();
     }
 
     /** Position getter.
@@ -46,14 +157,47 @@ public class Location {
 
     /** Calculates stats for this location only and returns it.
      * @return Stats of this location. (Counts of different health states.) */
-    public Stats getStats(){
+    public synchronized Stats getStats(){
         Stats ret = new Stats();
-        for(Person p: visitors){
-            ret.countPerson(p);
+        for(PersonHealth health : PersonHealth.values()){
+            ret.count(health, healthCounts[health.ordinal()]);
         }
         return ret;
     }
 
+    /** Appends stats of this location in Stats text format, without creating Stats object.
+     * @param builder builder to append to. */
+    public synchronized void appendStats(StringBuilder builder){
+        builder.append(healthCounts[PersonHealth.healthy.ordinal()]).append(',')
+                .append(healthCounts[PersonHealth.infected.ordinal()]).append(',')
+                .append(healthCounts[PersonHealth.cured.ordinal()]).append(',')
+                .append(healthCounts[PersonHealth.quarantined.ordinal()]).append(',')
+                .append(healthCounts[PersonHealth.deceased.ordinal()]).append(',')
+                .append(healthCounts[PersonHealth.vaccinated.ordinal()]);
+    }
+
+    /** Copies visitor counts of this location to the array, without creating Stats object.
+     * @param into array to copy the counts to, indexed by PersonHealth ordinal from the offset.
+     * @param offset index of the first count in the array. */
+    public synchronized void copyHealthCounts(int[] into, int offset){
+        System.arraycopy(healthCounts, 0, into, offset, healthCounts.length);
+    }
+
+    /** Copies visitor counts of this location to the snapshot, if they differ from it.
+     * @param snapshot array of the snapshot, counts are indexed by PersonHealth ordinal from the offset.
+     * @param offset index of the first count in the snapshot.
+     * @return true if the counts changed since the snapshot was taken, false otherwise. */
+    public synchronized boolean updateSnapshot(int[] snapshot, int offset){
+        boolean changed = false;
+        for(int i = 0; i < healthCounts.length; i++){
+            if(snapshot[offset + i] != healthCounts[i]){
+                snapshot[offset + i] = healthCounts[i];
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
     /** Runs simulation of decease spread and health status changes among it's visitors.
      * @param parameters infection parameters - settings of contagion.*/
     public synchronized void calculateVisitorsHealth(ContagionParameters parameters){
@@ -61,47 +205,92 @@ public class Location {
     }
 
     /**
-     * For every infected person in the locations tries to infect all healthy people in the location.
+     * Spreads the infection among visitors with the kernel selected in contagion parameters
+     * and changes health of the infectious visitors.
      * @param parameters Contagion parameters of the contagion.
      * @param spreadChance Chance with which one person infects another in this location.
      */
     protected void tryInfectVisitors(ContagionParameters parameters, double spreadChance){
-        for(Person p : visitors){
-            if(p.getHealth() == PersonHealth.infected || p.getHealth() == PersonHealth.quarantined){
+        if(parameters.closedFormSpread)
+            tryInfectVisitorsClosedForm(parameters, spreadChance);
+        else
+            tryInfectVisitorsPerPair(parameters, spreadChance);
+    }
+
+    /**
+     * For every infected person in the locations tries to infect all healthy people in the location.
+     * <p>People infected during the hour infect the visitors after them too. Visitors are processed in order
+     * of their personal numbers and every try is drawn for the pair of people, so the result doesn't depend on
+     * the order the visitors came in.</p>
+     * @param parameters Contagion parameters of the contagion.
+     * @param spreadChance Chance with which one person infects another in this location.
+     */
+    private void tryInfectVisitorsPerPair(ContagionParameters parameters, double spreadChance){
+        if(infectiousCount == 0)
+            return;
+
+        visitors.sortByPersonalNumber(people);
+        int count = visitors.size();
+        for(int i = 0; i < count; i++){
+            int p = visitors.get(i);
+            if(people.isInfectious(p)){
                 //for every infectious person
-                for(Person contact: visitors){
-                    if(contact.getHealth() == PersonHealth.healthy){
+                for(int j = 0; j < count; j++){
+                    int contact = visitors.get(j);
+                    if(people.getHealth(contact) == PersonHealth.healthy){
                         //for every person that can be infected
-                        contact.tryInfect(spreadChance);
+                        people.tryInfectBy(contact, p, spreadChance);
                     }
                 }
-                p.tryChangeHealth(parameters);
+                people.tryChangeHealth(p, parameters);
             }
         }
     }
 
-    /** Returns text with name of the locations type
-     * @return String - name of the locations type */
-    public String getTypeSting(){
-        return "default";
-    }
-
     /**
-     * Parses Whitelist from given formatted string.
-     * @param whitelistString formatted string representing whitelist.
-     * @return List<Integer> List containing PersonalNumbers of whitelisted people.
+     * Counts infectious visitors and gives every healthy visitor a single chance to get infected,
+     * equal to the chance of being infected by at least one of them in the per-pair kernel.
+     * @param parameters Contagion parameters of the contagion.
+     * @param spreadChance Chance with which one person infects another in this location.
      */
-    private static List<Integer> parseWhitelist(String whitelistString){
-        String[] split = whitelistString.split(",");
-        ArrayList<Integer> whitelist = new ArrayList<>(split.length);
-        if(split.length == 1 && split[0].equals("")){
-            return whitelist;
-        }
+    private void tryInfectVisitorsClosedForm(ContagionParameters parameters, double spreadChance){
+        int infectious = infectiousCount;
+        if(infectious == 0)
+            return;
 
-        for(String s: split){
-            whitelist.add(Integer.parseInt(s));
+        double chance = 1 - Math.pow(1 - Math.min(Math.max(spreadChance, 0), 1), infectious);
+        int count = visitors.size();
+        for(int i = 0; i < count; i++){
+            int p = visitors.get(i);
+            if(people.getHealth(p) == PersonHealth.healthy){
+                people.tryInfect(p, chance);
+            }else if(people.isInfectious(p)){
+                people.tryChangeHealth(p, parameters);
+            }
         }
-        return  whitelist;
+    }
+
+    /** Writes the visitors counts in binary format of Stats, without creating Stats object.
+     * @param buffer buffer to write to. */
+    public synchronized void writeStats(WireBuffer buffer){
+        buffer.putInt(healthCounts[PersonHealth.healthy.ordinal()]);
+        buffer.putInt(healthCounts[PersonHealth.infected.ordinal()]);
+        buffer.putInt(healthCounts[PersonHealth.cured.ordinal()]);
+        buffer.putInt(healthCounts[PersonHealth.quarantined.ordinal()]);
+        buffer.putInt(healthCounts[PersonHealth.deceased.ordinal()]);
+        buffer.putInt(healthCounts[PersonHealth.vaccinated.ordinal()]);
+    }
+
+    /** Returns type of the location as extract location type, used as type code in binary format.
+     * @return ExtractLocation.Type of this location. */
+    public ExtractLocation.Type getType(){
+        return ExtractLocation.Type.defaultL;
+    }
+
+    /** Returns text with name of the locations type
+     * @return String - name of the locations type */
+    public String getTypeSting(){
+        return "default";
     }
 
     /**
@@ -119,11 +308,11 @@ public class Location {
             case "default":
                 return new Location(pos);
             case "home":
-                return new LocationHome(pos, parseWhitelist(split[3]));
+                return new LocationHome(pos, Whitelist.parseWhitelist(split[3]));
             case "school":
-                return new LocationSchool(pos, parseWhitelist(split[3]));
+                return new LocationSchool(pos, Whitelist.parseWhitelist(split[3]));
             case "workplace":
-                return new LocationWorkplace(pos, parseWhitelist(split[3]));
+                return new LocationWorkplace(pos, Whitelist.parseWhitelist(split[3]));
             case "restaurant":
                 return new LocationRestaurant(pos);
             default:
@@ -132,6 +321,30 @@ public class Location {
         }
     }
 
+    /** Writes binary representation of the location - type code and packed position (without visitors).
+     * @param buffer buffer to write to. */
+    public void writeTo(WireBuffer buffer){
+        buffer.putByte(getType().ordinal());
+        buffer.putLong(PackedPosition.pack(position));
+    }
+
+    /**
+     * Reads location from it's binary representation (see writeTo).
+     * @param buffer buffer to read from.
+     * @return Location read location of the correct type.
+     */
+    public static Location readFrom(WireBuffer buffer){
+        ExtractLocation.Type type = ExtractLocation.Type.values()[buffer.getByte()];
+        Position pos = PackedPosition.toPosition(buffer.getLong());
+        return switch (type) {
+            case homeL -> new LocationHome(pos, Whitelist.readFrom(buffer));
+            case schoolL -> new LocationSchool(pos, Whitelist.readFrom(buffer));
+            case workplaceL -> new LocationWorkplace(pos, Whitelist.readFrom(buffer));
+            case restaurantL -> new LocationRestaurant(pos);
+            default -> new Location(pos);
+        };
+    }
+
     /** Returns text representation of location to send via network.
      * @return string - text representation of location. */
     @Override
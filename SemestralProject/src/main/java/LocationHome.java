@@ -1,4 +1,3 @@
-import java.util.List;
 /**
  * Class of home location. Extends LocationWhitelisted.
  */
@@ -6,8 +5,8 @@ public class LocationHome extends LocationWhitelisted{
 
     /** Location home constructor.
      * @param position position of the location.
-     * @param whitelist List of personal numbers of persons that are allowed here. */
-    public LocationHome(Position position, List<Integer> whitelist){
+     * @param whitelist Personal numbers of persons that are allowed here. */
+    public LocationHome(Position position, Whitelist whitelist){
         super(position, whitelist);
     }
 
@@ -16,26 +15,17 @@ public class LocationHome extends LocationWhitelisted{
         tryInfectVisitors(parameters, parameters.defaultSpreadChance * parameters.homeSpreadMultiplier);
     }
 
+    /** Returns type of the location as extract location type, used as type code in binary format.
+     * @return ExtractLocation.Type of this location. */
+    @Override
+    public ExtractLocation.Type getType(){
+        return ExtractLocation.Type.homeL;
+    }
+
     /** Returns text with name of the locations type
      * @return String - name of the locations type */
     @Override
     public String getTypeSting(){
         return "home";
     }
-
-    /** Returns text representation of location to send via network.
-     * @return string - text representation of location. */
-    @Override
-    public String toString(){
-        StringBuilder ret = new StringBuilder("Location:home:" + position.toString() + ":");
-        for(int i = 0; i < whiteList.size(); i++){
-            if(i > 0){
-                ret.append(",");
-            }
-
-            ret.append(whiteList.get(i).toString());
-        }
-
-        return ret.toString();
-    }
 }
@@ -10,11 +10,11 @@ public class LocationRestaurant extends Location{
     }
 
     @Override
-    public boolean visit(Person person, ContagionParameters parameters) {
+    public boolean visit(PeopleTable people, int row, ContagionParameters parameters) {
         if(!parameters.restaurantsOpen)
             return false;
 
-        return super.visit(person, parameters);
+        return super.visit(people, row, parameters);
     }
 
     @Override
@@ -25,6 +25,13 @@ public class LocationRestaurant extends Location{
         tryInfectVisitors(parameters, spreadChance);
     }
 
+    /** Returns type of the location as extract location type, used as type code in binary format.
+     * @return ExtractLocation.Type of this location. */
+    @Override
+    public ExtractLocation.Type getType(){
+        return ExtractLocation.Type.restaurantL;
+    }
+
     /** Returns text with name of the locations type
      * @return String - name of the locations type */
     @Override
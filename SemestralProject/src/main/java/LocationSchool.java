@@ -1,4 +1,3 @@
-import java.util.List;
 /**
  * Class of school location. Extends LocationWhitelisted.
  */
@@ -6,17 +5,17 @@ public class LocationSchool extends LocationWhitelisted{
 
     /** Location school constructor
      * @param position position of the location.
-     * @param whitelist List of personal numbers of persons that are allowed here. */
-    public LocationSchool(Position position, List<Integer> whitelist){
+     * @param whitelist Personal numbers of persons that are allowed here. */
+    public LocationSchool(Position position, Whitelist whitelist){
         super(position, whitelist);
     }
 
     @Override
-    public boolean visit(Person person, ContagionParameters parameters) {
+    public boolean visit(PeopleTable people, int row, ContagionParameters parameters) {
         if(!parameters.schoolsOpen){
             return  false;
         }
-        return super.visit(person, parameters);
+        return super.visit(people, row, parameters);
     }
 
     @Override
@@ -27,26 +26,17 @@ public class LocationSchool extends LocationWhitelisted{
         tryInfectVisitors(parameters, spreadChance);
     }
 
+    /** Returns type of the location as extract location type, used as type code in binary format.
+     * @return ExtractLocation.Type of this location. */
+    @Override
+    public ExtractLocation.Type getType(){
+        return ExtractLocation.Type.schoolL;
+    }
+
     /** Returns text with name of the locations type
      * @return String - name of the locations type */
     @Override
     public String getTypeSting(){
         return "school";
     }
-
-    /** Returns text representation of location to send via network.
-     * @return string - text representation of location. */
-    @Override
-    public String toString(){
-        StringBuilder ret = new StringBuilder("Location:school:" + position.toString() + ":");
-        for(int i = 0; i < whiteList.size(); i++){
-            if(i > 0){
-                ret.append(",");
-            }
-
-            ret.append(whiteList.get(i).toString());
-        }
-
-        return ret.toString();
-    }
 }
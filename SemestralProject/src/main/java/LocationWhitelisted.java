@@ -1,44 +1,50 @@
-import java.util.ArrayList;
-import java.util.List;
 /** Abstract class of location that only certain people can visit. Extends Location. */
 public abstract class LocationWhitelisted extends Location {
-    /** List of persons that can visit this location */
-    List<Integer> whiteList;
+    /** Personal numbers of persons that can visit this location */
+    protected Whitelist whiteList;
 
     /** Location whitelisted constructor
      * @param position this locations position
-     * @param whiteList list of personal numbers of persons that can visit this location*/
-    public LocationWhitelisted(Position position, List<Integer> whiteList){
+     * @param whiteList personal numbers of persons that can visit this location*/
+    public LocationWhitelisted(Position position, Whitelist whiteList){
         super(position);
         this.whiteList = whiteList;
         if(whiteList == null){
-            this.whiteList = new ArrayList<>();
+            this.whiteList = new Whitelist();
         }
     }
 
     /** Adds new person to whitelisted persons list
      * @param personalNumber The newly whitelisted persons personal number. */
-    public void addToWhiteList(Integer personalNumber){
+    public void addToWhiteList(int personalNumber){
         whiteList.add(personalNumber);
     }
 
     /** Returns true if person is on the allowed persons list of this location.
-     * @param person person to look up in whitelist
+     * @param personalNumber personal number of the person to look up in whitelist
      * @return true if person is whitelisted here, false otherwise. */
-    public boolean isWhitelisted(Person person){
-        for(int pn: whiteList){
-            if(pn == person.getPersonalNumber()){
-                return true;
-            }
-        }
-        return false;
+    public boolean isWhitelisted(int personalNumber){
+        return whiteList.contains(personalNumber);
     }
 
     @Override
-    public boolean visit(Person person, ContagionParameters parameters) {
-        if(isWhitelisted(person)){
-            return super.visit(person, parameters);
+    public boolean visit(PeopleTable people, int row, ContagionParameters parameters) {
+        if(isWhitelisted(people.getPersonalNumber(row))){
+            return super.visit(people, row, parameters);
         }
         return false;
     }
+
+    @Override
+    public void writeTo(WireBuffer buffer){
+        super.writeTo(buffer);
+        whiteList.writeTo(buffer);
+    }
+
+    /** Returns text representation of location to send via network.
+     * @return string - text representation of location. */
+    @Override
+    public String toString(){
+        return "Location:" + getTypeSting() + ":" + position.toString() + ":" + whiteList.toString();
+    }
 }
@@ -11,7 +11,9 @@ public class MainSimulator {
     private static final int PORT = 1666;
 
     /** Main method of simulator console app.
-     * @param args Arguments to run the simulation with (1st can be IP_ADDRESS of maste, 2nd can be PORT of master)*/
+     * @param args Arguments to run the simulation with (1st can be IP_ADDRESS of maste, 2nd can be PORT of master,
+     *             3rd can be number of worker THREADS, defaults to number of available processors,
+     *             4th can be PROTOCOL - "text" to refuse binary protocol for debugging)*/
     public static void main(String[] args) {
         //Get target address
         String ipAddress = args.length > 0 ? args[0] : IP_ADDRESS;
@@ -25,25 +27,40 @@ public class MainSimulator {
             }
         }
 
+        int threads = Runtime.getRuntime().availableProcessors();
+        if(args.length > 2){
+            try{
+                threads = Integer.parseInt(args[2]);
+            }catch (NumberFormatException e){
+                threads = Runtime.getRuntime().availableProcessors();
+            }
+        }
+
+        boolean allowBinary = args.length <= 3 || !args[3].equalsIgnoreCase("text");
+
         //Connect to master
-        Simulator simulator = new Simulator();
+        Simulator simulator = new Simulator(threads);
         Socket socket = new Socket();
         MasterConnection masterConnection = null;
         try{
             socket.connect(new InetSocketAddress(ipAddress, port));
-            masterConnection = new MasterConnection(socket);
+            masterConnection = new MasterConnection(socket, allowBinary);
         }catch (IOException e){
             Logger.getLogger(SimulatorConnection.class.getName()).severe("Unable to connect to master.");
             System.out.println(
                     "Unable to connect to master on " + ipAddress + ":" + port + "\n" +
                     "The master is either not accepting simulators or running on different address and/or port\n" +
-                    "You can connect simulator to any address by running the app with parameters: IP_ADDRESS PORT");
+                    "You can connect simulator to any address by running the app with parameters: IP_ADDRESS PORT THREADS PROTOCOL");
+        }
+        if(masterConnection == null){
+            simulator.shutdown();
+            return;
         }
-        if(masterConnection == null) return;
         System.out.println("Connected.");
 
         //Handle masters requests
         while (masterConnection.listen(simulator));
+        simulator.shutdown();
     }
 
 }
@@ -1,5 +1,10 @@
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Flow;
 import java.util.concurrent.Flow.Subscriber;
 import java.util.logging.Logger;
@@ -7,20 +12,44 @@ import java.util.logging.Logger;
 /**
  * Main model class of GUI app. Holds information about connected simulators.
  * Communicates with simulators via simulator connection class.
+ * <p>Phases of the simulation are sent to all simulators at once without blocking, the phase ends when futures
+ * of all simulators complete. The I/O itself is done by the simulator connections event loop,
+ * the fan-out and join is done by a phase executor.</p>
+ * <p>Load of the simulators is measured by latencies of the round phase. When the load gets uneven, the master moves
+ * a border between simulators areas between rounds, the tiles behind the border are moved with their locations
+ * and people to the simulator that takes them over.</p>
  */
 public class Master implements Flow.Publisher{
     /** Constant representing maximal size of simulated world. */
     public static final int MAX_WORLD_SIZE = 2000000;
     /** Constant representing maximal population of simulated world. */
     public static final int MAX_POPULATION = 1000000;
+    /** System property with path of the file the stats history is written to, the history isn't written if not set. */
+    public static final String HISTORY_FILE_PROPERTY = "simulation.historyFile";
+    /** Minimal ratio of average loads of two groups of simulators, that makes the master move the border between them. */
+    private static final double REBALANCE_THRESHOLD = 1.3;
+    /** Minimal difference of average loads of two groups of simulators in nanoseconds, that makes the master move
+     * the border between them. Rounds shorter than this are dominated by noise, moving the areas wouldn't pay off. */
+    private static final double REBALANCE_MIN_DIFFERENCE = 20_000_000;
+    /** Number of rounds measured before the areas may be changed again. */
+    private static final int REBALANCE_INTERVAL = 5;
+    /** Number of consecutive rounds the load has to stay uneven before the areas are changed. */
+    private static final int REBALANCE_PERSISTENCE = 3;
+    /** Weight of the last round in the smoothed load of the simulators. */
+    private static final double LOAD_SMOOTHING = 0.5;
     /** This classes logger.*/
     private static final Logger log = Logger.getLogger(Master.class.getName());
     /** Array of simulator connections. Contains all connected simulators. */
     private final SimulatorConnection[] simulators;
+    /** Finds the simulator whose area contains a position, built from areas of the simulators.
+     * Replaced as a whole when the areas change. */
+    private volatile RoutingTable routingTable;
+    /** Executor running the phases on all simulators, records their latencies. */
+    private final PhaseExecutor phases;
     /** Width and height of the simulated world. */
     private final Position worldSize;
-    /** History of stats from all the rounds. */
-    private final LinkedList<Stats> statsHistory;
+    /** History of stats from all the rounds, only the recent rounds are held in memory. */
+    private final RoundHistory statsHistory;
     /** Most recent extract loaded from the simulators. */
     private Extract lastExtract;
     /** active rounds stats */
@@ -33,33 +62,51 @@ public class Master implements Flow.Publisher{
     private final List<MasterSubscription> subscriptions;
     /** Flag indicating an error occurred and simulation should be terminated */
     private volatile boolean error;
+    /** True to move borders between simulators areas when their load gets uneven. */
+    private volatile boolean rebalancing;
+    /** Smoothed load of the simulators in nanoseconds, by simulator index, null if not measured since the last change of the areas. */
+    private double[] loads;
+    /** Number of rounds measured since the last change of the areas. */
+    private int measuredRounds;
+    /** Number of consecutive rounds with uneven load, reset when the load evens out. */
+    private int unevenRounds;
+    /** True if areas of the simulators changed since the last extract, so the next extract can't be a delta. */
+    private boolean areasChanged;
+    /** Locations released by resized simulators, waiting to be sent to their new simulators. */
+    private final List<Location> releasedLocations;
+    /** People released by resized simulators, waiting to be sent to their new simulators. */
+    private final List<WaitingPerson> releasedPeople;
 
     /** Master class constructor
      * @param simulators simulators used to run the simulation.
      * @param worldSize size of the simulated world. */
     public Master(SimulatorConnection[] simulators, Position worldSize){
         this.simulators = simulators;
+        phases = new PhaseExecutor(simulators);
+        routingTable = RoutingTable.of(simulators);
         this.worldSize = worldSize;
-        statsHistory = new LinkedList<>();
+        statsHistory = createStatsHistory();
         extractTopLeft = new Position(0,0);
         extractSize = worldSize;
         subscriptions = new LinkedList<>();
         error = false;
+        rebalancing = true;
+        releasedLocations = new ArrayList<>();
+        releasedPeople = new ArrayList<>();
     }
 
     /** Executes a round of simulation.
      * <p>A round of simulation consists of moving people, infecting them,
-     * healing them, getting general stats and needed extract and notifying subscribers</p>
+     * healing them, getting general stats and needed extract and notifying subscribers.
+     * Once people are moved, the rest of the round is done by a single request to every simulator.</p>
      * <p>If there are no infected people left the subscribers will be notified through onComplete call.</p>
      */
     public void makeRound(){
         simsMovePeople();
         if(error) return;
-        simsCalculateHealth();
+        simsFinishRound(extractTopLeft, extractSize);
         if(error) return;
-        simsGetStats();
-        if(error) return;
-        simsGetExtract(extractTopLeft, extractSize);
+        rebalance();
         if(error) return;
         sendRoundEndedToSubscribers();
         if(currentStats.infected + currentStats.quarantined <= 0){
@@ -75,12 +122,32 @@ public class Master implements Flow.Publisher{
         this.extractSize = extractSize;
     }
 
+    /** Enables or disables moving borders between simulators areas when their load gets uneven, enabled by default.
+     * @param rebalancing true to enable rebalancing. */
+    public void setRebalancing(boolean rebalancing){
+        this.rebalancing = rebalancing;
+    }
+
     /** Stats history getter.
-     * @return Linked list with stats after each round. */
-    public LinkedList<Stats> getStatsHistory(){
+     * @return RoundHistory with stats after each round. */
+    public RoundHistory getStatsHistory(){
         return statsHistory;
     }
 
+    /** Creates the stats history, spilled to the file given by HISTORY_FILE_PROPERTY if it is set.
+     * @return RoundHistory for the stats. */
+    private static RoundHistory createStatsHistory(){
+        String file = System.getProperty(HISTORY_FILE_PROPERTY);
+        if(file != null){
+            try {
+                return new RoundHistory(RoundHistory.DEFAULT_CAPACITY, Paths.get(file));
+            } catch (IOException e) {
+                log.severe("Unable to open stats history file " + file + ", old rounds will be lost.");
+            }
+        }
+        return new RoundHistory(RoundHistory.DEFAULT_CAPACITY);
+    }
+
     /**
      * World size getter.
      * @return Position - size of the simulated world.
@@ -115,92 +182,137 @@ public class Master implements Flow.Publisher{
      */
     public void simsGetStats(){
         currentStats = new Stats();
-        Thread[] threads = new Thread[simulators.length];
-        for(int i = 0; i < simulators.length; i++){
-            int finalI = i;
-            threads[i] = new Thread(() -> {
-                try {
-                    simulators[finalI].sendSendStatsCommand(this);
-                } catch (SimulatorConnectionException e) {
-                    handleCommunicationError();
-                }
-            });
-            threads[i].start();
-        }
-        waitForThreads(threads);
+        runPhase("stats", (sim, i) -> sim.sendSendStatsCommand(this));
         statsHistory.add(currentStats);
     }
 
-    /** Runs calculate health command on all simulators. */
-    private void simsCalculateHealth(){
-        Thread[] threads = new Thread[simulators.length];
-        for(int i = 0; i < simulators.length; i++){
-            int finalI = i;
-            threads[i] = new Thread(() -> {
-                try {
-                    simulators[finalI].sendCalculateHealthCommand();
-                } catch (SimulatorConnectionException e) {
-                    handleCommunicationError();
-                }
-            });
-            threads[i].start();
-        }
-        waitForThreads(threads);
-    }
-
-    /** Runs move people command on all simulators. Handles cross-simulator exchange of people. */
+    /** Runs move people command on all simulators. Simulators with adjacent areas exchange people directly,
+     * people moving further are forwarded by master. Confirmations of people that are still waiting after the last phase
+     * are sent to the simulators by simsFinishRound. */
     private void simsMovePeople(){
-        Thread[] threads = new Thread[simulators.length];
-        for(int i = 0; i < simulators.length; i++){
-            int finalI = i;
-            threads[i] = new Thread(() -> {
-                try {
-                    simulators[finalI].sendMoveCommand(this);
-                    simulators[finalI].resolveWaitingPeople();
-                    simulators[finalI].resolveWaitingConfirmations();
-                } catch (SimulatorConnectionException e) {
-                    handleCommunicationError();
-                }
-            });
-            threads[i].start();
-        }
-        waitForThreads(threads);
+        runPhase("movePeople", (sim, i) -> sim.sendMoveCommand(this)
+                .thenCompose(v -> sim.resolveWaitingPeople())
+                .thenCompose(v -> sim.resolveWaitingConfirmations()));
         simsResolveWaitingPeople();
-        simsResolveWaitingConfirmations();
     }
 
-    /** Makes all simulators respond to requests of people waiting to move to them. */
-    private void simsResolveWaitingPeople(){
-        Thread[] threads = new Thread[simulators.length];
-        for(int i = 0; i < simulators.length; i++){
-            int finalI = i;
-            threads[i] = new Thread(() -> {
-                try {
-                    simulators[finalI].resolveWaitingPeople();
-                } catch (SimulatorConnectionException e) {
-                    handleCommunicationError();
-                }
-            });
-            threads[i].start();
+    /** Finishes the round on all simulators - sends them remaining person confirmations followed by the round command,
+     * simulators calculate health and respond with their stats and extract of requested area.
+     * Stats are stored to statsHistory, extract to lastExtract.
+     * @param topLeft topLeft corner of requested area.
+     * @param size size of requested area.*/
+    private void simsFinishRound(Position topLeft, Position size){
+        currentStats = new Stats();
+        boolean delta = isExtractDelta(topLeft, size);
+        Extract extract = delta ? new Extract(topLeft, size, lastExtract) : new Extract(topLeft, size);
+        runPhase("round", (sim, i) -> sim.resolveWaitingConfirmations()
+                .thenCompose(v -> sim.sendRoundCommand(this, topLeft, size, extract, delta)));
+        statsHistory.add(currentStats);
+        lastExtract = extract;
+        areasChanged = false;
+    }
+
+    /** Adds latencies of the last round phase to the smoothed load of the simulators. When enough rounds are measured
+     * and the load stays uneven for several consecutive rounds, moves one border between simulators areas. */
+    private void rebalance(){
+        long[] latencies = phases.getLatencies("round");
+        if(!rebalancing || simulators.length < 2 || latencies == null)
+            return;
+        if(loads == null){
+            loads = new double[simulators.length];
+            for(int i = 0; i < loads.length; i++){
+                loads[i] = latencies[i];
+            }
+        }else{
+            for(int i = 0; i < loads.length; i++){
+                loads[i] = LOAD_SMOOTHING * latencies[i] + (1 - LOAD_SMOOTHING) * loads[i];
+            }
+        }
+        if(++measuredRounds < REBALANCE_INTERVAL)
+            return;
+        RoutingTable rebalanced = routingTable.rebalance(loads, REBALANCE_THRESHOLD, REBALANCE_MIN_DIFFERENCE);
+        if(rebalanced == null){
+            unevenRounds = 0;
+            return;
         }
-        waitForThreads(threads);
+        if(++unevenRounds < REBALANCE_PERSISTENCE)
+            return;
+        moveAreas(rebalanced);
+        loads = null;
+        measuredRounds = 0;
+        unevenRounds = 0;
     }
 
-    /** Makes all simulator connections send waiting person confirmations to their simulators. */
-    private void simsResolveWaitingConfirmations(){
-        Thread[] threads = new Thread[simulators.length];
+    /**
+     * Changes areas of the simulators to the areas of the routing table. Simulators release locations and people
+     * outside their new areas, these are then adopted by the simulators that got their tiles, and peers are linked again.
+     * @param table routing table with the new areas.
+     */
+    private void moveAreas(RoutingTable table){
+        RoutingTable previous = routingTable;
+        releasedLocations.clear();
+        releasedPeople.clear();
+        runPhase("resize", (sim, i) -> previous.getTopLeft(i).equals(table.getTopLeft(i)) && previous.getSize(i).equals(table.getSize(i))
+                ? CompletableFuture.completedFuture(null) : sim.sendResizeCommand(this, table.getTopLeft(i), table.getSize(i)));
+        if(error) return;
+        routingTable = table;
+        areasChanged = true;
+        List<List<Location>> locations = new ArrayList<>(simulators.length);
+        List<List<WaitingPerson>> people = new ArrayList<>(simulators.length);
         for(int i = 0; i < simulators.length; i++){
-            int finalI = i;
-            threads[i] = new Thread(() -> {
-                try {
-                    simulators[finalI].resolveWaitingConfirmations();
-                } catch (SimulatorConnectionException e) {
-                    handleCommunicationError();
-                }
-            });
-            threads[i].start();
+            locations.add(new ArrayList<>());
+            people.add(new ArrayList<>());
         }
-        waitForThreads(threads);
+        for(Location location : releasedLocations){
+            int target = table.route(location.getPosition());
+            if(target >= 0)
+                locations.get(target).add(location);
+            else
+                log.severe("Released location " + location.getPosition() + " is out of all simulators areas.");
+        }
+        //people released by different simulators are adopted in the same order regardless of timing
+        releasedPeople.sort(Comparator.comparingInt(wp -> wp.getPerson().getPersonalNumber()));
+        for(WaitingPerson wp : releasedPeople){
+            int target = table.route(wp.getTargetPosition());
+            if(target >= 0)
+                people.get(target).add(wp);
+            else
+                log.severe("Released person " + wp.getPerson().getPersonalNumber() + " is out of all simulators areas.");
+        }
+        log.info("Moved " + releasedLocations.size() + " locations and " + releasedPeople.size() + " people between simulators.");
+        releasedLocations.clear();
+        releasedPeople.clear();
+        runPhase("adopt", (sim, i) -> {
+            try {
+                for(Location location : locations.get(i)){
+                    sim.sendLocation(location);
+                }
+            } catch (SimulatorConnectionException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+            return sim.sendAdoptCommand(people.get(i));
+        });
+        if(error) return;
+        int[] expected = new int[simulators.length];
+        List<List<PeerAddress>> connectTo = SimulatorConnection.peerLinks(simulators, expected);
+        runPhase("linkPeers", (sim, i) -> sim.sendPeers(expected[i], connectTo.get(i)));
+    }
+
+    /** Adds a location released by a resized simulator.
+     * @param location released location. */
+    public synchronized void addReleasedLocation(Location location){
+        releasedLocations.add(location);
+    }
+
+    /** Adds people released by a resized simulator.
+     * @param people released people with positions they stand on. */
+    public synchronized void addReleasedPeople(List<WaitingPerson> people){
+        releasedPeople.addAll(people);
+    }
+
+    /** Makes all simulators respond to requests of people waiting to move to them. */
+    private void simsResolveWaitingPeople(){
+        runPhase("resolveWaitingPeople", (sim, i) -> sim.resolveWaitingPeople());
     }
 
     /**
@@ -208,40 +320,51 @@ public class Master implements Flow.Publisher{
      * @param parameters new contagion parameters to use from now on.
      */
     public void simsUpdateContagionParameters(ContagionParameters parameters){
-        Thread[] threads = new Thread[simulators.length];
-        for(int i = 0; i < simulators.length; i++){
-            int finalI = i;
-            threads[i] = new Thread(() -> {
-                try {
-                    simulators[finalI].sendContagionParameters(parameters);
-                } catch (SimulatorConnectionException e) {
-                    handleCommunicationError();
-                }
-            });
-            threads[i].start();
-        }
-        waitForThreads(threads);
+        runPhase("contagionParameters", (sim, i) -> sim.sendContagionParameters(parameters));
     }
 
-    /** Requests extract of requested area from simulators and stores it in lastExtracct
+    /** Requests extract of requested area from simulators and stores it in lastExtracct.
+     * If the area didn't change, simulators send only locations that changed since the last extract,
+     * they are merged into a copy of the last extract.
      * @param topLeft topLeft corner of requested area.
      * @param size size of requested area.*/
     private void simsGetExtract(Position topLeft, Position size){
-        Extract extract = new Extract(topLeft, size);
-        Thread[] threads = new Thread[simulators.length];
-        for(int i = 0; i < simulators.length; i++){
-            int finalI = i;
-            threads[i] = new Thread(() -> {
-                try {
-                    simulators[finalI].sendSendExtractCommand(topLeft, size, extract);
-                } catch (SimulatorConnectionException e) {
-                    handleCommunicationError();
-                }
-            });
-            threads[i].start();
-        }
-        waitForThreads(threads);
+        boolean delta = isExtractDelta(topLeft, size);
+        Extract extract = delta ? new Extract(topLeft, size, lastExtract) : new Extract(topLeft, size);
+        runPhase("extract", (sim, i) -> sim.sendSendExtractCommand(topLeft, size, extract, delta));
         lastExtract = extract;
+        areasChanged = false;
+    }
+
+    /** Returns true if the extract of the area can be obtained as changes since the last extract.
+     * @param topLeft topLeft corner of requested area.
+     * @param size size of requested area.
+     * @return true if the last extract covers the same area and areas of the simulators didn't change since, false otherwise. */
+    private boolean isExtractDelta(Position topLeft, Position size){
+        Extract previous = lastExtract;
+        return !areasChanged && previous != null && previous.getTopLeft().equals(topLeft) && previous.getSize().equals(size);
+    }
+
+    /**
+     * Starts the phase on all simulators and waits until all of them finish it.
+     * @param name name of the phase, its latencies are recorded under it.
+     * @param phase task starting the phase on a simulator and returning future completed when the simulator finishes it.
+     */
+    private void runPhase(String name, PhaseExecutor.AsyncTask phase){
+        try {
+            phases.run(name, phase);
+        } catch (SimulatorConnectionException e) {
+            handleCommunicationError();
+        }
+    }
+
+    /**
+     * Returns latencies of the simulators in the last run of the phase.
+     * @param phase name of the phase.
+     * @return long[] - latencies in nanoseconds by simulator index, or null if the phase didn't run yet.
+     */
+    public long[] getPhaseLatencies(String phase){
+        return phases.getLatencies(phase);
     }
 
     /**
@@ -258,11 +381,10 @@ public class Master implements Flow.Publisher{
      * @param targetPosition position that the person should land on.
      * @param origin Simulator to send the confirmation to. */
     public void forwardPerson(Person person, Position targetPosition, SimulatorConnection origin){
-        for(SimulatorConnection sc : simulators){
-            if(sc.containsPosition(targetPosition)){
-                sc.addToWaitingPeople(new WaitingPerson(person, targetPosition, origin));
-                return;
-            }
+        int target = routingTable.route(targetPosition);
+        if(target >= 0){
+            simulators[target].addToWaitingPeople(new WaitingPerson(person, targetPosition, origin));
+            return;
         }
         //if no simulator contains target position
         origin.addToWaitingConfirmations(new WaitingPersonConfirmation(person.getPersonalNumber(), false));
@@ -284,18 +406,7 @@ public class Master implements Flow.Publisher{
         for( SimulatorConnection sim : simulators){
             sim.sendExitSim();
         }
-    }
-
-    /** Joins all thread in passed array. */
-    private void waitForThreads(Thread[] threads){
-        try{
-            for(Thread t: threads){
-                t.join();
-            }
-        }catch (InterruptedException e){
-            log.severe("Threads interrupted.");
-        }
-
+        statsHistory.close();
     }
 
     /** Sends round ended notification to all subscribers. */
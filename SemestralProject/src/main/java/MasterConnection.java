@@ -1,8 +1,7 @@
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
 import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Logger;
 
 /**
@@ -11,8 +10,16 @@ import java.util.logging.Logger;
 public class MasterConnection {
     private Logger log = Logger.getLogger(MasterConnection.class.getName());
     private Socket socket;
-    private BufferedReader reader;
-    private OutputStreamWriter writer;
+    /** Channel to exchange messages with the master, moved to shared memory if the master offers it. */
+    private WireChannel channel;
+    /** False if the simulator refuses binary protocol and communicates in text protocol. */
+    private final boolean allowBinary;
+    /** Connections to peer simulators, opened on SetUp, null if peer connections can't be accepted. */
+    private PeerNetwork peers;
+    /** Last extract sent to the master, next extracts of the same area are sent as deltas. */
+    private final ExtractTracker extractTracker;
+    /** Shared memory used instead of the socket, null if the socket is used. */
+    private SharedMemoryLink sharedMemory;
 
     /**
      * Master connection constructor. Extracts input and output streams from the socket and stores them for later use.
@@ -20,67 +27,244 @@ public class MasterConnection {
      * @throws IOException If there is an error opening the input/output streams.
      */
     public MasterConnection(Socket socket) throws IOException {
+        this(socket, true);
+    }
+
+    /**
+     * Master connection constructor. Extracts input and output streams from the socket and stores them for later use.
+     * @param socket Socket connected to the Master.
+     * @param allowBinary false to communicate in text protocol even if master asks for binary protocol.
+     * @throws IOException If there is an error opening the input/output streams.
+     */
+    public MasterConnection(Socket socket, boolean allowBinary) throws IOException {
         this.socket = socket;
-        reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-        writer = new OutputStreamWriter(socket.getOutputStream());
+        this.allowBinary = allowBinary;
+        channel = new WireChannel(socket.getInputStream(), socket.getOutputStream());
+        extractTracker = new ExtractTracker();
     }
 
-    /** Sends person in predefined string format.
-     * @param person person to send.
-     * @param targetPosition position that the person should land on.*/
-    public void sendPerson(Person person, Position targetPosition){
-        sendString(person.toString(targetPosition) + "\n");
+    /** Sends people to the master in batches. The people are buffered, they're sent with the PeopleMoved confirmation.
+     * @param people people to send with positions they should land on. */
+    public void sendPeople(List<WaitingPerson> people){
+        try {
+            for(List<WaitingPerson> batch : WireChannel.batches(people)){
+                channel.sendPersonBatch(batch);
+            }
+        } catch (IOException e) {
+            log.severe("Connection error. Unable to send data to master.");
+        }
+    }
+
+    /** Adds the batch of people to the simulator and sends back confirmations of all of them in one message.
+     * @param simulator simulator to add the people to.
+     * @param people received people with positions they should land on. */
+    private void acceptPeople(Simulator simulator, List<WaitingPerson> people){
+        List<WaitingPersonConfirmation> confirmations = new ArrayList<>(people.size());
+        for(WaitingPerson wp : people){
+            boolean accepted = simulator.addPerson(wp.getPerson(), wp.getTargetPosition());
+            confirmations.add(new WaitingPersonConfirmation(wp.getPerson().getPersonalNumber(), accepted));
+        }
+        try {
+            channel.sendPersonConfirmations(confirmations);
+            channel.flush();
+        } catch (IOException e) {
+            log.severe("Connection error. Unable to send data to master.");
+        }
     }
 
     /** Sends confirmation of accepting person by location in this simulators area
      * @param personalNumber personal number of referenced person.
      * @param confirmation true if person was accepted, false if person was rejected. */
     public void sendPersonConfirmation(int personalNumber, boolean confirmation){
-        String confirmationStr = String.format("PersonConfirmation:%d:%b\n", personalNumber, confirmation);
-        sendString(confirmationStr);
+        try {
+            channel.sendPersonConfirmation(personalNumber, confirmation);
+            channel.flush();
+        } catch (IOException e) {
+            log.severe("Connection error. Unable to send data to master.");
+        }
     }
 
-    /** Sends information about Locations in the area.
-     * @param area Array of Location in the requested area. */
-    public void sendExtract(Location[] area){
-        StringBuilder extractStr = new StringBuilder("Extract");
-        if(area != null){
-            for(Location l : area){
-                Stats locStats = l.getStats();
-                extractStr.append(String.format(":%s;%s;%s", l.getPosition().toString(), l.getTypeSting(), locStats.toString()));
-            }
+    /** Sends information about Locations in the area tagged with current hour. If the master holds the last sent extract
+     * of the same area, only locations that changed since then are sent.
+     * @param simulator simulator to get the locations from.
+     * @param topLeft top-left corner of the requested area.
+     * @param size size of the requested area.
+     * @param baseVersion version of the extract the master holds, ExtractTracker.NO_VERSION for full extract. */
+    public void sendExtract(Simulator simulator, Position topLeft, Position size, int baseVersion){
+        Location[] area = simulator.getArea(topLeft, size);
+        boolean delta = extractTracker.start(topLeft, size, baseVersion, simulator.getHour());
+        Location[] changed = extractTracker.changed(area);
+        long[] removed = extractTracker.removed();
+        try {
+            channel.sendExtractDelta(extractTracker.getVersion(), !delta, changed, removed);
+            channel.flush();
+        } catch (IOException e) {
+            log.severe("Connection error. Unable to send data to master.");
+        }
+    }
+
+    /** Sends stats of the simulator together with information about Locations in the area as a result of the round.
+     * The extract is versioned the same way as in sendExtract.
+     * @param simulator simulator to get the stats and the locations from.
+     * @param topLeft top-left corner of the requested area.
+     * @param size size of the requested area.
+     * @param baseVersion version of the extract the master holds, ExtractTracker.NO_VERSION for full extract. */
+    public void sendRoundDone(Simulator simulator, Position topLeft, Position size, int baseVersion){
+        Stats stats = simulator.getStats();
+        Location[] area = simulator.getArea(topLeft, size);
+        boolean delta = extractTracker.start(topLeft, size, baseVersion, simulator.getHour());
+        Location[] changed = extractTracker.changed(area);
+        long[] removed = extractTracker.removed();
+        try {
+            channel.sendRoundDone(stats, extractTracker.getVersion(), !delta, changed, removed);
+            channel.flush();
+        } catch (IOException e) {
+            log.severe("Connection error. Unable to send data to master.");
         }
-        extractStr.append("\n");
-        sendString(extractStr.toString());
     }
 
     /** Sends general statistical information to the simulator.
      * @param stats stats to send. */
     public void sendStats(Stats stats){
-        sendString("Stats:" + stats.toString() + "\n");
+        try {
+            channel.sendStats(stats);
+            channel.flush();
+        } catch (IOException e) {
+            log.severe("Connection error. Unable to send data to master.");
+        }
     }
 
     /** Sends a confirmation to the master that this simulator has ended moving people. */
     public void sendPeopleMovedConfirmation(){
-        sendString("PeopleMoved\n");
+        sendConfirmation(WireMessage.PeopleMoved);
     }
 
     /** Sends a confirmation to the master that this simulator has ended calculating peoples health. */
     public void sendHealthCalculatedConfirmation(){
-        sendString("HealthCalculated\n");
+        sendConfirmation(WireMessage.HealthCalculated);
     }
 
-    /** Sends a confirmation to the master that sim is set up */
-    private void sendSimIsSetConfirmation(){sendString("SimIsSet\n");}
+    /** Sends a confirmation to the master that sim is set up, with port for peer connections.
+     * Opens the peer network on first call. */
+    private void sendSimIsSetConfirmation(){
+        if(peers == null){
+            try {
+                peers = new PeerNetwork(allowBinary);
+            } catch (IOException e) {
+                log.severe("Unable to accept peer connections, people will be sent through master.");
+            }
+        }
+        try {
+            channel.sendSimIsSet(peers == null ? 0 : peers.getPort());
+            channel.flush();
+        } catch (IOException e) {
+            log.severe("Connection error. Unable to send data to master.");
+        }
+    }
+
+    /** Opens connections to peers from received Peers command and sends confirmation to the master.
+     * If linking fails, the simulator sends all people through master.
+     * @param simulator simulator to exchange people with the peers. */
+    private void linkPeers(Simulator simulator){
+        int expected = channel.readInt();
+        try {
+            PeerAddress[] connectTo = channel.readPeerAddresses();
+            if(peers == null)
+                throw new IOException("Peer network not open.");
+            peers.link(connectTo, expected, simulator.getTopLeft(), simulator.getSize());
+            simulator.setPeers(peers);
+            log.info("Linked " + peers.getPeerCount() + " peers.");
+        } catch (IOException e) {
+            log.severe("Unable to link peers, people will be sent through master.");
+            simulator.setPeers(null);
+        }
+        sendConfirmation(WireMessage.PeersLinked);
+    }
+
+    /** Changes area of the simulator, sends locations and people outside the new area to the master followed by confirmation.
+     * @param simulator simulator to resize.
+     * @param topLeft new top-left corner of the simulators area.
+     * @param size new size of the simulators area. */
+    private void resize(Simulator simulator, Position topLeft, Position size){
+        List<Location> locations = new ArrayList<>();
+        List<WaitingPerson> people = new ArrayList<>();
+        simulator.resize(topLeft, size, locations, people);
+        try {
+            for(Location location : locations){
+                channel.sendLocation(location);
+            }
+            for(List<WaitingPerson> batch : WireChannel.batches(people)){
+                channel.sendPersonBatch(batch);
+            }
+            channel.sendCommand(WireMessage.Resized);
+            channel.flush();
+        } catch (IOException e) {
+            log.severe("Connection error. Unable to send data to master.");
+        }
+    }
+
+    /** Closes connections to peers. */
+    private void closePeers(){
+        if(peers != null)
+            peers.shutdown();
+        if(sharedMemory != null)
+            sharedMemory.close();
+    }
+
+    /**
+     * Opens shared memory offered by the master and answers whether it was opened.
+     * If so, all further messages are exchanged through the shared memory and the socket is only kept open
+     * so that the shared memory is closed once the master closes the socket.
+     */
+    private void acceptSharedMemory(){
+        int capacity = channel.readInt();
+        String path = channel.readSharedMemoryPath();
+        SharedMemoryLink link;
+        try {
+            link = SharedMemoryLink.open(path, capacity);
+        } catch (IOException e) {
+            log.info("Unable to open shared memory offered by master, staying on socket.");
+            link = null;
+        }
+        try {
+            channel.sendSharedMemoryAnswer(link != null);
+            channel.flush();
+            if(link == null)
+                return;
+            link.closeWith(socket.getInputStream());
+        } catch (IOException e) {
+            log.severe("Connection error. Unable to send data to master.");
+            if(link != null)
+                link.close();
+            return;
+        }
+        sharedMemory = link;
+        channel = channel.moveTo(link.getToSimulator().inputStream(), link.getToMaster().outputStream());
+    }
+
+    /** Measures capacity of the simulator and sends it to the master.
+     * The self-benchmark is run only if system property SimulatorCapacity.BENCHMARK_PROPERTY is true.
+     * @param simulator simulator to measure. */
+    private void sendCapacity(Simulator simulator){
+        SimulatorCapacity capacity = SimulatorCapacity.measure(simulator.getThreadCount(),
+                Boolean.getBoolean(SimulatorCapacity.BENCHMARK_PROPERTY));
+        log.info("Reporting capacity " + capacity + ".");
+        try {
+            channel.sendCapacity(capacity);
+            channel.flush();
+        } catch (IOException e) {
+            log.severe("Connection error. Unable to send data to master.");
+        }
+    }
 
     /**
-     * Sends a string to the Master
-     * @param  string to send
+     * Sends a message without content to the Master and flushes the buffered messages.
+     * @param confirmation type of the message.
      */
-    private void sendString(String string){
+    private void sendConfirmation(WireMessage confirmation){
         try {
-            writer.write(string);
-            writer.flush();
+            channel.sendCommand(confirmation);
+            channel.flush();
         } catch (IOException e) {
             log.severe("Connection error. Unable to send data to master.");
         }
@@ -91,81 +275,107 @@ public class MasterConnection {
      * @return true until receiving ExitSim command or until losing connection to the master, then return false.
      */
     public boolean listen(Simulator simulator){
-        //read line from input stream
-        String received = listenLine();
-        if(received == null) return false;
-        String[] receivedSplit = received.split(":", -1);
-
-        //extract command type and execute it
-        switch (receivedSplit[0]) {
-            case "Person" -> {
-                Person person = Person.parsePerson(received);
-                Position targetPostion = Position.parsePosition(receivedSplit[2]);
-                sendPersonConfirmation(person.getPersonalNumber(), simulator.addPerson(person, targetPostion));
-            }
-            case "PersonConfirmation" -> {
-                int personalNumber = Integer.parseInt(receivedSplit[1]);
-                boolean confirmation = Boolean.parseBoolean(receivedSplit[2]);
-                simulator.confirmPerson(personalNumber, confirmation);
-            }
-            case "Location" -> {
-                Location loc = Location.parseLocation(received);
+        //receive message
+        WireMessage received;
+        try {
+            received = channel.receive();
+        } catch (IOException e) {
+            log.severe("Cannot receive data from master.");
+            closePeers();
+            return false;
+        }
+        if(received == null) return true;
+
+        //execute command according to the message type
+        switch (received) {
+            case Protocol -> {
+                try {
+                    channel.answerProtocol(allowBinary);
+                } catch (IOException e) {
+                    log.severe("Connection error. Unable to send data to master.");
+                }
+            }
+            case Person -> {
+                WaitingPerson wp = channel.readPerson(null);
+                sendPersonConfirmation(wp.getPerson().getPersonalNumber(), simulator.addPerson(wp.getPerson(), wp.getTargetPosition()));
+            }
+            case PersonBatch -> acceptPeople(simulator, channel.readPersonBatch(null));
+            case TimetablePattern -> channel.readTimetablePattern();
+            case PersonConfirmation -> {
+                WaitingPersonConfirmation wc = channel.readPersonConfirmation();
+                simulator.confirmPerson(wc.getPersonalNumber(), wc.getConfirmation());
+            }
+            case PersonConfirmations -> {
+                for(WaitingPersonConfirmation wc : channel.readPersonConfirmations()){
+                    simulator.confirmPerson(wc.getPersonalNumber(), wc.getConfirmation());
+                }
+            }
+            case Location -> {
+                Location loc = channel.readLocation();
                 if (loc != null)
                     simulator.addLocation(loc);
             }
-            case "MovePeople" -> {
-                simulator.movePeople(this);
+            case MovePeople -> {
+                sendPeople(simulator.movePeople());
                 sendPeopleMovedConfirmation();
             }
-            case "CalculateHealth" -> {
+            case CalculateHealth -> {
                 simulator.calculateHealth();
                 sendHealthCalculatedConfirmation();
             }
-            case "SendExtract" -> {
-                Position topLeft = Position.parsePosition(receivedSplit[1]);
-                Position size = Position.parsePosition(receivedSplit[2]);
-                Location[] area = simulator.getArea(topLeft, size);
-                sendExtract(area);
+            case SendExtract -> {
+                Position topLeft = channel.readPosition();
+                Position size = channel.readPosition();
+                int baseVersion = channel.hasMore() ? channel.readInt() : ExtractTracker.NO_VERSION;
+                sendExtract(simulator, topLeft, size, baseVersion);
             }
-            case "SendStats" -> {
+            case Round -> {
+                Position topLeft = channel.readPosition();
+                Position size = channel.readPosition();
+                int baseVersion = channel.readInt();
+                simulator.calculateHealth();
+                sendRoundDone(simulator, topLeft, size, baseVersion);
+            }
+            case SendStats -> {
                 Stats stats = simulator.getStats();
                 sendStats(stats);
             }
-            case "ContagionParameters" -> {
-                ContagionParameters parameters = ContagionParameters.parseContagionParameters(received);
+            case ContagionParameters -> {
+                ContagionParameters parameters = channel.readContagionParameters();
                 simulator.setContagionParameters(parameters);
-                sendString("ContagionParametersSet\n");
+                sendConfirmation(WireMessage.ContagionParametersSet);
             }
-            case "SetUp" -> {
-                Position topLeft = Position.parsePosition(receivedSplit[1]);
-                Position size = Position.parsePosition(receivedSplit[2]);
-                simulator.setSimulator(topLeft, size);
+            case SetUp -> {
+                Position topLeft = channel.readPosition();
+                Position size = channel.readPosition();
+                long seed = channel.hasMore() ? channel.readLong() : 0;
+                simulator.setSimulator(topLeft, size, seed);
                 sendSimIsSetConfirmation();
             }
-            case "Ping" -> {
-                sendString("Ping\n");
+            case Ping -> {
+                sendConfirmation(WireMessage.Ping);
+            }
+            case Peers -> linkPeers(simulator);
+            case SharedMemory -> acceptSharedMemory();
+            case Capacity -> sendCapacity(simulator);
+            case Resize -> {
+                Position topLeft = channel.readPosition();
+                Position size = channel.readPosition();
+                resize(simulator, topLeft, size);
             }
-            case "ExitSim" -> {
+            case Adopt -> {
+                simulator.adoptPeople(channel.readPersonBatch(null));
+                sendConfirmation(WireMessage.Adopted);
+            }
+            case ExitSim -> {
                 log.info("Received ExitSim command, exiting simulator.");
+                closePeers();
                 return false;
             }
             default -> {
-                log.severe("Received unexpected string from master\nMessage: " + received);
+                log.severe("Received unexpected message from master\nMessage: " + received);
             }
         }
         return true;
     }
-
-    /** Reads a line from input stream.
-     * @return String - line received from master, or null in case of error. */
-    private String listenLine(){
-        try {
-            return reader.readLine();
-        } catch (IOException e) {
-            log.severe("Cannot receive data from master.");
-        }
-        return null;
-    }
-
-
 }
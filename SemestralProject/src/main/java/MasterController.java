@@ -14,8 +14,6 @@ public class MasterController implements Subscriber{
     private final StatsDrawer statsDrawer;
     private final ExtractDrawer extractDrawer;
 
-    /** Current simulation round. */
-    private int roundNumber;
     /** Flag indicating that there are no infected people left and user has already been notified*/
     private boolean simulationComplete;
     /** System time when last round simulation begun. */
@@ -66,7 +64,7 @@ public class MasterController implements Subscriber{
         master.simsGetStats();
         Stats stats = master.getStatsHistory().getLast();
         simulationDialog.updateStatsLabels(stats);
-        statsDrawer.drawStats(stats, roundNumber++);
+        statsDrawer.drawStats(master.getStatsHistory());
     }
 
     /**
@@ -169,7 +167,7 @@ public class MasterController implements Subscriber{
      */
     public void updateComponents(Stats stats){
         simulationDialog.updateStatsLabels(stats);
-        statsDrawer.drawStats(stats, roundNumber++);
+        statsDrawer.drawStats(master.getStatsHistory());
         extractDrawer.setExtract(master.getLastExtract());
         extractDrawer.repaint();
     }
@@ -0,0 +1,125 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Output stream collecting bytes to be written to a non-blocking channel by an event loop.
+ * <p>Writing never blocks, the buffer grows instead. Flushing notifies the event loop, that then drains the buffer
+ * to the channel as the channel accepts the bytes.</p>
+ */
+public class OutboundBuffer extends OutputStream {
+    /** Initial capacity of the buffer in bytes. */
+    private static final int INITIAL_CAPACITY = 1 << 16;
+
+    /** Bytes waiting to be written, in write mode. */
+    private ByteBuffer buffer;
+    /** Action notifying the event loop there are bytes to write. */
+    private final Runnable flushListener;
+    /** True after the channel was closed, writing then fails. */
+    private boolean closed;
+
+    /** Outbound buffer constructor.
+     * @param flushListener action notifying the event loop there are bytes to write. */
+    public OutboundBuffer(Runnable flushListener){
+        buffer = ByteBuffer.allocate(INITIAL_CAPACITY);
+        this.flushListener = flushListener;
+        closed = false;
+    }
+
+    @Override
+    public synchronized void write(int b) throws IOException {
+        ensureRemaining(1);
+        buffer.put((byte) b);
+    }
+
+    @Override
+    public synchronized void write(byte[] bytes, int offset, int length) throws IOException {
+        ensureRemaining(length);
+        buffer.put(bytes, offset, length);
+    }
+
+    /** Notifies the event loop there are bytes to write.
+     * @throws IOException if the channel was closed. */
+    @Override
+    public void flush() throws IOException {
+        synchronized (this){
+            if(closed)
+                throw new IOException("Channel closed.");
+        }
+        flushListener.run();
+    }
+
+    /** Marks the buffer closed, so further writing fails, and wakes up threads waiting for the buffer to drain. */
+    @Override
+    public synchronized void close(){
+        closed = true;
+        notifyAll();
+    }
+
+    /**
+     * Writes as many buffered bytes to the channel as it accepts. Called by the event loop.
+     * @param channel non-blocking channel to write to.
+     * @return true if all buffered bytes were written, false if some are left.
+     * @throws IOException in case of error writing to the channel.
+     */
+    public synchronized boolean drainTo(WritableByteChannel channel) throws IOException {
+        buffer.flip();
+        try {
+            channel.write(buffer);
+        } finally {
+            buffer.compact();
+        }
+        if(buffer.position() == 0){
+            notifyAll();
+            return true;
+        }
+        return false;
+    }
+
+    /** Returns number of bytes waiting to be written.
+     * @return int - number of buffered bytes. */
+    public synchronized int pending(){
+        return buffer.position();
+    }
+
+    /**
+     * Waits until all buffered bytes are written or the buffer is closed.
+     * @param millis maximal time to wait in milliseconds.
+     * @return true if the buffer is empty, false if the time ran out.
+     */
+    public synchronized boolean awaitDrained(long millis){
+        long deadline = System.currentTimeMillis() + millis;
+        try {
+            while(buffer.position() > 0 && !closed){
+                long left = deadline - System.currentTimeMillis();
+                if(left <= 0)
+                    return false;
+                wait(left);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return buffer.position() == 0;
+    }
+
+    /**
+     * Grows the buffer if it can't hold given number of additional bytes.
+     * @param bytes number of bytes to be written.
+     * @throws IOException if the channel was closed.
+     */
+    private void ensureRemaining(int bytes) throws IOException {
+        if(closed)
+            throw new IOException("Channel closed.");
+        if(buffer.remaining() >= bytes)
+            return;
+        int capacity = buffer.capacity();
+        while(capacity - buffer.position() < bytes){
+            capacity *= 2;
+        }
+        ByteBuffer bigger = ByteBuffer.allocate(capacity);
+        buffer.flip();
+        bigger.put(buffer);
+        buffer = bigger;
+    }
+}
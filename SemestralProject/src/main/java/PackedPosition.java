@@ -0,0 +1,119 @@
+/**
+ * Static helpers for positions packed into a single primitive long.
+ * <p>The x coordinate is stored in the upper 32 bits, the y coordinate in the lower 32 bits.
+ * Used where storing or allocating Position objects for every person or tile would be too expensive,
+ * none of the helpers allocates.</p>
+ */
+public final class PackedPosition {
+
+    /** Static class, not to be instantiated. */
+    private PackedPosition(){
+    }
+
+    /** Packs the coordinates into a long.
+     * @param x x coordinate
+     * @param y y coordinate
+     * @return long - packed position. */
+    public static long pack(int x, int y){
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    /** Packs the position into a long.
+     * @param position position to pack.
+     * @return long - packed position. */
+    public static long pack(Position position){
+        return pack(position.getX(), position.getY());
+    }
+
+    /** Returns x coordinate of packed position.
+     * @param packed packed position.
+     * @return int x coordinate. */
+    public static int getX(long packed){
+        return (int) (packed >> 32);
+    }
+
+    /** Returns y coordinate of packed position.
+     * @param packed packed position.
+     * @return int y coordinate. */
+    public static int getY(long packed){
+        return (int) packed;
+    }
+
+    /** Sums two packed positions (vector sum).
+     * @param packed packed position.
+     * @param other packed position to add.
+     * @return long - packed vector sum of the two positions. */
+    public static long add(long packed, long other){
+        return pack(getX(packed) + getX(other), getY(packed) + getY(other));
+    }
+
+    /** Subtracts other packed position from packed position (vector subtraction).
+     * @param packed packed position.
+     * @param other packed position to subtract.
+     * @return long - packed vector difference of the two positions. */
+    public static long subtract(long packed, long other){
+        return pack(getX(packed) - getX(other), getY(packed) - getY(other));
+    }
+
+    /** Calculates if the coordinates are inside the given area.
+     * @param x x coordinate.
+     * @param y y coordinate.
+     * @param topLeft top-left corner of the area.
+     * @param size size of the area.
+     * @return true if position is inside area, false otherwise.*/
+    public static boolean isInArea(int x, int y, Position topLeft, Position size){
+        int relativeX = x - topLeft.getX();
+        int relativeY = y - topLeft.getY();
+        return relativeX >= 0 && relativeY >= 0 && relativeX < size.getX() && relativeY < size.getY();
+    }
+
+    /** Calculates if the packed position is inside the given area.
+     * @param packed packed position.
+     * @param topLeft packed top-left corner of the area.
+     * @param size packed size of the area.
+     * @return true if position is inside area, false otherwise.*/
+    public static boolean isInArea(long packed, long topLeft, long size){
+        long relativeX = (long) getX(packed) - getX(topLeft);
+        long relativeY = (long) getY(packed) - getY(topLeft);
+        return relativeX >= 0 && relativeY >= 0 && relativeX < getX(size) && relativeY < getY(size);
+    }
+
+    /** Calculates index of the packed position in row-major (x-major) array covering the given area.
+     * @param packed packed position.
+     * @param topLeft packed top-left corner of the area.
+     * @param size packed size of the area.
+     * @return int - index of the position in the area, -1 if the position is outside the area. */
+    public static int index(long packed, long topLeft, long size){
+        if(!isInArea(packed, topLeft, size))
+            return -1;
+        return (getX(packed) - getX(topLeft)) * getY(size) + getY(packed) - getY(topLeft);
+    }
+
+    /** Parses packed position from formatted string (same format as Position.parsePosition).
+     * @param positionString formatted string representing position - "x,y".
+     * @return long - packed position loaded from the string. */
+    public static long parse(CharSequence positionString){
+        int comma = indexOf(positionString, ',');
+        return pack(Integer.parseInt(positionString, 0, comma, 10),
+                Integer.parseInt(positionString, comma + 1, positionString.length(), 10));
+    }
+
+    /** Finds first occurrence of the character.
+     * @param text text to search.
+     * @param c character to look for.
+     * @return int - index of the character or length of the text if there is none. */
+    private static int indexOf(CharSequence text, char c){
+        for(int i = 0; i < text.length(); i++){
+            if(text.charAt(i) == c)
+                return i;
+        }
+        return text.length();
+    }
+
+    /** Creates Position object from packed position.
+     * @param packed packed position.
+     * @return Position with the packed coordinates. */
+    public static Position toPosition(long packed){
+        return new Position(getX(packed), getY(packed));
+    }
+}
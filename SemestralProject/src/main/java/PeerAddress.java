@@ -0,0 +1,127 @@
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Class encapsulating information needed to open a peer connection to another simulator -
+ * address the simulator listens for peers on and the simulators area.
+ */
+public class PeerAddress {
+    /** Address of the simulators host. */
+    private final InetAddress host;
+    /** Port the simulator listens for peer connections on. */
+    private final int port;
+    /** Top-left corner of the simulators area. */
+    private final Position topLeft;
+    /** Size of the simulators area. */
+    private final Position size;
+
+    /**
+     * Peer address constructor.
+     * @param host address of the simulators host.
+     * @param port port the simulator listens for peer connections on.
+     * @param topLeft top-left corner of the simulators area.
+     * @param size size of the simulators area.
+     */
+    public PeerAddress(InetAddress host, int port, Position topLeft, Position size){
+        this.host = host;
+        this.port = port;
+        this.topLeft = topLeft;
+        this.size = size;
+    }
+
+    /** Host getter.
+     * @return address of the simulators host. */
+    public InetAddress getHost(){
+        return host;
+    }
+
+    /** Port getter.
+     * @return port the simulator listens for peer connections on. */
+    public int getPort(){
+        return port;
+    }
+
+    /** Top-left corner getter.
+     * @return top-left corner of the simulators area. */
+    public Position getTopLeft(){
+        return topLeft;
+    }
+
+    /** Size getter.
+     * @return size of the simulators area. */
+    public Position getSize(){
+        return size;
+    }
+
+    /**
+     * Returns true if the areas are adjacent - they touch by a side or a corner (or overlap).
+     * @param topLeft top-left corner of the other area.
+     * @param size size of the other area.
+     * @return true if the areas are adjacent, false otherwise.
+     */
+    public boolean isAdjacent(Position topLeft, Position size){
+        return areAdjacent(this.topLeft, this.size, topLeft, size);
+    }
+
+    /**
+     * Returns true if the areas are adjacent - they touch by a side or a corner (or overlap).
+     * @param topLeftA top-left corner of the first area.
+     * @param sizeA size of the first area.
+     * @param topLeftB top-left corner of the second area.
+     * @param sizeB size of the second area.
+     * @return true if the areas are adjacent, false otherwise.
+     */
+    public static boolean areAdjacent(Position topLeftA, Position sizeA, Position topLeftB, Position sizeB){
+        return topLeftA.getX() <= topLeftB.getX() + sizeB.getX() && topLeftB.getX() <= topLeftA.getX() + sizeA.getX()
+                && topLeftA.getY() <= topLeftB.getY() + sizeB.getY() && topLeftB.getY() <= topLeftA.getY() + sizeA.getY();
+    }
+
+    /**
+     * Writes the peer address to binary frame payload.
+     * @param buffer buffer to write to.
+     */
+    public void writeTo(WireBuffer buffer){
+        byte[] address = host.getAddress();
+        buffer.putByte(address.length);
+        buffer.putBytes(address);
+        buffer.putInt(port);
+        buffer.putLong(PackedPosition.pack(topLeft));
+        buffer.putLong(PackedPosition.pack(size));
+    }
+
+    /**
+     * Reads peer address from binary frame payload.
+     * @param buffer buffer to read from.
+     * @return PeerAddress read from the buffer.
+     * @throws UnknownHostException if the address has illegal length.
+     */
+    public static PeerAddress readFrom(WireBuffer buffer) throws UnknownHostException {
+        byte[] address = new byte[buffer.getByte()];
+        buffer.getBytes(address);
+        int port = buffer.getInt();
+        Position topLeft = PackedPosition.toPosition(buffer.getLong());
+        Position size = PackedPosition.toPosition(buffer.getLong());
+        return new PeerAddress(InetAddress.getByAddress(address), port, topLeft, size);
+    }
+
+    /**
+     * Parses peer address from a segment of text message.
+     * @param peerString peer address in format of toString.
+     * @return PeerAddress parsed from the string.
+     * @throws UnknownHostException if the host can't be parsed.
+     */
+    public static PeerAddress parsePeerAddress(String peerString) throws UnknownHostException {
+        String[] parts = peerString.split(";");
+        InetAddress host = InetAddress.getByName(parts[0].replace('-', ':'));
+        return new PeerAddress(host, Integer.parseInt(parts[1]), Position.parsePosition(parts[2]), Position.parsePosition(parts[3]));
+    }
+
+    /**
+     * Text protocol format of the peer address, ':' in IPv6 host address is replaced by '-'.
+     * @return String "host;port;top_left_x,top_left_y;size_x,size_y"
+     */
+    @Override
+    public String toString(){
+        return host.getHostAddress().replace(':', '-') + ";" + port + ";" + topLeft.toString() + ";" + size.toString();
+    }
+}
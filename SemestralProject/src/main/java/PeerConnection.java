@@ -0,0 +1,262 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Class that simulators use to exchange people moving between their areas directly with a peer simulator.
+ * <p>Received messages are read by a separate thread and held until the simulator asks for them,
+ * so the peers never block each other by sending.</p>
+ */
+public class PeerConnection {
+    private static final Logger log = Logger.getLogger(PeerConnection.class.getName());
+    /** Socket connected to the peer. */
+    private final Socket socket;
+    /** Channel to exchange messages with the peer. */
+    private final WireChannel channel;
+    /** Top-left corner of the peers area. */
+    private final Position topLeft;
+    /** Size of the peers area. */
+    private final Position size;
+    /** People received from the peer and not taken yet. */
+    private final LinkedList<WaitingPerson> receivedPeople;
+    /** Confirmations received from the peer and not taken yet. */
+    private final LinkedList<WaitingPersonConfirmation> receivedConfirmations;
+    /** Number of received PeopleSent messages not taken yet. */
+    private int peopleSent;
+    /** Number of received PeopleConfirmed messages not taken yet. */
+    private int peopleConfirmed;
+    /** True after the connection was closed or lost. */
+    private volatile boolean closed;
+
+    /**
+     * Peer connection constructor.
+     * @param socket socket connected to the peer.
+     * @param channel channel to exchange messages with the peer, with the protocol already negotiated.
+     * @param topLeft top-left corner of the peers area.
+     * @param size size of the peers area.
+     */
+    private PeerConnection(Socket socket, WireChannel channel, Position topLeft, Position size){
+        this.socket = socket;
+        this.channel = channel;
+        this.topLeft = topLeft;
+        this.size = size;
+        receivedPeople = new LinkedList<>();
+        receivedConfirmations = new LinkedList<>();
+        peopleSent = 0;
+        peopleConfirmed = 0;
+        closed = false;
+    }
+
+    /**
+     * Connects to the peer, negotiates the protocol and introduces this simulators area.
+     * @param address address and area of the peer.
+     * @param topLeft top-left corner of this simulators area.
+     * @param size size of this simulators area.
+     * @param allowBinary false to communicate in text protocol.
+     * @return PeerConnection connected to the peer, not listening yet.
+     * @throws IOException in case of communication error.
+     */
+    public static PeerConnection connect(PeerAddress address, Position topLeft, Position size, boolean allowBinary) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(address.getHost(), address.getPort()));
+            socket.setTcpNoDelay(true);
+            WireChannel channel = new WireChannel(socket.getInputStream(), socket.getOutputStream());
+            channel.requestProtocol(allowBinary);
+            channel.sendPeerHello(topLeft, size);
+            channel.flush();
+            return new PeerConnection(socket, channel, address.getTopLeft(), address.getSize());
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Accepts connection of a peer, answers the protocol negotiation and reads the peers area.
+     * @param serverSocket socket to accept the connection on.
+     * @param allowBinary false to refuse binary protocol.
+     * @return PeerConnection connected to the peer, not listening yet.
+     * @throws IOException in case of communication error.
+     */
+    public static PeerConnection accept(ServerSocket serverSocket, boolean allowBinary) throws IOException {
+        Socket socket = serverSocket.accept();
+        try {
+            socket.setTcpNoDelay(true);
+            WireChannel channel = new WireChannel(socket.getInputStream(), socket.getOutputStream());
+            if(channel.receive() != WireMessage.Protocol)
+                throw new IOException("Peer didn't negotiate protocol.");
+            channel.answerProtocol(allowBinary);
+            if(channel.receive() != WireMessage.PeerHello)
+                throw new IOException("Peer didn't introduce it's area.");
+            Position topLeft = channel.readPosition();
+            Position size = channel.readPosition();
+            return new PeerConnection(socket, channel, topLeft, size);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /** Starts the thread receiving messages from the peer. */
+    public void startListening(){
+        Thread listener = new Thread(this::listen, "PeerConnection " + topLeft);
+        listener.setDaemon(true);
+        listener.start();
+    }
+
+    /** Top-left corner getter.
+     * @return top-left corner of the peers area. */
+    public Position getTopLeft(){
+        return topLeft;
+    }
+
+    /** Returns true if the position lies in the peers area and the connection is open.
+     * @param x x coordinate of the position.
+     * @param y y coordinate of the position.
+     * @return true if people moving to the position can be sent to the peer, false otherwise. */
+    public boolean accepts(int x, int y){
+        return !closed && PackedPosition.isInArea(x, y, topLeft, size);
+    }
+
+    /** Sends people to the peer in batches. The people are buffered, they're sent with the PeopleSent message.
+     * @param people people to send with positions they should land on.
+     * @throws IOException in case of communication error. */
+    public void sendPeople(List<WaitingPerson> people) throws IOException {
+        for(List<WaitingPerson> batch : WireChannel.batches(people)){
+            channel.sendPersonBatch(batch);
+        }
+    }
+
+    /** Sends confirmations of people received from the peer in batches.
+     * The confirmations are buffered, they're sent with the PeopleConfirmed message.
+     * @param confirmations confirmations to send.
+     * @throws IOException in case of communication error. */
+    public void sendPersonConfirmations(List<WaitingPersonConfirmation> confirmations) throws IOException {
+        for(List<WaitingPersonConfirmation> batch : WireChannel.batches(confirmations)){
+            channel.sendPersonConfirmations(batch);
+        }
+    }
+
+    /** Sends buffered people followed by message that all people of this move phase were sent.
+     * @throws IOException in case of communication error. */
+    public void sendPeopleSent() throws IOException {
+        channel.sendCommand(WireMessage.PeopleSent);
+        channel.flush();
+    }
+
+    /** Sends buffered confirmations followed by message that all people received in this move phase were confirmed.
+     * @throws IOException in case of communication error. */
+    public void sendPeopleConfirmed() throws IOException {
+        channel.sendCommand(WireMessage.PeopleConfirmed);
+        channel.flush();
+    }
+
+    /**
+     * Waits until the peer sends all people of the move phase and returns them.
+     * @return List of people received in this move phase, in order they were sent.
+     * @throws IOException if the connection is lost or the waiting is interrupted.
+     */
+    public synchronized List<WaitingPerson> awaitPeople() throws IOException {
+        while(peopleSent == 0){
+            awaitMessage();
+        }
+        peopleSent--;
+        List<WaitingPerson> people = new LinkedList<>(receivedPeople);
+        receivedPeople.clear();
+        return people;
+    }
+
+    /**
+     * Waits until the peer confirms all people sent to it in the move phase and returns the confirmations.
+     * @return List of confirmations received in this move phase, in order they were sent.
+     * @throws IOException if the connection is lost or the waiting is interrupted.
+     */
+    public synchronized List<WaitingPersonConfirmation> awaitConfirmations() throws IOException {
+        while(peopleConfirmed == 0){
+            awaitMessage();
+        }
+        peopleConfirmed--;
+        List<WaitingPersonConfirmation> confirmations = new LinkedList<>(receivedConfirmations);
+        receivedConfirmations.clear();
+        return confirmations;
+    }
+
+    /**
+     * Waits until the listening thread receives a message, must be called holding this objects lock.
+     * @throws IOException if the connection is lost or the waiting is interrupted.
+     */
+    private void awaitMessage() throws IOException {
+        if(closed)
+            throw new IOException("Connection to peer " + topLeft + " lost.");
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Waiting for peer " + topLeft + " interrupted.");
+        }
+    }
+
+    /** Function running in listening thread, receives messages until the connection is closed. */
+    private void listen(){
+        try {
+            while(true){
+                WireMessage received = channel.receive();
+                if(received == null) continue;
+                switch (received) {
+                    case PersonBatch -> receivedPeople(channel.readPersonBatch(null));
+                    case PersonConfirmations -> receivedConfirmations(channel.readPersonConfirmations());
+                    case PeopleSent, PeopleConfirmed -> receivedEnd(received);
+                    default -> log.severe("Received unexpected message from peer\nMessage: " + received);
+                }
+            }
+        } catch (EOFException e) {
+            log.fine("Peer " + topLeft + " closed the connection.");
+        } catch (IOException e) {
+            if(!closed)
+                log.severe("Connection to peer " + topLeft + " lost.");
+        }
+        synchronized (this){
+            closed = true;
+            notifyAll();
+        }
+    }
+
+    /** Stores batch of people received from the peer.
+     * @param people received people. */
+    private synchronized void receivedPeople(List<WaitingPerson> people){
+        receivedPeople.addAll(people);
+    }
+
+    /** Stores batch of confirmations received from the peer.
+     * @param confirmations received confirmations. */
+    private synchronized void receivedConfirmations(List<WaitingPersonConfirmation> confirmations){
+        receivedConfirmations.addAll(confirmations);
+    }
+
+    /** Counts received end of the people or confirmations and wakes up the waiting simulator.
+     * @param message PeopleSent or PeopleConfirmed. */
+    private synchronized void receivedEnd(WireMessage message){
+        if(message == WireMessage.PeopleSent)
+            peopleSent++;
+        else
+            peopleConfirmed++;
+        notifyAll();
+    }
+
+    /** Closes the connection, the listening thread then ends. */
+    public void close(){
+        closed = true;
+        try {
+            socket.close();
+        } catch (IOException e) {
+            log.severe("Error closing peer socket.");
+        }
+    }
+}
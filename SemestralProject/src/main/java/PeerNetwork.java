@@ -0,0 +1,176 @@
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Direct connections of a simulator to the simulators with adjacent areas.
+ * <p>People moving to an adjacent area are sent straight to the peer during the move phase,
+ * the peers then confirm them to each other, the master only waits for the phase to end.
+ * People moving to other areas are still sent through the master.</p>
+ * <p>The simulator connects to peers named by the master and accepts connections of the others on it's own port.</p>
+ */
+public class PeerNetwork {
+    private static final Logger log = Logger.getLogger(PeerNetwork.class.getName());
+    /** Maximal time to wait for a peer to connect, in milliseconds. */
+    private static final int ACCEPT_TIMEOUT = 30000;
+    /** Socket accepting connections of the peers. */
+    private final ServerSocket serverSocket;
+    /** False to communicate with the peers in text protocol. */
+    private final boolean allowBinary;
+    /** Connections to the peers, ordered by their areas. */
+    private volatile PeerConnection[] peers;
+
+    /**
+     * Peer network constructor, opens socket for peer connections on a free port.
+     * @param allowBinary false to communicate with the peers in text protocol.
+     * @throws IOException if the socket can't be opened.
+     */
+    public PeerNetwork(boolean allowBinary) throws IOException {
+        this.allowBinary = allowBinary;
+        serverSocket = new ServerSocket(0);
+        serverSocket.setSoTimeout(ACCEPT_TIMEOUT);
+        peers = new PeerConnection[0];
+    }
+
+    /** Returns port the peers connect to.
+     * @return port of the socket accepting peer connections. */
+    public int getPort(){
+        return serverSocket.getLocalPort();
+    }
+
+    /** Returns number of linked peers.
+     * @return number of peer connections. */
+    public int getPeerCount(){
+        return peers.length;
+    }
+
+    /**
+     * Replaces current peer connections by connections to passed peers and the expected number of accepted peers.
+     * If any of the connections fails, no peer is linked and all people are sent through the master.
+     * @param connectTo peers to connect to.
+     * @param expected number of peers that will connect to this simulator.
+     * @param topLeft top-left corner of this simulators area.
+     * @param size size of this simulators area.
+     * @throws IOException in case of communication error with any of the peers.
+     */
+    public void link(PeerAddress[] connectTo, int expected, Position topLeft, Position size) throws IOException {
+        close();
+        List<PeerConnection> linked = new ArrayList<>(connectTo.length + expected);
+        try {
+            //connect first, the peers connected to accept only after connecting to their own peers
+            for(PeerAddress address : connectTo){
+                linked.add(PeerConnection.connect(address, topLeft, size, allowBinary));
+            }
+            for(int i = 0; i < expected; i++){
+                linked.add(PeerConnection.accept(serverSocket, allowBinary));
+            }
+        } catch (IOException e) {
+            for(PeerConnection peer : linked){
+                peer.close();
+            }
+            throw e;
+        }
+        //peers are processed in the same order regardless of the order they connected in
+        linked.sort(Comparator.comparingLong(peer -> PackedPosition.pack(peer.getTopLeft())));
+        for(PeerConnection peer : linked){
+            peer.startListening();
+        }
+        peers = linked.toArray(new PeerConnection[0]);
+    }
+
+    /**
+     * Sends people moving to areas of the peers to them, one batch to each peer.
+     * @param people people leaving this simulators area with their target positions.
+     * @return List of people that must be sent through master, because no peer owns their target position
+     * or the peer connection failed. Order of the people is kept.
+     */
+    public List<WaitingPerson> sendPeople(List<WaitingPerson> people){
+        PeerConnection[] current = peers;
+        List<List<WaitingPerson>> toPeers = new ArrayList<>(current.length);
+        for(int i = 0; i < current.length; i++){
+            toPeers.add(new ArrayList<>());
+        }
+        List<WaitingPerson> rest = new ArrayList<>();
+        for(WaitingPerson wp : people){
+            Position target = wp.getTargetPosition();
+            int i = 0;
+            while(i < current.length && !current[i].accepts(target.getX(), target.getY())){
+                i++;
+            }
+            if(i < current.length)
+                toPeers.get(i).add(wp);
+            else
+                rest.add(wp);
+        }
+        for(int i = 0; i < current.length; i++){
+            try {
+                current[i].sendPeople(toPeers.get(i));
+            } catch (IOException e) {
+                log.severe("Unable to send people to peer " + current[i].getTopLeft() + ", sending them through master.");
+                rest.addAll(toPeers.get(i));
+            }
+        }
+        return rest;
+    }
+
+    /**
+     * Ends the move phase with the peers. Tells them all people were sent, adds people received from them
+     * to the simulator, confirms them and applies confirmations of people sent to the peers.
+     * People sent to a peer whose connection was lost stay where they were.
+     * @param simulator simulator to add and confirm people in, must not be running a phase.
+     */
+    public void exchange(Simulator simulator){
+        PeerConnection[] current = peers;
+        for(PeerConnection peer : current){
+            try {
+                peer.sendPeopleSent();
+            } catch (IOException e) {
+                log.severe("Unable to send people to peer " + peer.getTopLeft() + ".");
+            }
+        }
+        for(PeerConnection peer : current){
+            try {
+                List<WaitingPerson> received = peer.awaitPeople();
+                List<WaitingPersonConfirmation> confirmations = new ArrayList<>(received.size());
+                for(WaitingPerson wp : received){
+                    boolean accepted = simulator.addPerson(wp.getPerson(), wp.getTargetPosition());
+                    confirmations.add(new WaitingPersonConfirmation(wp.getPerson().getPersonalNumber(), accepted));
+                }
+                peer.sendPersonConfirmations(confirmations);
+                peer.sendPeopleConfirmed();
+            } catch (IOException e) {
+                log.severe("Unable to receive people from peer " + peer.getTopLeft() + ".");
+            }
+        }
+        for(PeerConnection peer : current){
+            try {
+                for(WaitingPersonConfirmation wc : peer.awaitConfirmations()){
+                    simulator.confirmPerson(wc.getPersonalNumber(), wc.getConfirmation());
+                }
+            } catch (IOException e) {
+                log.severe("Unable to receive confirmations from peer " + peer.getTopLeft() + ".");
+            }
+        }
+    }
+
+    /** Closes connections to all peers. */
+    public void close(){
+        for(PeerConnection peer : peers){
+            peer.close();
+        }
+        peers = new PeerConnection[0];
+    }
+
+    /** Closes connections to all peers and stops accepting new ones. */
+    public void shutdown(){
+        close();
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            log.severe("Error closing peer server socket.");
+        }
+    }
+}
@@ -0,0 +1,160 @@
+import java.util.Arrays;
+
+/**
+ * People indexed by their personal numbers, people are rows of a PeopleTable.
+ * <p>Rows are kept in a dense array so they can be iterated quickly, a primitive open addressing table maps
+ * personal numbers to slots in the array. Adding, looking up and removing a person take constant time,
+ * removed person's slot is taken by the last person. Not thread-safe.</p>
+ */
+public class PeopleIndex {
+    /** Value of a free entry in the slots table, also returned for people that aren't in the index. */
+    public static final int FREE = -1;
+
+    /** Personal numbers of the people, only first size elements are used. */
+    private int[] personalNumbers;
+    /** Rows of the people, only first size elements are used. */
+    private int[] rows;
+    /** Number of people. */
+    private int size;
+    /** Personal numbers of the table entries. */
+    private int[] keys;
+    /** Slots in the rows array of the table entries, FREE for unused entries. */
+    private int[] slots;
+
+    /** People index constructor, creates an empty index. */
+    public PeopleIndex(){
+        personalNumbers = new int[8];
+        rows = new int[8];
+        size = 0;
+        keys = new int[16];
+        slots = new int[16];
+        Arrays.fill(slots, FREE);
+    }
+
+    /** Adds the person to the index.
+     * @param personalNumber personal number of the person.
+     * @param row row of the person.
+     * @return true if the person was added, false if person with the same personal number already was in the index. */
+    public boolean add(int personalNumber, int row){
+        if(find(personalNumber) >= 0)
+            return false;
+        if(size == rows.length){
+            personalNumbers = Arrays.copyOf(personalNumbers, size * 2);
+            rows = Arrays.copyOf(rows, size * 2);
+        }
+        if((size + 1) * 2 > slots.length)
+            rehash(slots.length * 2);
+        personalNumbers[size] = personalNumber;
+        rows[size] = row;
+        insert(personalNumber, size);
+        size++;
+        return true;
+    }
+
+    /** Returns row of the person with the given personal number.
+     * @param personalNumber personal number to look up.
+     * @return int - row of the person or FREE if there is no such person in the index. */
+    public int get(int personalNumber){
+        int entry = find(personalNumber);
+        return entry < 0 ? FREE : rows[slots[entry]];
+    }
+
+    /** Removes person with the given personal number.
+     * @param personalNumber personal number of the person to remove.
+     * @return int - row of the removed person or FREE if there was no such person in the index. */
+    public int remove(int personalNumber){
+        int entry = find(personalNumber);
+        return entry < 0 ? FREE : removeAt(slots[entry]);
+    }
+
+    /** Removes person at the given slot, the last person is moved to the slot.
+     * @param slot slot of the person to remove, must be lower than size.
+     * @return int - row of the removed person. */
+    public int removeAt(int slot){
+        int removed = personalNumbers[slot];
+        int row = rows[slot];
+        size--;
+        int last = personalNumbers[size];
+        personalNumbers[slot] = last;
+        rows[slot] = rows[size];
+        if(slot != size)
+            slots[find(last)] = slot;
+        delete(find(removed));
+        return row;
+    }
+
+    /** Returns row of the person at the given slot.
+     * @param slot slot of the person, must be lower than size.
+     * @return int - row of the person at the slot. */
+    public int getAt(int slot){
+        return rows[slot];
+    }
+
+    /** Size getter.
+     * @return number of people in the index. */
+    public int size(){
+        return size;
+    }
+
+    /** Computes home entry of the personal number in the table.
+     * @param personalNumber personal number to hash.
+     * @return index of the entry where search for the personal number starts. */
+    private int home(int personalNumber){
+        int h = personalNumber * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (slots.length - 1);
+    }
+
+    /** Finds table entry of the personal number.
+     * @param personalNumber personal number to look up.
+     * @return index of the entry or -1 if the personal number isn't in the table. */
+    private int find(int personalNumber){
+        int mask = slots.length - 1;
+        for(int entry = home(personalNumber); slots[entry] != FREE; entry = (entry + 1) & mask){
+            if(keys[entry] == personalNumber)
+                return entry;
+        }
+        return -1;
+    }
+
+    /** Inserts personal number that isn't in the table yet.
+     * @param personalNumber personal number to insert.
+     * @param slot slot of the person in the rows array. */
+    private void insert(int personalNumber, int slot){
+        int mask = slots.length - 1;
+        int entry = home(personalNumber);
+        while(slots[entry] != FREE){
+            entry = (entry + 1) & mask;
+        }
+        keys[entry] = personalNumber;
+        slots[entry] = slot;
+    }
+
+    /** Frees the table entry, entries further in the probe sequence are shifted back so no lookup breaks.
+     * @param entry index of the entry to free. */
+    private void delete(int entry){
+        int mask = slots.length - 1;
+        int free = entry;
+        for(int next = (free + 1) & mask; slots[next] != FREE; next = (next + 1) & mask){
+            int home = home(keys[next]);
+            //entry can move to the free one only if it's home isn't cyclically between them
+            boolean stays = free <= next ? (home > free && home <= next) : (home > free || home <= next);
+            if(!stays){
+                keys[free] = keys[next];
+                slots[free] = slots[next];
+                free = next;
+            }
+        }
+        slots[free] = FREE;
+    }
+
+    /** Rebuilds the table with the new capacity.
+     * @param capacity new number of table entries, must be a power of two. */
+    private void rehash(int capacity){
+        keys = new int[capacity];
+        slots = new int[capacity];
+        Arrays.fill(slots, FREE);
+        for(int i = 0; i < size; i++){
+            insert(personalNumbers[i], i);
+        }
+    }
+}
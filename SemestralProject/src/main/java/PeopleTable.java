@@ -0,0 +1,372 @@
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+/**
+ * People of a simulator stored in columns of primitive arrays, one row per person.
+ * <p>Health is a byte, home and current tile are packed positions and the timetable is a shared pattern with
+ * the person's anchors stored in one array of all the anchors. The move and health passes read the columns
+ * by row, no object is created per person. Rows of removed people are reused by people added later,
+ * so a row keeps it's number while the person stays in the table.</p>
+ * <p>Person is only created for people leaving the table (see toPerson). Rows can be added and removed only
+ * between the phases, while a phase runs every row is changed only by the worker of the region it stands on
+ * and membership in visitor sets is guarded by the locations.</p>
+ */
+public class PeopleTable {
+    /** Logger for PeopleTable class */
+    private static final Logger log = Logger.getLogger(PeopleTable.class.getName());
+    /** Health statuses by their ordinals. */
+    private static final PersonHealth[] HEALTH = PersonHealth.values();
+
+    /** Personal numbers by row. */
+    private int[] personalNumbers;
+    /** Health statuses by row, PersonHealth ordinals. */
+    private byte[] health;
+    /** Keys of the people's random streams by row, see CounterRandom. */
+    private long[] randomKeys;
+    /** Packed home positions by row. */
+    private long[] homes;
+    /** Packed positions of the tiles the people stand on (or last stood on) by row. */
+    private long[] tiles;
+    /** Locations the people are visitors of by row, null if the person has no location. */
+    private Location[] locations;
+    /** Slots of the people in visitor sets of their locations by row. */
+    private int[] visitorSlots;
+    /** Timetable patterns by row, null for unused rows. */
+    private TimetablePattern[] patterns;
+    /** Offsets of the people's anchors in the anchors array by row. */
+    private int[] anchorOffsets;
+    /** Packed timetable anchors of all people, anchors of a person are stored in a row from it's offset. */
+    private long[] anchors;
+    /** Number of used elements of the anchors array, including anchors of removed people. */
+    private int anchorsUsed;
+    /** Number of anchors of removed people, reclaimed when the anchors array is full. */
+    private int anchorsFree;
+    /** Rows of removed people, ready to be reused. */
+    private int[] freeRows;
+    /** Number of free rows. */
+    private int freeCount;
+    /** Number of rows ever used, rows from here on were never used. */
+    private int end;
+    /** Number of people in the table. */
+    private int size;
+    /** Simulation seed, random outcomes of people are given by it, their personal number and the round. */
+    private final long seed;
+    /** Round (simulated hour) the people are in, random streams are keyed by it. */
+    private int round;
+
+    /** People table constructor, creates an empty table.
+     * @param seed simulation seed shared by all simulators. */
+    public PeopleTable(long seed){
+        this.seed = seed;
+        personalNumbers = new int[16];
+        health = new byte[16];
+        randomKeys = new long[16];
+        homes = new long[16];
+        tiles = new long[16];
+        locations = new Location[16];
+        visitorSlots = new int[16];
+        patterns = new TimetablePattern[16];
+        anchorOffsets = new int[16];
+        anchors = new long[32];
+        freeRows = new int[16];
+        anchorsUsed = 0;
+        anchorsFree = 0;
+        freeCount = 0;
+        end = 0;
+        size = 0;
+        round = 0;
+    }
+
+    /** Adds the person to the table, the person doesn't visit any location yet.
+     * Must not be called while a phase is running.
+     * @param person person to add, it isn't referenced by the table.
+     * @return int - row of the person. */
+    public int add(Person person){
+        int row;
+        if(freeCount > 0){
+            row = freeRows[--freeCount];
+        }else{
+            if(end == patterns.length)
+                grow(end * 2);
+            row = end++;
+        }
+        Timetable timetable = person.getTimetable();
+        TimetablePattern pattern = timetable.getPattern();
+        personalNumbers[row] = person.getPersonalNumber();
+        health[row] = (byte) person.getHealth().ordinal();
+        randomKeys[row] = CounterRandom.key(seed, person.getPersonalNumber());
+        homes[row] = person.getPackedHome();
+        tiles[row] = person.getPackedHome();
+        locations[row] = null;
+        visitorSlots[row] = VisitorSet.NO_SLOT;
+        patterns[row] = pattern;
+        int count = pattern.getAnchorCount();
+        if(anchorsUsed + count > anchors.length)
+            compactAnchors(count);
+        anchorOffsets[row] = anchorsUsed;
+        for(int i = 0; i < count; i++){
+            anchors[anchorsUsed++] = timetable.getPackedAnchor(i);
+        }
+        size++;
+        return row;
+    }
+
+    /** Removes the person from the table, the person leaves it's location first. The row can be reused.
+     * Must not be called while a phase is running.
+     * @param row row of the person. */
+    public void remove(int row){
+        leaveLocation(row);
+        anchorsFree += patterns[row].getAnchorCount();
+        patterns[row] = null;
+        if(freeCount == freeRows.length)
+            freeRows = Arrays.copyOf(freeRows, freeCount * 2);
+        freeRows[freeCount++] = row;
+        size--;
+    }
+
+    /** Creates person with the properties of the row, used to send the person to another simulator.
+     * @param row row of the person.
+     * @return Person - new person with personal number, health, timetable and home of the row. */
+    public Person toPerson(int row){
+        TimetablePattern pattern = patterns[row];
+        int offset = anchorOffsets[row];
+        long[] timetableAnchors = Arrays.copyOfRange(anchors, offset, offset + pattern.getAnchorCount());
+        return new Person(personalNumbers[row], HEALTH[health[row]], PackedPosition.toPosition(homes[row]),
+                new Timetable(pattern, timetableAnchors));
+    }
+
+    /** Size getter.
+     * @return number of people in the table. */
+    public int size(){
+        return size;
+    }
+
+    /** Sets the round (simulated hour) the people are in.
+     * @param round number of the simulated hour. */
+    public void setRound(int round){
+        this.round = round;
+    }
+
+    /** Personal number getter.
+     * @param row row of the person.
+     * @return personal number of the person. */
+    public int getPersonalNumber(int row){
+        return personalNumbers[row];
+    }
+
+    /** Health getter.
+     * @param row row of the person.
+     * @return PersonHealth - current health of the person. */
+    public PersonHealth getHealth(int row){
+        return HEALTH[health[row]];
+    }
+
+    /** Returns true if the person can infect others.
+     * @param row row of the person.
+     * @return true if the person is infected or quarantined, false otherwise. */
+    public boolean isInfectious(int row){
+        return HEALTH[health[row]].isInfectious();
+    }
+
+    /** Packed home getter.
+     * @param row row of the person.
+     * @return long - packed position of the person's home. */
+    public long getPackedHome(int row){
+        return homes[row];
+    }
+
+    /** Packed tile getter.
+     * @param row row of the person.
+     * @return long - packed position of the tile the person stands on, or last stood on if it has no location. */
+    public long getPackedTile(int row){
+        return tiles[row];
+    }
+
+    /** Location getter.
+     * @param row row of the person.
+     * @return location the person is currently at, or null if the person has no location. */
+    public Location getLocation(int row){
+        return locations[row];
+    }
+
+    /** Visitor slot getter, used by VisitorSet.
+     * @param row row of the person.
+     * @return slot of the person in visitor set of it's location. */
+    public int getVisitorSlot(int row){
+        return visitorSlots[row];
+    }
+
+    /** Visitor slot setter, used by VisitorSet.
+     * @param row row of the person.
+     * @param visitorSlot new slot of the person in visitor set of it's location. */
+    public void setVisitorSlot(int row, int visitorSlot){
+        visitorSlots[row] = visitorSlot;
+    }
+
+    /** Handles person's transfer to another location.
+     * <p>The person leaves the current location first and returns to it if the new location doesn't accept it,
+     * so it is never visitor of two locations at once.</p>
+     * @param row row of the person.
+     * @param location location to visit.
+     * @param parameters Contagion parameters of the infection.
+     * @return true if the person relocated to the location, false otherwise. */
+    public boolean visit(int row, Location location, ContagionParameters parameters){
+        Location previous = locations[row];
+        if(previous == location)
+            return false;
+        leaveLocation(row);
+        if(location.visit(this, row, parameters)){
+            locations[row] = location;
+            tiles[row] = PackedPosition.pack(location.getPosition());
+            return true;
+        }
+        if(previous != null){
+            previous.rejoin(this, row);
+            locations[row] = previous;
+        }
+        return false;
+    }
+
+    /** Places the person to the location without checking the locations rules.
+     * Used when the person is moved to another simulator together with the tile it stands on.
+     * @param row row of the person.
+     * @param location location the person stands on. */
+    public void placeAt(int row, Location location){
+        leaveLocation(row);
+        location.rejoin(this, row);
+        locations[row] = location;
+        tiles[row] = PackedPosition.pack(location.getPosition());
+    }
+
+    /** Removes the person from visitors of it's location, the person then has no location.
+     * @param row row of the person. */
+    public void leaveLocation(int row){
+        Location location = locations[row];
+        if(location != null)
+            location.leave(this, row);
+        locations[row] = null;
+    }
+
+    /** Finds assigned position in timetable or generates random move near current tile, without allocating.
+     * @param row row of the person.
+     * @param parameters currently active contagion parameters containing restrictions.
+     * @return long - packed position to move to. */
+    public long move(int row, ContagionParameters parameters){
+        if(locations[row] == null){
+            log.severe("Trying to move person without assigned location");
+            return PackedPosition.pack(0, 0);
+        }
+
+        PersonHealth current = HEALTH[health[row]];
+        if(current == PersonHealth.deceased)
+            return tiles[row];
+
+        if(current == PersonHealth.quarantined)
+            return homes[row];
+
+        TimetablePattern pattern = patterns[row];
+        int hour = round % 24;
+        if(pattern.hasOccupation(hour))
+            return anchors[anchorOffsets[row] + pattern.getAnchor(hour)];
+
+        if(parameters.freeTimeBan)
+            return homes[row];
+
+        long moveKey = CounterRandom.key(randomKeys[row], round, CounterRandom.Purpose.move);
+        int moveX = CounterRandom.toInt(CounterRandom.draw(moveKey, 0), 11) - 5;
+        int moveY = CounterRandom.toInt(CounterRandom.draw(moveKey, 1), 11) - 5;
+        return PackedPosition.pack(PackedPosition.getX(tiles[row]) + moveX, PackedPosition.getY(tiles[row]) + moveY);
+    }
+
+    /** Infects healthy person with the given chance. A person is tried once a round, the try is drawn for the round.
+     * @param row row of the person.
+     * @param chance chance that the healthy person gets infected */
+    public void tryInfect(int row, double chance){
+        if(HEALTH[health[row]] == PersonHealth.healthy){
+            long infectionKey = CounterRandom.key(randomKeys[row], round, CounterRandom.Purpose.infection);
+            if(CounterRandom.toFloat(CounterRandom.draw(infectionKey, 0)) < chance){
+                setHealth(row, PersonHealth.infected);
+            }
+        }
+        else{
+            log.info("Trying to infect not-healthy person.");
+        }
+    }
+
+    /** Infects healthy person with the given chance, the try is drawn for the pair of the source and this person,
+     * so it doesn't depend on tries made before.
+     * @param row row of the person.
+     * @param source row of the infectious person trying to infect this person.
+     * @param chance chance that the healthy person gets infected */
+    public void tryInfectBy(int row, int source, double chance){
+        if(HEALTH[health[row]] == PersonHealth.healthy){
+            long contactKey = CounterRandom.key(randomKeys[row], round, CounterRandom.Purpose.contact);
+            if(CounterRandom.toFloat(CounterRandom.draw(contactKey, personalNumbers[source])) < chance){
+                setHealth(row, PersonHealth.infected);
+            }
+        }
+        else{
+            log.info("Trying to infect not-healthy person.");
+        }
+    }
+
+    /** If person is infected or quarantined this changes it's health according to contagion parameters.
+     * @param row row of the person.
+     * @param parameters contagion parameters to use while calculating health changes. */
+    public void tryChangeHealth(int row, ContagionParameters parameters){
+        long healthKey = CounterRandom.key(randomKeys[row], round, CounterRandom.Purpose.healthChange);
+        float randomFloat = CounterRandom.toFloat(CounterRandom.draw(healthKey, 0));
+        if(randomFloat < parameters.recoveryChance){
+            setHealth(row, PersonHealth.cured);
+        }else if(randomFloat < parameters.deathChance + parameters.recoveryChance){
+            setHealth(row, PersonHealth.deceased);
+        }else if(randomFloat < parameters.quarantineChance + parameters.deathChance + parameters.recoveryChance){
+            setHealth(row, PersonHealth.quarantined);
+        }
+    }
+
+    /** Changes health of the person and notifies it's location about the change.
+     * @param row row of the person.
+     * @param changed new health status. */
+    private void setHealth(int row, PersonHealth changed){
+        PersonHealth previous = HEALTH[health[row]];
+        health[row] = (byte) changed.ordinal();
+        if(locations[row] != null && previous != changed){
+            locations[row].visitorHealthChanged(previous, changed);
+        }
+    }
+
+    /** Enlarges the columns.
+     * @param capacity new number of rows. */
+    private void grow(int capacity){
+        personalNumbers = Arrays.copyOf(personalNumbers, capacity);
+        health = Arrays.copyOf(health, capacity);
+        randomKeys = Arrays.copyOf(randomKeys, capacity);
+        homes = Arrays.copyOf(homes, capacity);
+        tiles = Arrays.copyOf(tiles, capacity);
+        locations = Arrays.copyOf(locations, capacity);
+        visitorSlots = Arrays.copyOf(visitorSlots, capacity);
+        patterns = Arrays.copyOf(patterns, capacity);
+        anchorOffsets = Arrays.copyOf(anchorOffsets, capacity);
+    }
+
+    /** Moves anchors of the people to the start of a new anchors array, leaving out anchors of removed people.
+     * @param needed number of anchors that have to fit after the used ones. */
+    private void compactAnchors(int needed){
+        int live = anchorsUsed - anchorsFree;
+        long[] compacted = new long[Math.max((live + needed) * 2, 32)];
+        int used = 0;
+        for(int row = 0; row < end; row++){
+            TimetablePattern pattern = patterns[row];
+            if(pattern != null){
+                int count = pattern.getAnchorCount();
+                System.arraycopy(anchors, anchorOffsets[row], compacted, used, count);
+                anchorOffsets[row] = used;
+                used += count;
+            }
+        }
+        anchors = compacted;
+        anchorsUsed = used;
+        anchorsFree = 0;
+    }
+}
@@ -1,29 +1,28 @@
-import java.util.Random;
-import java.util.logging.Logger;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
- * Class holding one person, it's health status, timetable, position and unique personal number.
+ * Class holding one person, it's health status, timetable, home and unique personal number.
+ * <p>Person is used to generate the world and to send people between the master and the simulators.
+ * Simulators keep their people in PeopleTable and create persons only for people leaving them.</p>
+ * <p>Person can also be used on it's own, as a view of a row of a PeopleTable. The location, move and health methods
+ * add the person to a table first (see joinTable) and forward to it's row. Views aren't thread-safe,
+ * simulators work with the rows directly.</p>
  */
 public class Person {
-    /** Random values generator (for random moves and infection generation) */
-    private static final Random rand = new Random();
-    /** Logger for Person class */
-    private static final Logger log = Logger.getLogger(Person.class.getName());
-
-    /** Current global location of the Person */
-    private Location currentLocation;
     /** Health status of the person - healthy, infected, cured, vaccinated, deceased, qurantined */
     private PersonHealth health;
     /** Timetable of the person -> list of positions to "teleport" to at a certime time of day.*/
     private Timetable timetable;
     /** Global unique identifier of the person */
     private int personalNumber;
-    /** Position of this persons home - this where he move if quarantined. */
-    private Position home;
+    /** Packed position of this persons home - this where he move if quarantined. */
+    private final long home;
+    /** Table the person is stored in, null if it isn't stored in any. */
+    private PeopleTable table;
+    /** Row of the person in the table. */
+    private int row;
 
     /** Person class constructor.
-     * <p>Sets up all the properties except current location.
-     * Need to call visitLocation afterwards to set up location.</p>
      * @param personalNumber personal number of the person.
      * @param health health status of the person.
      * @param home position of the home of the person.
@@ -31,10 +30,42 @@ public class Person {
     public Person(int personalNumber, PersonHealth health, Position home, Timetable timetable){
         this.personalNumber = personalNumber;
         this.health = health;
-        this.home = home;
+        this.home = PackedPosition.pack(home);
         this.timetable = timetable;
+        table = null;
+    }
+
+    /** Makes sure the person is stored in the table and returns it. The timetable is copied to the table when the person
+     * is added to it.
+     * <p>A person stored in other table is moved to the required table, it leaves it's location in the other table.
+     * If no table is required, a person that isn't stored in any table is added to a table of it's own,
+     * whose random streams get a random seed.</p>
+     * @param required table the person has to be stored in, null for any table.
+     * @return PeopleTable the person is stored in. */
+    public PeopleTable joinTable(PeopleTable required){
+        if(table != null && (required == null || required == table))
+            return table;
+        if(table != null){
+            health = table.getHealth(row);
+            table.remove(row);
+            table = null;
+        }
+        PeopleTable joined = required != null ? required : new PeopleTable(ThreadLocalRandom.current().nextLong());
+        row = joined.add(this);
+        table = joined;
+        return joined;
+    }
 
-        currentLocation = null;
+    /** Table getter.
+     * @return table the person is stored in, null if it isn't stored in any. */
+    public PeopleTable getTable(){
+        return table;
+    }
+
+    /** Row getter.
+     * @return row of the person in it's table, meaningful only if the person is stored in a table. */
+    public int getRow(){
+        return row;
     }
 
     /** Personal number getter
@@ -43,17 +74,50 @@ public class Person {
         return personalNumber;
     }
 
-    /** Handles Persons transfer to another location.
+    /** Current location getter.
+     * @return location the person is currently at, or null if the person has no location. */
+    public Location getCurrentLocation(){
+        return table == null ? null : table.getLocation(row);
+    }
+
+    /** Handles Persons transfer to another location, see PeopleTable.visit.
+     * The person joins the table of the locations visitors first.
      * @param location location to visit.
      * @param parameters Contagion parameters of the infection.
      * @return true if Person relocated to the location, false otherwise. */
-    public boolean visitLocation(Location location, ContagionParameters parameters) {
-        if(location.visit(this, parameters)){
-            leaveCurrentLocation();
-            currentLocation = location;
-            return true;
-        }
-        return false;
+    public boolean visitLocation(Location location, ContagionParameters parameters){
+        return joinTable(location.getVisitorsTable()).visit(row, location, parameters);
+    }
+
+    /**
+     * Makes the person to be remove from currently visited location and sets it visited location to null.
+     */
+    public void leaveCurrentLocation(){
+        if(table != null)
+            table.leaveLocation(row);
+    }
+
+    /** Finds assigned position in timetable or generates random move near current position.
+     * Sets the round of the persons table.
+     * @param round number of the simulated hour, time of day is round % 24.
+     * @param parameters currently active contagion parameters containing restrictions.
+     * @return Position - position to move to. */
+    public Position move(int round, ContagionParameters parameters){
+        PeopleTable people = joinTable(null);
+        people.setRound(round);
+        return PackedPosition.toPosition(people.move(row, parameters));
+    }
+
+    /** Infects healthy person with the given chance
+     * @param chance chance that the healthy person gets infected */
+    public void tryInfect(double chance){
+        joinTable(null).tryInfect(row, chance);
+    }
+
+    /** If person is infected or quarantined this changes it's health according to contagion parameters.
+     * @param parameters contagion parameters to use while calculating health changes. */
+    public void tryChangeHealth(ContagionParameters parameters){
+        joinTable(null).tryChangeHealth(row, parameters);
     }
 
     /**
@@ -65,6 +129,15 @@ public class Person {
         return timetable.getOccupation(hour);
     }
 
+    /**
+     * Returns true if the person has an occupation in it's timetable at given time of day.
+     * @param hour hour of day.
+     * @return true if there is a position the person should be at at the given time, false otherwise.
+     */
+    public boolean hasOccupation(int hour){
+        return timetable.hasOccupation(hour);
+    }
+
     /**
      * Sets the persons occupation in it's timetable to given position at given time of day.
      * @param hour hour of day.
@@ -77,80 +150,31 @@ public class Person {
     /** Home getter.
      * @return Position of this persons home. */
     public Position getHome(){
-        return home;
-    }
-
-    /**
-     * Makes the person to be remove from currently visited location and sets it visited location to null.
-     */
-    public void leaveCurrentLocation(){
-        if(currentLocation != null){
-            currentLocation.leave(this);
-        }
-        currentLocation = null;
+        return PackedPosition.toPosition(home);
     }
 
-    /** Finds assigned position in timetable or generates random move near current position.
-     * @param hour current time of day.
-     * @param parameters currently active contagion parameters containing restrictions.
-     * @return Position - position to move to. */
-    public Position move(int hour, ContagionParameters parameters){
-        if(currentLocation == null) {
-            log.severe("Trying to move person without assigned location");
-            return new Position(0, 0);
-        }
-
-        if(health == PersonHealth.deceased)
-            return currentLocation.getPosition();
-
-        if(health == PersonHealth.quarantined){
-            return home;
-        }
-
-        if(timetable.getOccupation(hour) != null){
-            return timetable.getOccupation(hour);
-        }
-
-        if(parameters.freeTimeBan)
-            return home;
-
-        Position move = Position.randomPosition(new Position(11, 11), rand).subtract(new Position(5,5));
-        Position cur = this.currentLocation.getPosition();
-        return cur.add(move);
+    /** Packed home getter.
+     * @return long - packed position of this persons home. */
+    public long getPackedHome(){
+        return home;
     }
 
     /** Person health getter.
      * @return PersonHealth - current health of this person. */
     public PersonHealth getHealth() {
-        return health;
+        return table == null ? health : table.getHealth(row);
     }
 
-    /** Infects healthy person with the given chance
-     * @param chance chance that the healthy person gets infected */
-    public void tryInfect(double chance){
-        if(health == PersonHealth.healthy){
-            if(rand.nextFloat() < chance){
-                health = PersonHealth.infected;
-            }
-        }
-        else{
-            log.info("Trying to infect not-healthy person.");
-        }
+    /** Returns true if the person can infect others.
+     * @return true if the person is infected or quarantined, false otherwise. */
+    public boolean isInfectious(){
+        return getHealth().isInfectious();
     }
 
-    /** If person is infected or quarantined this changes it's health according to contagion parameters.
-     * @param parameters contagion parameters to use while calculating health changes. */
-    public void tryChangeHealth(ContagionParameters parameters){
-        float randomFloat = rand.nextFloat();
-        if(randomFloat < parameters.quarantineChance + parameters.deathChance + parameters.recoveryChance){
-            this.health = PersonHealth.quarantined;
-        }
-        if(randomFloat < parameters.deathChance + parameters.recoveryChance){
-            this.health = PersonHealth.deceased;
-        }
-        if(randomFloat < parameters.recoveryChance){
-            this.health = PersonHealth.cured;
-        }
+    /** Timetable getter.
+     * @return timetable of this person. */
+    public Timetable getTimetable(){
+        return timetable;
     }
 
     /**
@@ -167,6 +191,34 @@ public class Person {
         return new Person(personalNumber, health, home, timetable);
     }
 
+    /** Writes binary representation of the person - personal number, health, timetable and home.
+     * @param buffer buffer to write to. */
+    public void writeTo(WireBuffer buffer){
+        buffer.putInt(personalNumber);
+        buffer.putByte(getHealth().ordinal());
+        timetable.writeTo(buffer);
+        buffer.putLong(home);
+    }
+
+    /** Reads person from it's binary representation (see writeTo).
+     * @param buffer buffer to read from.
+     * @return Person - new person read from the buffer. */
+    public static Person readFrom(WireBuffer buffer){
+        int personalNumber = buffer.getInt();
+        PersonHealth health = PersonHealth.values()[buffer.getByte()];
+        Timetable timetable = Timetable.readFrom(buffer);
+        Position home = PackedPosition.toPosition(buffer.getLong());
+        return new Person(personalNumber, health, home, timetable);
+    }
+
+    /** Get compact inline text representation of the Person, timetable is sent as pattern id and anchors.
+     * @param position desired position of the person to end at
+     * @return Text representation of person to send via network. */
+    public String toCompactString(Position position){
+        return "Person:" + personalNumber + ":" + position.getX() + "," + position.getY() + ":" + getHealth() + ":" +
+                timetable.toCompactString() + ":" + PackedPosition.getX(home) + "," + PackedPosition.getY(home);
+    }
+
     /** Get inline text representation of the Person.
      * @param position desired position of the person to end at
      * @return Text representation of person to send via network. */
@@ -175,19 +227,17 @@ public class Person {
                 personalNumber,
                 position.getX(),
                 position.getY(),
-                health.toString(),
+                getHealth().toString(),
                 timetable.toString(),
-                home.getX(),
-                home.getY());
+                PackedPosition.getX(home),
+                PackedPosition.getY(home));
     }
 
-    /** Get inline text representation of the Person with the current position as position.
+    /** Get inline text representation of the Person without position, position is sent as -1,-1.
      * @return Text representation of person to send via network.
      */
     @Override
     public String toString(){
-        if(currentLocation == null)
-            return toString(new Position(-1,-1));
-        return toString(currentLocation.getPosition());
+        return toString(new Position(-1,-1));
     }
 }
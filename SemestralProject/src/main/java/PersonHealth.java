@@ -11,5 +11,11 @@ public enum PersonHealth {
     /** Person that is infected, but it's movement is handled in different way. */
     quarantined,
     /** Person that cannot be infected. */
-    vaccinated
+    vaccinated;
+
+    /** Returns true if person with this health status can infect others.
+     * @return true for infected and quarantined, false otherwise. */
+    public boolean isInfectious(){
+        return this == infected || this == quarantined;
+    }
 }
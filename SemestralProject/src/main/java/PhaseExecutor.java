@@ -0,0 +1,185 @@
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Logger;
+
+/**
+ * Runs a phase (one command) on all simulators at once and waits until all of them finish it.
+ * <p>Asynchronous tasks only start requests, that are completed by the simulator connections event loop.
+ * Blocking tasks run on a shared fixed pool of daemon threads, so no thread is created per phase.</p>
+ * <p>The phase fails on the first SimulatorConnectionException or when it doesn't finish in time, the unfinished
+ * tasks of the phase are then cancelled. Latency of every simulator in the last run of every phase is recorded.</p>
+ */
+public class PhaseExecutor {
+    private static final Logger log = Logger.getLogger(PhaseExecutor.class.getName());
+    /** Default maximal duration of a phase in milliseconds. */
+    public static final long DEFAULT_TIMEOUT = 300000;
+    /** Shared pool running blocking tasks. */
+    private static final ExecutorService pool = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), runnable -> {
+                Thread thread = new Thread(runnable, "PhaseExecutor");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    /** Simulators to run the phases on. */
+    private final SimulatorConnection[] simulators;
+    /** Maximal duration of a phase in milliseconds. */
+    private final long timeout;
+    /** Latencies of simulators in the last run of phases in nanoseconds, by phase name. */
+    private final ConcurrentHashMap<String, long[]> latencies;
+
+    /**
+     * Phase executor constructor with default timeout.
+     * @param simulators simulators to run the phases on.
+     */
+    public PhaseExecutor(SimulatorConnection[] simulators){
+        this(simulators, DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * Phase executor constructor.
+     * @param simulators simulators to run the phases on.
+     * @param timeout maximal duration of a phase in milliseconds.
+     */
+    public PhaseExecutor(SimulatorConnection[] simulators, long timeout){
+        this.simulators = simulators;
+        this.timeout = timeout;
+        latencies = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Starts the asynchronous task on all simulators and waits until all of them finish it.
+     * @param phase name of the phase, latencies are recorded under it.
+     * @param task task starting the phase on a simulator.
+     * @throws SimulatorConnectionException if the phase failed on any simulator or didn't finish in time.
+     */
+    public void run(String phase, AsyncTask task) throws SimulatorConnectionException {
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[simulators.length];
+        CompletableFuture<?>[] completions = new CompletableFuture<?>[simulators.length];
+        long[] phaseLatencies = new long[simulators.length];
+        CompletableFuture<Void> failed = new CompletableFuture<>();
+        long start = System.nanoTime();
+        for(int i = 0; i < simulators.length; i++){
+            int index = i;
+            CompletableFuture<Void> future;
+            try {
+                future = task.start(simulators[i], i);
+            } catch (RuntimeException e) {
+                future = CompletableFuture.failedFuture(e);
+            }
+            futures[i] = future;
+            completions[i] = future.whenComplete((v, e) -> {
+                phaseLatencies[index] = System.nanoTime() - start;
+                if(e != null)
+                    failed.completeExceptionally(e);
+            });
+        }
+        latencies.put(phase, phaseLatencies);
+        await(phase, CompletableFuture.anyOf(CompletableFuture.allOf(completions), failed), futures);
+    }
+
+    /**
+     * Runs the blocking task for all simulators on the shared pool and waits until all of them finish it.
+     * @param phase name of the phase, latencies are recorded under it.
+     * @param task task running the phase on a simulator.
+     * @throws SimulatorConnectionException if the phase failed on any simulator or didn't finish in time.
+     */
+    public void runBlocking(String phase, BlockingTask task) throws SimulatorConnectionException {
+        Future<?>[] running = new Future<?>[simulators.length];
+        try {
+            run(phase, (simulator, index) -> {
+                CompletableFuture<Void> future = new CompletableFuture<>();
+                running[index] = pool.submit(() -> {
+                    try {
+                        task.run(simulator, index);
+                        future.complete(null);
+                    } catch (SimulatorConnectionException | RuntimeException e) {
+                        future.completeExceptionally(e);
+                    }
+                });
+                return future;
+            });
+        } finally {
+            //interrupt tasks still running after the phase failed
+            for(Future<?> future : running){
+                if(future != null)
+                    future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Returns latencies of the simulators in the last run of the phase.
+     * @param phase name of the phase.
+     * @return long[] - time from the start of the phase to the simulators completion in nanoseconds,
+     * by simulator index, or null if the phase didn't run yet.
+     */
+    public long[] getLatencies(String phase){
+        long[] phaseLatencies = latencies.get(phase);
+        return phaseLatencies == null ? null : phaseLatencies.clone();
+    }
+
+    /**
+     * Waits for the phase to finish, cancels the unfinished tasks if it fails.
+     * @param phase name of the phase.
+     * @param done future completed when all tasks finish or one of them fails.
+     * @param futures futures of the tasks.
+     * @throws SimulatorConnectionException if the phase failed or didn't finish in time.
+     */
+    private void await(String phase, CompletableFuture<?> done, CompletableFuture<?>[] futures) throws SimulatorConnectionException {
+        try {
+            done.get(timeout, TimeUnit.MILLISECONDS);
+            return;
+        } catch (ExecutionException | CancellationException e) {
+            log.severe("Phase " + phase + " failed.");
+        } catch (TimeoutException e) {
+            log.severe("Phase " + phase + " timed out, unfinished simulators: " + countUnfinished(futures));
+        } catch (InterruptedException e) {
+            log.severe("Phase " + phase + " interrupted.");
+            Thread.currentThread().interrupt();
+        }
+        for(CompletableFuture<?> future : futures){
+            future.cancel(true);
+        }
+        throw new SimulatorConnectionException();
+    }
+
+    /**
+     * Counts tasks that didn't finish.
+     * @param futures futures of the tasks.
+     * @return number of unfinished tasks.
+     */
+    private static int countUnfinished(CompletableFuture<?>[] futures){
+        int count = 0;
+        for(CompletableFuture<?> future : futures){
+            if(!future.isDone())
+                count++;
+        }
+        return count;
+    }
+
+    /** Task starting a phase on a simulator without blocking. */
+    public interface AsyncTask {
+        /** Starts the phase on the simulator.
+         * @param simulator simulator to run the phase on.
+         * @param index index of the simulator.
+         * @return future completed when the simulator finishes the phase. */
+        CompletableFuture<Void> start(SimulatorConnection simulator, int index);
+    }
+
+    /** Task running a phase on a simulator, blocking until it finishes. */
+    public interface BlockingTask {
+        /** Runs the phase on the simulator.
+         * @param simulator simulator to run the phase on.
+         * @param index index of the simulator.
+         * @throws SimulatorConnectionException in case connection to the simulator is lost. */
+        void run(SimulatorConnection simulator, int index) throws SimulatorConnectionException;
+    }
+}
@@ -1,4 +1,3 @@
-import java.util.Objects;
 import java.util.Random;
 
 /**
@@ -49,8 +48,9 @@ public final class Position {
      * @param other position, from which to calculate the distance.
      * @return double - Euclidean distance of the two positions. */
     public double distance(Position other){
-        final Position sub = this.subtract(other);
-        return Math.sqrt(sub.getX()*sub.getX() + sub.getY()* sub.getY());
+        final int dx = x - other.getX();
+        final int dy = y - other.getY();
+        return Math.sqrt(dx*dx + dy*dy);
     }
 
     /** Calculates if this position is inside the given area.
@@ -58,17 +58,14 @@ public final class Position {
      * @param size size of the area.
      * @return true if position is inside area, false otherwise.*/
     public boolean isInArea(Position topLeft, Position size){
-        Position relative = this.subtract(topLeft);
-        return relative.getX() >= 0 && relative.getY() >= 0 &&
-                relative.getX() < size.getX() && relative.getY() < size.getY();
+        return PackedPosition.isInArea(x, y, topLeft, size);
     }
 
     /** Creates a new Position object from formatted string
      * @param positionString formatted string representing position
      * @return Position loaded from the string. */
     public static Position parsePosition(String positionString){
-        String[] split = positionString.split(",");
-        return new Position(Integer.parseInt(split[0]), Integer.parseInt(split[1]));
+        return PackedPosition.toPosition(PackedPosition.parse(positionString));
     }
 
     /** Creates a random position in the area (0,0) to (max.X, max.Y)
@@ -98,6 +95,6 @@ public final class Position {
 
     @Override
     public int hashCode() {
-        return Objects.hash(x, y);
+        return 31 * x + y;
     }
 }
@@ -0,0 +1,350 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Stats of the whole world after each round, stored in int columns - one column per health status.
+ * <p>Only the last capacity rounds are held in memory in a ring buffer. If a spill file is given, every round is also
+ * appended to it by a background thread (six big-endian ints per round in order of PersonHealth),
+ * so the dropped rounds can still be queried.</p>
+ * <p>Round 0 holds the stats before the first round of the simulation.</p>
+ */
+public class RoundHistory {
+    /** This classes logger. */
+    private static final Logger log = Logger.getLogger(RoundHistory.class.getName());
+    /** Default number of rounds held in memory. */
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+    /** Number of columns, one per health status, indexed by its ordinal. */
+    private static final int COLUMNS = PersonHealth.values().length;
+    /** Size of a single round in the spill file. */
+    private static final int RECORD_SIZE = COLUMNS * Integer.BYTES;
+
+    /** Ring buffers of the columns, round r is stored at index r % capacity. */
+    private final int[][] columns;
+    /** Maximal number of rounds held in memory. */
+    private final int capacity;
+    /** Number of recorded rounds, also the number of the next round. */
+    private int rounds;
+    /** File the rounds are appended to, null if the rounds aren't spilled. */
+    private final FileChannel spill;
+    /** Thread writing to and reading from the spill file, null if the rounds aren't spilled. */
+    private final ExecutorService spillExecutor;
+    /** True if writing to the spill file failed, rounds that aren't in memory are lost then. */
+    private volatile boolean spillFailed;
+
+    /**
+     * Round history constructor, dropped rounds aren't kept anywhere.
+     * @param capacity number of rounds held in memory.
+     */
+    public RoundHistory(int capacity){
+        if(capacity <= 0)
+            throw new IllegalArgumentException("Capacity of the history must be positive.");
+        this.capacity = capacity;
+        columns = new int[COLUMNS][capacity];
+        rounds = 0;
+        spill = null;
+        spillExecutor = null;
+    }
+
+    /**
+     * Round history constructor, all rounds are appended to the spill file.
+     * @param capacity number of rounds held in memory.
+     * @param spillFile file to write the rounds to, it is created or truncated.
+     * @throws IOException if the file can't be opened.
+     */
+    public RoundHistory(int capacity, Path spillFile) throws IOException {
+        if(capacity <= 0)
+            throw new IllegalArgumentException("Capacity of the history must be positive.");
+        this.capacity = capacity;
+        columns = new int[COLUMNS][capacity];
+        rounds = 0;
+        spill = FileChannel.open(spillFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        spillExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "RoundHistorySpill");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Records stats of the next round.
+     * @param stats stats of the whole world after the round.
+     * @return number of the recorded round.
+     */
+    public synchronized int add(Stats stats){
+        int round = rounds;
+        int[] record = new int[COLUMNS];
+        for(PersonHealth health : PersonHealth.values()){
+            record[health.ordinal()] = stats.get(health);
+            columns[health.ordinal()][round % capacity] = record[health.ordinal()];
+        }
+        rounds++;
+        if(spill != null && !spillFailed && !spillExecutor.isShutdown())
+            spillExecutor.execute(() -> writeRecord(round, record));
+        return round;
+    }
+
+    /** Returns number of recorded rounds.
+     * @return number of recorded rounds, the last round is one less. */
+    public synchronized int getRoundCount(){
+        return rounds;
+    }
+
+    /** Returns the oldest round held in memory, older rounds are only in the spill file.
+     * @return number of the oldest round held in memory. */
+    public synchronized int getFirstRetainedRound(){
+        return Math.max(0, rounds - capacity);
+    }
+
+    /**
+     * Returns stats of the last recorded round.
+     * @return Stats of the last round.
+     * @throws NoSuchElementException if no round was recorded.
+     */
+    public synchronized Stats getLast(){
+        if(rounds == 0)
+            throw new NoSuchElementException("No round was recorded.");
+        return get(rounds - 1);
+    }
+
+    /**
+     * Returns stats of the round.
+     * @param round number of the round.
+     * @return Stats of the round.
+     * @throws IndexOutOfBoundsException if the round wasn't recorded or isn't available anymore.
+     */
+    public Stats get(int round){
+        return getRange(round, round + 1).get(0);
+    }
+
+    /**
+     * Returns stats of a range of rounds.
+     * @param from number of the first round of the range.
+     * @param to number of the round after the last round of the range.
+     * @return list of stats of the rounds in order.
+     * @throws IndexOutOfBoundsException if some of the rounds weren't recorded or aren't available anymore.
+     */
+    public List<Stats> getRange(int from, int to){
+        int[][] range = getColumns(from, to);
+        List<Stats> stats = new ArrayList<>(to - from);
+        int[] record = new int[COLUMNS];
+        for(int i = 0; i < to - from; i++){
+            for(int column = 0; column < COLUMNS; column++){
+                record[column] = range[column][i];
+            }
+            stats.add(toStats(record));
+        }
+        return stats;
+    }
+
+    /**
+     * Returns number of people with the health status in a range of rounds.
+     * @param health health status of the people.
+     * @param from number of the first round of the range.
+     * @param to number of the round after the last round of the range.
+     * @return array with number of the people after each round of the range.
+     * @throws IndexOutOfBoundsException if some of the rounds weren't recorded or aren't available anymore.
+     */
+    public int[] getColumn(PersonHealth health, int from, int to){
+        return getColumns(from, to)[health.ordinal()];
+    }
+
+    /**
+     * Returns stats of at most the given number of rounds evenly spread over all rounds held in memory.
+     * @param points maximal number of returned rounds, at least 2.
+     * @return Samples with the chosen rounds and their stats.
+     */
+    public synchronized Samples downsample(int points){
+        return downsample(0, rounds, points);
+    }
+
+    /**
+     * Returns stats of at most the given number of rounds evenly spread over the range, used to draw charts of long simulations.
+     * The range is limited to rounds held in memory, it's first and last round are always included.
+     * <p>The rounds are chosen and copied under one lock, so rounds added meanwhile can't drop them.</p>
+     * @param from number of the first round of the range.
+     * @param to number of the round after the last round of the range.
+     * @param points maximal number of returned rounds, at least 2.
+     * @return Samples with the chosen rounds and their stats.
+     */
+    public synchronized Samples downsample(int from, int to, int points){
+        from = Math.max(from, getFirstRetainedRound());
+        to = Math.min(to, rounds);
+        int count = Math.max(0, to - from);
+        int step = Math.max(1, (count - 1 + points - 2) / Math.max(1, points - 1));
+        int sampled = count == 0 ? 0 : (count - 1 + step - 1) / step + 1;
+        int[] sampleRounds = new int[sampled];
+        for(int i = 0; i < sampled; i++){
+            sampleRounds[i] = Math.min(from + i * step, to - 1);
+        }
+        int[][] values = new int[COLUMNS][sampled];
+        for(int i = 0; i < sampled; i++){
+            for(int column = 0; column < COLUMNS; column++){
+                values[column][i] = columns[column][sampleRounds[i] % capacity];
+            }
+        }
+        return new Samples(sampleRounds, values);
+    }
+
+    /** Waits for the spilled rounds to be written and closes the spill file. Rounds held in memory stay available. */
+    public void close(){
+        if(spill == null)
+            return;
+        spillExecutor.shutdown();
+        try {
+            spillExecutor.awaitTermination(1, TimeUnit.MINUTES);
+            spill.close();
+        } catch (IOException e) {
+            log.severe("Unable to close round history file.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns all columns of a range of rounds, rounds no longer held in memory are read from the spill file.
+     * @param from number of the first round of the range.
+     * @param to number of the round after the last round of the range.
+     * @return columns of the range, indexed by ordinal of the health status.
+     * @throws IndexOutOfBoundsException if some of the rounds weren't recorded or aren't available anymore.
+     */
+    private int[][] getColumns(int from, int to){
+        int[][] values = new int[COLUMNS][to - from];
+        int retained;
+        synchronized (this){
+            if(from < 0 || to > rounds || from > to)
+                throw new IndexOutOfBoundsException("Rounds " + from + " to " + to + " weren't recorded.");
+            retained = Math.max(from, getFirstRetainedRound());
+            for(int column = 0; column < COLUMNS; column++){
+                for(int round = retained; round < to; round++){
+                    values[column][round - from] = columns[column][round % capacity];
+                }
+            }
+        }
+        if(retained > from)
+            readSpilled(from, Math.min(retained, to), values);
+        return values;
+    }
+
+    /**
+     * Appends the round to the spill file. Called by the spill thread.
+     * @param round number of the round.
+     * @param record number of people with each health status after the round.
+     */
+    private void writeRecord(int round, int[] record){
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE);
+        for(int value : record){
+            buffer.putInt(value);
+        }
+        buffer.flip();
+        try {
+            long position = (long) round * RECORD_SIZE;
+            while(buffer.hasRemaining()){
+                position += spill.write(buffer, position);
+            }
+        } catch (IOException e) {
+            if(!spillFailed)
+                log.severe("Unable to write round history file, old rounds will be lost.");
+            spillFailed = true;
+        }
+    }
+
+    /**
+     * Reads rounds no longer held in memory from the spill file.
+     * The reading is done by the spill thread, so all the rounds are already written.
+     * @param from number of the first round to read.
+     * @param to number of the round after the last round to read.
+     * @param values columns to store the values to, starting with index 0.
+     */
+    private void readSpilled(int from, int to, int[][] values){
+        if(spill == null || spillFailed)
+            throw new IndexOutOfBoundsException("Rounds before " + to + " are no longer available.");
+        try {
+            spillExecutor.submit(() -> {
+                ByteBuffer buffer = ByteBuffer.allocate((to - from) * RECORD_SIZE);
+                long position = (long) from * RECORD_SIZE;
+                while(buffer.hasRemaining()){
+                    int read = spill.read(buffer, position + buffer.position());
+                    if(read < 0)
+                        throw new IOException("Round history file is shorter than expected.");
+                }
+                buffer.flip();
+                for(int round = from; round < to; round++){
+                    for(int column = 0; column < COLUMNS; column++){
+                        values[column][round - from] = buffer.getInt();
+                    }
+                }
+                return null;
+            }).get();
+        } catch (ExecutionException | RejectedExecutionException e) {
+            throw new IndexOutOfBoundsException("Rounds before " + to + " are no longer available.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IndexOutOfBoundsException("Reading of rounds before " + to + " was interrupted.");
+        }
+    }
+
+    /**
+     * Creates stats from a record of the columns.
+     * @param record number of people with each health status, indexed by its ordinal.
+     * @return Stats with the values of the record.
+     */
+    private static Stats toStats(int[] record){
+        Stats stats = new Stats();
+        for(PersonHealth health : PersonHealth.values()){
+            stats.count(health, record[health.ordinal()]);
+        }
+        return stats;
+    }
+
+    /** Stats of chosen rounds, returned by downsample. */
+    public static class Samples {
+        /** Numbers of the chosen rounds in ascending order. */
+        private final int[] rounds;
+        /** Columns of the chosen rounds, indexed by ordinal of the health status. */
+        private final int[][] values;
+
+        /**
+         * Samples constructor.
+         * @param rounds numbers of the chosen rounds.
+         * @param values columns of the chosen rounds.
+         */
+        private Samples(int[] rounds, int[][] values){
+            this.rounds = rounds;
+            this.values = values;
+        }
+
+        /** Returns number of the chosen rounds.
+         * @return number of the chosen rounds. */
+        public int getCount(){
+            return rounds.length;
+        }
+
+        /** Returns number of i-th chosen round.
+         * @param i index of the chosen round.
+         * @return number of the round. */
+        public int getRound(int i){
+            return rounds[i];
+        }
+
+        /** Returns number of people with the health status after i-th chosen round.
+         * @param health health status of the people.
+         * @param i index of the chosen round.
+         * @return number of the people. */
+        public int get(PersonHealth health, int i){
+            return values[health.ordinal()][i];
+        }
+    }
+}
@@ -0,0 +1,328 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds the simulator whose area contains a position, using a kd-tree of the simulators areas.
+ * <p>The tree is built by repeatedly finding a straight cut, that separates the areas into two groups
+ * without crossing any of them. Areas made by recursive bisection can always be separated this way, if some areas
+ * can't be, they are kept in one leaf and searched one by one.</p>
+ * <p>The table is immutable, rebalancing creates a new table, that replaces the old one between rounds.</p>
+ */
+public class RoutingTable {
+    /** Root of the tree, null if there are no areas. */
+    private final Node root;
+    /** Top-left corners of the areas by simulator index. */
+    private final Position[] topLefts;
+    /** Sizes of the areas by simulator index. */
+    private final Position[] sizes;
+
+    /**
+     * Routing table constructor.
+     * @param topLefts top-left corners of the simulators areas, by simulator index.
+     * @param sizes sizes of the simulators areas, by simulator index.
+     */
+    public RoutingTable(Position[] topLefts, Position[] sizes){
+        this.topLefts = topLefts.clone();
+        this.sizes = sizes.clone();
+        int[] indices = new int[topLefts.length];
+        for(int i = 0; i < indices.length; i++){
+            indices[i] = i;
+        }
+        root = indices.length == 0 ? null : build(indices);
+    }
+
+    /**
+     * Builds routing table of the simulators areas.
+     * @param sims simulators with set up areas.
+     * @return RoutingTable of the simulators areas.
+     */
+    public static RoutingTable of(SimulatorConnection[] sims){
+        Position[] topLefts = new Position[sims.length];
+        Position[] sizes = new Position[sims.length];
+        for(int i = 0; i < sims.length; i++){
+            topLefts[i] = sims[i].getTopLeft();
+            sizes[i] = sims[i].getSize();
+        }
+        return new RoutingTable(topLefts, sizes);
+    }
+
+    /**
+     * Returns index of the simulator whose area contains the position.
+     * @param position position to find.
+     * @return index of the simulator, -1 if the position isn't in any area.
+     */
+    public int route(Position position){
+        Node node = root;
+        while(node != null && node.indices == null){
+            int coordinate = node.vertical ? position.getX() : position.getY();
+            node = coordinate < node.cut ? node.low : node.high;
+        }
+        if(node == null)
+            return -1;
+        for(int index : node.indices){
+            if(position.isInArea(topLefts[index], sizes[index]))
+                return index;
+        }
+        return -1;
+    }
+
+    /** Returns number of the areas.
+     * @return number of the areas. */
+    public int getCount(){
+        return topLefts.length;
+    }
+
+    /** Returns top-left corner of the area.
+     * @param index index of the simulator.
+     * @return top-left corner of the simulators area. */
+    public Position getTopLeft(int index){
+        return topLefts[index];
+    }
+
+    /** Returns size of the area.
+     * @param index index of the simulator.
+     * @return size of the simulators area. */
+    public Position getSize(int index){
+        return sizes[index];
+    }
+
+    /**
+     * Finds the cut between two groups of areas with the biggest difference of average load and moves it
+     * towards the more loaded group, so a strip of the areas touching the cut passes to the other group.
+     * <p>The strip width is estimated from the load of the areas giving it up, assuming the load is spread evenly
+     * over the areas, and halved to damp the oscillation caused by measurement noise. Every area keeps at least one tile
+     * in the axis of the cut.</p>
+     * @param loads measured load of the simulators, by simulator index.
+     * @param threshold minimal ratio of the average loads of the two groups to move the cut, greater than 1.
+     * @param minDifference minimal difference of the average loads of the two groups to move the cut,
+     *                      so the noise of short rounds doesn't move the cuts.
+     * @return RoutingTable with the cut moved, or null if no cut exceeds the threshold or can be moved.
+     */
+    public RoutingTable rebalance(double[] loads, double threshold, double minDifference){
+        Node worst = null;
+        double worstRatio = threshold;
+        List<Node> nodes = new ArrayList<>();
+        if(root != null)
+            nodes.add(root);
+        for(int n = 0; n < nodes.size(); n++){
+            Node node = nodes.get(n);
+            if(node.indices != null)
+                continue;
+            nodes.add(node.low);
+            nodes.add(node.high);
+            double low = averageLoad(node.low, loads);
+            double high = averageLoad(node.high, loads);
+            double ratio = Math.max(low, high) / Math.max(Math.min(low, high), Double.MIN_NORMAL);
+            if(ratio > worstRatio && Math.abs(high - low) >= minDifference && stripWidth(node, loads) > 0){
+                worst = node;
+                worstRatio = ratio;
+            }
+        }
+        if(worst == null)
+            return null;
+        int width = stripWidth(worst, loads);
+        boolean toLow = averageLoad(worst.high, loads) > averageLoad(worst.low, loads);
+        Position[] newTopLefts = topLefts.clone();
+        Position[] newSizes = sizes.clone();
+        for(int index : collect(worst.low, new ArrayList<>())){
+            if(end(index, worst.vertical) == worst.cut)
+                newSizes[index] = grow(sizes[index], worst.vertical, toLow ? width : -width);
+        }
+        for(int index : collect(worst.high, new ArrayList<>())){
+            if(start(index, worst.vertical) == worst.cut){
+                int shift = toLow ? width : -width;
+                newTopLefts[index] = grow(topLefts[index], worst.vertical, shift);
+                newSizes[index] = grow(sizes[index], worst.vertical, -shift);
+            }
+        }
+        return new RoutingTable(newTopLefts, newSizes);
+    }
+
+    /**
+     * Estimates width of the strip to move across the cut of the inner node, towards the more loaded side.
+     * @param node inner node of the cut.
+     * @param loads measured load of the simulators, by simulator index.
+     * @return width of the strip, 0 if the areas giving up the strip are only one tile wide or there is no load.
+     */
+    private int stripWidth(Node node, double[] loads){
+        List<Integer> low = collect(node.low, new ArrayList<>());
+        List<Integer> high = collect(node.high, new ArrayList<>());
+        double lowLoad = 0;
+        for(int index : low){
+            lowLoad += loads[index];
+        }
+        double highLoad = 0;
+        for(int index : high){
+            highLoad += loads[index];
+        }
+        boolean toLow = highLoad / high.size() > lowLoad / low.size();
+        //load to move so both sides have the same average load
+        double excess = toLow ? (highLoad * low.size() - lowLoad * high.size()) / (low.size() + high.size())
+                : (lowLoad * high.size() - highLoad * low.size()) / (low.size() + high.size());
+        double loadPerTile = 0;
+        int maxWidth = Integer.MAX_VALUE;
+        for(int index : toLow ? high : low){
+            int start = start(index, node.vertical);
+            int end = end(index, node.vertical);
+            if(toLow ? start == node.cut : end == node.cut){
+                loadPerTile += loads[index] / (end - start);
+                maxWidth = Math.min(maxWidth, end - start - 1);
+            }
+        }
+        if(loadPerTile <= 0 || maxWidth <= 0)
+            return 0;
+        return (int) Math.max(1, Math.min(maxWidth, excess / loadPerTile / 2));
+    }
+
+    /**
+     * Returns average load of the areas in the subtree.
+     * @param node root of the subtree.
+     * @param loads measured load of the simulators, by simulator index.
+     * @return average load of the areas.
+     */
+    private static double averageLoad(Node node, double[] loads){
+        List<Integer> indices = collect(node, new ArrayList<>());
+        double sum = 0;
+        for(int index : indices){
+            sum += loads[index];
+        }
+        return sum / indices.size();
+    }
+
+    /**
+     * Adds indices of all areas in the subtree to the list.
+     * @param node root of the subtree.
+     * @param into list to add the indices to.
+     * @return the list.
+     */
+    private static List<Integer> collect(Node node, List<Integer> into){
+        if(node.indices != null){
+            for(int index : node.indices){
+                into.add(index);
+            }
+        }else{
+            collect(node.low, into);
+            collect(node.high, into);
+        }
+        return into;
+    }
+
+    /**
+     * Returns the position moved along the axis.
+     * @param position position to move.
+     * @param vertical true to move the x coordinate, false for the y coordinate.
+     * @param delta distance to move by.
+     * @return moved Position.
+     */
+    private static Position grow(Position position, boolean vertical, int delta){
+        return vertical ? new Position(position.getX() + delta, position.getY())
+                : new Position(position.getX(), position.getY() + delta);
+    }
+
+    /**
+     * Builds subtree of the areas.
+     * @param indices indices of the areas in the subtree.
+     * @return root of the subtree.
+     */
+    private Node build(int[] indices){
+        if(indices.length > 1){
+            for(boolean vertical : new boolean[]{true, false}){
+                for(int candidate : indices){
+                    int cut = vertical ? topLefts[candidate].getX() : topLefts[candidate].getY();
+                    int low = countBelow(indices, vertical, cut);
+                    if(low > 0 && low < indices.length){
+                        int[] lowIndices = new int[low];
+                        int[] highIndices = new int[indices.length - low];
+                        int l = 0;
+                        int h = 0;
+                        for(int index : indices){
+                            if(start(index, vertical) < cut)
+                                lowIndices[l++] = index;
+                            else
+                                highIndices[h++] = index;
+                        }
+                        return new Node(vertical, cut, build(lowIndices), build(highIndices));
+                    }
+                }
+            }
+        }
+        return new Node(indices);
+    }
+
+    /**
+     * Counts the areas lying before the cut, returns -1 if the cut crosses some of the areas.
+     * @param indices indices of the areas.
+     * @param vertical true if the cut is vertical (splits x coordinates), false if horizontal.
+     * @param cut first coordinate behind the cut.
+     * @return number of the areas before the cut or -1.
+     */
+    private int countBelow(int[] indices, boolean vertical, int cut){
+        int low = 0;
+        for(int index : indices){
+            int start = start(index, vertical);
+            int end = start + (vertical ? sizes[index].getX() : sizes[index].getY());
+            if(end <= cut)
+                low++;
+            else if(start < cut)
+                return -1;
+        }
+        return low;
+    }
+
+    /**
+     * Returns first coordinate of the area along the axis.
+     * @param index index of the area.
+     * @param vertical true for the x coordinate, false for the y coordinate.
+     * @return first coordinate of the area.
+     */
+    private int start(int index, boolean vertical){
+        return vertical ? topLefts[index].getX() : topLefts[index].getY();
+    }
+
+    /**
+     * Returns first coordinate behind the area along the axis.
+     * @param index index of the area.
+     * @param vertical true for the x coordinate, false for the y coordinate.
+     * @return first coordinate behind the area.
+     */
+    private int end(int index, boolean vertical){
+        return start(index, vertical) + (vertical ? sizes[index].getX() : sizes[index].getY());
+    }
+
+    /** Node of the tree, either an inner node with a cut or a leaf with areas. */
+    private static final class Node {
+        /** True if the cut is vertical (splits x coordinates), false if horizontal. */
+        private final boolean vertical;
+        /** First coordinate of the high subtree. */
+        private final int cut;
+        /** Subtree with coordinates lower than cut. */
+        private final Node low;
+        /** Subtree with coordinates from cut up. */
+        private final Node high;
+        /** Indices of the areas in a leaf, null in an inner node. */
+        private final int[] indices;
+
+        /** Inner node constructor.
+         * @param vertical true if the cut is vertical.
+         * @param cut first coordinate of the high subtree.
+         * @param low subtree with lower coordinates.
+         * @param high subtree with coordinates from cut up. */
+        private Node(boolean vertical, int cut, Node low, Node high){
+            this.vertical = vertical;
+            this.cut = cut;
+            this.low = low;
+            this.high = high;
+            indices = null;
+        }
+
+        /** Leaf constructor.
+         * @param indices indices of the areas in the leaf. */
+        private Node(int[] indices){
+            vertical = false;
+            cut = 0;
+            low = null;
+            high = null;
+            this.indices = indices;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Logger;
+
+/**
+ * Pair of shared rings between master and a simulator process on the same host, in one memory-mapped file.
+ * <p>Master creates the file and sends it's path to the simulator over the socket, the simulator maps the same file.
+ * The first ring carries messages from master to the simulator, the second one the other way.
+ * The socket stays open as a lifeline, when it's closed the rings are closed, so either side finds out the other one exited.</p>
+ */
+public class SharedMemoryLink {
+    private static final Logger log = Logger.getLogger(SharedMemoryLink.class.getName());
+    /** Default capacity of each ring in bytes. */
+    public static final int DEFAULT_CAPACITY = 1 << 22;
+    /** Directory backed by memory on Linux, the file is created there if it exists. */
+    private static final String MEMORY_DIRECTORY = "/dev/shm";
+
+    /** Path of the mapped file. */
+    private final Path path;
+    /** True if this side created the file and deletes it on close. */
+    private final boolean owner;
+    /** Ring carrying messages from master to the simulator. */
+    private final SharedRing toSimulator;
+    /** Ring carrying messages from the simulator to master. */
+    private final SharedRing toMaster;
+
+    /**
+     * Shared memory link constructor, maps the file.
+     * @param path path of the file.
+     * @param capacity capacity of each ring in bytes, power of two.
+     * @param owner true if this side created the file.
+     * @throws IOException if the file can't be mapped.
+     */
+    private SharedMemoryLink(Path path, int capacity, boolean owner) throws IOException {
+        this.path = path;
+        this.owner = owner;
+        int ringSize = SharedRing.HEADER_SIZE + capacity;
+        MappedByteBuffer map;
+        //the mapping stays valid after the file channel is closed
+        try(FileChannel file = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)){
+            map = file.map(FileChannel.MapMode.READ_WRITE, 0, 2L * ringSize);
+        }
+        try {
+            toSimulator = new SharedRing(map.slice(0, ringSize), capacity);
+            toMaster = new SharedRing(map.slice(ringSize, ringSize), capacity);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    /**
+     * Creates a new zeroed file and maps it, used by master.
+     * @param capacity capacity of each ring in bytes, power of two.
+     * @return SharedMemoryLink over the new file.
+     * @throws IOException if the file can't be created or mapped.
+     */
+    public static SharedMemoryLink create(int capacity) throws IOException {
+        Path directory = Paths.get(MEMORY_DIRECTORY);
+        Path path = Files.isDirectory(directory) && Files.isWritable(directory) ?
+                Files.createTempFile(directory, "simulator", ".ring") : Files.createTempFile("simulator", ".ring");
+        path.toFile().deleteOnExit();
+        try {
+            return new SharedMemoryLink(path, capacity, true);
+        } catch (IOException e) {
+            Files.deleteIfExists(path);
+            throw e;
+        }
+    }
+
+    /**
+     * Maps file created by master, used by the simulator.
+     * @param path path of the file.
+     * @param capacity capacity of each ring in bytes.
+     * @return SharedMemoryLink over the file.
+     * @throws IOException if the file doesn't exist or can't be mapped.
+     */
+    public static SharedMemoryLink open(String path, int capacity) throws IOException {
+        Path file = Paths.get(path);
+        if(Files.size(file) != 2L * (SharedRing.HEADER_SIZE + capacity))
+            throw new IOException("Shared memory file has unexpected size.");
+        return new SharedMemoryLink(file, capacity, false);
+    }
+
+    /** Path getter.
+     * @return path of the mapped file. */
+    public String getPath(){
+        return path.toString();
+    }
+
+    /** Capacity getter.
+     * @return capacity of each ring in bytes. */
+    public int getCapacity(){
+        return toSimulator.getCapacity();
+    }
+
+    /** Returns ring carrying messages from master to the simulator.
+     * @return SharedRing written by master and read by the simulator. */
+    public SharedRing getToSimulator(){
+        return toSimulator;
+    }
+
+    /** Returns ring carrying messages from the simulator to master.
+     * @return SharedRing written by the simulator and read by master. */
+    public SharedRing getToMaster(){
+        return toMaster;
+    }
+
+    /**
+     * Starts a daemon thread reading the lifeline stream, the rings are closed when the stream ends.
+     * @param lifeline stream of the socket connecting master and the simulator, no more messages are sent through it.
+     */
+    public void closeWith(InputStream lifeline){
+        Thread thread = new Thread(() -> {
+            try {
+                while(lifeline.read() >= 0);
+            } catch (IOException e) {
+                log.fine("Lifeline of shared memory closed.");
+            }
+            close();
+        }, "SharedMemoryLifeline");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** Closes both rings, deletes the file if this side created it. */
+    public void close(){
+        toSimulator.close();
+        toMaster.close();
+        if(owner){
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                log.fine("Unable to delete shared memory file " + path);
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+import java.io.InterruptedIOException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+/**
+ * Single thread moving bytes between master and simulators connected through shared memory.
+ * <p>Shared memory can't notify the other process, so the thread polls the rings of all registered connections,
+ * spinning while messages flow and parking when the simulators are idle (see SharedRing.idle).
+ * Flushing connections wake the thread up, so their messages are written at once.</p>
+ */
+public class SharedMemoryPoller {
+    private static final Logger log = Logger.getLogger(SharedMemoryPoller.class.getName());
+
+    /** Connections using shared memory. */
+    private final CopyOnWriteArrayList<SocketSimulatorConnection> connections;
+    /** Thread polling the rings. */
+    private final Thread thread;
+
+    /** Shared memory poller constructor, starts the polling thread. */
+    public SharedMemoryPoller(){
+        connections = new CopyOnWriteArrayList<>();
+        thread = new Thread(this::run, "SharedMemoryPoller");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Starts polling rings of the connection. Can be called from any thread.
+     * @param connection connection that switched to shared memory.
+     */
+    public void register(SocketSimulatorConnection connection){
+        connections.add(connection);
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Stops polling rings of the connection. Can be called from any thread.
+     * @param connection closed connection.
+     */
+    public void unregister(SocketSimulatorConnection connection){
+        connections.remove(connection);
+    }
+
+    /** Wakes the polling thread up to write bytes buffered by a connection. Can be called from any thread. */
+    public void requestWrite(){
+        LockSupport.unpark(thread);
+    }
+
+    /** Function running in the polling thread. */
+    private void run(){
+        int idleRounds = 0;
+        while(true){
+            boolean busy = false;
+            for(SocketSimulatorConnection connection : connections){
+                busy |= connection.pollSharedMemory();
+            }
+            if(busy){
+                idleRounds = 0;
+            }else if(connections.isEmpty()){
+                LockSupport.park(this);
+            }else{
+                try {
+                    SharedRing.idle(idleRounds++);
+                } catch (InterruptedIOException e) {
+                    log.severe("Shared memory poller interrupted.");
+                    return;
+                }
+            }
+        }
+    }
+}
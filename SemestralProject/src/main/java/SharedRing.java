@@ -0,0 +1,226 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single-producer single-consumer byte ring buffer in a memory region shared by two processes (part of a memory-mapped file).
+ * <p>The region starts with a header - write position (stored only by the producer), closed flag and read position
+ * (stored only by the consumer, on a separate cache line), followed by the data. Positions only grow, a byte is stored
+ * at position modulo capacity. Bytes are published by storing the write position with release semantics
+ * and freed by storing the read position, the other side loads the positions with acquire semantics, so no lock is needed.</p>
+ * <p>Channel methods don't block. Streams returned by inputStream and outputStream block by spinning and then parking,
+ * as the other process can't wake the thread up.</p>
+ */
+public class SharedRing implements ReadableByteChannel, WritableByteChannel {
+    /** Size of the header in bytes. */
+    public static final int HEADER_SIZE = 128;
+    /** Offset of the write position in the header. */
+    private static final int WRITE_POSITION = 0;
+    /** Offset of the closed flag in the header. */
+    private static final int CLOSED = 8;
+    /** Offset of the read position in the header. */
+    private static final int READ_POSITION = 64;
+    /** Number of idle rounds spent spinning before parking. */
+    private static final int SPINS = 1000;
+    /** Number of idle rounds parked for SHORT_PARK, longer idle rounds park for LONG_PARK. */
+    private static final int SHORT_PARKS = 2000;
+    /** Park time of a short idle round in nanoseconds. */
+    private static final long SHORT_PARK = 50_000;
+    /** Park time of a long idle round in nanoseconds. */
+    private static final long LONG_PARK = 1_000_000;
+    /** Access to the positions in the header with memory ordering. */
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    /** Header of the ring. */
+    private final ByteBuffer header;
+    /** Data of the ring. */
+    private final ByteBuffer data;
+    /** Capacity of the ring in bytes, power of two. */
+    private final int capacity;
+    /** Mask giving index in the data from a position. */
+    private final int mask;
+    /** True after this side closed the ring. */
+    private volatile boolean closed;
+
+    /**
+     * Shared ring constructor.
+     * @param region shared memory region of HEADER_SIZE + capacity bytes, zeroed before the first side uses it.
+     * @param capacity capacity of the ring in bytes, must be a power of two.
+     */
+    public SharedRing(ByteBuffer region, int capacity){
+        if(capacity <= 0 || Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("Capacity of the ring must be a power of two.");
+        header = region.slice(0, HEADER_SIZE);
+        data = region.slice(HEADER_SIZE, capacity);
+        this.capacity = capacity;
+        mask = capacity - 1;
+        closed = false;
+    }
+
+    /** Capacity getter.
+     * @return capacity of the ring in bytes. */
+    public int getCapacity(){
+        return capacity;
+    }
+
+    /**
+     * Reads available bytes, doesn't block. Must be called only by the consumer.
+     * @param dst buffer to read the bytes to.
+     * @return number of read bytes, 0 if no bytes are available, -1 if the ring is closed and all bytes were read.
+     * @throws IOException never, required by the interface.
+     */
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        long read = (long) LONGS.getOpaque(header, READ_POSITION);
+        long write = (long) LONGS.getAcquire(header, WRITE_POSITION);
+        if(write == read){
+            if(!isClosed())
+                return 0;
+            //bytes written before closing are visible after the flag
+            write = (long) LONGS.getAcquire(header, WRITE_POSITION);
+            if(write == read)
+                return -1;
+        }
+        int count = (int) Math.min(write - read, dst.remaining());
+        int index = (int) (read & mask);
+        int first = Math.min(count, capacity - index);
+        dst.put(data.slice(index, first));
+        dst.put(data.slice(0, count - first));
+        LONGS.setRelease(header, READ_POSITION, read + count);
+        return count;
+    }
+
+    /**
+     * Writes as many bytes as fit into the ring, doesn't block. Must be called only by the producer.
+     * @param src buffer to write the bytes from.
+     * @return number of written bytes, 0 if the ring is full.
+     * @throws IOException if either side closed the ring.
+     */
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        if(isClosed())
+            throw new ClosedChannelException();
+        long write = (long) LONGS.getOpaque(header, WRITE_POSITION);
+        long read = (long) LONGS.getAcquire(header, READ_POSITION);
+        int count = (int) Math.min(capacity - (write - read), src.remaining());
+        if(count == 0)
+            return 0;
+        int index = (int) (write & mask);
+        int first = Math.min(count, capacity - index);
+        int limit = src.limit();
+        src.limit(src.position() + first);
+        data.slice(index, first).put(src);
+        src.limit(src.position() + count - first);
+        data.slice(0, count - first).put(src);
+        src.limit(limit);
+        LONGS.setRelease(header, WRITE_POSITION, write + count);
+        return count;
+    }
+
+    /** Returns true if neither side closed the ring.
+     * @return true if the ring is open. */
+    @Override
+    public boolean isOpen(){
+        return !isClosed();
+    }
+
+    /** Returns true if either side closed the ring.
+     * @return true if the ring is closed. */
+    private boolean isClosed(){
+        return closed || (long) LONGS.getAcquire(header, CLOSED) != 0;
+    }
+
+    /** Closes the ring for both sides, the consumer can still read bytes written before. */
+    @Override
+    public void close(){
+        closed = true;
+        LONGS.setRelease(header, CLOSED, 1L);
+    }
+
+    /**
+     * Returns stream reading from the ring, reading blocks until some bytes are available.
+     * @return InputStream reading from the ring.
+     */
+    public InputStream inputStream(){
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] bytes, int offset, int length) throws IOException {
+                if(length == 0)
+                    return 0;
+                ByteBuffer dst = ByteBuffer.wrap(bytes, offset, length);
+                int round = 0;
+                int read = SharedRing.this.read(dst);
+                while(read == 0){
+                    idle(round++);
+                    read = SharedRing.this.read(dst);
+                }
+                return read;
+            }
+
+            @Override
+            public void close(){
+                SharedRing.this.close();
+            }
+        };
+    }
+
+    /**
+     * Returns stream writing to the ring, writing blocks until all bytes fit into the ring.
+     * @return OutputStream writing to the ring.
+     */
+    public OutputStream outputStream(){
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                ByteBuffer src = ByteBuffer.wrap(bytes, offset, length);
+                int round = 0;
+                while(src.hasRemaining()){
+                    if(SharedRing.this.write(src) == 0)
+                        idle(round++);
+                    else
+                        round = 0;
+                }
+            }
+
+            @Override
+            public void close(){
+                SharedRing.this.close();
+            }
+        };
+    }
+
+    /**
+     * Waits a moment for the other process, spins first, then parks for a short time and after long idleness for a longer time.
+     * @param round number of idle rounds in a row before this one.
+     * @throws InterruptedIOException if the thread is interrupted.
+     */
+    public static void idle(int round) throws InterruptedIOException {
+        if(round < SPINS){
+            Thread.onSpinWait();
+            return;
+        }
+        LockSupport.parkNanos(round < SPINS + SHORT_PARKS ? SHORT_PARK : LONG_PARK);
+        if(Thread.interrupted())
+            throw new InterruptedIOException();
+    }
+}
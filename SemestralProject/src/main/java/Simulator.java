@@ -1,83 +1,235 @@
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 import java.util.logging.Logger;
 
 /**
  * Main class of simulator slave app, holds the grid for this simulators respective area.
  * Handles commands from master, generates acknowledgements.
+ * <p>The area is divided into regions, each region is moved and has it's health calculated by a separate worker thread.</p>
+ * <p>People are kept in a PeopleTable, regions and locations refer to them by their rows.
+ * Person objects are only received from and sent to other simulators.</p>
  */
 public class Simulator {
     private static Logger log = Logger.getLogger(Simulator.class.getName());
+    /** Number of worker threads running the round phases. */
+    private final int threadCount;
+    /** Pool of worker threads running the round phases. */
+    private final ExecutorService workers;
     /** Top-left corner of this simulator's active area. */
     private Position topLeft;
     /** Size of this simulator's active area. */
     private Position size;
-    /** Current hour of day of the simulation */
+    /** Current hour of the simulation (number of rounds run), hour of day is hour % 24. */
     private int hour;
-    /** 2D array of all positions in this simulator's active area. */
-    private Location[][] tiles;
-    /** List of all persons in this simulator's active area. */
-    private List<Person> people;
-    /** List of people awaiting confirmation. */
-    private List<Person> awaitingConfirmation;
+    /** People of this simulator, including people waiting for confirmation. */
+    private PeopleTable people;
+    /** Regions of this simulator's area, each holds people currently located on it's tiles and grid of the tiles. */
+    private SimulatorRegion[] regions;
+    /** Whether the area is divided into regions along x axis (true) or y axis (false). */
+    private boolean regionsAlongX;
+    /** Rows of people sent to master or peers and awaiting confirmation, by their personal numbers. */
+    private ConcurrentHashMap<Integer, Integer> awaitingConfirmation;
     /** Currently active contagion spread parameters. */
     private ContagionParameters contagionParameters;
+    /** Direct connections to simulators with adjacent areas, null if people are sent only through master. */
+    private volatile PeerNetwork peers;
 
-    /** Sets up the simulator to the given world size, prepares grid for locations.
+    /** Simulator constructor, uses one worker thread per available processor. */
+    public Simulator(){
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /** Simulator constructor.
+     * @param threadCount number of worker threads to run the round phases on. */
+    public Simulator(int threadCount){
+        this.threadCount = Math.max(threadCount, 1);
+        workers = Executors.newFixedThreadPool(this.threadCount);
+    }
+
+    /** Thread count getter.
+     * @return number of worker threads the round phases run on. */
+    public int getThreadCount(){
+        return threadCount;
+    }
+
+    /** Sets up the simulator to the given world size, prepares empty sparse grids for locations.
      * @param topLeft most top-left position in this simulator's area.
-     * @param size size of this simulator's area */
-    public void setSimulator(Position topLeft, Position size){
+     * @param size size of this simulator's area
+     * @param seed simulation seed shared by all simulators. */
+    public void setSimulator(Position topLeft, Position size, long seed){
         this.topLeft = topLeft;
         this.size = size;
-        tiles = new Location[size.getX()][size.getY()];
-        for(int i = 0; i < size.getX(); i++){
-            for (int j = 0; j < size.getY(); j++) {
-                tiles[i][j] = new Location(topLeft.add(new Position(i, j)));
+        hour = 0;
+        people = new PeopleTable(seed);
+        createRegions();
+        awaitingConfirmation = new ConcurrentHashMap<>();
+    }
+
+    /** Hour getter.
+     * @return current hour of the simulation (number of rounds run). */
+    public int getHour(){
+        return hour;
+    }
+
+    /** Top-left corner getter.
+     * @return most top-left position in this simulator's area. */
+    public Position getTopLeft(){
+        return topLeft;
+    }
+
+    /** Size getter.
+     * @return size of this simulator's area. */
+    public Position getSize(){
+        return size;
+    }
+
+    /** Sets connections to simulators with adjacent areas, people moving to their areas are sent to them directly.
+     * @param peers linked peer network, or null to send all people through master. */
+    public void setPeers(PeerNetwork peers){
+        this.peers = peers;
+    }
+
+    /** Divides the area to one strip per worker thread along it's longer side. */
+    private void createRegions(){
+        regionsAlongX = size.getX() >= size.getY();
+        int length = regionsAlongX ? size.getX() : size.getY();
+        int width = regionsAlongX ? size.getY() : size.getX();
+        int count = Math.max(Math.min(threadCount, length), 1);
+        regions = new SimulatorRegion[count];
+        for(int i = 0; i < count; i++){
+            int start = i * length / count;
+            int end = (i + 1) * length / count;
+            regions[i] = regionsAlongX ?
+                    new SimulatorRegion(new Position(start, 0), new Position(end - start, width), people) :
+                    new SimulatorRegion(new Position(0, start), new Position(width, end - start), people);
+        }
+    }
+
+    /** Returns region containing the tile with given index.
+     * @param index index of the tile in tile grid (position relative to this simulator's top-left corner).
+     * @return region holding the tile. */
+    private SimulatorRegion getRegion(Position index){
+        return getRegion(index.getX(), index.getY());
+    }
+
+    /** Returns region containing the tile with given index.
+     * @param indexX x index of the tile (x coordinate relative to this simulator's top-left corner).
+     * @param indexY y index of the tile (y coordinate relative to this simulator's top-left corner).
+     * @return region holding the tile. */
+    private SimulatorRegion getRegion(int indexX, int indexY){
+        if(regionsAlongX)
+            return regions[(int) ((long) indexX * regions.length / size.getX())];
+        return regions[(int) ((long) indexY * regions.length / size.getY())];
+    }
+
+    /** Runs the task for every region on worker threads and waits until all of them finish.
+     * @param task task to run for each region. */
+    private void runOnRegions(Consumer<SimulatorRegion> task){
+        List<Callable<Void>> tasks = new ArrayList<>(regions.length);
+        for(SimulatorRegion region : regions){
+            tasks.add(() -> {
+                task.accept(region);
+                return null;
+            });
+        }
+        try {
+            for(Future<Void> f : workers.invokeAll(tasks)){
+                f.get();
             }
+        } catch (InterruptedException e) {
+            log.severe("Simulator workers interrupted.");
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.severe("Simulator worker failed: " + e.getCause());
+            throw new IllegalStateException(e.getCause());
         }
-        hour = 0;
-        people = new ArrayList<>();
-        awaitingConfirmation = new ArrayList<>();
     }
 
     /** Moves all the people to their new location (move part of the round.)
-     * This function sends confirmation to the master at the end.
-     * @param connection connection to use to send people who want to leave this simulators area. */
-    public void movePeople(MasterConnection connection){
+     * People leaving this simulators area are sent in batches ordered by personal number to each peer owning
+     * their target positions, the rest is returned to be sent through master. People moving to adjacent simulators
+     * are exchanged with the peers before this function returns.
+     * @return List of people leaving to areas of simulators that aren't peers, ordered by personal number. */
+    public List<WaitingPerson> movePeople(){
         hour++;
-        for(Person p : people){
+        people.setRound(hour);
+        runOnRegions(this::movePeople);
+        List<WaitingPerson> leaving = new ArrayList<>();
+        for(SimulatorRegion region : regions){
+            region.passHandedOver();
+            region.drainLeaving(leaving);
+        }
+        runOnRegions(region -> region.getTiles().reclaim());
+        leaving.sort(Comparator.comparingInt(wp -> wp.getPerson().getPersonalNumber()));
+        PeerNetwork network = peers;
+        if(network != null){
+            leaving = network.sendPeople(leaving);
+            network.exchange(this);
+        }
+        return leaving;
+    }
+
+    /** Moves people of one region.
+     * People moving to another region of this simulator are handed over to it after all regions are moved,
+     * people leaving this simulators area are recorded by the region and sent after all regions are moved.
+     * @param region region to move people of. */
+    private void movePeople(SimulatorRegion region){
+        PeopleIndex members = region.getPeople();
+        for(int i = 0; i < members.size(); i++){
+            int p = members.getAt(i);
             //don't move dead people
-            if(p.getHealth() == PersonHealth.deceased)
+            if(people.getHealth(p) == PersonHealth.deceased)
                 continue;
             //get position to move to from alive people
-            Position pos = p.move(hour % 24, contagionParameters);
+            long pos = people.move(p, contagionParameters);
+            int x = PackedPosition.getX(pos);
+            int y = PackedPosition.getY(pos);
 
             //move person if target position is inside this simulator
-            if(pos.isInArea(topLeft, size)){
-                Position index = pos.subtract(topLeft);
-                p.visitLocation(tiles[index.getX()][index.getY()], contagionParameters);
+            if(PackedPosition.isInArea(x, y, topLeft, size)){
+                SimulatorRegion target = getRegion(x - topLeft.getX(), y - topLeft.getY());
+                Location location = target.getTiles().getOrCreate(x, y);
+                if(people.visit(p, location, contagionParameters) && target != region){
+                    //swap-remove the person and process the person swapped in on the same index
+                    members.removeAt(i);
+                    i--;
+                    region.handOver(p, target);
+                }
             }
-            //send person to master if target position is outside this simulator
+            //send person to peer or master if target position is outside this simulator
             else {
-                connection.sendPerson(p, pos);
-                awaitingConfirmation.add(p);
+                awaitingConfirmation.put(people.getPersonalNumber(p), p);
+                region.leave(p, pos);
             }
         }
     }
 
     /** Updates health status of people based on spread of the desease. (spread part of the round.)
+     * Only tiles with infectious visitors are processed, others can't change anybody's health.
      * This function sends confirmation to the master at the end.*/
     public void calculateHealth(){
-        for(int x = 0; x < size.getX(); x++){
-            for(int y = 0; y < size.getY(); y++){
-                tiles[x][y].calculateVisitorsHealth(contagionParameters);
-            }
-        }
+        runOnRegions(this::calculateHealth);
+    }
+
+    /** Updates health status of people on tiles of one region.
+     * @param region region to calculate health in. */
+    private void calculateHealth(SimulatorRegion region){
+        region.getTiles().forEachActive(location -> location.calculateVisitorsHealth(contagionParameters));
     }
 
     /** Tries to add new person to target location.
+     *  The person is copied to this simulator's people table, so it's random outcomes are given by this simulation's
+     *  seed and current hour and don't depend on the simulator.
      *  Return positive or negative confirmation of accepting the Person on the new position.
-     *  @param person person to add.
+     *  @param person person to add, it isn't referenced by the simulator.
      *  @param targetPosition position the person want's to visit.
      *  @return boolean - true if person was accepted, false otherwise. */
     public boolean addPerson(Person person, Position targetPosition){
@@ -86,13 +238,16 @@ public class Simulator {
             log.severe("Person " + person.getPersonalNumber() + " target position out of this simulators area.");
             return false;
         }
-        //get location index of target position
-        Position index = targetPosition.subtract(topLeft);
+        //get region of target position
+        SimulatorRegion region = getRegion(targetPosition.subtract(topLeft));
+        Location location = region.getTiles().getOrCreate(targetPosition.getX(), targetPosition.getY());
         //try to visit the location and add the person this simulators people on success
-        if(person.visitLocation(tiles[index.getX()][index.getY()], contagionParameters)){
-            people.add(person);
+        int p = people.add(person);
+        if(people.visit(p, location, contagionParameters)){
+            region.add(p);
             return true;
         }
+        people.remove(p);
         return false;
     }
 
@@ -102,23 +257,79 @@ public class Simulator {
      * @param confirmation true if person was accepted by other simulator, false otherwise.
      */
     public void confirmPerson(int personalNumber, boolean confirmation){
-        for(Person p : awaitingConfirmation){
-            if(p.getPersonalNumber() == personalNumber){
-                if(confirmation){
-                    p.leaveCurrentLocation();
+        Integer p = awaitingConfirmation.remove(personalNumber);
+        if(p != null && confirmation){
+            long tile = people.getPackedTile(p);
+            getRegion(PackedPosition.getX(tile) - topLeft.getX(), PackedPosition.getY(tile) - topLeft.getY())
+                    .remove(personalNumber);
+            people.remove(p);
+        }
+    }
+
+    /** Changes this simulator's area between rounds. Locations and people in the kept part of the area stay,
+     * the rest is removed, so it can be moved to the simulators that got that part of the world.
+     * @param topLeft new top-left corner of this simulator's area.
+     * @param size new size of this simulator's area.
+     * @param releasedLocations list to add removed locations of special types to, default locations aren't added.
+     * @param releasedPeople list to add removed people to, with positions they stand on, ordered by personal number. */
+    public void resize(Position topLeft, Position size, List<Location> releasedLocations, List<WaitingPerson> releasedPeople){
+        SimulatorRegion[] previous = regions;
+        this.topLeft = topLeft;
+        this.size = size;
+        createRegions();
+        for(SimulatorRegion region : previous){
+            region.getTiles().forEach(location -> {
+                Position position = location.getPosition();
+                if(position.isInArea(topLeft, size))
+                    getRegion(position.subtract(topLeft)).getTiles().put(location);
+                else if(location.getType() != ExtractLocation.Type.defaultL)
+                    releasedLocations.add(location);
+            });
+            PeopleIndex members = region.getPeople();
+            for(int i = 0; i < members.size(); i++){
+                int p = members.getAt(i);
+                Position position = PackedPosition.toPosition(people.getPackedTile(p));
+                if(position.isInArea(topLeft, size)){
+                    getRegion(position.subtract(topLeft)).add(p);
+                }else{
+                    releasedPeople.add(new WaitingPerson(people.toPerson(p), position, null));
                     people.remove(p);
                 }
-                awaitingConfirmation.remove(p);
-                return;
             }
         }
+        for(Location location : releasedLocations){
+            location.setGrid(null);
+        }
+        releasedPeople.sort(Comparator.comparingInt(wp -> wp.getPerson().getPersonalNumber()));
+    }
+
+    /** Adds people moved to this simulator together with the tiles they stand on.
+     * Unlike addPerson, rules of the locations aren't checked, the people already stood there.
+     * Locations of special types on the tiles must be added before.
+     * @param people people with positions they stand on. */
+    public void adoptPeople(List<WaitingPerson> people){
+        for(WaitingPerson wp : people){
+            Person person = wp.getPerson();
+            Position position = wp.getTargetPosition();
+            if(!position.isInArea(topLeft, size)){
+                log.severe("Adopted person " + person.getPersonalNumber() + " out of this simulators area.");
+                continue;
+            }
+            SimulatorRegion region = getRegion(position.subtract(topLeft));
+            int p = this.people.add(person);
+            this.people.placeAt(p, region.getTiles().getOrCreate(position.getX(), position.getY()));
+            region.add(p);
+        }
     }
 
     /** Adds the given location to the grid on it's position.
      * @param location location to add.*/
     public void addLocation(Location location){
-        Position index = location.getPosition().subtract(topLeft);
-        tiles[index.getX()][index.getY()] = location;
+        if(!location.getPosition().isInArea(topLeft, size)){
+            log.severe("Location " + location.getPosition() + " out of this simulators area.");
+            return;
+        }
+        getRegion(location.getPosition().subtract(topLeft)).getTiles().put(location);
     }
 
     /** Updates this simulators contagion parameters to the passed ones.
@@ -128,69 +339,33 @@ public class Simulator {
     }
 
     /** Calculates the counts people with different health statuses.
+     * Counts are maintained by the tile grids, so this doesn't iterate people.
      * @return Stats - counts of people of a certain health status (order: healthy, infected, cured, quarantined, deceased, vaccinated) */
     public Stats getStats(){
         Stats ret = new Stats();
-        for(Person p : people){
-            ret.countPerson(p);
+        for(SimulatorRegion region : regions){
+            region.getTiles().addStats(ret);
         }
         return ret;
     }
 
-    /** Returns array of all locations in the given area's intersection with this simulator's active area.
+    /** Returns array of all materialized locations in the given area's intersection with this simulator's active area.
+     * Tiles that nobody visits and that have no special type are left out.
      * @param topLeft position of the top-left corner of requested area.
      * @param size Position(vector) of the x and y coordinate sizes of the requested area.
      * @return array of locations in the given area. */
     public Location[] getArea(Position topLeft, Position size){
-        //find intersection
         log.fine("Get area - topLeft: " + topLeft.toString() + "; size: " + size.toString());
-        Position intersectSize = calculateInnerAreaSize(topLeft, size);
-        log.finer("Intersection size: " + intersectSize);
-
-        if(intersectSize.getX() == 0 && intersectSize.getY() == 0)
-            return null; //if the intersection is empty
-
-        //extract locations to 1D array
-        Location[] ret = new Location[intersectSize.getX() * intersectSize.getY()];
-        Position index = topLeft.subtract(this.topLeft);
-        index = new Position(Math.max(index.getX(), 0), Math.max(index.getY(), 0));
-        for(int x = 0; x < intersectSize.getX(); x++){
-            for(int y = 0; y < intersectSize.getY(); y++){
-                ret[x * intersectSize.getY() + y] = tiles[index.getX() + x][index.getY() + y];
-            }
+        List<Location> area = new ArrayList<>();
+        for(SimulatorRegion region : regions){
+            region.getTiles().addArea(topLeft, size, area);
         }
-        return ret;
-    }
-
-    /** Calculates the size of given area's intersection with this simulators area
-     * @param topLeft top-left corner of the area.
-     * @param size size of the area.
-     * @return Position - width and height of the intersection. */
-    private Position calculateInnerAreaSize(Position topLeft, Position size){
-        Position thisBottomRight = this.topLeft.add(this.size);
-        Position bottomRight = topLeft.add(size);
-
-        int startX = trimInt(this.topLeft.getX(), thisBottomRight.getX(), topLeft.getX());
-        int endX = trimInt(this.topLeft.getX(), thisBottomRight.getX(), bottomRight.getX());
-
-        int startY = trimInt(this.topLeft.getY(), thisBottomRight.getY(), topLeft.getY());
-        int endY = trimInt(this.topLeft.getY(), thisBottomRight.getY(), bottomRight.getY());
-
-        return new Position(endX - startX, endY - startY);
+        return area.toArray(new Location[0]);
     }
 
-    /** Returns value closest to the given value that is from interval <min;max>
-     * @param min smallest value to return
-     * @param max largest value to return
-     * @param value value to trim
-     * @return trimmed value. */
-    private int trimInt(int min, int max, int value){
-        if(value < min)
-            return min;
-        else if(value > max)
-            return max;
-        else
-            return value;
+    /** Stops the worker threads, simulator can't run any more rounds afterwards. */
+    public void shutdown(){
+        workers.shutdown();
     }
 
 }
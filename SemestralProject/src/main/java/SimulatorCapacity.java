@@ -0,0 +1,196 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+/**
+ * Capacity of a simulator reported to the master when connecting - processors, worker threads, maximal heap
+ * and optionally score of a short self-benchmark.
+ * <p>Master divides the world in proportion to weights of the simulators, so simulators on bigger machines
+ * get more people.</p>
+ */
+public class SimulatorCapacity {
+    private static final Logger log = Logger.getLogger(SimulatorCapacity.class.getName());
+    /** System property making simulators run the self-benchmark when asked for capacity, "true" to run it. */
+    public static final String BENCHMARK_PROPERTY = "simulation.benchmark";
+    /** Duration of the self-benchmark in milliseconds. */
+    private static final long BENCHMARK_TIME = 200;
+    /** Number of benchmark iterations between checks of the time. */
+    private static final int BENCHMARK_BATCH = 1 << 12;
+
+    /** Number of processors available to the simulators JVM. */
+    private final int processors;
+    /** Number of worker threads of the simulator. */
+    private final int threads;
+    /** Maximal heap of the simulators JVM in bytes. */
+    private final long maxMemory;
+    /** Thousands of benchmark iterations per millisecond done by all worker threads, 0 if the benchmark wasn't run. */
+    private final double benchmarkScore;
+
+    /** Simulator capacity constructor.
+     * @param processors number of processors available to the simulators JVM.
+     * @param threads number of worker threads of the simulator.
+     * @param maxMemory maximal heap of the simulators JVM in bytes.
+     * @param benchmarkScore score of the self-benchmark, 0 if it wasn't run. */
+    public SimulatorCapacity(int processors, int threads, long maxMemory, double benchmarkScore){
+        this.processors = processors;
+        this.threads = threads;
+        this.maxMemory = maxMemory;
+        this.benchmarkScore = benchmarkScore;
+    }
+
+    /**
+     * Measures capacity of this JVM for a simulator.
+     * @param threads number of worker threads of the simulator.
+     * @param benchmark true to run the self-benchmark on the worker threads.
+     * @return SimulatorCapacity of this JVM.
+     */
+    public static SimulatorCapacity measure(int threads, boolean benchmark){
+        Runtime runtime = Runtime.getRuntime();
+        return new SimulatorCapacity(runtime.availableProcessors(), threads, runtime.maxMemory(),
+                benchmark ? benchmark(threads) : 0);
+    }
+
+    /**
+     * Runs the self-benchmark - mixing of random numbers on all worker threads for BENCHMARK_TIME.
+     * @param threads number of threads to run the benchmark on.
+     * @return thousands of iterations per millisecond done by all threads, 0 if the benchmark failed.
+     */
+    private static double benchmark(int threads){
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Callable<Long>> tasks = new ArrayList<>(threads);
+        for(int t = 0; t < threads; t++){
+            long seed = t;
+            tasks.add(() -> {
+                long end = System.nanoTime() + BENCHMARK_TIME * 1000000;
+                long iterations = 0;
+                long z = seed;
+                while(System.nanoTime() < end){
+                    for(int i = 0; i < BENCHMARK_BATCH; i++){
+                        z = CounterRandom.mix(z + i);
+                    }
+                    iterations += BENCHMARK_BATCH;
+                }
+                //keeps the loop from being optimized away
+                return z == 0 ? iterations + 1 : iterations;
+            });
+        }
+        long total = 0;
+        try {
+            for(Future<Long> result : executor.invokeAll(tasks)){
+                total += result.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        } catch (ExecutionException e) {
+            log.severe("Self-benchmark failed.");
+            return 0;
+        } finally {
+            executor.shutdown();
+        }
+        return total / 1000.0 / BENCHMARK_TIME;
+    }
+
+    /**
+     * Returns weights of the simulators to divide the world by, they sum to 1.
+     * <p>Computing power is the benchmark score if all simulators ran the benchmark, otherwise number of worker
+     * threads limited by the processors. Share of a simulator is further limited by its share of heap memory,
+     * so a simulator with many processors but small heap doesn't get more people than it can hold.</p>
+     * @param capacities capacities of the simulators.
+     * @return double[] - weights by simulator index.
+     */
+    public static double[] weights(SimulatorCapacity[] capacities){
+        boolean benchmarked = true;
+        for(SimulatorCapacity capacity : capacities){
+            benchmarked &= capacity.benchmarkScore > 0;
+        }
+        double[] power = new double[capacities.length];
+        double[] memory = new double[capacities.length];
+        for(int i = 0; i < capacities.length; i++){
+            SimulatorCapacity capacity = capacities[i];
+            power[i] = benchmarked ? capacity.benchmarkScore : Math.max(1, Math.min(capacity.threads, capacity.processors));
+            memory[i] = Math.max(1, capacity.maxMemory);
+        }
+        normalize(power);
+        normalize(memory);
+        double[] weights = new double[capacities.length];
+        for(int i = 0; i < capacities.length; i++){
+            weights[i] = Math.min(power[i], memory[i]);
+        }
+        normalize(weights);
+        return weights;
+    }
+
+    /**
+     * Divides the values by their sum.
+     * @param values values to normalize.
+     */
+    private static void normalize(double[] values){
+        double sum = 0;
+        for(double value : values){
+            sum += value;
+        }
+        for(int i = 0; i < values.length; i++){
+            values[i] /= sum;
+        }
+    }
+
+    /** Processors getter.
+     * @return number of processors available to the simulators JVM. */
+    public int getProcessors(){
+        return processors;
+    }
+
+    /** Threads getter.
+     * @return number of worker threads of the simulator. */
+    public int getThreads(){
+        return threads;
+    }
+
+    /** Maximal memory getter.
+     * @return maximal heap of the simulators JVM in bytes. */
+    public long getMaxMemory(){
+        return maxMemory;
+    }
+
+    /** Benchmark score getter.
+     * @return thousands of benchmark iterations per millisecond, 0 if the benchmark wasn't run. */
+    public double getBenchmarkScore(){
+        return benchmarkScore;
+    }
+
+    /** Writes the capacity to the buffer in binary form: int processors, int threads, long max_memory, double score.
+     * @param buffer buffer to write to. */
+    public void writeTo(WireBuffer buffer){
+        buffer.putInt(processors);
+        buffer.putInt(threads);
+        buffer.putLong(maxMemory);
+        buffer.putDouble(benchmarkScore);
+    }
+
+    /** Reads capacity from it's binary representation (see writeTo).
+     * @param buffer buffer to read from.
+     * @return SimulatorCapacity read from the buffer. */
+    public static SimulatorCapacity readFrom(WireBuffer buffer){
+        return new SimulatorCapacity(buffer.getInt(), buffer.getInt(), buffer.getLong(), buffer.getDouble());
+    }
+
+    /** Parses capacity from it's text form (see toString).
+     * @param capacityString text form of the capacity.
+     * @return SimulatorCapacity parsed from the text. */
+    public static SimulatorCapacity parseCapacity(String capacityString){
+        String[] split = capacityString.split(",");
+        return new SimulatorCapacity(Integer.parseInt(split[0]), Integer.parseInt(split[1]),
+                Long.parseLong(split[2]), Double.parseDouble(split[3]));
+    }
+
+    @Override
+    public String toString(){
+        return processors + "," + threads + "," + maxMemory + "," + benchmarkScore;
+    }
+}
@@ -1,345 +1,219 @@
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.net.Socket;
-import java.util.LinkedList;
-import java.util.NoSuchElementException;
-import java.util.logging.Logger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
- * Class encapsulating the network communication with one simulator from the masters side.
+ * Connection to one simulator from the masters side.
+ * <p>Commands don't block the calling thread, they return a future completed when the simulator executed them.
+ * The simulator executes the commands in order they were sent.
+ * SocketSimulatorConnection talks to a simulator application over network, LocalSimulatorConnection drives
+ * a simulator running in the masters process.</p>
  */
-public class SimulatorConnection {
-    private static final Logger log = Logger.getLogger(SimulatorConnection.class.getName());
-    private final Socket socket;
-    private final BufferedReader reader;
-    private final OutputStreamWriter writer;
-
-    /** top-left corner of connected simulators area. */
-    private Position topLeft;
-    /** size of connected simulators area. */
-    private Position size;
-    /** List of confirmation waiting to be send to simulator. */
-    private final LinkedList<WaitingPersonConfirmation> waitingConfirms;
-    /** List of people wanting to visit the simulator and waiting for confirmation. */
-    private final LinkedList<WaitingPerson> waitingPeople;
-
-    /**
-     * Simulator connection constructor. Extracts input and output streams from the socket.
-     * @param socket socket connected to the simulator.
-     * @throws IOException in case of error with extracting the input/output streams.
-     */
-    public SimulatorConnection(Socket socket) throws IOException {
-        this.socket = socket;
-        reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-        writer = new OutputStreamWriter(socket.getOutputStream());
-        waitingConfirms = new LinkedList<>();
-        waitingPeople = new LinkedList<>();
-    }
-
+public interface SimulatorConnection {
     /**
      * Pings the simulator to find out if the simulator is still connected.
      * @return true if simulator is connected, false if communication fails. (doesn't throw exception)
      */
-    public boolean pingSimulator(){
+    default boolean pingSimulator(){
         try {
-            sendString("Ping\n");
-            String line = listen();
-            if(!line.equals("Ping"))
-                log.severe("Received unexpected string\nExpected: Ping\nReceived: " + line);
+            await(sendPing());
             return true;
         }catch (SimulatorConnectionException e){
             return false;
         }
     }
 
-    /** Simulator connection constructor.
+    /**
+     * Sends ping to the simulator without waiting for the answer.
+     * @return future completed when the simulator answers, completed exceptionally if communication fails.
+     */
+    CompletableFuture<Void> sendPing();
+
+    /** Sets up the simulator and waits until it's done.
      * @param topLeft top-left corner of connected simulators area.
      * @param size size of connected simulators area.
+     * @param seed simulation seed.
      * @throws SimulatorConnectionException in case of error in communication between master and simulator.*/
-    public void initSimulator(Position topLeft, Position size) throws SimulatorConnectionException {
-        this.topLeft = topLeft;
-        this.size=size;
-        sendSetUp(topLeft, size);
-    }
+    void initSimulator(Position topLeft, Position size, long seed) throws SimulatorConnectionException;
 
     /**
      * Adds a person to the list of waiting people
      * @param person person to add to the list
      */
-    public void addToWaitingPeople(WaitingPerson person){
-        synchronized (waitingPeople){
-            waitingPeople.add(person);
-        }
-    }
-
-    /**
-     * Gets a person from the top of list of waiting people.
-     * @return a waiting person if there are any, or null.
-     */
-    private WaitingPerson popFromWaitingPeople(){
-        WaitingPerson wp;
-        synchronized (waitingPeople){
-            try{
-                wp = waitingPeople.pop();
-            }catch (NoSuchElementException e){
-                wp = null;
-            }
-        }
-        return wp;
-    }
+    void addToWaitingPeople(WaitingPerson person);
 
     /**
      * Sends all waiting people to the simulator and passes confirmations to the simulator of origin.
-     * @throws SimulatorConnectionException in case connection to the simulator is lost.
+     * @return future completed when all the people are confirmed, or completed exceptionally if connection to the simulator is lost.
      */
-    public void resolveWaitingPeople() throws SimulatorConnectionException {
-        WaitingPerson wp = popFromWaitingPeople();
-        while(wp != null){
-            sendPerson(wp.getPerson(), wp.getTargetPosition(), wp.getOrigin());
-            wp = popFromWaitingPeople();
-        }
-    }
+    CompletableFuture<Void> resolveWaitingPeople();
 
     /**
      * Adds a confirmation to the list of waiting confirmations.
      * @param confirmation confirmation to add to the list
      */
-    public void addToWaitingConfirmations(WaitingPersonConfirmation confirmation){
-        synchronized (waitingConfirms){
-            waitingConfirms.add(confirmation);
-        }
-    }
+    void addToWaitingConfirmations(WaitingPersonConfirmation confirmation);
 
     /**
-     * Remove a confirmation from the top of waiting confirmations list and returns it
-     * @return a confirmation from waiting confirmations or null if there is none.
+     * Sends all waiting confirmations to the simulator, the simulator applies them before the next command.
+     * @return future completed when the confirmations are sent, or completed exceptionally if connection to the simulator is lost.
      */
-    private WaitingPersonConfirmation popFromWaitingConfirmations(){
-        WaitingPersonConfirmation wc;
-        synchronized (waitingConfirms){
-            try{
-                wc = waitingConfirms.pop();
-            }catch (NoSuchElementException e){
-                wc = null;
-            }
-        }
-        return wc;
-    }
-
-    /**
-     * Sends all waiting confirmations to the simulator.
-     * @throws SimulatorConnectionException in case connection to the simulator is lost.
-     */
-    public void resolveWaitingConfirmations() throws SimulatorConnectionException {
-        WaitingPersonConfirmation wc = popFromWaitingConfirmations();
-        while(wc != null){
-            sendPersonConfirmation(wc.getPersonalNumber(), wc.getConfirmation());
-            wc = popFromWaitingConfirmations();
-        }
-    }
+    CompletableFuture<Void> resolveWaitingConfirmations();
 
     /** Returns true if given position lies in connected simulators area.
      * @param position position to be in the are.
      * @return true if position is in connected simulator's area, false otherwise.*/
-    public boolean containsPosition(Position position){
-        return position.isInArea(topLeft, size);
-    }
+    boolean containsPosition(Position position);
 
-    /**
-     * Waits for confirmations and/or data from the simulator and returns it
-     * @return String - received string
-     * @throws SimulatorConnectionException in case connection to the simulator is lost.
-     */
-    public String listen() throws SimulatorConnectionException {
-        try {
-            String line = reader.readLine();
-            log.finer(line);
-            return line;
-        } catch (IOException e) {
-            log.severe("Unable to receive data from simulator.");
-            throw new SimulatorConnectionException();
-        }
-    }
+    /** Top-left corner getter.
+     * @return top-left corner of the simulators area, null if the simulator isn't set up. */
+    Position getTopLeft();
+
+    /** Size getter.
+     * @return size of the simulators area, null if the simulator isn't set up. */
+    Position getSize();
+
+    /** Capacity getter.
+     * @return capacity reported by the simulator when connecting, null if it wasn't reported. */
+    SimulatorCapacity getCapacity();
 
     /**
-     * Sends initial simulator set-up command with the worlds dimensions and the simulators position in the world
-     * @param topLeft top-left corner of this simulators area
-     * @param size size of this simulators area
-     * @throws SimulatorConnectionException in case connection to the simulator is lost.
+     * Returns address other simulators use to open peer connection to the simulator.
+     * @return PeerAddress of the simulator, or null if the simulator doesn't accept peers or isn't set up.
      */
-    public synchronized void sendSetUp(Position topLeft, Position size) throws SimulatorConnectionException {
-        sendString("SetUp:" + topLeft.toString() + ":" + size.toString() + "\n");
-        String confirmation = listen();
-        if(!confirmation.equals("SimIsSet")){
-            log.severe("Received unexpected string from simulator" +
-                "\nReceived: " + confirmation + "\nExpected: SimIsSet");
-        }
-    }
+    PeerAddress getPeerAddress();
 
     /**
-     * Sends a person to the simulator.
-     * @param person Person to send to the simulator.
-     * @param targetPosition position to place the Person on.
-     * @param origin Simulator connector to pass the confirmation to.
-     * @throws SimulatorConnectionException in case connection to the simulator is lost.
+     * Sends a command to the simulator to open peer connections to simulators with adjacent areas.
+     * @param expected number of peers that will connect to the simulator.
+     * @param peers peers the simulator should connect to.
+     * @return future completed when the simulator linked the peers, or completed exceptionally if connection to the simulator is lost.
      */
-    public synchronized void sendPerson(Person person, Position targetPosition, SimulatorConnection origin) throws SimulatorConnectionException {
-        sendString(person.toString(targetPosition) + "\n");
-        String confirmation = listen();
-        String[] split = confirmation.split(":");
-        if(!split[0].equals("PersonConfirmation")){
-            log.severe("Received unexpected string from simulator" +
-                    "\nReceived: " + confirmation + "\nExpected: PersonConfirmation:...");
-        }else{
-            if (origin != null) {
-                WaitingPersonConfirmation wc = new WaitingPersonConfirmation(Integer.parseInt(split[1]), Boolean.parseBoolean(split[2]));
-                origin.addToWaitingConfirmations(wc);
-            }else{
-                if(!Boolean.parseBoolean(split[2])){
-                    log.severe("Person sent without origin wasn't received by target simulator.");
-                }
-            }
-        }
-    }
+    CompletableFuture<Void> sendPeers(int expected, List<PeerAddress> peers);
 
     /**
-     * Sends a confirmation to the simulator.
-     * @param personalNumber unique identifier of the referenced person.
-     * @param confirmation true if person was accepted by target location, false otherwise.
+     * Registers all timetable patterns known to master in the simulator, so people can be sent with pattern ids.
      * @throws SimulatorConnectionException in case connection to the simulator is lost.
      */
-    public synchronized void sendPersonConfirmation(int personalNumber, boolean confirmation) throws SimulatorConnectionException {
-        String confirmationStr = String.format("PersonConfirmation:%d:%b\n", personalNumber, confirmation);
-        sendString(confirmationStr);
-    }
+    void sendTimetablePatterns() throws SimulatorConnectionException;
 
     /**
-     * Sends a Location to the simulator.
-     * <p>
-     *     This method does not transfer the locations visitors, all locations must be passed empty
-     *     and then persons can be passed to it one by one.
-     * </p>
+     * Sends a Location to the simulator. The location must be passed empty, people are sent to it afterwards.
+     * The simulator adds the location before executing the next command.
      * @param location location to send.
      * @throws SimulatorConnectionException in case connection to the simulator is lost.
      */
-    public synchronized void sendLocation(Location location) throws SimulatorConnectionException {
-        sendString(location.toString() + "\n");
-    }
+    void sendLocation(Location location) throws SimulatorConnectionException;
 
     /**
      * Sends a command to the simulator, that makes the simulator move people in it's area.
      * @param master master instance to handle people transfers between simulators.
-     * @throws SimulatorConnectionException in case connection to the simulator is lost.
+     * @return future completed when the simulator moved the people, or completed exceptionally if connection to the simulator is lost.
      */
-    public synchronized void sendMoveCommand(Master master) throws SimulatorConnectionException {
-        sendString("MovePeople\n");
-        String confirmation = listen();
-        while(!confirmation.equals("PeopleMoved")){
-            if(!confirmation.startsWith("Person:")){
-                log.severe("Received unexpected string from simulator" +
-                        "\nReceived: " + confirmation + "\nExpected: Person:...");
-            }else{
-                Person p = Person.parsePerson(confirmation);
-                Position targetPos = Position.parsePosition(confirmation.split(":")[2]);
-                master.forwardPerson(p, targetPos, this);
-            }
-            confirmation = listen();
-        }
-    }
+    CompletableFuture<Void> sendMoveCommand(Master master);
 
     /**
      * Sends a command to the simulator, that makes the simulator calculate infection propagation.
-     * @throws SimulatorConnectionException in case connection to the simulator is lost.
+     * @return future completed when the simulator calculated the health, or completed exceptionally if connection to the simulator is lost.
      */
-    public synchronized void sendCalculateHealthCommand() throws SimulatorConnectionException {
-        sendString("CalculateHealth\n");
-        String confirmation = listen();
-        if(!confirmation.equals("HealthCalculated")){
-            log.severe("Received unexpected string from simulator" +
-                    "\nReceived: " + confirmation + "\nExpected: HealthCalculated");
-        }
-    }
+    CompletableFuture<Void> sendCalculateHealthCommand();
 
     /**
      * Sends new updated values of contagion parameters to the simulator
      * @param contagionParameters new contagion parameters
-     * @throws SimulatorConnectionException in case connection to the simulator is lost.
+     * @return future completed when the simulator set the parameters, or completed exceptionally if connection to the simulator is lost.
      */
-    public synchronized void sendContagionParameters(ContagionParameters contagionParameters) throws SimulatorConnectionException {
-        sendString(contagionParameters.toString() + "\n");
-        String confirmation = listen();
-        if(!confirmation.equals("ContagionParametersSet")){
-            log.severe("Received unexpected string from simulator" +
-                    "\nReceived: " + confirmation + "\nExpected: ContagionParametersSet");
-        }
-    }
+    CompletableFuture<Void> sendContagionParameters(ContagionParameters contagionParameters);
 
     /**
      * Sends a command to the simulator to send back detailed information about locations in a certain area.
-     * <p>This information is used to draw that area in output GUI window.</p>
      * @param topLeft topLeft corner of the displayed area.
      * @param size size of the displayed area.
-     * @param extract extract to fill with received data
-     * @throws SimulatorConnectionException in case connection to the simulator is lost.
+     * @param extract extract to fill with received data, a copy of the previous extract of the area if delta is true.
+     * @param delta true to receive only changes since the last extract received from the simulator.
+     * @return future completed when the extract is filled, or completed exceptionally if connection to the simulator is lost.
      */
-    public synchronized void sendSendExtractCommand(Position topLeft, Position size, Extract extract) throws SimulatorConnectionException {
-        sendString("SendExtract:" + topLeft.toString() + ":" + size.toString() + "\n");
-        String received = listen();
-        String[] receivedSplit = received.split(":");
-        if(!receivedSplit[0].equals("Extract")){
-            log.severe("Received unexpected string from simulator" +
-                    "\nReceived: " + received + "\nExpected: Extract:...");
-        }else{
-            for(int i = 1; i < receivedSplit.length; i++){
-                extract.addExtractedLocation(receivedSplit[i]);
-            }
-        }
-    }
+    CompletableFuture<Void> sendSendExtractCommand(Position topLeft, Position size, Extract extract, boolean delta);
 
-    /** Sends a command to the simulators that ends the simulator application. */
-    public synchronized void sendExitSim(){
-        try{
-            sendString("ExitSim\n");
-        }catch (SimulatorConnectionException e){
-            log.info("Simulator with topLeft position " + topLeft.toString() + " unreachable.");
-        }
-    }
+    /**
+     * Sends a command to the simulator to finish the round - calculate health and send back stats and extract of an area in one response.
+     * @param master master to update the stats in.
+     * @param topLeft topLeft corner of the displayed area.
+     * @param size size of the displayed area.
+     * @param extract extract to fill with received data, a copy of the previous extract of the area if delta is true.
+     * @param delta true to receive only changes since the last extract received from the simulator.
+     * @return future completed when the stats are updated and the extract is filled, or completed exceptionally if connection to the simulator is lost.
+     */
+    CompletableFuture<Void> sendRoundCommand(Master master, Position topLeft, Position size, Extract extract, boolean delta);
 
     /**
      * Sends a command to the simulator to send back general information about number of different health statuses in it's area.
-     * <p>This information is used to run the basic overall statistics in GUI window.</p>
      * @param master master to update the stats in.
-     * @throws SimulatorConnectionException in case connection to the simulator is lost.
+     * @return future completed when the stats are updated, or completed exceptionally if connection to the simulator is lost.
+     */
+    CompletableFuture<Void> sendSendStatsCommand(Master master);
+
+    /**
+     * Sends a command to the simulator to change it's area between rounds. Locations and people outside the new area
+     * are removed from the simulator and passed to the master, to be adopted by simulators that got that part of the world.
+     * @param master master to pass the released locations and people to.
+     * @param topLeft new top-left corner of the simulators area.
+     * @param size new size of the simulators area.
+     * @return future completed when all released locations and people are passed, or completed exceptionally if connection to the simulator is lost.
+     */
+    CompletableFuture<Void> sendResizeCommand(Master master, Position topLeft, Position size);
+
+    /**
+     * Sends people released by another simulator to the simulator, they are placed on their positions without checking
+     * rules of the locations. Released locations must be sent by sendLocation before.
+     * @param people people with positions they stand on.
+     * @return future completed when the simulator adopted the people, or completed exceptionally if connection to the simulator is lost.
+     */
+    CompletableFuture<Void> sendAdoptCommand(List<WaitingPerson> people);
+
+    /** Sends a command to the simulators that ends the simulator. */
+    void sendExitSim();
+
+    /**
+     * Finds which simulators should link as peers, of every adjacent pair the simulator with lower index connects to the other one.
+     * @param sims simulators with set up areas.
+     * @param expected array to store number of peers that will connect to each simulator to.
+     * @return List of peers each simulator should connect to, by simulator index.
      */
-    public synchronized void sendSendStatsCommand(Master master) throws SimulatorConnectionException {
-        sendString("SendStats\n");
-        String received = listen();
-        String[] receivedSplit = received.split(":");
-        if(!receivedSplit[0].equals("Stats")){
-            log.severe("Received unexpected string from simulator" +
-                    "\nReceived: " + received + "\nExpected: Stats:...");
-        }else{
-            Stats stats = Stats.parseStats(receivedSplit[1]);
-            master.updateStats(stats);
+    static List<List<PeerAddress>> peerLinks(SimulatorConnection[] sims, int[] expected){
+        PeerAddress[] addresses = new PeerAddress[sims.length];
+        for(int i = 0; i < sims.length; i++){
+            addresses[i] = sims[i].getPeerAddress();
         }
+        List<List<PeerAddress>> connectTo = new ArrayList<>(sims.length);
+        for(int i = 0; i < sims.length; i++){
+            connectTo.add(new ArrayList<>());
+            expected[i] = 0;
+        }
+        for(int i = 0; i < sims.length; i++){
+            for(int j = 0; j < i; j++){
+                if(addresses[i] != null && addresses[j] != null
+                        && addresses[i].isAdjacent(addresses[j].getTopLeft(), addresses[j].getSize())){
+                    connectTo.get(j).add(addresses[i]);
+                    expected[i]++;
+                }
+            }
+        }
+        return connectTo;
     }
 
     /**
-     * Sends the passed string to the master.
-     * @param string string to send.
+     * Waits for the request to complete.
+     * @param future future of the request.
      * @throws SimulatorConnectionException in case connection to the simulator is lost.
      */
-    private void sendString(String string) throws SimulatorConnectionException{
-        log.finer(string);
+    static void await(CompletableFuture<?> future) throws SimulatorConnectionException {
         try {
-            writer.write(string);
-            writer.flush();
-        } catch (IOException e) {
-            log.severe("Connection error. Unable to send string:\n" + string);
+            future.join();
+        } catch (CompletionException | CancellationException e) {
             throw new SimulatorConnectionException();
         }
     }
-
 }
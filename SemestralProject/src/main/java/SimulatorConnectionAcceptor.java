@@ -1,7 +1,8 @@
 import java.io.IOException;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.net.SocketException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.Flow;
@@ -14,11 +15,19 @@ public class SimulatorConnectionAcceptor implements Flow.Publisher {
     private static final Logger log = Logger.getLogger(SimulatorConnectionAcceptor.class.getName());
     private final LinkedList<SimulatorConnection> sims;
     private volatile boolean stopAccepting;
-    private final ServerSocket serverSocket;
+    private final ServerSocketChannel serverSocket;
+    /** Event loop doing the I/O of all accepted simulator connections. */
+    private final SimulatorEventLoop eventLoop;
+    /** Poller moving bytes of simulators connected through shared memory. */
+    private final SharedMemoryPoller sharedMemoryPoller;
     private final List<Subscription> subscriptions;
 
     /** Constant determining the port on which the server will be listening. */
     public static final int SERVER_PORT = 1666;
+    /** Time in milliseconds a simulator has to answer the ping, otherwise it is considered disconnected. */
+    public static final long PING_TIMEOUT = 5000;
+    /** System property enabling shared memory for simulators connected from this host, "true" to enable. */
+    public static final String SHARED_MEMORY_PROPERTY = "simulation.sharedMemory";
 
     /**
      * Constructor. Creates the server socket and binds it to SERVER_PORT
@@ -27,7 +36,10 @@ public class SimulatorConnectionAcceptor implements Flow.Publisher {
     public SimulatorConnectionAcceptor() throws IOException {
         sims = new LinkedList<>();
         stopAccepting = true;
-        serverSocket = new ServerSocket(SERVER_PORT);
+        serverSocket = ServerSocketChannel.open();
+        serverSocket.bind(new InetSocketAddress(SERVER_PORT));
+        eventLoop = new SimulatorEventLoop();
+        sharedMemoryPoller = new SharedMemoryPoller();
         subscriptions = new LinkedList<>();
     }
 
@@ -51,6 +63,18 @@ public class SimulatorConnectionAcceptor implements Flow.Publisher {
         }
     }
 
+    /**
+     * Adds a simulator running in this process, it's driven by method calls instead of network messages.
+     * @param threads number of worker threads of the simulator.
+     */
+    public void addLocalSimulator(int threads){
+        synchronized (sims){
+            sims.add(new LocalSimulatorConnection(threads));
+            //notify subscribers
+            publishToAll();
+        }
+    }
+
     /** Starts two threads. One is accepting new connections,
      * the other pinging connected simulators and removing them if they were disconnected. */
     public void startAccepting(){
@@ -66,14 +90,25 @@ public class SimulatorConnectionAcceptor implements Flow.Publisher {
         while(!stopAccepting) {
             try {
                 //accept connections
-                Socket simSocket = serverSocket.accept();
+                SocketChannel simSocket = serverSocket.accept();
+                SocketSimulatorConnection sim = new SocketSimulatorConnection(simSocket, eventLoop);
+                if(Boolean.getBoolean(SHARED_MEMORY_PROPERTY) && isLocal(simSocket)
+                        && sim.offerSharedMemory(sharedMemoryPoller))
+                    log.info("Simulator switched to shared memory.");
+                try {
+                    log.info("Simulator capacity " + sim.requestCapacity() + ".");
+                } catch (SimulatorConnectionException e) {
+                    log.severe("Simulator didn't report it's capacity, closing the connection.");
+                    sim.close();
+                    continue;
+                }
                 synchronized (sims) {
-                    sims.add(new SimulatorConnection(simSocket));
+                    sims.add(sim);
                     //notify subscribers
                     publishToAll();
                 }
                 System.out.println("Accepted");
-            } catch (SocketException e) {
+            } catch (ClosedChannelException e) {
                 //if stop accepting is true,
                 //then the accept method was interrupted by stopAccepting() method
                 if (!stopAccepting) {
@@ -91,6 +126,16 @@ public class SimulatorConnectionAcceptor implements Flow.Publisher {
         }
     }
 
+    /**
+     * Checks whether the simulator connected from this host.
+     * @param simSocket socket of the simulator.
+     * @return true if the remote address is a loopback address.
+     * @throws IOException if the remote address can't be obtained.
+     */
+    private static boolean isLocal(SocketChannel simSocket) throws IOException {
+        return ((InetSocketAddress)simSocket.getRemoteAddress()).getAddress().isLoopbackAddress();
+    }
+
     /** Function running in pinging thread. */
     private void pingRun(){
         while(!stopAccepting){
@@ -99,6 +144,8 @@ public class SimulatorConnectionAcceptor implements Flow.Publisher {
                 Thread.sleep(1000); //Ping simulators once per second
             } catch (InterruptedException e) {
                 log.severe("Ping run interrupted");
+                Thread.currentThread().interrupt();
+                break;
             }
         }
     }
@@ -108,11 +155,24 @@ public class SimulatorConnectionAcceptor implements Flow.Publisher {
             if(sims.size() == 0)
                 return;
 
+            //Ping all simulators at once, those that don't answer in time are disconnected
+            SimulatorConnection[] pinged = sims.toArray(new SimulatorConnection[0]);
+            boolean[] connected = new boolean[pinged.length];
+            try {
+                new PhaseExecutor(pinged, PING_TIMEOUT).run("ping", (sim, i) -> sim.sendPing()
+                        .handle((v, e) -> {
+                            connected[i] = e == null;
+                            return null;
+                        }));
+            } catch (SimulatorConnectionException e) {
+                log.info("Some simulators didn't answer the ping.");
+            }
+
             //Get a list of disconnected simulators
             LinkedList<SimulatorConnection> disconnected = new LinkedList<>();
-            for(SimulatorConnection sim: sims){
-                if(!sim.pingSimulator()){
-                    disconnected.add(sim);
+            for(int i = 0; i < pinged.length; i++){
+                if(!connected[i]){
+                    disconnected.add(pinged[i]);
                 }
             }
             //Remove disconnected from active
@@ -131,7 +191,7 @@ public class SimulatorConnectionAcceptor implements Flow.Publisher {
     public void stopAccepting(){
         stopAccepting = true;
         try{
-            if(!serverSocket.isClosed())
+            if(serverSocket.isOpen())
                 serverSocket.close();
         }catch (IOException e){
             log.severe("Error closing socket.");
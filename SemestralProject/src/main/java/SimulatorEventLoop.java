@@ -0,0 +1,106 @@
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Logger;
+
+/**
+ * Single thread event loop doing all network I/O of master with the simulators.
+ * <p>Connections are registered with one non-blocking Selector, the loop reads received bytes and passes them to the
+ * connections, that decode the messages and complete their pending requests, and writes buffered bytes
+ * of connections that flushed. No thread is blocked per simulator.</p>
+ */
+public class SimulatorEventLoop {
+    private static final Logger log = Logger.getLogger(SimulatorEventLoop.class.getName());
+
+    private final Selector selector;
+    /** Connections waiting to be registered with the selector. */
+    private final ConcurrentLinkedQueue<SocketSimulatorConnection> registrations;
+    /** Connections that flushed bytes waiting to be written. */
+    private final ConcurrentLinkedQueue<SocketSimulatorConnection> writes;
+
+    /**
+     * Event loop constructor. Opens the selector and starts the loop thread.
+     * @throws IOException if the selector can't be opened.
+     */
+    public SimulatorEventLoop() throws IOException {
+        selector = Selector.open();
+        registrations = new ConcurrentLinkedQueue<>();
+        writes = new ConcurrentLinkedQueue<>();
+        Thread thread = new Thread(this::run, "SimulatorEventLoop");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Registers the connection, the loop then reads bytes it receives. Can be called from any thread.
+     * @param connection connection to register, it's channel must be non-blocking.
+     */
+    public void register(SocketSimulatorConnection connection){
+        registrations.add(connection);
+        selector.wakeup();
+    }
+
+    /**
+     * Makes the loop write bytes buffered by the connection. Can be called from any thread.
+     * @param connection connection that flushed.
+     */
+    public void requestWrite(SocketSimulatorConnection connection){
+        writes.add(connection);
+        selector.wakeup();
+    }
+
+    /** Function running in the loop thread. */
+    private void run(){
+        while(selector.isOpen()){
+            try {
+                selector.select();
+            } catch (IOException e) {
+                log.severe("Selector error.");
+                return;
+            }
+            SocketSimulatorConnection connection = registrations.poll();
+            while(connection != null){
+                try {
+                    connection.setSelectionKey(connection.getSocketChannel().register(selector, SelectionKey.OP_READ, connection));
+                    write(connection);
+                } catch (IOException e) {
+                    connection.close();
+                }
+                connection = registrations.poll();
+            }
+            connection = writes.poll();
+            while(connection != null){
+                write(connection);
+                connection = writes.poll();
+            }
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while(keys.hasNext()){
+                SelectionKey key = keys.next();
+                keys.remove();
+                connection = (SocketSimulatorConnection) key.attachment();
+                if(key.isValid() && key.isReadable())
+                    connection.read();
+                if(key.isValid() && key.isWritable())
+                    write(connection);
+            }
+        }
+    }
+
+    /**
+     * Writes buffered bytes of the connection, waits for the channel to be writable if it doesn't accept all of them.
+     * @param connection connection to write.
+     */
+    private void write(SocketSimulatorConnection connection){
+        SelectionKey key = connection.getSelectionKey();
+        if(key == null || !key.isValid()){
+            //not registered yet (written after the registration) or already closed
+            return;
+        }
+        boolean drained = connection.write();
+        if(key.isValid())
+            key.interestOps(drained ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+    }
+}
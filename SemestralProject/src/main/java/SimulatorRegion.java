@@ -0,0 +1,134 @@
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Rectangular part of a simulator's area handled by a single worker thread.
+ * Owns the people currently standing on its tiles, hands people moving to other regions of the same simulator over
+ * to them after the phase. People are rows of the simulator's PeopleTable.
+ */
+public class SimulatorRegion {
+    /** Index of the region's top-left tile in the simulator's tile grid. */
+    private final Position topLeft;
+    /** Size of the region in tiles. */
+    private final Position size;
+    /** Table of the simulator's people. */
+    private final PeopleTable table;
+    /** Rows of people currently located on tiles of this region, indexed by personal number. */
+    private final PeopleIndex people;
+    /** Sparse grid of this region's tiles. */
+    private final TileGrid tiles;
+    /** Rows of people that moved to another region during the running phase. */
+    private int[] handedOver;
+    /** Regions the handed over people moved to. */
+    private SimulatorRegion[] handedOverTo;
+    /** Number of people handed over during the running phase. */
+    private int handedOverCount;
+    /** Rows of people that want to leave the simulator's area during the running phase. */
+    private int[] leaving;
+    /** Packed positions the leaving people want to move to. */
+    private long[] leavingTargets;
+    /** Number of people leaving during the running phase. */
+    private int leavingCount;
+
+    /** Region constructor.
+     * @param topLeft index of the region's top-left tile in the simulator's tile grid.
+     * @param size size of the region in tiles.
+     * @param table table of the simulator's people. */
+    public SimulatorRegion(Position topLeft, Position size, PeopleTable table){
+        this.topLeft = topLeft;
+        this.size = size;
+        this.table = table;
+        people = new PeopleIndex();
+        tiles = new TileGrid();
+        handedOver = new int[16];
+        handedOverTo = new SimulatorRegion[16];
+        handedOverCount = 0;
+        leaving = new int[16];
+        leavingTargets = new long[16];
+        leavingCount = 0;
+    }
+
+    /** Top-left tile index getter.
+     * @return index of the region's top-left tile in the simulator's tile grid. */
+    public Position getTopLeft(){
+        return topLeft;
+    }
+
+    /** Size getter.
+     * @return size of the region in tiles. */
+    public Position getSize(){
+        return size;
+    }
+
+    /** Tiles getter.
+     * @return sparse grid of this region's tiles. */
+    public TileGrid getTiles(){
+        return tiles;
+    }
+
+    /** People getter.
+     * @return index of rows of people currently located on tiles of this region. */
+    public PeopleIndex getPeople(){
+        return people;
+    }
+
+    /** Adds person to this region's people. Must not be called while a phase is running.
+     * @param row row of the person to add. */
+    public void add(int row){
+        people.add(table.getPersonalNumber(row), row);
+    }
+
+    /** Removes person from this region's people. Must not be called while a phase is running.
+     * @param personalNumber personal number of the person to remove.
+     * @return int - row of the removed person or PeopleIndex.FREE if the person wasn't in this region. */
+    public int remove(int personalNumber){
+        return people.remove(personalNumber);
+    }
+
+    /** Records a person that moved onto tiles of another region. Called only by the worker moving this region,
+     * the person must be already removed from this region's people. It is added to the target by passHandedOver.
+     * @param row row of the person.
+     * @param target region the person moved to. */
+    public void handOver(int row, SimulatorRegion target){
+        if(handedOverCount == handedOver.length){
+            handedOver = Arrays.copyOf(handedOver, handedOverCount * 2);
+            handedOverTo = Arrays.copyOf(handedOverTo, handedOverCount * 2);
+        }
+        handedOver[handedOverCount] = row;
+        handedOverTo[handedOverCount] = target;
+        handedOverCount++;
+    }
+
+    /** Adds people handed over during the last phase to people of the regions they moved to.
+     * Must not run concurrently with other regions of the simulator. */
+    public void passHandedOver(){
+        for(int i = 0; i < handedOverCount; i++){
+            handedOverTo[i].add(handedOver[i]);
+            handedOverTo[i] = null;
+        }
+        handedOverCount = 0;
+    }
+
+    /** Records a person that wants to leave the simulator's area. Called only by the worker moving this region.
+     * @param row row of the person leaving the area.
+     * @param targetPosition packed position the person wants to move to. */
+    public void leave(int row, long targetPosition){
+        if(leavingCount == leaving.length){
+            leaving = Arrays.copyOf(leaving, leavingCount * 2);
+            leavingTargets = Arrays.copyOf(leavingTargets, leavingCount * 2);
+        }
+        leaving[leavingCount] = row;
+        leavingTargets[leavingCount] = targetPosition;
+        leavingCount++;
+    }
+
+    /** Adds people that wanted to leave the simulator's area during the last phase to the list.
+     * The people stay in this region until they are confirmed by the simulator they leave to.
+     * @param into list to add the leaving people to, with their target positions. */
+    public void drainLeaving(List<WaitingPerson> into){
+        for(int i = 0; i < leavingCount; i++){
+            into.add(new WaitingPerson(table.toPerson(leaving[i]), PackedPosition.toPosition(leavingTargets[i]), null));
+        }
+        leavingCount = 0;
+    }
+}
@@ -0,0 +1,804 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Logger;
+
+/**
+ * Connection to a simulator application over network, from the masters side.
+ * <p>The connection doesn't block any thread, requests are buffered and written by SimulatorEventLoop,
+ * which also passes received bytes back to the connection. Every request waiting for a reply is held in a queue
+ * (the simulator replies in order of the requests) with a future completed when the reply is received.</p>
+ * <p>Simulator on the same host can switch to shared memory, the bytes are then moved by SharedMemoryPoller
+ * and the socket is only watched for closing.</p>
+ */
+public class SocketSimulatorConnection implements SimulatorConnection {
+    private static final Logger log = Logger.getLogger(SocketSimulatorConnection.class.getName());
+    /** System property that makes master talk to simulators in the text protocol (for debugging). */
+    public static final String TEXT_PROTOCOL_PROPERTY = "simulation.textProtocol";
+    /** Maximal time to wait for ExitSim command to be written, in milliseconds. */
+    private static final long EXIT_TIMEOUT = 1000;
+    /** Initial capacity of the buffer of received bytes. */
+    private static final int INBOUND_CAPACITY = 1 << 16;
+
+    /** Non-blocking channel connected to the simulator. */
+    private final SocketChannel socketChannel;
+    /** Event loop doing the I/O of this connection. */
+    private final SimulatorEventLoop eventLoop;
+    /** Key of the channel registered with the event loops selector. */
+    private volatile SelectionKey selectionKey;
+    /** Bytes waiting to be written by the event loop. */
+    private final OutboundBuffer outbound;
+    /** Rings used instead of the socket, null if the socket is used. */
+    private volatile SharedMemoryLink sharedMemory;
+    /** Poller moving bytes of the rings, null if the socket is used. */
+    private volatile SharedMemoryPoller poller;
+    /** Received bytes not decoded yet, used only by the event loop thread. */
+    private ByteBuffer inbound;
+    /** Channel to encode and decode messages exchanged with the simulator. */
+    private final WireChannel channel;
+    /** Requests waiting for reply, in order they were sent. */
+    private final ConcurrentLinkedQueue<PendingRequest> pendingRequests;
+    /** True after the connection was closed. */
+    private boolean closed;
+    /** True after ExitSim command was sent, the simulator then closes the connection. */
+    private volatile boolean exiting;
+
+    /** top-left corner of connected simulators area. */
+    private Position topLeft;
+    /** size of connected simulators area. */
+    private Position size;
+    /** Capacity reported by the simulator, null until requested. */
+    private volatile SimulatorCapacity capacity;
+    /** Port the simulator listens for peer connections on, 0 if it doesn't accept peers. */
+    private volatile int peerPort;
+    /** Version of the last extract received from the simulator. */
+    private volatile int extractVersion;
+    /** People waiting to be sent to the simulator and confirmations waiting to be sent to it. */
+    private final WaitingQueue waiting;
+
+    /**
+     * Simulator connection constructor. Registers the channel with the event loop and negotiates the protocol.
+     * Binary protocol is used unless system property TEXT_PROTOCOL_PROPERTY is true.
+     * @param socketChannel channel connected to the simulator.
+     * @param eventLoop event loop to do the I/O of the connection.
+     * @throws IOException in case of error with setting up the channel or negotiating the protocol.
+     */
+    public SocketSimulatorConnection(SocketChannel socketChannel, SimulatorEventLoop eventLoop) throws IOException {
+        this(socketChannel, eventLoop, !Boolean.getBoolean(TEXT_PROTOCOL_PROPERTY));
+    }
+
+    /**
+     * Simulator connection constructor. Registers the channel with the event loop and negotiates the protocol.
+     * @param socketChannel channel connected to the simulator.
+     * @param eventLoop event loop to do the I/O of the connection.
+     * @param preferBinary true to use binary protocol if the simulator allows it, false to use the text protocol.
+     * @throws IOException in case of error with setting up the channel or negotiating the protocol.
+     */
+    public SocketSimulatorConnection(SocketChannel socketChannel, SimulatorEventLoop eventLoop, boolean preferBinary) throws IOException {
+        this.socketChannel = socketChannel;
+        this.eventLoop = eventLoop;
+        socketChannel.configureBlocking(false);
+        outbound = new OutboundBuffer(this::requestWrite);
+        inbound = ByteBuffer.allocate(INBOUND_CAPACITY);
+        channel = new WireChannel(null, outbound);
+        pendingRequests = new ConcurrentLinkedQueue<>();
+        closed = false;
+        exiting = false;
+        extractVersion = ExtractTracker.NO_VERSION;
+        waiting = new WaitingQueue();
+        eventLoop.register(this);
+        try {
+            CompletableFuture<Void> negotiated = request(() -> channel.sendProtocolRequest(preferBinary), message -> {
+                channel.readProtocolAnswer(message);
+                return true;
+            });
+            flush();
+            SimulatorConnection.await(negotiated);
+        } catch (SimulatorConnectionException e) {
+            throw new IOException("Protocol negotiation failed.");
+        }
+    }
+
+    /**
+     * Sends ping to the simulator without waiting for the answer.
+     * @return future completed when the simulator answers, completed exceptionally if communication fails.
+     */
+    @Override
+    public CompletableFuture<Void> sendPing(){
+        CompletableFuture<Void> pinged = request(() -> channel.sendCommand(WireMessage.Ping), expecting(WireMessage.Ping, null));
+        flush();
+        return pinged;
+    }
+
+    /**
+     * Offers the simulator to exchange further messages through shared memory instead of the socket and waits for the answer.
+     * Must be called right after connecting, before any other request is sent.
+     * @param poller poller to move bytes of the shared memory.
+     * @return true if the simulator switched to shared memory, false if the socket is still used.
+     */
+    public boolean offerSharedMemory(SharedMemoryPoller poller){
+        SharedMemoryLink link;
+        try {
+            link = SharedMemoryLink.create(SharedMemoryLink.DEFAULT_CAPACITY);
+        } catch (IOException e) {
+            log.info("Unable to create shared memory, simulator stays on socket.");
+            return false;
+        }
+        boolean[] accepted = new boolean[1];
+        CompletableFuture<Void> answered = request(() -> channel.sendSharedMemory(link.getPath(), link.getCapacity()),
+                expecting(WireMessage.SharedMemory, () -> accepted[0] = channel.readSharedMemoryAnswer()));
+        flush();
+        try {
+            SimulatorConnection.await(answered);
+        } catch (SimulatorConnectionException e) {
+            link.close();
+            return false;
+        }
+        if(!accepted[0]){
+            link.close();
+            return false;
+        }
+        this.poller = poller;
+        sharedMemory = link;
+        poller.register(this);
+        return true;
+    }
+
+    /**
+     * Asks the simulator for it's capacity and waits for the answer, called once after connecting.
+     * @return SimulatorCapacity reported by the simulator.
+     * @throws SimulatorConnectionException in case connection to the simulator is lost.
+     */
+    public SimulatorCapacity requestCapacity() throws SimulatorConnectionException {
+        CompletableFuture<Void> answered = request(() -> channel.sendCommand(WireMessage.Capacity),
+                expecting(WireMessage.Capacity, () -> capacity = channel.readCapacity()));
+        flush();
+        SimulatorConnection.await(answered);
+        return capacity;
+    }
+
+    /**
+     * Moves bytes between the shared memory and the buffers of the connection, handles received messages.
+     * Called by the shared memory poller.
+     * @return true if any bytes were moved, false if there was nothing to do.
+     */
+    public boolean pollSharedMemory(){
+        SharedMemoryLink link = sharedMemory;
+        if(link == null)
+            return false;
+        boolean busy = false;
+        int pending = outbound.pending();
+        if(pending > 0){
+            try {
+                outbound.drainTo(link.getToSimulator());
+            } catch (IOException e) {
+                if(!exiting)
+                    log.severe("Connection error. Unable to send data to simulator.");
+                close();
+                return true;
+            }
+            busy = outbound.pending() < pending;
+        }
+        return readFrom(link.getToMaster()) != 0 || busy;
+    }
+
+    /** Makes the event loop or the shared memory poller write the buffered bytes. */
+    private void requestWrite(){
+        SharedMemoryPoller sharedPoller = poller;
+        if(sharedPoller != null)
+            sharedPoller.requestWrite();
+        else
+            eventLoop.requestWrite(this);
+    }
+
+    /** Returns true if the simulator communicates in binary protocol.
+     * @return true for binary protocol, false for text protocol. */
+    public boolean isBinary(){
+        return channel.isBinary();
+    }
+
+    /** Simulator connection constructor.
+     * @param topLeft top-left corner of connected simulators area.
+     * @param size size of connected simulators area.
+     * @param seed simulation seed.
+     * @throws SimulatorConnectionException in case of error in communication between master and simulator.*/
+    @Override
+    public void initSimulator(Position topLeft, Position size, long seed) throws SimulatorConnectionException {
+        this.topLeft = topLeft;
+        this.size=size;
+        SimulatorConnection.await(sendSetUp(topLeft, size, seed));
+    }
+
+    /**
+     * Adds a person to the list of waiting people
+     * @param person person to add to the list
+     */
+    @Override
+    public void addToWaitingPeople(WaitingPerson person){
+        waiting.addPerson(person);
+    }
+
+    /**
+     * Sends all waiting people to the simulator and passes confirmations to the simulator of origin.
+     * <p>People are sent in batches, the simulator answers every batch with one message confirming all people of it.</p>
+     * @return future completed when all the people are confirmed, or completed exceptionally if connection to the simulator is lost.
+     */
+    @Override
+    public CompletableFuture<Void> resolveWaitingPeople(){
+        CompletableFuture<Void> last = CompletableFuture.completedFuture(null);
+        for(List<WaitingPerson> batch : WireChannel.batches(waiting.drainPeople())){
+            last = requestPersonBatch(batch);
+        }
+        flush();
+        return last;
+    }
+
+    /**
+     * Buffers a batch of people to send to the simulator, confirmations are passed to the simulators of origin.
+     * @param batch people to send with their target positions and simulators of origin.
+     * @return future completed when the batch is confirmed.
+     */
+    private CompletableFuture<Void> requestPersonBatch(List<WaitingPerson> batch){
+        return request(() -> channel.sendPersonBatch(batch), expecting(WireMessage.PersonConfirmations, () -> {
+            List<WaitingPersonConfirmation> confirmations = channel.readPersonConfirmations();
+            if(confirmations.size() != batch.size()){
+                log.severe("Simulator confirmed " + confirmations.size() + " of " + batch.size() + " people.");
+            }
+            for(int i = 0; i < confirmations.size() && i < batch.size(); i++){
+                SimulatorConnection origin = batch.get(i).getOrigin();
+                WaitingPersonConfirmation wc = confirmations.get(i);
+                if(origin != null){
+                    origin.addToWaitingConfirmations(wc);
+                }else if(!wc.getConfirmation()){
+                    log.severe("Person sent without origin wasn't received by target simulator.");
+                }
+            }
+        }));
+    }
+
+    /**
+     * Adds a confirmation to the list of waiting confirmations.
+     * @param confirmation confirmation to add to the list
+     */
+    @Override
+    public void addToWaitingConfirmations(WaitingPersonConfirmation confirmation){
+        waiting.addConfirmation(confirmation);
+    }
+
+    /**
+     * Sends all waiting confirmations to the simulator in batches.
+     * @return future completed when the confirmations are buffered, or completed exceptionally if connection to the simulator is lost.
+     */
+    @Override
+    public CompletableFuture<Void> resolveWaitingConfirmations(){
+        try {
+            for(List<WaitingPersonConfirmation> batch : WireChannel.batches(waiting.drainConfirmations())){
+                sendPersonConfirmations(batch);
+            }
+        } catch (SimulatorConnectionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        flush();
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /** Returns true if given position lies in connected simulators area.
+     * @param position position to be in the are.
+     * @return true if position is in connected simulator's area, false otherwise.*/
+    @Override
+    public boolean containsPosition(Position position){
+        return position.isInArea(topLeft, size);
+    }
+
+    @Override
+    public Position getTopLeft(){
+        return topLeft;
+    }
+
+    @Override
+    public Position getSize(){
+        return size;
+    }
+
+    /**
+     * Sends initial simulator set-up command with the worlds dimensions and the simulators position in the world
+     * @param topLeft top-left corner of this simulators area
+     * @param size size of this simulators area
+     * @param seed simulation seed
+     * @return future completed when the simulator is set up, or completed exceptionally if connection to the simulator is lost.
+     */
+    public CompletableFuture<Void> sendSetUp(Position topLeft, Position size, long seed){
+        CompletableFuture<Void> done = request(() -> channel.sendSetUp(topLeft, size, seed),
+                expecting(WireMessage.SimIsSet, () -> peerPort = channel.hasMore() ? channel.readInt() : 0));
+        flush();
+        return done;
+    }
+
+    /** Capacity getter.
+     * @return capacity reported by the simulator when connecting, null if it wasn't requested. */
+    @Override
+    public SimulatorCapacity getCapacity(){
+        return capacity;
+    }
+
+    /**
+     * Returns address other simulators use to open peer connection to the simulator.
+     * @return PeerAddress of the simulator, or null if the simulator doesn't accept peers or isn't set up.
+     */
+    @Override
+    public PeerAddress getPeerAddress(){
+        if(peerPort == 0 || topLeft == null)
+            return null;
+        try {
+            InetSocketAddress address = (InetSocketAddress) socketChannel.getRemoteAddress();
+            return new PeerAddress(address.getAddress(), peerPort, topLeft, size);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Sends a command to the simulator to open peer connections to simulators with adjacent areas.
+     * @param expected number of peers that will connect to the simulator.
+     * @param peers peers the simulator should connect to.
+     * @return future completed when the simulator linked the peers, or completed exceptionally if connection to the simulator is lost.
+     */
+    @Override
+    public CompletableFuture<Void> sendPeers(int expected, List<PeerAddress> peers){
+        CompletableFuture<Void> done = request(() -> channel.sendPeers(expected, peers), expecting(WireMessage.PeersLinked, null));
+        flush();
+        return done;
+    }
+
+    /**
+     * Sends a person to the simulator.
+     * @param person Person to send to the simulator.
+     * @param targetPosition position to place the Person on.
+     * @param origin Simulator connector to pass the confirmation to.
+     * @return future completed when the person is confirmed, or completed exceptionally if connection to the simulator is lost.
+     */
+    public CompletableFuture<Void> sendPerson(Person person, Position targetPosition, SimulatorConnection origin){
+        CompletableFuture<Void> done = requestPersonBatch(List.of(new WaitingPerson(person, targetPosition, origin)));
+        flush();
+        return done;
+    }
+
+    /**
+     * Registers all timetable patterns known to master in the simulator, so people can be sent with pattern ids.
+     * @throws SimulatorConnectionException in case connection to the simulator is lost.
+     */
+    @Override
+    public void sendTimetablePatterns() throws SimulatorConnectionException {
+        try {
+            for(TimetablePattern pattern : TimetablePattern.getAll()){
+                channel.sendTimetablePattern(pattern);
+            }
+        } catch (IOException e) {
+            throw sendError("TimetablePattern");
+        }
+        flush();
+    }
+
+    /**
+     * Sends a batch of confirmations to the simulator in one message.
+     * The confirmations are buffered, they're sent with the next flushed message.
+     * @param confirmations confirmations to send, at most WireChannel.BATCH_SIZE.
+     * @throws SimulatorConnectionException in case connection to the simulator is lost.
+     */
+    public void sendPersonConfirmations(List<WaitingPersonConfirmation> confirmations) throws SimulatorConnectionException {
+        try {
+            channel.sendPersonConfirmations(confirmations);
+        } catch (IOException e) {
+            throw sendError("PersonConfirmations");
+        }
+    }
+
+    /**
+     * Sends a Location to the simulator.
+     * <p>
+     *     This method does not transfer the locations visitors, all locations must be passed empty
+     *     and then persons can be passed to it one by one.
+     *     The location is buffered, it's sent with the next flushed message.
+     * </p>
+     * @param location location to send.
+     * @throws SimulatorConnectionException in case connection to the simulator is lost.
+     */
+    @Override
+    public void sendLocation(Location location) throws SimulatorConnectionException {
+        try {
+            channel.sendLocation(location);
+        } catch (IOException e) {
+            throw sendError("Location");
+        }
+    }
+
+    /**
+     * Sends a command to the simulator, that makes the simulator move people in it's area.
+     * @param master master instance to handle people transfers between simulators.
+     * @return future completed when the simulator moved the people, or completed exceptionally if connection to the simulator is lost.
+     */
+    @Override
+    public CompletableFuture<Void> sendMoveCommand(Master master){
+        CompletableFuture<Void> done = request(() -> channel.sendCommand(WireMessage.MovePeople), message -> {
+            if(message == WireMessage.PeopleMoved)
+                return true;
+            if(message != WireMessage.PersonBatch){
+                unexpected(message, WireMessage.PersonBatch);
+            }else{
+                for(WaitingPerson wp : channel.readPersonBatch(this)){
+                    master.forwardPerson(wp.getPerson(), wp.getTargetPosition(), this);
+                }
+            }
+            return false;
+        });
+        flush();
+        return done;
+    }
+
+    /**
+     * Sends a command to the simulator, that makes the simulator calculate infection propagation.
+     * @return future completed when the simulator calculated the health, or completed exceptionally if connection to the simulator is lost.
+     */
+    @Override
+    public CompletableFuture<Void> sendCalculateHealthCommand(){
+        CompletableFuture<Void> done = request(() -> channel.sendCommand(WireMessage.CalculateHealth), expecting(WireMessage.HealthCalculated, null));
+        flush();
+        return done;
+    }
+
+    /**
+     * Sends new updated values of contagion parameters to the simulator
+     * @param contagionParameters new contagion parameters
+     * @return future completed when the simulator set the parameters, or completed exceptionally if connection to the simulator is lost.
+     */
+    @Override
+    public CompletableFuture<Void> sendContagionParameters(ContagionParameters contagionParameters){
+        CompletableFuture<Void> done = request(() -> channel.sendContagionParameters(contagionParameters), expecting(WireMessage.ContagionParametersSet, null));
+        flush();
+        return done;
+    }
+
+    /**
+     * Sends a command to the simulator to send back detailed information about locations in a certain area.
+     * <p>This information is used to draw that area in output GUI window.</p>
+     * @param topLeft topLeft corner of the displayed area.
+     * @param size size of the displayed area.
+     * @param extract extract to fill with received data, a copy of the previous extract of the area if delta is true.
+     * @param delta true to receive only changes since the last extract received from the simulator.
+     * @return future completed when the extract is filled, or completed exceptionally if connection to the simulator is lost.
+     */
+    @Override
+    public CompletableFuture<Void> sendSendExtractCommand(Position topLeft, Position size, Extract extract, boolean delta){
+        int baseVersion = delta ? extractVersion : ExtractTracker.NO_VERSION;
+        CompletableFuture<Void> done = request(() -> channel.sendSendExtract(topLeft, size, baseVersion),
+                expecting(WireMessage.ExtractDelta, () -> extractVersion = channel.readExtractDelta(extract, this.topLeft, this.size)));
+        flush();
+        return done;
+    }
+
+    /**
+     * Sends a command to the simulator to finish the round - calculate health and send back stats and extract of an area in one response.
+     * @param master master to update the stats in.
+     * @param topLeft topLeft corner of the displayed area.
+     * @param size size of the displayed area.
+     * @param extract extract to fill with received data, a copy of the previous extract of the area if delta is true.
+     * @param delta true to receive only changes since the last extract received from the simulator.
+     * @return future completed when the stats are updated and the extract is filled, or completed exceptionally if connection to the simulator is lost.
+     */
+    @Override
+    public CompletableFuture<Void> sendRoundCommand(Master master, Position topLeft, Position size, Extract extract, boolean delta){
+        int baseVersion = delta ? extractVersion : ExtractTracker.NO_VERSION;
+        CompletableFuture<Void> done = request(() -> channel.sendRound(topLeft, size, baseVersion),
+                expecting(WireMessage.RoundDone, () -> {
+                    master.updateStats(channel.readStats());
+                    extractVersion = channel.readExtractDelta(extract, this.topLeft, this.size);
+                }));
+        flush();
+        return done;
+    }
+
+    /**
+     * Sends a command to the simulator to change it's area between rounds.
+     * Released locations and people are passed to the master.
+     * @param master master to pass the released locations and people to.
+     * @param topLeft new top-left corner of the simulators area.
+     * @param size new size of the simulators area.
+     * @return future completed when all released locations and people are passed, or completed exceptionally if connection to the simulator is lost.
+     */
+    @Override
+    public CompletableFuture<Void> sendResizeCommand(Master master, Position topLeft, Position size){
+        this.topLeft = topLeft;
+        this.size = size;
+        CompletableFuture<Void> done = request(() -> channel.sendResize(topLeft, size), message -> {
+            switch(message){
+                case Resized -> {
+                    return true;
+                }
+                case Location -> master.addReleasedLocation(channel.readLocation());
+                case PersonBatch -> master.addReleasedPeople(channel.readPersonBatch(null));
+                default -> unexpected(message, WireMessage.Resized);
+            }
+            return false;
+        });
+        flush();
+        return done;
+    }
+
+    /**
+     * Sends people released by another simulator to the simulator in batches.
+     * @param people people with positions they stand on.
+     * @return future completed when the simulator adopted all the people, or completed exceptionally if connection to the simulator is lost.
+     */
+    @Override
+    public CompletableFuture<Void> sendAdoptCommand(List<WaitingPerson> people){
+        CompletableFuture<Void> last = CompletableFuture.completedFuture(null);
+        for(List<WaitingPerson> batch : WireChannel.batches(people)){
+            last = request(() -> channel.sendPersonBatch(WireMessage.Adopt, batch), expecting(WireMessage.Adopted, null));
+        }
+        flush();
+        return last;
+    }
+
+    /** Sends a command to the simulators that ends the simulator application. */
+    @Override
+    public void sendExitSim(){
+        exiting = true;
+        try{
+            channel.sendCommand(WireMessage.ExitSim);
+            channel.flush();
+            outbound.awaitDrained(EXIT_TIMEOUT);
+        }catch (IOException e){
+            log.info("Simulator with topLeft position " + topLeft + " unreachable.");
+        }
+    }
+
+    /**
+     * Sends a command to the simulator to send back general information about number of different health statuses in it's area.
+     * <p>This information is used to run the basic overall statistics in GUI window.</p>
+     * @param master master to update the stats in.
+     * @return future completed when the stats are updated, or completed exceptionally if connection to the simulator is lost.
+     */
+    @Override
+    public CompletableFuture<Void> sendSendStatsCommand(Master master){
+        CompletableFuture<Void> done = request(() -> channel.sendCommand(WireMessage.SendStats), expecting(WireMessage.Stats, () -> master.updateStats(channel.readStats())));
+        flush();
+        return done;
+    }
+
+    /** Channel getter, used by the event loop.
+     * @return channel connected to the simulator. */
+    public SocketChannel getSocketChannel(){
+        return socketChannel;
+    }
+
+    /** Selection key getter, used by the event loop.
+     * @return key of the channel registered with event loops selector, null if not registered yet. */
+    public SelectionKey getSelectionKey(){
+        return selectionKey;
+    }
+
+    /** Selection key setter, used by the event loop.
+     * @param selectionKey key of the channel registered with event loops selector. */
+    public void setSelectionKey(SelectionKey selectionKey){
+        this.selectionKey = selectionKey;
+    }
+
+    /** Reads received bytes and handles the received messages. Called by the event loop when the channel is readable.
+     * If the simulator uses shared memory, only closing of the socket is expected. */
+    public void read(){
+        if(sharedMemory != null){
+            readFrom(socketChannel, ByteBuffer.allocate(Integer.BYTES));
+            return;
+        }
+        readFrom(socketChannel);
+    }
+
+    /**
+     * Reads bytes from the source and handles the received messages, closes the connection if the source is closed.
+     * @param source socket channel or ring to read from.
+     * @return number of read bytes, -1 if the source is closed.
+     */
+    private int readFrom(ReadableByteChannel source){
+        int read = readFrom(source, inbound);
+        if(read <= 0)
+            return read;
+        inbound.flip();
+        WireMessage message = channel.poll(inbound);
+        while(message != null){
+            handleReply(message);
+            message = channel.poll(inbound);
+        }
+        inbound.compact();
+        if(!inbound.hasRemaining()){
+            //incomplete message doesn't fit into the buffer
+            ByteBuffer bigger = ByteBuffer.allocate(inbound.capacity() * 2);
+            inbound.flip();
+            bigger.put(inbound);
+            inbound = bigger;
+        }
+        return read;
+    }
+
+    /**
+     * Reads bytes from the source to the buffer, closes the connection if the source is closed.
+     * @param source socket channel or ring to read from.
+     * @param buffer buffer to read to.
+     * @return number of read bytes, -1 if the source is closed.
+     */
+    private int readFrom(ReadableByteChannel source, ByteBuffer buffer){
+        try {
+            int read = source.read(buffer);
+            if(read < 0){
+                if(!exiting)
+                    log.severe("Simulator closed the connection.");
+                close();
+            }
+            return read;
+        } catch (IOException e) {
+            if(!exiting)
+                log.severe("Unable to receive data from simulator.");
+            close();
+            return -1;
+        }
+    }
+
+    /** Writes buffered bytes. Called by the event loop.
+     * @return true if all buffered bytes were written, false if the channel didn't accept all of them. */
+    public boolean write(){
+        if(sharedMemory != null)
+            return true;
+        try {
+            return outbound.drainTo(socketChannel);
+        } catch (IOException e) {
+            if(!exiting)
+                log.severe("Connection error. Unable to send data to simulator.");
+            close();
+            return true;
+        }
+    }
+
+    /** Closes the connection, all requests waiting for reply are completed exceptionally. */
+    public void close(){
+        synchronized (this){
+            if(closed)
+                return;
+            closed = true;
+        }
+        outbound.close();
+        SharedMemoryLink link = sharedMemory;
+        if(link != null){
+            poller.unregister(this);
+            link.close();
+        }
+        try {
+            socketChannel.close();
+        } catch (IOException e) {
+            log.severe("Error closing connection to simulator.");
+        }
+        PendingRequest request = pendingRequests.poll();
+        while(request != null){
+            request.future.completeExceptionally(new SimulatorConnectionException());
+            request = pendingRequests.poll();
+        }
+    }
+
+    /**
+     * Passes received message to the oldest request waiting for reply, completes the request if the reply is complete.
+     * @param message type of the received message.
+     */
+    private void handleReply(WireMessage message){
+        PendingRequest request = pendingRequests.peek();
+        if(request == null){
+            unexpected(message, null);
+            return;
+        }
+        if(request.handler.onReply(message)){
+            pendingRequests.poll();
+            request.future.complete(null);
+        }
+    }
+
+    /**
+     * Buffers a request and adds it to the requests waiting for reply.
+     * Requests are buffered in the order they are added, so the replies match the queue.
+     * @param sender action buffering the request.
+     * @param handler handler of the reply.
+     * @return future completed when the reply is received, or completed exceptionally if connection to the simulator is lost.
+     */
+    private synchronized CompletableFuture<Void> request(RequestSender sender, ReplyHandler handler){
+        PendingRequest request = new PendingRequest(handler);
+        if(closed){
+            request.future.completeExceptionally(new SimulatorConnectionException());
+            return request.future;
+        }
+        pendingRequests.add(request);
+        try {
+            sender.send();
+        } catch (IOException e) {
+            log.severe("Connection error. Unable to send data to simulator.");
+            close();
+        }
+        return request.future;
+    }
+
+    /**
+     * Returns handler of a reply consisting of one message.
+     * @param expected expected type of the reply.
+     * @param reader action reading the content of the reply, can be null.
+     * @return ReplyHandler completing the request on the first received message.
+     */
+    private ReplyHandler expecting(WireMessage expected, Runnable reader){
+        return message -> {
+            if(message != expected)
+                unexpected(message, expected);
+            else if(reader != null)
+                reader.run();
+            return true;
+        };
+    }
+
+    /**
+     * Logs unexpected message received from the simulator.
+     * @param received type of the received message.
+     * @param expected expected type of the message, null if no message was expected.
+     */
+    private void unexpected(WireMessage received, WireMessage expected){
+        log.severe("Received unexpected message from simulator" +
+                "\nReceived: " + received + "\nExpected: " + expected);
+    }
+
+    /** Makes the event loop write the buffered messages, closes the connection if it's closed. */
+    private void flush(){
+        try {
+            channel.flush();
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    /**
+     * Logs error of sending a message and returns exception to throw.
+     * @param message name of the message that couldn't be sent.
+     * @return SimulatorConnectionException to throw.
+     */
+    private SimulatorConnectionException sendError(String message){
+        log.severe("Connection error. Unable to send " + message + " to simulator.");
+        return new SimulatorConnectionException();
+    }
+
+    /** Action buffering a request. */
+    private interface RequestSender {
+        /** Buffers the request.
+         * @throws IOException in case the connection is closed. */
+        void send() throws IOException;
+    }
+
+    /** Handler of messages received as reply to a request. */
+    private interface ReplyHandler {
+        /** Handles received message.
+         * @param message type of the received message, it's content can be read from the channel.
+         * @return true if the reply is complete, false if more messages belong to the reply. */
+        boolean onReply(WireMessage message);
+    }
+
+    /** Request waiting for reply from the simulator. */
+    private static class PendingRequest {
+        /** Handler of the reply. */
+        private final ReplyHandler handler;
+        /** Future completed when the reply is complete. */
+        private final CompletableFuture<Void> future;
+
+        /** Pending request constructor.
+         * @param handler handler of the reply. */
+        private PendingRequest(ReplyHandler handler){
+            this.handler = handler;
+            future = new CompletableFuture<>();
+        }
+    }
+}
@@ -83,16 +83,55 @@ public class Stats {
     /** Adds this persons health status to the statistics.
      * @param person person to count. */
     public void countPerson(Person person){
-        switch (person.getHealth()){
-            case healthy -> healthy++;
-            case cured -> cured++;
-            case infected -> infected++;
-            case deceased -> deceased++;
-            case vaccinated -> vaccinated++;
-            case quarantined -> quarantined++;
+        count(person.getHealth(), 1);
+    }
+
+    /** Adds number of people with the health status to the statistics.
+     * @param health health status of the people.
+     * @param count number of people to add. */
+    public void count(PersonHealth health, int count){
+        switch (health){
+            case healthy -> healthy += count;
+            case cured -> cured += count;
+            case infected -> infected += count;
+            case deceased -> deceased += count;
+            case vaccinated -> vaccinated += count;
+            case quarantined -> quarantined += count;
         }
     }
 
+    /** Returns number of people with the health status.
+     * @param health health status of the people.
+     * @return number of people with the health status. */
+    public int get(PersonHealth health){
+        return switch (health){
+            case healthy -> healthy;
+            case cured -> cured;
+            case infected -> infected;
+            case deceased -> deceased;
+            case vaccinated -> vaccinated;
+            case quarantined -> quarantined;
+        };
+    }
+
+    /** Writes binary representation of the stats - six ints in the order of the text format.
+     * @param buffer buffer to write to. */
+    public void writeTo(WireBuffer buffer){
+        buffer.putInt(healthy);
+        buffer.putInt(infected);
+        buffer.putInt(cured);
+        buffer.putInt(quarantined);
+        buffer.putInt(deceased);
+        buffer.putInt(vaccinated);
+    }
+
+    /** Reads stats from it's binary representation (see writeTo).
+     * @param buffer buffer to read from.
+     * @return Stats - stats read from the buffer. */
+    public static Stats readFrom(WireBuffer buffer){
+        return new Stats(buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt());
+    }
+
     @Override
     public String toString() {
         return String.format("%d,%d,%d,%d,%d,%d", healthy, infected, cured, quarantined, deceased, vaccinated);
@@ -1,39 +1,34 @@
 import org.jfree.chart.ChartFactory;
 import org.jfree.chart.JFreeChart;
 import org.jfree.chart.plot.PlotOrientation;
-import org.jfree.data.xy.XYSeries;
-import org.jfree.data.xy.XYSeriesCollection;
+import org.jfree.data.xy.AbstractXYDataset;
 
+import javax.swing.*;
 
-/** Class handling outputting stats to the stats-chart */
-public class StatsDrawer {
-    private JFreeChart chart;
-    private XYSeries deceasedSeries;
-    private XYSeries curedSeries;
-    private XYSeries quarantinedSeries;
-    private XYSeries infectedSeries;
-    private XYSeries healthySeries;
-    private XYSeries vaccinatedSeries;
 
-    /** Stats drawer constructor, initializes the chart, creates the value series. */
-    public StatsDrawer() {
-        deceasedSeries = new XYSeries("Deceased");
-        curedSeries = new XYSeries("Cured");
-        quarantinedSeries = new XYSeries("Quarantined");
-        infectedSeries = new XYSeries("Infected");
-        healthySeries = new XYSeries("Healthy");
-        vaccinatedSeries = new XYSeries("Vaccinated");
+/** Class handling outputting stats to the stats-chart.
+ * <p>The drawer is the charts dataset, it reads the rounds from the round history
+ * and draws at most MAX_POINTS of them, so long simulations don't slow the chart down.</p> */
+public class StatsDrawer extends AbstractXYDataset {
+    /** Maximal number of rounds drawn in the chart. */
+    public static final int MAX_POINTS = 1000;
+    /** Health statuses in order of the series, each series is drawn on top of the previous one. */
+    private static final PersonHealth[] STACK = {PersonHealth.deceased, PersonHealth.cured, PersonHealth.quarantined,
+            PersonHealth.infected, PersonHealth.healthy, PersonHealth.vaccinated};
+    /** Names of the series. */
+    private static final String[] NAMES = {"Deceased", "Cured", "Quarantined", "Infected", "Healthy", "Vaccinated"};
 
-        XYSeriesCollection seriesCollection = new XYSeriesCollection();
-        seriesCollection.addSeries(deceasedSeries);
-        seriesCollection.addSeries(curedSeries);
-        seriesCollection.addSeries(quarantinedSeries);
-        seriesCollection.addSeries(infectedSeries);
-        seriesCollection.addSeries(healthySeries);
-        seriesCollection.addSeries(vaccinatedSeries);
+    /** Serialization version, datasets are serializable. */
+    private static final long serialVersionUID = 1L;
+
+    private JFreeChart chart;
+    /** Drawn rounds, changed only by the event dispatch thread, null before drawing the first stats. */
+    private RoundHistory.Samples samples;
 
+    /** Stats drawer constructor, initializes the chart. */
+    public StatsDrawer() {
         chart = ChartFactory.createXYLineChart("", "", "",
-                seriesCollection, PlotOrientation.VERTICAL, true, false, false);
+                this, PlotOrientation.VERTICAL, true, false, false);
     }
 
     /** Returns the chart updated by this instance.
@@ -43,22 +38,43 @@ public class StatsDrawer {
     }
 
     /**
-     * Adds passed stats to the chart.
-     * @param stats this round's stats.
-     * @param roundNumber this rounds number.
+     * Draws rounds of the history held in memory to the chart.
+     * @param history history of the simulation with this round's stats as the last round.
      */
-    public void drawStats(Stats stats, int roundNumber){
-        int height = stats.deceased;
-        deceasedSeries.addOrUpdate(roundNumber, height);
-        height += stats.cured;
-        curedSeries.addOrUpdate(roundNumber, height);
-        height += stats.quarantined;
-        quarantinedSeries.addOrUpdate(roundNumber, height);
-        height += stats.infected;
-        infectedSeries.addOrUpdate(roundNumber, height);
-        height += stats.healthy;
-        healthySeries.addOrUpdate(roundNumber, height);
-        height += stats.vaccinated;
-        vaccinatedSeries.addOrUpdate(roundNumber, height);
+    public void drawStats(RoundHistory history){
+        RoundHistory.Samples drawn = history.downsample(MAX_POINTS);
+        SwingUtilities.invokeLater(() -> {
+            samples = drawn;
+            fireDatasetChanged();
+        });
+    }
+
+    @Override
+    public int getSeriesCount() {
+        return STACK.length;
+    }
+
+    @Override
+    public Comparable<String> getSeriesKey(int series) {
+        return NAMES[series];
+    }
+
+    @Override
+    public int getItemCount(int series) {
+        return samples == null ? 0 : samples.getCount();
+    }
+
+    @Override
+    public Number getX(int series, int item) {
+        return samples.getRound(item);
+    }
+
+    @Override
+    public Number getY(int series, int item) {
+        int height = 0;
+        for(int i = 0; i <= series; i++){
+            height += samples.get(STACK[i], item);
+        }
+        return height;
     }
 }
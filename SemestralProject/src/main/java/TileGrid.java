@@ -0,0 +1,215 @@
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Sparse grid of locations divided into square chunks.
+ * <p>Only typed locations and tiles somebody visited exist as objects, chunks are created with the first such tile
+ * and dropped with the last one. Tiles are addressed by their global position in the simulated world.</p>
+ * <p>The grid keeps set of active locations - locations that have infectious visitors and can spread the infection.</p>
+ * <p>Tiles can be looked up and created concurrently, reclaiming must not run concurrently with other calls.</p>
+ */
+public class TileGrid {
+    /** Number of bits of a coordinate addressing a tile inside a chunk. */
+    private static final int CHUNK_BITS = 4;
+    /** Width and height of a chunk in tiles. */
+    public static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    /** Mask of a coordinate addressing a tile inside a chunk. */
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    /** Materialized chunks by their packed chunk coordinates. */
+    private final ConcurrentHashMap<Long, Chunk> chunks;
+    /** Locations that had infectious visitors since they were last checked by forEachActive. */
+    private final Set<Location> activeTiles;
+    /** Number of visitors of every health status on tiles of this grid, indexed by PersonHealth ordinal. */
+    private final AtomicIntegerArray healthCounts;
+
+    /** Tile grid constructor, creates an empty grid. */
+    public TileGrid(){
+        chunks = new ConcurrentHashMap<>();
+        activeTiles = ConcurrentHashMap.newKeySet();
+        healthCounts = new AtomicIntegerArray(PersonHealth.values().length);
+    }
+
+    /** Changes count of visitors with the health status, called by locations when their visitors change.
+     * @param health health status of the visitors.
+     * @param difference number of visitors added (negative if removed). */
+    public void visitorsCounted(PersonHealth health, int difference){
+        healthCounts.addAndGet(health.ordinal(), difference);
+    }
+
+    /** Adds counts of visitors on tiles of this grid to the stats.
+     * @param stats stats to add the counts to. */
+    public void addStats(Stats stats){
+        for(PersonHealth health : PersonHealth.values()){
+            stats.count(health, healthCounts.get(health.ordinal()));
+        }
+    }
+
+    /** Returns location on the given position if it is materialized.
+     * @param x x coordinate of the location.
+     * @param y y coordinate of the location.
+     * @return Location on the position or null. */
+    public Location get(int x, int y){
+        Chunk chunk = chunks.get(chunkKey(x, y));
+        if(chunk == null)
+            return null;
+        return chunk.tiles.get(tileIndex(x, y));
+    }
+
+    /** Returns location on the given position, creates a default location if there is none.
+     * @param x x coordinate of the location.
+     * @param y y coordinate of the location.
+     * @return Location on the position. */
+    public Location getOrCreate(int x, int y){
+        Location location = get(x, y);
+        if(location != null)
+            return location;
+
+        Chunk chunk = chunks.computeIfAbsent(chunkKey(x, y), key -> new Chunk(x >> CHUNK_BITS, y >> CHUNK_BITS));
+        Location created = new Location(new Position(x, y));
+        created.setGrid(this);
+        if(chunk.tiles.compareAndSet(tileIndex(x, y), null, created)){
+            chunk.countChanged(1);
+            return created;
+        }
+        return chunk.tiles.get(tileIndex(x, y));
+    }
+
+    /** Puts the location to the grid on it's position, replaces the location that was there.
+     * @param location location to put. */
+    public void put(Location location){
+        int x = location.getPosition().getX();
+        int y = location.getPosition().getY();
+        Chunk chunk = chunks.computeIfAbsent(chunkKey(x, y), key -> new Chunk(x >> CHUNK_BITS, y >> CHUNK_BITS));
+        location.setGrid(this);
+        Location previous = chunk.tiles.getAndSet(tileIndex(x, y), location);
+        if(previous == null){
+            chunk.countChanged(1);
+        }else{
+            previous.setGrid(null);
+            activeTiles.remove(previous);
+        }
+    }
+
+    /** Adds the location to active locations, called by location when it gets infectious visitors.
+     * @param location location with infectious visitors. */
+    public void markActive(Location location){
+        activeTiles.add(location);
+    }
+
+    /** Runs the action for every location that has infectious visitors.
+     * Locations that no longer have any are removed from active locations.
+     * @param action action to run. */
+    public void forEachActive(Consumer<Location> action){
+        Iterator<Location> it = activeTiles.iterator();
+        while(it.hasNext()){
+            Location location = it.next();
+            if(location.hasInfectiousVisitors())
+                action.accept(location);
+            if(!location.hasInfectiousVisitors())
+                it.remove();
+        }
+    }
+
+    /** Returns number of locations marked active.
+     * @return int - count of locations that had infectious visitors since last forEachActive. */
+    public int getActiveCount(){
+        return activeTiles.size();
+    }
+
+    /** Drops default locations that nobody visits and chunks that contain no locations. */
+    public void reclaim(){
+        Iterator<Chunk> it = chunks.values().iterator();
+        while(it.hasNext()){
+            Chunk chunk = it.next();
+            for(int i = 0; i < CHUNK_SIZE * CHUNK_SIZE; i++){
+                Location location = chunk.tiles.get(i);
+                if(location != null && location.isDisposable()){
+                    chunk.tiles.set(i, null);
+                    chunk.countChanged(-1);
+                    location.setGrid(null);
+                    activeTiles.remove(location);
+                }
+            }
+            if(chunk.count == 0){
+                it.remove();
+            }
+        }
+    }
+
+    /** Runs the action for every materialized location.
+     * @param action action to run. */
+    public void forEach(Consumer<Location> action){
+        for(Chunk chunk : chunks.values()){
+            for(int i = 0; i < CHUNK_SIZE * CHUNK_SIZE; i++){
+                Location location = chunk.tiles.get(i);
+                if(location != null)
+                    action.accept(location);
+            }
+        }
+    }
+
+    /** Adds all materialized locations in the given area to the list.
+     * @param topLeft top-left corner of the area.
+     * @param size size of the area.
+     * @param area list to add the locations to. */
+    public void addArea(Position topLeft, Position size, List<Location> area){
+        for(Chunk chunk : chunks.values()){
+            int chunkLeft = chunk.chunkX << CHUNK_BITS;
+            int chunkTop = chunk.chunkY << CHUNK_BITS;
+            if(chunkLeft >= topLeft.getX() + size.getX() || chunkLeft + CHUNK_SIZE <= topLeft.getX() ||
+                    chunkTop >= topLeft.getY() + size.getY() || chunkTop + CHUNK_SIZE <= topLeft.getY())
+                continue;
+
+            for(int i = 0; i < CHUNK_SIZE * CHUNK_SIZE; i++){
+                Location location = chunk.tiles.get(i);
+                if(location != null && location.getPosition().isInArea(topLeft, size))
+                    area.add(location);
+            }
+        }
+    }
+
+    /** Returns number of materialized chunks.
+     * @return int - chunk count. */
+    public int getChunkCount(){
+        return chunks.size();
+    }
+
+    /** Returns key of the chunk containing given position. */
+    private static long chunkKey(int x, int y){
+        return PackedPosition.pack(x >> CHUNK_BITS, y >> CHUNK_BITS);
+    }
+
+    /** Returns index of given position inside it's chunk. */
+    private static int tileIndex(int x, int y){
+        return ((x & CHUNK_MASK) << CHUNK_BITS) | (y & CHUNK_MASK);
+    }
+
+    /** Square block of tiles, counts it's materialized tiles. */
+    private static class Chunk {
+        /** Chunk x coordinate (tile x coordinate divided by chunk size). */
+        private final int chunkX;
+        /** Chunk y coordinate (tile y coordinate divided by chunk size). */
+        private final int chunkY;
+        /** Tiles of the chunk, null for tiles that are not materialized. */
+        private final AtomicReferenceArray<Location> tiles;
+        /** Number of materialized tiles. */
+        private int count;
+
+        private Chunk(int chunkX, int chunkY){
+            this.chunkX = chunkX;
+            this.chunkY = chunkY;
+            tiles = new AtomicReferenceArray<>(CHUNK_SIZE * CHUNK_SIZE);
+            count = 0;
+        }
+
+        private synchronized void countChanged(int difference){
+            count += difference;
+        }
+    }
+}
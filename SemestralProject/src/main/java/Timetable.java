@@ -1,62 +1,234 @@
+import java.util.Arrays;
 import java.util.logging.Logger;
 
 /**
  * Class holding positions a person should move to in certain hours of day.
+ * <p>The shape of the day is a shared interned TimetablePattern, the timetable itself only holds the pattern
+ * and the few distinct positions (anchors) the pattern refers to, packed in a primitive array.</p>
  */
 public class Timetable {
     /** Timetable class logger */
-    private Logger log = Logger.getLogger(Timetable.class.getName());
+    private static final Logger log = Logger.getLogger(Timetable.class.getName());
+    /** Shared anchors array of timetables without occupations. */
+    private static final long[] NO_ANCHORS = new long[0];
 
-    /** Array of 24 positions (or nulls), one for each our of day. Positions to move to at certain times. */
-    private Position[] timetable;
+    /** Shared pattern mapping hours of day to anchors. */
+    private TimetablePattern pattern;
+    /** Packed positions the pattern refers to. */
+    private long[] anchors;
 
     /** Timetable constructor. Creates new empty timetable. */
     public Timetable() {
-        this.timetable = new Position[24];
+        this(TimetablePattern.EMPTY, NO_ANCHORS);
+    }
+
+    /** Timetable constructor.
+     * @param pattern shared pattern of the timetable.
+     * @param anchors packed positions the pattern refers to. */
+    public Timetable(TimetablePattern pattern, long[] anchors){
+        this.pattern = pattern;
+        this.anchors = anchors;
     }
 
     /** Sets position to timetable at given hour of day
      * @param hour hour of day (0-23)
-     * @param position position the Person should move to at the given time of day. */
+     * @param position position the Person should move to at the given time of day, null to clear the occupation. */
     public void setOccupation(int hour, Position position){
-        if(hour >= 0 && hour < 24){
-            timetable[hour] = position;
+        if(hour < 0 || hour >= 24)
+            return;
+        byte[] hours = pattern.copyAnchors();
+        int previous = hours[hour];
+        if(position == null){
+            hours[hour] = TimetablePattern.NO_ANCHOR;
+        }else{
+            hours[hour] = (byte) findOrAddAnchor(PackedPosition.pack(position));
+        }
+        //drop anchor nobody refers to anymore
+        if(previous != TimetablePattern.NO_ANCHOR && previous != hours[hour] && !refersTo(hours, previous)){
+            long[] smaller = new long[anchors.length - 1];
+            System.arraycopy(anchors, 0, smaller, 0, previous);
+            System.arraycopy(anchors, previous + 1, smaller, previous, smaller.length - previous);
+            anchors = smaller;
+            for(int h = 0; h < 24; h++){
+                if(hours[h] > previous)
+                    hours[h]--;
+            }
         }
+        pattern = TimetablePattern.intern(hours);
+    }
+
+    /** Returns true if there is an occupation at given hour of day.
+     * @param hour hour of day (0-23)
+     * @return true if the Person has a position to move to at that time, false otherwise. */
+    public boolean hasOccupation(int hour){
+        return pattern.hasOccupation(hour);
+    }
+
+    /** Returns packed position the Person should now move to. Only valid if hasOccupation returns true.
+     * @param hour hour of day (0-23)
+     * @return long - packed position to be at given hour of day. */
+    public long getPackedOccupation(int hour){
+        return anchors[pattern.getAnchor(hour)];
     }
 
     /** Returns position the Person should now move to.
      * @param hour hour of day (0-23)
      * @return Position to be at given hour of day, or null if there's no position. */
     public Position getOccupation(int hour){
-        return timetable[hour];
+        if(!hasOccupation(hour))
+            return null;
+        return PackedPosition.toPosition(getPackedOccupation(hour));
+    }
+
+    /** Pattern getter.
+     * @return shared pattern of this timetable. */
+    public TimetablePattern getPattern(){
+        return pattern;
+    }
+
+    /** Returns packed position of the anchor.
+     * @param index index of the anchor, lower than anchor count of the pattern.
+     * @return long - packed position of the anchor. */
+    public long getPackedAnchor(int index){
+        return anchors[index];
+    }
+
+    /** Finds index of the anchor, adds the anchor if it isn't there.
+     * @param packed packed position of the anchor.
+     * @return int - index of the anchor. */
+    private int findOrAddAnchor(long packed){
+        for(int i = 0; i < anchors.length; i++){
+            if(anchors[i] == packed)
+                return i;
+        }
+        anchors = Arrays.copyOf(anchors, anchors.length + 1);
+        anchors[anchors.length - 1] = packed;
+        return anchors.length - 1;
+    }
+
+    /** Checks if any hour refers to the anchor.
+     * @param hours anchor index for every hour of day.
+     * @param anchor anchor index to look for.
+     * @return true if the anchor is used. */
+    private static boolean refersTo(byte[] hours, int anchor){
+        for(byte a : hours){
+            if(a == anchor)
+                return true;
+        }
+        return false;
     }
 
     /**
      * Parses timetable from given formatted string and returns it.
+     * <p>Accepts both the compact form (see toCompactString) and the 24 field form (see toString).</p>
      * @param timetableString formatted string representation of timetable
      * @return Timetable - new timetable instance parsed from the string
      */
     public static Timetable parseTimetable(String timetableString){
-        String[] split = timetableString.split(";", -1);
+        int at = timetableString.indexOf('@');
+        if(at >= 0)
+            return parseCompact(timetableString, at);
+
         Timetable timetable = new Timetable();
+        byte[] hours = TimetablePattern.EMPTY.copyAnchors();
+        int start = 0;
         for(int i = 0; i < 24; i++){
-            if(!split[i].equals("")){
-                Position pos = Position.parsePosition(split[i]);
-                timetable.setOccupation(i, pos);
+            int end = timetableString.indexOf(';', start);
+            if(end < 0)
+                end = timetableString.length();
+            if(end > start){
+                int comma = timetableString.indexOf(',', start);
+                if(comma < 0 || comma > end){
+                    log.severe("Invalid timetable occupation: " + timetableString.substring(start, end));
+                }else{
+                    int x = Integer.parseInt(timetableString, start, comma, 10);
+                    int y = Integer.parseInt(timetableString, comma + 1, end, 10);
+                    hours[i] = (byte) timetable.findOrAddAnchor(PackedPosition.pack(x, y));
+                }
             }
+            start = end + 1;
         }
+        timetable.pattern = TimetablePattern.intern(hours);
         return  timetable;
     }
 
+    /**
+     * Parses timetable in compact form - "patternId@x,y;x,y...".
+     * @param timetableString formatted string representation of timetable
+     * @param at index of the '@' character.
+     * @return Timetable - new timetable instance parsed from the string
+     */
+    private static Timetable parseCompact(String timetableString, int at){
+        int id = Integer.parseInt(timetableString, 0, at, 10);
+        TimetablePattern pattern = TimetablePattern.get(id);
+        if(pattern == null){
+            log.severe("Unknown timetable pattern " + id);
+            return new Timetable();
+        }
+        long[] anchors = new long[pattern.getAnchorCount()];
+        int start = at + 1;
+        for(int i = 0; i < anchors.length; i++){
+            int end = timetableString.indexOf(';', start);
+            if(end < 0)
+                end = timetableString.length();
+            anchors[i] = PackedPosition.parse(timetableString.subSequence(start, end));
+            start = end + 1;
+        }
+        return new Timetable(pattern, anchors);
+    }
+
+    /** Get compact text representation of the Timetable - pattern id and the anchors.
+     * The pattern must be registered at the receiving side.
+     * @return Text representation of timetable to send via network - "patternId@x,y;x,y...".
+     */
+    public String toCompactString(){
+        StringBuilder ret = new StringBuilder();
+        ret.append(pattern.getId()).append('@');
+        for(int i = 0; i < anchors.length; i++){
+            if(i > 0)
+                ret.append(';');
+            ret.append(PackedPosition.getX(anchors[i])).append(',').append(PackedPosition.getY(anchors[i]));
+        }
+        return ret.toString();
+    }
+
+    /** Writes binary representation of the timetable - pattern id and packed anchors.
+     * The pattern must be registered at the receiving side.
+     * @param buffer buffer to write to. */
+    public void writeTo(WireBuffer buffer){
+        buffer.putInt(pattern.getId());
+        for(long anchor : anchors){
+            buffer.putLong(anchor);
+        }
+    }
+
+    /** Reads timetable from it's binary representation (see writeTo).
+     * @param buffer buffer to read from.
+     * @return Timetable - new timetable instance read from the buffer. */
+    public static Timetable readFrom(WireBuffer buffer){
+        int id = buffer.getInt();
+        TimetablePattern pattern = TimetablePattern.get(id);
+        if(pattern == null){
+            log.severe("Unknown timetable pattern " + id);
+            return new Timetable();
+        }
+        long[] anchors = new long[pattern.getAnchorCount()];
+        for(int i = 0; i < anchors.length; i++){
+            anchors[i] = buffer.getLong();
+        }
+        return new Timetable(pattern, anchors);
+    }
+
     /** Get inline text representation of the Timetable.
-     * @return Text representation of timetable to send via network.
+     * @return Text representation of timetable with all 24 hours.
      */
     @Override
     public String toString(){
         StringBuilder ret = new StringBuilder();
         for(int i = 0; i < 24; i++){
-            if(timetable[i] != null){
-                ret.append(timetable[i].toString());
+            if(hasOccupation(i)){
+                long occupation = getPackedOccupation(i);
+                ret.append(PackedPosition.getX(occupation)).append(',').append(PackedPosition.getY(occupation));
             }
             if(i != 23)
                 ret.append(";");
@@ -0,0 +1,208 @@
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Immutable daily pattern shared by all timetables with the same shape (flyweight).
+ * <p>The pattern maps every hour of day to an anchor - index of a position in per-person anchors array
+ * (typically home, school or work and restaurant in order they were assigned), or to no occupation.
+ * Patterns are interned in a process-wide table and identified by a small id, which is used on the wire.
+ * The master registers it's patterns in simulators before sending any people.</p>
+ */
+public final class TimetablePattern {
+    /** Anchor value of an hour without occupation. */
+    public static final int NO_ANCHOR = -1;
+    /** Characters encoding anchor indexes in pattern definitions. */
+    private static final String ANCHOR_CHARS = "0123456789abcdefghijklmn";
+
+    /** Interned patterns by their definitions. */
+    private static final ConcurrentHashMap<String, TimetablePattern> byDefinition = new ConcurrentHashMap<>();
+    /** Interned patterns by their ids. */
+    private static final ConcurrentHashMap<Integer, TimetablePattern> byId = new ConcurrentHashMap<>();
+    /** Id of the next locally interned pattern. */
+    private static final AtomicInteger nextId = new AtomicInteger(0);
+    /** Pattern without any occupation. */
+    public static final TimetablePattern EMPTY = intern(emptyAnchors());
+
+    /** Id of the pattern. */
+    private final int id;
+    /** Anchor index for every hour of day, NO_ANCHOR if there is no occupation. */
+    private final byte[] anchors;
+    /** Bit mask of hours that have an occupation (bit i set means there is an occupation at hour i). */
+    private final int occupiedHours;
+    /** Number of anchors the pattern refers to. */
+    private final int anchorCount;
+    /** Text definition of the pattern, one character per hour. */
+    private final String definition;
+
+    /** Timetable pattern constructor.
+     * @param id id of the pattern.
+     * @param anchors anchor index for every hour of day.
+     * @param definition text definition of the pattern. */
+    private TimetablePattern(int id, byte[] anchors, String definition){
+        this.id = id;
+        this.anchors = anchors;
+        this.definition = definition;
+        int occupied = 0;
+        int count = 0;
+        for(int h = 0; h < 24; h++){
+            if(anchors[h] != NO_ANCHOR){
+                occupied |= 1 << h;
+                count = Math.max(count, anchors[h] + 1);
+            }
+        }
+        occupiedHours = occupied;
+        anchorCount = count;
+    }
+
+    /** Id getter.
+     * @return id of the pattern. */
+    public int getId(){
+        return id;
+    }
+
+    /** Returns true if there is an occupation at given hour of day.
+     * @param hour hour of day (0-23)
+     * @return true if the pattern has an anchor at that hour. */
+    public boolean hasOccupation(int hour){
+        return (occupiedHours & (1 << hour)) != 0;
+    }
+
+    /** Returns anchor index at given hour of day.
+     * @param hour hour of day (0-23)
+     * @return int - index to the anchors array or NO_ANCHOR. */
+    public int getAnchor(int hour){
+        return anchors[hour];
+    }
+
+    /** Anchor count getter.
+     * @return number of anchors the pattern refers to. */
+    public int getAnchorCount(){
+        return anchorCount;
+    }
+
+    /** Returns copy of anchor indexes of all hours of day.
+     * @return byte[24] - anchor index for every hour of day. */
+    public byte[] copyAnchors(){
+        return anchors.clone();
+    }
+
+    /** Definition getter.
+     * @return text definition of the pattern - one character per hour, anchor index or '-' for no occupation. */
+    public String getDefinition(){
+        return definition;
+    }
+
+    /** Returns the interned pattern with given anchors, interns a new one if there is none.
+     * @param anchors anchor index for every hour of day (NO_ANCHOR for no occupation), at most 24 anchors.
+     * @return TimetablePattern shared instance of the pattern. */
+    public static TimetablePattern intern(byte[] anchors){
+        String definition = encode(anchors);
+        TimetablePattern pattern = byDefinition.get(definition);
+        if(pattern != null)
+            return pattern;
+        return byDefinition.computeIfAbsent(definition, d -> {
+            TimetablePattern created = new TimetablePattern(nextId.getAndIncrement(), anchors.clone(), d);
+            byId.put(created.id, created);
+            return created;
+        });
+    }
+
+    /** Registers pattern with id assigned by the master.
+     * @param id id of the pattern.
+     * @param definition text definition of the pattern.
+     * @return TimetablePattern registered pattern. */
+    public static synchronized TimetablePattern register(int id, String definition){
+        TimetablePattern pattern = byId.get(id);
+        if(pattern != null && pattern.definition.equals(definition))
+            return pattern;
+        pattern = new TimetablePattern(id, decode(definition), definition);
+        byId.put(id, pattern);
+        byDefinition.put(definition, pattern);
+        nextId.updateAndGet(next -> Math.max(next, id + 1));
+        return pattern;
+    }
+
+    /** Returns pattern with given id.
+     * @param id id of the pattern.
+     * @return TimetablePattern with the id or null if there is no such pattern. */
+    public static TimetablePattern get(int id){
+        return byId.get(id);
+    }
+
+    /** Returns all interned patterns ordered by id.
+     * @return List of all patterns. */
+    public static List<TimetablePattern> getAll(){
+        List<TimetablePattern> all = new ArrayList<>(byId.values());
+        all.sort(Comparator.comparingInt(TimetablePattern::getId));
+        return all;
+    }
+
+    /** Parses pattern registration.
+     * @param patternString formatted string - "TimetablePattern:id:definition".
+     * @return TimetablePattern registered pattern. */
+    public static TimetablePattern parseTimetablePattern(String patternString){
+        String[] split = patternString.split(":");
+        return register(Integer.parseInt(split[1]), split[2]);
+    }
+
+    /** Writes binary representation of the pattern registration - id and 24 definition characters.
+     * @param buffer buffer to write to. */
+    public void writeTo(WireBuffer buffer){
+        buffer.putInt(id);
+        for(int h = 0; h < 24; h++){
+            buffer.putByte(definition.charAt(h));
+        }
+    }
+
+    /** Reads pattern registration from it's binary representation (see writeTo) and registers the pattern.
+     * @param buffer buffer to read from.
+     * @return TimetablePattern registered pattern. */
+    public static TimetablePattern readFrom(WireBuffer buffer){
+        int id = buffer.getInt();
+        byte[] definition = new byte[24];
+        buffer.getBytes(definition);
+        return register(id, new String(definition, StandardCharsets.US_ASCII));
+    }
+
+    /** Returns anchors of a pattern without any occupation.
+     * @return byte[24] filled with NO_ANCHOR. */
+    private static byte[] emptyAnchors(){
+        byte[] anchors = new byte[24];
+        Arrays.fill(anchors, (byte) NO_ANCHOR);
+        return anchors;
+    }
+
+    /** Encodes anchors to pattern definition.
+     * @param anchors anchor index for every hour of day.
+     * @return String definition. */
+    private static String encode(byte[] anchors){
+        char[] chars = new char[24];
+        for(int h = 0; h < 24; h++){
+            chars[h] = anchors[h] == NO_ANCHOR ? '-' : ANCHOR_CHARS.charAt(anchors[h]);
+        }
+        return new String(chars);
+    }
+
+    /** Decodes anchors from pattern definition.
+     * @param definition text definition of the pattern.
+     * @return byte[24] anchor index for every hour of day. */
+    private static byte[] decode(String definition){
+        byte[] anchors = emptyAnchors();
+        for(int h = 0; h < 24 && h < definition.length(); h++){
+            anchors[h] = (byte) ANCHOR_CHARS.indexOf(definition.charAt(h));
+        }
+        return anchors;
+    }
+
+    /** Returns text representation of the pattern registration to send via network.
+     * @return string - "TimetablePattern:id:definition". */
+    @Override
+    public String toString(){
+        return "TimetablePattern:" + id + ":" + definition;
+    }
+}
@@ -0,0 +1,184 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Set of persons present at a location, persons are rows of a PeopleTable.
+ * <p>Rows are kept in a dense array and the table remembers slot of every member in the set,
+ * so adding, removing and testing membership take constant time. A person can be member of a single set only.
+ * The set isn't thread-safe, it is guarded by the location owning it.</p>
+ * <p>Persons can be used instead of rows, see Person.joinTable. Iterating the set returns copies of the members.</p>
+ */
+public class VisitorSet implements Iterable<Person> {
+    /** Slot value of a person that isn't member of any set. */
+    public static final int NO_SLOT = -1;
+    /** Maximal length of a range sorted by insertion sort. */
+    private static final int INSERTION_SORT_LENGTH = 16;
+
+    /** Rows of the members of the set, only first size elements are used. */
+    private int[] members;
+    /** Number of members. */
+    private int size;
+    /** Table of the members, all members are from the same table. Null until the first member is added. */
+    private PeopleTable people;
+
+    /** Visitor set constructor, creates an empty set. */
+    public VisitorSet(){
+        members = new int[4];
+        size = 0;
+        people = null;
+    }
+
+    /** Adds the person to the set, the person joins the table of the members first.
+     * @param person person to add.
+     * @return true if the person was added, false if it already was member of the set. */
+    public boolean add(Person person){
+        PeopleTable table = person.joinTable(size > 0 ? people : null);
+        return add(table, person.getRow());
+    }
+
+    /** Removes the person from the set.
+     * @param person person to remove.
+     * @return true if the person was removed, false if it wasn't member of the set. */
+    public boolean remove(Person person){
+        return people != null && person.getTable() == people && remove(people, person.getRow());
+    }
+
+    /** Checks if the person is member of the set.
+     * @param person person to look for.
+     * @return true if the person is member of this set. */
+    public boolean contains(Person person){
+        return people != null && person.getTable() == people && contains(people, person.getRow());
+    }
+
+    /** Adds the person to the set.
+     * @param people table of the person.
+     * @param row row of the person to add.
+     * @return true if the person was added, false if it already was member of the set. */
+    public boolean add(PeopleTable people, int row){
+        if(contains(people, row))
+            return false;
+        if(size == members.length)
+            members = Arrays.copyOf(members, size * 2);
+        members[size] = row;
+        people.setVisitorSlot(row, size);
+        size++;
+        this.people = people;
+        return true;
+    }
+
+    /** Removes the person from the set, last member takes it's slot.
+     * @param people table of the person.
+     * @param row row of the person to remove.
+     * @return true if the person was removed, false if it wasn't member of the set. */
+    public boolean remove(PeopleTable people, int row){
+        if(!contains(people, row))
+            return false;
+        int slot = people.getVisitorSlot(row);
+        size--;
+        int last = members[size];
+        members[slot] = last;
+        people.setVisitorSlot(last, slot);
+        people.setVisitorSlot(row, NO_SLOT);
+        return true;
+    }
+
+    /** Checks if the person is member of the set.
+     * @param people table of the person.
+     * @param row row of the person to look for.
+     * @return true if the person is member of this set. */
+    public boolean contains(PeopleTable people, int row){
+        int slot = people.getVisitorSlot(row);
+        return slot >= 0 && slot < size && members[slot] == row;
+    }
+
+    /** Sorts the members by their personal numbers in place, without allocation.
+     * <p>Members mostly keep their order between rounds, so most of the work is done by the insertion sort
+     * of short ranges, which is close to linear for such input.</p>
+     * @param people table of the members. */
+    public void sortByPersonalNumber(PeopleTable people){
+        sort(people, 0, size - 1);
+        for(int slot = 0; slot < size; slot++){
+            people.setVisitorSlot(members[slot], slot);
+        }
+    }
+
+    /** Sorts range of the members by their personal numbers, recurses into the shorter part only.
+     * @param people table of the members.
+     * @param from first slot of the range.
+     * @param to last slot of the range. */
+    private void sort(PeopleTable people, int from, int to){
+        while(to - from >= INSERTION_SORT_LENGTH){
+            int pivot = people.getPersonalNumber(members[(from + to) >>> 1]);
+            int i = from;
+            int j = to;
+            while(i <= j){
+                while(people.getPersonalNumber(members[i]) < pivot) i++;
+                while(people.getPersonalNumber(members[j]) > pivot) j--;
+                if(i <= j){
+                    int swapped = members[i];
+                    members[i++] = members[j];
+                    members[j--] = swapped;
+                }
+            }
+            if(j - from < to - i){
+                sort(people, from, j);
+                from = i;
+            }else{
+                sort(people, i, to);
+                to = j;
+            }
+        }
+        for(int i = from + 1; i <= to; i++){
+            int row = members[i];
+            int personalNumber = people.getPersonalNumber(row);
+            int j = i - 1;
+            while(j >= from && people.getPersonalNumber(members[j]) > personalNumber){
+                members[j + 1] = members[j];
+                j--;
+            }
+            members[j + 1] = row;
+        }
+    }
+
+    /** Returns member at the given slot.
+     * @param slot slot of the member, must be lower than size.
+     * @return int - row of the member. */
+    public int get(int slot){
+        return members[slot];
+    }
+
+    /** Size getter.
+     * @return number of members of the set. */
+    public int size(){
+        return size;
+    }
+
+    /** Checks if the set has no members.
+     * @return true if the set is empty. */
+    public boolean isEmpty(){
+        return size == 0;
+    }
+
+    /** Creates iterator over copies of the members, see PeopleTable.toPerson. The set must not be changed during iteration.
+     * @return iterator over members. */
+    @Override
+    public Iterator<Person> iterator(){
+        return new Iterator<>() {
+            /** Slot of the next member to return. */
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public Person next() {
+                if(next >= size)
+                    throw new NoSuchElementException();
+                return people.toPerson(members[next++]);
+            }
+        };
+    }
+}
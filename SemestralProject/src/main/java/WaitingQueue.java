@@ -0,0 +1,67 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * People waiting to move to a simulator and confirmations waiting to be sent back to it.
+ * <p>Any thread can add to the queue, the connection to the simulator drains it when it resolves the waiting people.</p>
+ */
+public class WaitingQueue {
+    /** List of confirmation waiting to be send to simulator. */
+    private final List<WaitingPersonConfirmation> waitingConfirms;
+    /** List of people wanting to visit the simulator and waiting for confirmation. */
+    private final List<WaitingPerson> waitingPeople;
+
+    /** Waiting queue constructor, creates empty queue. */
+    public WaitingQueue(){
+        waitingConfirms = new ArrayList<>();
+        waitingPeople = new ArrayList<>();
+    }
+
+    /**
+     * Adds a person to the list of waiting people
+     * @param person person to add to the list
+     */
+    public void addPerson(WaitingPerson person){
+        synchronized (waitingPeople){
+            waitingPeople.add(person);
+        }
+    }
+
+    /**
+     * Removes all people from the list of waiting people.
+     * @return List of the waiting people, ordered by personal number.
+     */
+    public List<WaitingPerson> drainPeople(){
+        List<WaitingPerson> people;
+        synchronized (waitingPeople){
+            people = new ArrayList<>(waitingPeople);
+            waitingPeople.clear();
+        }
+        //people from different origins arrive in any order, sorting makes the simulators processing order stable
+        people.sort(Comparator.comparingInt(wp -> wp.getPerson().getPersonalNumber()));
+        return people;
+    }
+
+    /**
+     * Adds a confirmation to the list of waiting confirmations.
+     * @param confirmation confirmation to add to the list
+     */
+    public void addConfirmation(WaitingPersonConfirmation confirmation){
+        synchronized (waitingConfirms){
+            waitingConfirms.add(confirmation);
+        }
+    }
+
+    /**
+     * Removes all confirmations from the list of waiting confirmations.
+     * @return List of the waiting confirmations.
+     */
+    public List<WaitingPersonConfirmation> drainConfirmations(){
+        synchronized (waitingConfirms){
+            List<WaitingPersonConfirmation> confirmations = new ArrayList<>(waitingConfirms);
+            waitingConfirms.clear();
+            return confirmations;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+import java.util.Arrays;
+
+/**
+ * Set of personal numbers of persons allowed to visit a location.
+ * <p>Numbers are kept in a sorted primitive array, looking a number up is a binary search without allocations.
+ * The whitelist is filled during generation or parsing and must not be changed while it is being looked up.</p>
+ */
+public class Whitelist {
+    /** Sorted personal numbers, only first size elements are used. */
+    private int[] numbers;
+    /** Number of whitelisted persons. */
+    private int size;
+
+    /** Whitelist constructor, creates an empty whitelist. */
+    public Whitelist(){
+        this(4);
+    }
+
+    /** Whitelist constructor, creates an empty whitelist.
+     * @param capacity expected number of whitelisted persons. */
+    public Whitelist(int capacity){
+        numbers = new int[Math.max(capacity, 1)];
+        size = 0;
+    }
+
+    /** Adds personal number to the whitelist. Adding numbers in ascending order is the fastest.
+     * @param personalNumber personal number to add.
+     * @return true if the number was added, false if it already was on the whitelist. */
+    public boolean add(int personalNumber){
+        int index = size;
+        if(size > 0 && numbers[size - 1] >= personalNumber){
+            index = Arrays.binarySearch(numbers, 0, size, personalNumber);
+            if(index >= 0)
+                return false;
+            index = -index - 1;
+        }
+        if(size == numbers.length)
+            numbers = Arrays.copyOf(numbers, size * 2);
+        System.arraycopy(numbers, index, numbers, index + 1, size - index);
+        numbers[index] = personalNumber;
+        size++;
+        return true;
+    }
+
+    /** Checks if the personal number is on the whitelist.
+     * @param personalNumber personal number to look up.
+     * @return true if the number is whitelisted, false otherwise. */
+    public boolean contains(int personalNumber){
+        return Arrays.binarySearch(numbers, 0, size, personalNumber) >= 0;
+    }
+
+    /** Size getter.
+     * @return number of whitelisted persons. */
+    public int size(){
+        return size;
+    }
+
+    /**
+     * Parses Whitelist from given formatted string (comma separated personal numbers).
+     * @param whitelistString formatted string representing whitelist.
+     * @return Whitelist containing PersonalNumbers of whitelisted people.
+     */
+    public static Whitelist parseWhitelist(String whitelistString){
+        int count = whitelistString.isEmpty() ? 0 : 1;
+        for(int i = 0; i < whitelistString.length(); i++){
+            if(whitelistString.charAt(i) == ',')
+                count++;
+        }
+        Whitelist whitelist = new Whitelist(count);
+        int start = 0;
+        for(int i = 0; i < count; i++){
+            int end = whitelistString.indexOf(',', start);
+            if(end < 0)
+                end = whitelistString.length();
+            whitelist.add(Integer.parseInt(whitelistString, start, end, 10));
+            start = end + 1;
+        }
+        return whitelist;
+    }
+
+    /** Writes binary representation of whitelist - count followed by the personal numbers.
+     * @param buffer buffer to write to. */
+    public void writeTo(WireBuffer buffer){
+        buffer.putInt(size);
+        for(int i = 0; i < size; i++){
+            buffer.putInt(numbers[i]);
+        }
+    }
+
+    /** Reads whitelist from it's binary representation (see writeTo).
+     * @param buffer buffer to read from.
+     * @return Whitelist containing PersonalNumbers of whitelisted people. */
+    public static Whitelist readFrom(WireBuffer buffer){
+        int count = buffer.getInt();
+        Whitelist whitelist = new Whitelist(count);
+        for(int i = 0; i < count; i++){
+            whitelist.add(buffer.getInt());
+        }
+        return whitelist;
+    }
+
+    /** Returns text representation of whitelist to send via network - comma separated personal numbers.
+     * @return string - text representation of whitelist. */
+    @Override
+    public String toString(){
+        StringBuilder ret = new StringBuilder(size * 6);
+        for(int i = 0; i < size; i++){
+            if(i > 0){
+                ret.append(',');
+            }
+            ret.append(numbers[i]);
+        }
+        return ret.toString();
+    }
+}
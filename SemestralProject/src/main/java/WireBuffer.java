@@ -0,0 +1,153 @@
+import java.nio.ByteBuffer;
+
+/**
+ * Reusable growable byte buffer used to encode and decode payloads of binary protocol frames.
+ * <p>Values are stored big-endian, the buffer only grows when a frame doesn't fit, so after warm-up
+ * encoding and decoding doesn't allocate.</p>
+ */
+public class WireBuffer {
+    /** Underlying byte buffer, replaced by a bigger one when it's capacity is exceeded. */
+    private ByteBuffer buffer;
+
+    /** Wire buffer constructor.
+     * @param capacity initial capacity in bytes. */
+    public WireBuffer(int capacity){
+        buffer = ByteBuffer.allocate(capacity);
+    }
+
+    /** Clears the buffer to encode a new payload. */
+    public void clear(){
+        buffer.clear();
+    }
+
+    /** Makes sure the buffer can hold given number of additional bytes, grows the buffer if needed.
+     * @param bytes number of bytes to be put. */
+    public void ensureRemaining(int bytes){
+        if(buffer.remaining() >= bytes)
+            return;
+        int capacity = buffer.capacity();
+        while(capacity - buffer.position() < bytes){
+            capacity *= 2;
+        }
+        ByteBuffer bigger = ByteBuffer.allocate(capacity);
+        buffer.flip();
+        bigger.put(buffer);
+        buffer = bigger;
+    }
+
+    /** Prepares the buffer to receive payload of given length, the payload must be then read into getArray.
+     * @param length length of the payload in bytes. */
+    public void prepareRead(int length){
+        buffer.clear();
+        ensureRemaining(length);
+        buffer.limit(length);
+    }
+
+    /** Returns backing array of the buffer.
+     * @return byte[] backing array, valid until the buffer grows. */
+    public byte[] getArray(){
+        return buffer.array();
+    }
+
+    /** Returns number of bytes put to the buffer since it was cleared.
+     * @return int - length of the encoded payload. */
+    public int getLength(){
+        return buffer.position();
+    }
+
+    /** Returns true if there are bytes left to get from received payload.
+     * @return true if there are more bytes to get, false otherwise. */
+    public boolean hasRemaining(){
+        return buffer.hasRemaining();
+    }
+
+    /** Puts one byte.
+     * @param value value to put. */
+    public void putByte(int value){
+        ensureRemaining(Byte.BYTES);
+        buffer.put((byte) value);
+    }
+
+    /** Puts boolean as one byte.
+     * @param value value to put. */
+    public void putBoolean(boolean value){
+        putByte(value ? 1 : 0);
+    }
+
+    /** Puts int.
+     * @param value value to put. */
+    public void putInt(int value){
+        ensureRemaining(Integer.BYTES);
+        buffer.putInt(value);
+    }
+
+    /** Puts long.
+     * @param value value to put. */
+    public void putLong(long value){
+        ensureRemaining(Long.BYTES);
+        buffer.putLong(value);
+    }
+
+    /** Puts float.
+     * @param value value to put. */
+    public void putFloat(float value){
+        ensureRemaining(Float.BYTES);
+        buffer.putFloat(value);
+    }
+
+    /** Puts double.
+     * @param value value to put. */
+    public void putDouble(double value){
+        ensureRemaining(Double.BYTES);
+        buffer.putDouble(value);
+    }
+
+    /** Puts bytes of the array.
+     * @param values values to put. */
+    public void putBytes(byte[] values){
+        ensureRemaining(values.length);
+        buffer.put(values);
+    }
+
+    /** Gets one byte.
+     * @return byte - next byte of the payload. */
+    public byte getByte(){
+        return buffer.get();
+    }
+
+    /** Gets boolean stored as one byte.
+     * @return boolean - next value of the payload. */
+    public boolean getBoolean(){
+        return buffer.get() != 0;
+    }
+
+    /** Gets int.
+     * @return int - next value of the payload. */
+    public int getInt(){
+        return buffer.getInt();
+    }
+
+    /** Gets long.
+     * @return long - next value of the payload. */
+    public long getLong(){
+        return buffer.getLong();
+    }
+
+    /** Gets float.
+     * @return float - next value of the payload. */
+    public float getFloat(){
+        return buffer.getFloat();
+    }
+
+    /** Gets double.
+     * @return double - next value of the payload. */
+    public double getDouble(){
+        return buffer.getDouble();
+    }
+
+    /** Gets bytes to fill the whole array.
+     * @param values array to fill. */
+    public void getBytes(byte[] values){
+        buffer.get(values);
+    }
+}
@@ -0,0 +1,1027 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Message level communication channel between master and a simulator, used by both SimulatorConnection and MasterConnection,
+ * and between peer simulators, used by PeerConnection.
+ * <p>Messages are sent either as typed length-prefixed binary frames (int payload length, byte type code, payload)
+ * encoded into reusable buffers, or as newline-delimited text messages described in Comms_format.txt.
+ * The channel starts in text mode, binary mode is negotiated by the Protocol message. Text mode is kept as a fallback for debugging.</p>
+ * <p>Sent messages are buffered, flush must be called before waiting for a reply.</p>
+ * <p>Messages are received either by blocking receive, or by non-blocking poll from bytes read by a selector.</p>
+ */
+public class WireChannel {
+    private static final Logger log = Logger.getLogger(WireChannel.class.getName());
+    /** Initial capacity of the buffers in bytes, they grow when a message doesn't fit. */
+    private static final int INITIAL_CAPACITY = 1 << 16;
+    /** Text protocol keyword of binary mode in the Protocol message. */
+    private static final String BINARY = "binary";
+    /** Text protocol keyword of text mode in the Protocol message. */
+    private static final String TEXT = "text";
+    /** Maximal number of people or confirmations sent in one batch message, bigger batches are split. */
+    public static final int BATCH_SIZE = 1 << 14;
+    /** Separator of people in text PersonBatch message. */
+    private static final String BATCH_SEPARATOR = "|";
+
+    private final DataInputStream input;
+    private final DataOutputStream output;
+    /** Buffer to encode payloads of sent frames. */
+    private final WireBuffer sendBuffer;
+    /** Buffer holding payload of the last received frame. */
+    private final WireBuffer receiveBuffer;
+    /** Buffer for bytes of received text lines. */
+    private byte[] lineBytes;
+    /** True if the channel uses binary frames, false if it uses text messages. */
+    private volatile boolean binary;
+    /** Last received text message. */
+    private String receivedLine;
+    /** Last received text message split to ':' separated segments. */
+    private String[] receivedSegments;
+    /** Index of the next segment to read from the last received text message. */
+    private int segment;
+
+    /**
+     * Wire channel constructor. The channel starts in text mode.
+     * @param inputStream stream to receive messages from, null if messages are received by poll.
+     * @param outputStream stream to send messages to.
+     */
+    public WireChannel(InputStream inputStream, OutputStream outputStream){
+        input = inputStream == null ? null : new DataInputStream(new BufferedInputStream(inputStream, INITIAL_CAPACITY));
+        output = new DataOutputStream(new BufferedOutputStream(outputStream, INITIAL_CAPACITY));
+        sendBuffer = new WireBuffer(INITIAL_CAPACITY);
+        receiveBuffer = new WireBuffer(INITIAL_CAPACITY);
+        lineBytes = new byte[256];
+        binary = false;
+    }
+
+    /** Returns true if the channel uses binary frames.
+     * @return true in binary mode, false in text mode. */
+    public boolean isBinary(){
+        return binary;
+    }
+
+    /**
+     * Asks the other side to use the protocol and waits for the answer (master side of negotiation).
+     * @param preferBinary true to ask for binary frames, false to stay in text mode.
+     * @return true if binary mode was agreed on, false if text mode is used.
+     * @throws IOException in case of communication error.
+     */
+    public synchronized boolean requestProtocol(boolean preferBinary) throws IOException {
+        sendProtocolRequest(preferBinary);
+        flush();
+        return readProtocolAnswer(receive());
+    }
+
+    /**
+     * Sends the Protocol message asking the other side to use the protocol, the answer must be read by readProtocolAnswer.
+     * @param preferBinary true to ask for binary frames, false to stay in text mode.
+     * @throws IOException in case of communication error.
+     */
+    public synchronized void sendProtocolRequest(boolean preferBinary) throws IOException {
+        sendText(WireMessage.Protocol.name() + ":" + (preferBinary ? BINARY : TEXT));
+    }
+
+    /**
+     * Reads the received answer to Protocol message and switches to the agreed mode.
+     * @param answer type of the received answer.
+     * @return true if binary mode was agreed on, false if text mode is used.
+     */
+    public boolean readProtocolAnswer(WireMessage answer){
+        binary = answer == WireMessage.Protocol && BINARY.equals(readSegment());
+        return binary;
+    }
+
+    /**
+     * Answers the received Protocol message and switches to the agreed mode (simulator side of negotiation).
+     * @param allowBinary false to refuse binary frames and stay in text mode.
+     * @throws IOException in case of communication error.
+     */
+    public synchronized void answerProtocol(boolean allowBinary) throws IOException {
+        boolean useBinary = allowBinary && BINARY.equals(readSegment());
+        sendText(WireMessage.Protocol.name() + ":" + (useBinary ? BINARY : TEXT));
+        flush();
+        binary = useBinary;
+    }
+
+    /**
+     * Sends a message without any content (commands and confirmations).
+     * @param message type of the message.
+     * @throws IOException in case of communication error.
+     */
+    public synchronized void sendCommand(WireMessage message) throws IOException {
+        if(binary){
+            sendBuffer.clear();
+            sendFrame(message);
+        }else{
+            sendText(message.name());
+        }
+    }
+
+    /**
+     * Sends simulator set-up command.
+     * @param topLeft top-left corner of the simulators area.
+     * @param size size of the simulators area.
+     * @param seed simulation seed.
+     * @throws IOException in case of communication error.
+     */
+    public synchronized void sendSetUp(Position topLeft, Position size, long seed) throws IOException {
+        if(binary){
+            sendBuffer.clear();
+            sendBuffer.putLong(PackedPosition.pack(topLeft));
+            sendBuffer.putLong(PackedPosition.pack(size));
+            sendBuffer.putLong(seed);
+            sendFrame(WireMessage.SetUp);
+        }else{
+            sendText("SetUp:" + topLeft.toString() + ":" + size.toString() + ":" + seed);
+        }
+    }
+
+    /**
+     * Sends capacity of the simulator as answer to the Capacity request.
+     * @param capacity capacity of the simulator.
+     * @throws IOException in case of communication error.
+     */
+    public synchronized void sendCapacity(SimulatorCapacity capacity) throws IOException {
+        if(binary){
+            sendBuffer.clear();
+            capacity.writeTo(sendBuffer);
+            sendFrame(WireMessage.Capacity);
+        }else{
+            sendText("Capacity:" + capacity.toString());
+        }
+    }
+
+    /**
+     * Sends command to change the simulators area.
+     * @param topLeft new top-left corner of the simulators area.
+     * @param size new size of the simulators area.
+     * @throws IOException in case of communication error.
+     */
+    public synchronized void sendResize(Position topLeft, Position size) throws IOException {
+        if(binary){
+            sendBuffer.clear();
+            sendBuffer.putLong(PackedPosition.pack(topLeft));
+            sendBuffer.putLong(PackedPosition.pack(size));
+            sendFrame(WireMessage.Resize);
+        }else{
+            sendText("Resize:" + topLeft.toString() + ":" + size.toString());
+        }
+    }
+
+    /**
+     * Sends confirmation of the SetUp command.
+     * @param peerPort port the simulator listens for peer connections on, 0 if it doesn't accept peers.
+     * @throws IOException in case of communication error.
+     */
+    public synchronized void sendSimIsSet(int peerPort) throws IOException {
+        if(binary){
+            sendBuffer.clear();
+            sendBuffer.putInt(peerPort);
+            sendFrame(WireMessage.SimIsSet);
+        }else{
+            sendText("SimIsSet:" + peerPort);
+        }
+    }
+
+    /**
+     * Offers the simulator to exchange further messages through rings in shared memory file.
+     * @param path path of the file.
+     * @param capacity capacity of each ring in the file in bytes.
+     * @throws IOException in case of communication error.
+     */
+    public synchronized void sendSharedMemory(String path, int capacity) throws IOException {
+        if(binary){
+            sendBuffer.clear();
+            byte[] pathBytes = path.getBytes(StandardCharsets.UTF_8);
+            sendBuffer.putInt(capacity);
+            sendBuffer.putInt(pathBytes.length);
+            sendBuffer.putBytes(pathBytes);
+            sendFrame(WireMessage.SharedMemory);
+        }else{
+            sendText("SharedMemory:" + capacity + ":" + path);
+        }
+    }
+
+    /**
+     * Answers the offer of shared memory.
+     * @param accepted true if the simulator mapped the file and reads further messages from it.
+     * @throws IOException in case of communication error.
+     */
+    public synchronized void sendSharedMemoryAnswer(boolean accepted) throws IOException {
+        if(binary){
+            sendBuffer.clear();
+            sendBuffer.putBoolean(accepted);
+            sendFrame(WireMessage.SharedMemory);
+        }else{
+            sendText("SharedMemory:" + accepted);
+        }
+    }
+
+    /**
+     * Returns channel exchanging messages over other streams in the protocol negotiated by this channel.
+     * Messages sent by this channel must be flushed before.
+     * @param inputStream stream to receive messages from.
+     * @param outputStream stream to send messages to.
+     * @return WireChannel over the streams.
+     */
+    public WireChannel moveTo(InputStream inputStream, OutputStream outputStream){
+        WireChannel moved = new WireChannel(inputStream, outputStream);
+        moved.binary = binary;
+        return moved;
+    }
+
+    /**
+     * Sends command to open peer connections.
+     * @param expected number of peers that will connect to the simulator.
+     * @param peers peers the simulator should connect to.
+     * @throws IOException in case of communication error.
+     */
+    public synchronized void sendPeers(int expected, List<PeerAddress> peers) throws IOException {
+        if(binary){
+            sendBuffer.clear();
+            sendBuffer.putInt(expected);
+            sendBuffer.putInt(peers.size());
+            for(PeerAddress peer : peers){
+                peer.writeTo(sendBuffer);
+            }
+            sendFrame(WireMessage.Peers);
+        }else{
+            StringBuilder peersStr = new StringBuilder("Peers:").append(expected);
+            for(PeerAddress peer : peers){
+                peersStr.append(':').append(peer.toString());
+            }
+            sendText(peersStr.toString());
+        }
+    }
+
+    /**
+     * Sends the first message of a peer connection.
+     * @param topLeft top-left corner of the connecting simulators area.
+     * @param size size of the connecting simulators area.
+     * @throws IOException in case of communication error.
+     */
+    public synchronized void sendPeerHello(Position topLeft, Position size) throws IOException {
+        if(binary){
+            sendBuffer.clear();
+            sendBuffer.putLong(PackedPosition.pack(topLeft));
+            sendBuffer.putLong(PackedPosition.pack(size));
+            sendFrame(WireMessage.PeerHello);
+        }else{
+            sendText("PeerHello:" + topLeft.toString() + ":" + size.toString());
+        }
+    }
+
+    /**
+     * Sends command to send back extract of an area.
+     * @param topLeft top-left corner of the area.
+     * @param size size of the area.
+     * @throws IOException in case of communication error.
+     */
+    public synchronized void sendSendExtract(Position topLeft, Position size) throws IOException {
+        sendSendExtract(topLeft, size, ExtractTracker.NO_VERSION);
+    }
+
+    /**
+     * Sends command to send back extract of an area as delta against the extract of given version.
+     * @param topLeft top-left corner of the area.
+     * @param size size of the area.
+     * @param baseVersion version of the extract of the area the receiver holds, ExtractTracker.NO_VERSION for full extract.
+     * @throws IOException in case of communication error.
+     */
+    public synchronized void sendSendExtract(Position topLeft, Position size, int baseVersion) throws IOException {
+        sendAreaCommand(WireMessage.SendExtract, topLeft, size, baseVersion);
+    }
+
+    /**
+     * Sends command to finish the round - calculate health and send back stats together with extract of an area.
+     * @param topLeft top-left corner of the extracted area.
+     * @param size size of the extracted area.
+     * @param baseVersion version of the extract of the area the receiver holds, ExtractTracker.NO_VERSION for full extract.
+     * @throws IOException in case of communication error.
+     */
+    public synchronized void sendRound(Position topLeft, Position size, int baseVersion) throws IOException {
+        sendAreaCommand(WireMessage.Round, topLeft, size, baseVersion);
+    }
+
+    /**
+     * Sends command with an area and extract base version.
+     * @param message type of the command.
+     * @param topLeft top-left corner of the area.
+     * @param size size of the area.
+     * @param baseVersion version of the extract of the area the receiver holds.
+     * @throws IOException in case of communication error.
+     */
+    private void sendAreaCommand(WireMessage message, Position topLeft, Position size, int baseVersion) throws IOException {
+        if(binary){
+            sendBuffer.clear();
+            sendBuffer.putLong(PackedPosition.pack(topLeft));
+            sendBuffer.putLong(PackedPosition.pack(size));
+            sendBuffer.putInt(baseVersion);
+            sendFrame(message);
+        }else{
+            sendText(message.name() + ":" + topLeft.toString() + ":" + size.toString() + ":" + baseVersion);
+        }
+    }
+
+    /**
+     * Sends a person.
+     * @param person person to send.
+     * @param targetPosition position the person should land on.
+     * @throws IOException in case of communication error.
+     */
+    public synchronized void sendPerson(Person person, Position targetPosition) throws IOException {
+        if(binary){
+            sendBuffer.clear();
+            sendBuffer.putLong(PackedPosition.pack(targetPosition));
+            person.writeTo(sendBuffer);
+            sendFrame(WireMessage.Person);
+        }else{
+            sendText(person.toCompactString(targetPosition));
+        }
+    }
+
+    /**
+     * Sends a person confirmation.
+     * @param personalNumber personal number of the referenced person.
+     * @param confirmation true if person was accepted, false otherwise.
+     * @throws IOException in case of communication error.
+     */
+    public synchronized void sendPersonConfirmation(int personalNumber, boolean confirmation) throws IOException {
+        if(binary){
+            sendBuffer.clear();
+            sendBuffer.putInt(personalNumber);
+            sendBuffer.putBoolean(confirmation);
+            sendFrame(WireMessage.PersonConfirmation);
+        }else{
+            sendText("PersonConfirmation:" + personalNumber + ":" + confirmation);
+        }
+    }
+
+    /**
+     * Sends a batch of people in one message, the batch shouldn't be bigger than BATCH_SIZE.
+     * @param people people to send with their target positions.
+     * @throws IOException in case of communication error.
+     */
+    public synchronized void sendPersonBatch(List<WaitingPerson> people) throws IOException {
+        sendPersonBatch(WireMessage.PersonBatch, people);
+    }
+
+    /**
+     * Sends a batch of people as a message of the given type, the batch shouldn't be bigger than BATCH_SIZE.
+     * @param message type of the message, PersonBatch or Adopt.
+     * @param people people to send with their target positions.
+     * @throws IOException in case of communication error.
+     */
+    public synchronized void sendPersonBatch(WireMessage message, List<WaitingPerson> people) throws IOException {
+        if(binary){
+            sendBuffer.clear();
+            sendBuffer.putInt(people.size());
+            for(WaitingPerson wp : people){
+                sendBuffer.putLong(PackedPosition.pack(wp.getTargetPosition()));
+                wp.getPerson().writeTo(sendBuffer);
+            }
+            sendFrame(message);
+        }else{
+            StringBuilder batchStr = new StringBuilder(message.name()).append(':');
+            for(int i = 0; i < people.size(); i++){
+                if(i > 0)
+                    batchStr.append(BATCH_SEPARATOR);
+                batchStr.append(people.get(i).getPerson().toCompactString(people.get(i).getTargetPosition()));
+            }
+            sendText(batchStr.toString());
+        }
+    }
+
+    /**
+     * Sends confirmations of a batch of people in one message, the batch shouldn't be bigger than BATCH_SIZE.
+     * Binary message carries the confirmations as a bitmap.
+     * @param confirmations confirmations to send.
+     * @throws IOException in case of communication error.
+     */
+    public synchronized void sendPersonConfirmations(List<WaitingPersonConfirmation> confirmations) throws IOException {
+        if(binary){
+            sendBuffer.clear();
+            sendBuffer.putInt(confirmations.size());
+            int bits = 0;
+            for(int i = 0; i < confirmations.size(); i++){
+                sendBuffer.putInt(confirmations.get(i).getPersonalNumber());
+            }
+            for(int i = 0; i < confirmations.size(); i++){
+                if(confirmations.get(i).getConfirmation())
+                    bits |= 1 << (i & 7);
+                if((i & 7) == 7 || i == confirmations.size() - 1){
+                    sendBuffer.putByte(bits);
+                    bits = 0;
+                }
+            }
+            sendFrame(WireMessage.PersonConfirmations);
+        }else{
+            StringBuilder confirmationsStr = new StringBuilder("PersonConfirmations");
+            for(WaitingPersonConfirmation wc : confirmations){
+                confirmationsStr.append(':').append(wc.getPersonalNumber()).append(',').append(wc.getConfirmation());
+            }
+            sendText(confirmationsStr.toString());
+        }
+    }
+
+    /**
+     * Splits the list to batches of at most BATCH_SIZE elements.
+     * @param list list to split.
+     * @param <T> type of the elements.
+     * @return List of consecutive sub lists of the list, empty if the list is empty.
+     */
+    public static <T> List<List<T>> batches(List<T> list){
+        List<List<T>> batches = new ArrayList<>(list.size() / BATCH_SIZE + 1);
+        for(int start = 0; start < list.size(); start += BATCH_SIZE){
+            batches.add(list.subList(start, Math.min(start + BATCH_SIZE, list.size())));
+        }
+        return batches;
+    }
+
+    /**
+     * Sends a timetable pattern registration.
+     * @param pattern pattern to register.
+     * @throws IOException in case of communication error.
+     */
+    public synchronized void sendTimetablePattern(TimetablePattern pattern) throws IOException {
+        if(binary){
+            sendBuffer.clear();
+            pattern.writeTo(sendBuffer);
+            sendFrame(WireMessage.TimetablePattern);
+        }else{
+            sendText(pattern.toString());
+        }
+    }
+
+    /**
+     * Sends a location (without visitors).
+     * @param location location to send.
+     * @throws IOException in case of communication error.
+     */
+    public synchronized void sendLocation(Location location) throws IOException {
+        if(binary){
+            sendBuffer.clear();
+            location.writeTo(sendBuffer);
+            sendFrame(WireMessage.Location);
+        }else{
+            sendText(location.toString());
+        }
+    }
+
+    /**
+     * Sends contagion parameters.
+     * @param parameters parameters to send.
+     * @throws IOException in case of communication error.
+     */
+    public synchronized void sendContagionParameters(ContagionParameters parameters) throws IOException {
+        if(binary){
+            sendBuffer.clear();
+            parameters.writeTo(sendBuffer);
+            sendFrame(WireMessage.ContagionParameters);
+        }else{
+            sendText(parameters.toString());
+        }
+    }
+
+    /**
+     * Sends overall stats.
+     * @param stats stats to send.
+     * @throws IOException in case of communication error.
+     */
+    public synchronized void sendStats(Stats stats) throws IOException {
+        if(binary){
+            sendBuffer.clear();
+            stats.writeTo(sendBuffer);
+            sendFrame(WireMessage.Stats);
+        }else{
+            sendText("Stats:" + stats.toString());
+        }
+    }
+
+    /**
+     * Sends extract of the locations - position, type and visitors stats of every location.
+     * @param area locations in the extracted area, can be null.
+     * @throws IOException in case of communication error.
+     */
+    public synchronized void sendExtract(Location[] area) throws IOException {
+        int count = area == null ? 0 : area.length;
+        if(binary){
+            sendBuffer.clear();
+            putExtractedLocations(area, count);
+            sendFrame(WireMessage.Extract);
+        }else{
+            StringBuilder extractStr = new StringBuilder("Extract");
+            appendExtractedLocations(extractStr, area, count);
+            sendText(extractStr.toString());
+        }
+    }
+
+    /**
+     * Sends versioned extract of the locations, either full or delta against the previous version.
+     * @param version version of the extract.
+     * @param full true if the extract contains all locations of the area, false if it contains only changes.
+     * @param changed locations that changed since the previous version (all locations in full extract).
+     * @param removed packed positions of locations that are no longer in the area since the previous version.
+     * @throws IOException in case of communication error.
+     */
+    public synchronized void sendExtractDelta(int version, boolean full, Location[] changed, long[] removed) throws IOException {
+        if(binary){
+            sendBuffer.clear();
+            putExtractDelta(version, full, changed, removed);
+            sendFrame(WireMessage.ExtractDelta);
+        }else{
+            StringBuilder extractStr = new StringBuilder("ExtractDelta");
+            appendExtractDelta(extractStr, version, full, changed, removed);
+            sendText(extractStr.toString());
+        }
+    }
+
+    /**
+     * Sends result of the round - stats of the whole area followed by versioned extract of the requested area.
+     * @param stats stats to send.
+     * @param version version of the extract.
+     * @param full true if the extract contains all locations of the area, false if it contains only changes.
+     * @param changed locations that changed since the previous version (all locations in full extract).
+     * @param removed packed positions of locations that are no longer in the area since the previous version.
+     * @throws IOException in case of communication error.
+     */
+    public synchronized void sendRoundDone(Stats stats, int version, boolean full, Location[] changed, long[] removed) throws IOException {
+        if(binary){
+            sendBuffer.clear();
+            stats.writeTo(sendBuffer);
+            putExtractDelta(version, full, changed, removed);
+            sendFrame(WireMessage.RoundDone);
+        }else{
+            StringBuilder roundStr = new StringBuilder("RoundDone:").append(stats.toString());
+            appendExtractDelta(roundStr, version, full, changed, removed);
+            sendText(roundStr.toString());
+        }
+    }
+
+    /**
+     * Writes versioned extract to sendBuffer.
+     * @param version version of the extract.
+     * @param full true if the extract contains all locations of the area.
+     * @param changed locations that changed since the previous version.
+     * @param removed packed positions of locations removed since the previous version.
+     */
+    private void putExtractDelta(int version, boolean full, Location[] changed, long[] removed){
+        sendBuffer.putInt(version);
+        sendBuffer.putBoolean(full);
+        putExtractedLocations(changed, changed.length);
+        sendBuffer.putInt(removed.length);
+        for(long position : removed){
+            sendBuffer.putLong(position);
+        }
+    }
+
+    /**
+     * Appends ':' separated text of versioned extract.
+     * @param extractStr builder to append to.
+     * @param version version of the extract.
+     * @param full true if the extract contains all locations of the area.
+     * @param changed locations that changed since the previous version.
+     * @param removed packed positions of locations removed since the previous version.
+     */
+    private static void appendExtractDelta(StringBuilder extractStr, int version, boolean full, Location[] changed, long[] removed){
+        extractStr.append(':').append(version).append(':').append(full);
+        appendExtractedLocations(extractStr, changed, changed.length);
+        for(long position : removed){
+            extractStr.append(':').append(PackedPosition.getX(position)).append(',').append(PackedPosition.getY(position));
+        }
+    }
+
+    /**
+     * Writes count and position, type and visitors stats of the locations to sendBuffer.
+     * @param area locations to write.
+     * @param count number of the locations.
+     */
+    private void putExtractedLocations(Location[] area, int count){
+        sendBuffer.putInt(count);
+        for(int i = 0; i < count; i++){
+            sendBuffer.putLong(PackedPosition.pack(area[i].getPosition()));
+            sendBuffer.putByte(area[i].getType().ordinal());
+            area[i].writeStats(sendBuffer);
+        }
+    }
+
+    /**
+     * Appends ':' separated text extracts of the locations.
+     * @param extractStr builder to append to.
+     * @param area locations to append.
+     * @param count number of the locations.
+     */
+    private static void appendExtractedLocations(StringBuilder extractStr, Location[] area, int count){
+        for(int i = 0; i < count; i++){
+            Position pos = area[i].getPosition();
+            extractStr.append(':').append(pos.getX()).append(',').append(pos.getY())
+                    .append(';').append(area[i].getTypeSting()).append(';');
+            area[i].appendStats(extractStr);
+        }
+    }
+
+    /**
+     * Writes buffered messages to the stream.
+     * @throws IOException in case of communication error.
+     */
+    public synchronized void flush() throws IOException {
+        output.flush();
+    }
+
+    /**
+     * Waits for the next message and returns it's type. The content is then read by the read methods of the type.
+     * @return WireMessage - type of the received message, or null if the message is of unknown type.
+     * @throws IOException in case of communication error or end of stream.
+     */
+    public WireMessage receive() throws IOException {
+        if(binary){
+            int length = input.readInt();
+            int code = input.readUnsignedByte();
+            receiveBuffer.prepareRead(length);
+            input.readFully(receiveBuffer.getArray(), 0, length);
+            WireMessage message = WireMessage.fromCode(code);
+            if(message == null)
+                log.severe("Received frame of unknown type " + code);
+            return message;
+        }
+        return parseLine(readLine());
+    }
+
+    /**
+     * Splits received text message to segments and returns it's type.
+     * @param line received text message.
+     * @return WireMessage - type of the message, or null if the message is of unknown type.
+     */
+    private WireMessage parseLine(String line){
+        receivedLine = line;
+        log.finer(receivedLine);
+        receivedSegments = receivedLine.split(":", -1);
+        segment = 1;
+        WireMessage message = WireMessage.fromKeyword(receivedSegments[0]);
+        if(message == null)
+            log.severe("Received unexpected message\nMessage: " + receivedLine);
+        return message;
+    }
+
+    /**
+     * Takes the next complete message from bytes received by a selector, doesn't block.
+     * The content is then read by the read methods of the type. Messages of unknown type are skipped.
+     * @param inbound received bytes ready to be read (flipped), consumed bytes are skipped.
+     * @return WireMessage - type of the received message, or null if the bytes don't hold a complete message yet.
+     */
+    public WireMessage poll(ByteBuffer inbound){
+        while(true){
+            WireMessage message;
+            if(binary){
+                if(inbound.remaining() < Integer.BYTES + 1)
+                    return null;
+                int length = inbound.getInt(inbound.position());
+                if(inbound.remaining() < Integer.BYTES + 1 + length)
+                    return null;
+                inbound.getInt();
+                int code = inbound.get() & 0xff;
+                receiveBuffer.prepareRead(length);
+                inbound.get(receiveBuffer.getArray(), 0, length);
+                message = WireMessage.fromCode(code);
+                if(message == null)
+                    log.severe("Received frame of unknown type " + code);
+            }else{
+                int end = inbound.position();
+                while(end < inbound.limit() && inbound.get(end) != '\n'){
+                    end++;
+                }
+                if(end == inbound.limit())
+                    return null;
+                int length = end - inbound.position();
+                if(length > lineBytes.length)
+                    lineBytes = new byte[Math.max(length, lineBytes.length * 2)];
+                inbound.get(lineBytes, 0, length);
+                inbound.get();
+                if(length > 0 && lineBytes[length - 1] == '\r')
+                    length--;
+                message = parseLine(new String(lineBytes, 0, length, StandardCharsets.UTF_8));
+            }
+            if(message != null)
+                return message;
+        }
+    }
+
+    /** Reads received SetUp or SendExtract position.
+     * @return Position - next position of the message. */
+    public Position readPosition(){
+        if(binary)
+            return PackedPosition.toPosition(receiveBuffer.getLong());
+        return Position.parsePosition(readSegment());
+    }
+
+    /** Returns true if there is more content of the received message to read.
+     * @return true if there is more content, false otherwise. */
+    public boolean hasMore(){
+        if(binary)
+            return receiveBuffer.hasRemaining();
+        return segment < receivedSegments.length;
+    }
+
+    /** Reads received SimIsSet peer port or Peers expected count.
+     * @return int - next int value of the message. */
+    public int readInt(){
+        if(binary)
+            return receiveBuffer.getInt();
+        return Integer.parseInt(readSegment());
+    }
+
+    /** Reads path of the file of received SharedMemory offer, after the capacity was read.
+     * @return String - path of the file. */
+    public String readSharedMemoryPath(){
+        if(binary){
+            byte[] pathBytes = new byte[receiveBuffer.getInt()];
+            receiveBuffer.getBytes(pathBytes);
+            return new String(pathBytes, StandardCharsets.UTF_8);
+        }
+        //the path can contain ':'
+        StringBuilder path = new StringBuilder(readSegment());
+        String segmentStr = readSegment();
+        while(segmentStr != null){
+            path.append(':').append(segmentStr);
+            segmentStr = readSegment();
+        }
+        return path.toString();
+    }
+
+    /** Reads received answer to SharedMemory offer.
+     * @return true if the simulator accepted the offer. */
+    public boolean readSharedMemoryAnswer(){
+        if(binary)
+            return receiveBuffer.getBoolean();
+        return Boolean.parseBoolean(readSegment());
+    }
+
+    /** Reads addresses of received Peers command, after the expected count was read.
+     * @return PeerAddress[] - peers to connect to.
+     * @throws IOException if an address can't be parsed. */
+    public PeerAddress[] readPeerAddresses() throws IOException {
+        PeerAddress[] peers;
+        if(binary){
+            peers = new PeerAddress[receiveBuffer.getInt()];
+            for(int i = 0; i < peers.length; i++){
+                peers[i] = PeerAddress.readFrom(receiveBuffer);
+            }
+        }else{
+            peers = new PeerAddress[receivedSegments.length - segment];
+            for(int i = 0; i < peers.length; i++){
+                peers[i] = PeerAddress.parsePeerAddress(readSegment());
+            }
+        }
+        return peers;
+    }
+
+    /** Reads received SetUp seed.
+     * @return long - next long value of the message. */
+    public long readLong(){
+        if(binary)
+            return receiveBuffer.getLong();
+        return Long.parseLong(readSegment());
+    }
+
+    /** Reads received person.
+     * @param origin simulator the person was received from, null on simulator side.
+     * @return WaitingPerson - the person and it's target position. */
+    public WaitingPerson readPerson(SimulatorConnection origin){
+        if(binary){
+            Position targetPosition = PackedPosition.toPosition(receiveBuffer.getLong());
+            return new WaitingPerson(Person.readFrom(receiveBuffer), targetPosition, origin);
+        }
+        return new WaitingPerson(Person.parsePerson(receivedLine), Position.parsePosition(receivedSegments[2]), origin);
+    }
+
+    /** Reads received batch of people.
+     * @param origin simulator the people were received from, null on simulator side.
+     * @return List of the people with their target positions, in order they were sent. */
+    public List<WaitingPerson> readPersonBatch(SimulatorConnection origin){
+        List<WaitingPerson> people;
+        if(binary){
+            int count = receiveBuffer.getInt();
+            people = new ArrayList<>(count);
+            for(int i = 0; i < count; i++){
+                Position targetPosition = PackedPosition.toPosition(receiveBuffer.getLong());
+                people.add(new WaitingPerson(Person.readFrom(receiveBuffer), targetPosition, origin));
+            }
+        }else{
+            String batch = receivedLine.substring(receivedLine.indexOf(':') + 1);
+            people = new ArrayList<>();
+            if(batch.isEmpty())
+                return people;
+            int start = 0;
+            while(start <= batch.length()){
+                int end = batch.indexOf(BATCH_SEPARATOR, start);
+                if(end < 0)
+                    end = batch.length();
+                String personStr = batch.substring(start, end);
+                people.add(new WaitingPerson(Person.parsePerson(personStr),
+                        Position.parsePosition(personStr.split(":", 4)[2]), origin));
+                start = end + 1;
+            }
+        }
+        return people;
+    }
+
+    /** Reads received confirmations of a batch of people.
+     * @return List of the confirmations, in order they were sent. */
+    public List<WaitingPersonConfirmation> readPersonConfirmations(){
+        List<WaitingPersonConfirmation> confirmations;
+        if(binary){
+            int count = receiveBuffer.getInt();
+            int[] personalNumbers = new int[count];
+            for(int i = 0; i < count; i++){
+                personalNumbers[i] = receiveBuffer.getInt();
+            }
+            confirmations = new ArrayList<>(count);
+            int bits = 0;
+            for(int i = 0; i < count; i++){
+                if((i & 7) == 0)
+                    bits = receiveBuffer.getByte();
+                confirmations.add(new WaitingPersonConfirmation(personalNumbers[i], (bits & (1 << (i & 7))) != 0));
+            }
+        }else{
+            confirmations = new ArrayList<>(receivedSegments.length - 1);
+            for(int i = 1; i < receivedSegments.length; i++){
+                String[] split = receivedSegments[i].split(",");
+                confirmations.add(new WaitingPersonConfirmation(Integer.parseInt(split[0]), Boolean.parseBoolean(split[1])));
+            }
+        }
+        return confirmations;
+    }
+
+    /** Reads received person confirmation.
+     * @return WaitingPersonConfirmation - personal number and the confirmation. */
+    public WaitingPersonConfirmation readPersonConfirmation(){
+        if(binary)
+            return new WaitingPersonConfirmation(receiveBuffer.getInt(), receiveBuffer.getBoolean());
+        return new WaitingPersonConfirmation(Integer.parseInt(receivedSegments[1]), Boolean.parseBoolean(receivedSegments[2]));
+    }
+
+    /** Reads received timetable pattern and registers it.
+     * @return TimetablePattern registered pattern. */
+    public TimetablePattern readTimetablePattern(){
+        if(binary)
+            return TimetablePattern.readFrom(receiveBuffer);
+        return TimetablePattern.parseTimetablePattern(receivedLine);
+    }
+
+    /** Reads received location.
+     * @return Location of the correct type, or null if it can't be parsed. */
+    public Location readLocation(){
+        if(binary)
+            return Location.readFrom(receiveBuffer);
+        return Location.parseLocation(receivedLine);
+    }
+
+    /** Reads received contagion parameters.
+     * @return ContagionParameters received parameters. */
+    public ContagionParameters readContagionParameters(){
+        if(binary)
+            return ContagionParameters.readFrom(receiveBuffer);
+        return ContagionParameters.parseContagionParameters(receivedLine);
+    }
+
+    /** Reads received capacity of the simulator.
+     * @return SimulatorCapacity received capacity. */
+    public SimulatorCapacity readCapacity(){
+        if(binary)
+            return SimulatorCapacity.readFrom(receiveBuffer);
+        return SimulatorCapacity.parseCapacity(readSegment());
+    }
+
+    /** Reads received stats.
+     * @return Stats received stats. */
+    public Stats readStats(){
+        if(binary)
+            return Stats.readFrom(receiveBuffer);
+        return Stats.parseStats(readSegment());
+    }
+
+    /** Reads received extract and adds it's locations to the extract.
+     * @param extract extract to fill. */
+    public void readExtract(Extract extract){
+        if(binary){
+            int count = receiveBuffer.getInt();
+            for(int i = 0; i < count; i++){
+                long position = receiveBuffer.getLong();
+                ExtractLocation.Type type = ExtractLocation.Type.values()[receiveBuffer.getByte()];
+                extract.addExtractedLocation(position, type, Stats.readFrom(receiveBuffer));
+            }
+        }else{
+            for(int i = 1; i < receivedSegments.length; i++){
+                extract.addExtractedLocation(receivedSegments[i]);
+            }
+        }
+    }
+
+    /** Reads received versioned extract and applies it to the extract.
+     * Full extract first clears the senders area in the extract, delta only updates and removes the changed locations.
+     * @param extract extract to apply the received extract to.
+     * @param senderTopLeft top-left corner of the senders area.
+     * @param senderSize size of the senders area.
+     * @return int - version of the received extract. */
+    public int readExtractDelta(Extract extract, Position senderTopLeft, Position senderSize){
+        int version;
+        boolean full;
+        if(binary){
+            version = receiveBuffer.getInt();
+            full = receiveBuffer.getBoolean();
+            if(full)
+                extract.clearArea(senderTopLeft, senderSize);
+            int count = receiveBuffer.getInt();
+            for(int i = 0; i < count; i++){
+                long position = receiveBuffer.getLong();
+                ExtractLocation.Type type = ExtractLocation.Type.values()[receiveBuffer.getByte()];
+                extract.addExtractedLocation(position, type, Stats.readFrom(receiveBuffer));
+            }
+            int removed = receiveBuffer.getInt();
+            for(int i = 0; i < removed; i++){
+                extract.removeExtractedLocation(receiveBuffer.getLong());
+            }
+        }else{
+            version = Integer.parseInt(readSegment());
+            full = Boolean.parseBoolean(readSegment());
+            if(full)
+                extract.clearArea(senderTopLeft, senderSize);
+            String segmentStr = readSegment();
+            while(segmentStr != null){
+                //removed locations have only position, changed have position, type and stats
+                if(segmentStr.indexOf(';') >= 0)
+                    extract.addExtractedLocation(segmentStr);
+                else
+                    extract.removeExtractedLocation(PackedPosition.parse(segmentStr));
+                segmentStr = readSegment();
+            }
+        }
+        return version;
+    }
+
+    /** Reads next ':' separated segment of the received text message.
+     * @return String - the segment, or null if there are no more segments. */
+    private String readSegment(){
+        if(segment >= receivedSegments.length)
+            return null;
+        return receivedSegments[segment++];
+    }
+
+    /**
+     * Writes the payload encoded in sendBuffer as a frame.
+     * @param message type of the frame.
+     * @throws IOException in case of communication error.
+     */
+    private void sendFrame(WireMessage message) throws IOException {
+        int length = sendBuffer.getLength();
+        output.writeInt(length);
+        output.writeByte(message.ordinal());
+        output.write(sendBuffer.getArray(), 0, length);
+    }
+
+    /**
+     * Writes a text message followed by a new line.
+     * @param text message to write.
+     * @throws IOException in case of communication error.
+     */
+    private void sendText(String text) throws IOException {
+        log.finer(text);
+        output.write(text.getBytes(StandardCharsets.UTF_8));
+        output.write('\n');
+    }
+
+    /**
+     * Reads a text line (without the line terminator).
+     * @return String - received line.
+     * @throws IOException in case of communication error or end of stream.
+     */
+    private String readLine() throws IOException {
+        int length = 0;
+        int read = input.read();
+        if(read < 0)
+            throw new EOFException();
+        while(read >= 0 && read != '\n'){
+            if(length == lineBytes.length){
+                byte[] bigger = new byte[lineBytes.length * 2];
+                System.arraycopy(lineBytes, 0, bigger, 0, length);
+                lineBytes = bigger;
+            }
+            lineBytes[length++] = (byte) read;
+            read = input.read();
+        }
+        if(length > 0 && lineBytes[length - 1] == '\r')
+            length--;
+        return new String(lineBytes, 0, length, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,98 @@
+/** Enum with types of messages exchanged between master and simulators and between peer simulators,
+ * names are the text protocol keywords.
+ * The ordinal is used as type code of binary frames, see Comms_format.txt. */
+public enum WireMessage {
+    /** Protocol negotiation, always sent as text. */
+    Protocol,
+    /** Command and confirmation checking the simulator is connected. */
+    Ping,
+    /** Command setting up the simulators area and seed. */
+    SetUp,
+    /** Confirmation of SetUp command, carries port the simulator listens for peer connections on. */
+    SimIsSet,
+    /** Registration of a timetable pattern. */
+    TimetablePattern,
+    /** Person moving to the receivers area. */
+    Person,
+    /** Confirmation whether a person was accepted by target location. */
+    PersonConfirmation,
+    /** Location to add to the simulators area. */
+    Location,
+    /** New contagion parameters. */
+    ContagionParameters,
+    /** Confirmation of ContagionParameters. */
+    ContagionParametersSet,
+    /** Command to move people. */
+    MovePeople,
+    /** Confirmation of MovePeople command. */
+    PeopleMoved,
+    /** Command to calculate infection propagation. */
+    CalculateHealth,
+    /** Confirmation of CalculateHealth command. */
+    HealthCalculated,
+    /** Command to send back extract of an area. */
+    SendExtract,
+    /** Extract of an area. */
+    Extract,
+    /** Command to send back overall stats. */
+    SendStats,
+    /** Overall stats of the simulators area. */
+    Stats,
+    /** Command ending the simulator application. */
+    ExitSim,
+    /** Command to open peer connections to simulators with adjacent areas. */
+    Peers,
+    /** Confirmation of Peers command. */
+    PeersLinked,
+    /** First message of a peer connection, carries area of the connecting simulator. */
+    PeerHello,
+    /** End of people sent over a peer connection in the move phase. */
+    PeopleSent,
+    /** End of person confirmations sent over a peer connection in the move phase. */
+    PeopleConfirmed,
+    /** Batch of people moving to the receivers area. */
+    PersonBatch,
+    /** Confirmations whether people of a batch were accepted by their target locations. */
+    PersonConfirmations,
+    /** Versioned extract of an area, either full or only changes against the previous version. */
+    ExtractDelta,
+    /** Command to finish the round - calculate health, send stats and extract of an area. */
+    Round,
+    /** Stats and versioned extract of the finished round. */
+    RoundDone,
+    /** Offer to exchange messages through shared memory file, and the answer to it. */
+    SharedMemory,
+    /** Command to change the simulators area, the simulator sends back locations and people outside the new area. */
+    Resize,
+    /** Confirmation of Resize, preceded by the released locations and people. */
+    Resized,
+    /** People moved to the simulator together with the tiles they stand on. */
+    Adopt,
+    /** Confirmation of Adopt. */
+    Adopted,
+    /** Request for capacity of the simulator, and the answer to it. */
+    Capacity;
+
+    /** Cached values, to find message type by binary type code without allocating. */
+    private static final WireMessage[] VALUES = values();
+
+    /** Returns message type of the binary type code.
+     * @param code type code of the frame.
+     * @return WireMessage with the code, or null if the code is unknown. */
+    public static WireMessage fromCode(int code){
+        if(code < 0 || code >= VALUES.length)
+            return null;
+        return VALUES[code];
+    }
+
+    /** Returns message type of the text protocol keyword.
+     * @param keyword first ':' separated segment of the text message.
+     * @return WireMessage with the keyword, or null if the keyword is unknown. */
+    public static WireMessage fromKeyword(String keyword){
+        for(WireMessage message : VALUES){
+            if(message.name().equals(keyword))
+                return message;
+        }
+        return null;
+    }
+}
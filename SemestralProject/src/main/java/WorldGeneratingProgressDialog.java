@@ -43,7 +43,7 @@ public class WorldGeneratingProgressDialog extends JDialog implements Subscriber
         descriptionLabel = new JLabel("Generating world in progress.");
         progressBar = new JProgressBar();
         progressBar.setSize(350, 30);
-        statusLabel = new JLabel("Setting up simulators...");
+        statusLabel = new JLabel("Generating homes...");
 
         contentPane.add(descriptionLabel);
         contentPane.add(progressBar);
@@ -62,15 +62,15 @@ public class WorldGeneratingProgressDialog extends JDialog implements Subscriber
 
         switch (stage){
             case 1 -> {
-                statusLabel.setText("Setting up contagion parameters...");
+                statusLabel.setText("Generating people...");
                 progressBar.setValue(10);
             }
             case 2 -> {
-                statusLabel.setText("Generating homes...");
+                statusLabel.setText("Setting up simulators...");
                 progressBar.setValue(20);
             }
             case 3 -> {
-                statusLabel.setText("Generating people");
+                statusLabel.setText("Setting up contagion parameters...");
                 progressBar.setValue(30);
             }
             case 4 -> {
@@ -99,9 +99,11 @@ public class WorldGeneratingProgressDialog extends JDialog implements Subscriber
 
     @Override
     public void onError(Throwable throwable) {
+        String message = throwable instanceof IllegalArgumentException
+                ? "The world can't be generated: " + throwable.getMessage()
+                : "Lost connection to one or more simulators while generating world.";
         JOptionPane.showMessageDialog(this,
-                "Lost connection to one or more simulators while generating world.\n" +
-                        "The simulation will be terminated.",
+                message + "\nThe simulation will be terminated.",
                 "Error",
                 JOptionPane.ERROR_MESSAGE);
         dispose();
@@ -1,5 +1,5 @@
 import javax.naming.CommunicationException;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
@@ -8,17 +8,20 @@ import java.util.concurrent.Flow.Subscriber;
 import java.util.logging.Logger;
 
 import static java.lang.Math.min;
-import static java.lang.Math.sqrt;
 
 /** Class responsible for generating world based on given parameters and sending it to the simulators. */
 public class WorldGenerator implements Flow.Publisher{
     private static final Logger log = Logger.getLogger(WorldGenerator.class.getName());
     /** Flag indicating that an error occurred. */
     private volatile boolean error;
-    /** Random instance used to randomize generated world. */
-    private final Random random;
+    /** Random instance used to randomize generated world, stream of the simulation seed. */
+    private Random random;
+    /** Simulation seed, generated world and random outcomes of the simulation are given by it. */
+    private long seed;
     /** Simulators connected to the simulation */
     private final SimulatorConnection[] sims;
+    /** Executor running the set up phases on all simulators. */
+    private final PhaseExecutor phases;
     /** Subscribers register to receive progress updates. */
     private final LinkedList<Subscription> subscriptions;
     private Position worldSize;
@@ -47,6 +50,7 @@ public class WorldGenerator implements Flow.Publisher{
      */
     public WorldGenerator(SimulatorConnection[] sims){
         this.sims = sims;
+        phases = new PhaseExecutor(sims);
         random = new Random();
         worldSize = null;
         error = false;
@@ -89,10 +93,12 @@ public class WorldGenerator implements Flow.Publisher{
      * @param initialInfectedRate chance a person is infected when generated
      * @param initialCuredRate chance a person is cured when generated
      * @param initialVaccinatedRate chance a person is vaccinated when generated
+     * @param seed simulation seed, the same seed and parameters generate the same world and simulation
      */
     public void setUpGenerator(Position worldSize, ContagionParameters parameters,
                                int homeCount, int restaurantCount, int schoolCount, int workplaceCount,
-                               int population, float initialInfectedRate, float initialCuredRate, float initialVaccinatedRate){
+                               int population, float initialInfectedRate, float initialCuredRate, float initialVaccinatedRate,
+                               long seed){
         this.worldSize = worldSize;
         this.parameters = parameters;
         this.homeCount = homeCount;
@@ -103,6 +109,8 @@ public class WorldGenerator implements Flow.Publisher{
         this.initialInfectedRate = initialInfectedRate;
         this.initialCuredRate = initialCuredRate;
         this.initialVaccinatedRate = initialVaccinatedRate;
+        this.seed = seed;
+        random = new CounterRandom(CounterRandom.key(seed, 0, CounterRandom.Purpose.generator));
     }
 
     /**
@@ -122,21 +130,23 @@ public class WorldGenerator implements Flow.Publisher{
             return;
         }
 
-        //Set up simulators and contagion parameters
-        setUpSims();
-        if(error) return;
-        publishToAll(1);
-        setUpContagionParameters();
-        if(error) return;
-        publishToAll(2);
-
         //field to quickly find if a location is still empty
         boolean[][] freePositions = new boolean[worldSize.getX()][worldSize.getY()];
 
-        //generate homes and people
+        //generate homes and people, the world is divided to the simulators by where people live
         LocationHome[] homes = generateHomes(freePositions);
-        publishToAll(3);
+        publishToAll(1);
         Person[] people = generatePeople(homes);
+        publishToAll(2);
+
+        //Set up simulators and contagion parameters
+        setUpSims(people);
+        if(error) return;
+        linkPeers();
+        if(error) return;
+        publishToAll(3);
+        setUpContagionParameters();
+        if(error) return;
         publishToAll(4);
 
         //send homes to sims
@@ -201,11 +211,13 @@ public class WorldGenerator implements Flow.Publisher{
      * @throws SimulatorConnectionException in case of an error between the master and simulator.
      */
     private void sendPeopleSim(SimulatorConnection sim, Person[] people) throws SimulatorConnectionException {
+        sim.sendTimetablePatterns();
         for(Person p: people){
             if(sim.containsPosition(p.getHome())){
-                sim.sendPerson(p, p.getHome(), null);
+                sim.addToWaitingPeople(new WaitingPerson(p, p.getHome(), null));
             }
         }
+        SimulatorConnection.await(sim.resolveWaitingPeople());
     }
 
     /**
@@ -213,19 +225,7 @@ public class WorldGenerator implements Flow.Publisher{
      * @param people array of people to be sent.
      */
     private void sendPeople(Person[] people){
-        Thread[] senders = new Thread[sims.length];
-        for(int i = 0; i < sims.length; i++){
-            int finalI = i;
-            senders[i] = new Thread(() -> {
-                try {
-                    sendPeopleSim(sims[finalI], people);
-                } catch (SimulatorConnectionException e) {
-                    handleCommunicationError();
-                }
-            });
-            senders[i].start();
-        }
-        waitForThreads(senders);
+        runPhase("sendPeople", (sim, i) -> sendPeopleSim(sim, people));
     }
 
     /**
@@ -233,19 +233,7 @@ public class WorldGenerator implements Flow.Publisher{
      * @param locations array of locations to be sent
      */
     private void sendLocations(Location[] locations){
-        Thread[] senders = new Thread[sims.length];
-        for(int i = 0; i < sims.length; i++){
-            int finalI = i;
-            senders[i] = new Thread(() -> {
-                try {
-                    sendLocationsSim(sims[finalI], locations);
-                } catch (SimulatorConnectionException e) {
-                    handleCommunicationError();
-                }
-            });
-            senders[i].start();
-        }
-        waitForThreads(senders);
+        runPhase("sendLocations", (sim, i) -> sendLocationsSim(sim, locations));
     }
 
     /**
@@ -271,7 +259,7 @@ public class WorldGenerator implements Flow.Publisher{
      */
     private Person getRandomPersonFreeAtTime(Person[] people, int time){
         int personIndex = random.nextInt(population);
-        while(people[personIndex].getOccupation(time) != null){
+        while(people[personIndex].hasOccupation(time)){
             personIndex = random.nextInt(population);
         }
         return people[personIndex];
@@ -316,7 +304,7 @@ public class WorldGenerator implements Flow.Publisher{
         int peoplePerWorkplace = (int)((population * 0.5) / workplaceCount);
         peoplePerWorkplace = min(peoplePerWorkplace, 100);
         for(int i = 0; i < workplaceCount; i++){
-            List<Integer> whitelist = new ArrayList<>(peoplePerWorkplace);
+            Whitelist whitelist = new Whitelist(peoplePerWorkplace);
             Position pos = getRandomFreePosition(freePositions);
             LocationWorkplace workplace = new LocationWorkplace(pos, whitelist);
             for(int j = 0; j < peoplePerWorkplace; j++){
@@ -345,7 +333,7 @@ public class WorldGenerator implements Flow.Publisher{
         int peoplePerSchool = (int)((population * 0.2) / schoolCount);
         peoplePerSchool = min(peoplePerSchool, 50);
         for(int i = 0; i < schoolCount; i++){
-            List<Integer> whitelist = new ArrayList<>(peoplePerSchool);
+            Whitelist whitelist = new Whitelist(peoplePerSchool);
             Position pos = getRandomFreePosition(freePositions);
             LocationSchool school = new LocationSchool(pos, whitelist);
             for(int j = 0; j < peoplePerSchool; j++){
@@ -369,7 +357,7 @@ public class WorldGenerator implements Flow.Publisher{
         LocationHome[] ret = new LocationHome[homeCount];
         for(int i = 0; i < homeCount; i++){
             Position pos = getRandomFreePosition(freePositions);
-            ret[i] = new LocationHome(pos, new LinkedList<>());
+            ret[i] = new LocationHome(pos, new Whitelist());
         }
         return ret;
     }
@@ -413,66 +401,76 @@ public class WorldGenerator implements Flow.Publisher{
     }
 
     /**
-     * Calculates how to divide world to individual simulators and sets them up accordingly.
+     * Divides the world to individual simulators, so that their numbers of people are proportional to their capacities,
+     * and sets them up accordingly.
+     * @param people all people of the world.
      */
-    private void setUpSims(){
+    private void setUpSims(Person[] people){
         //calculate how to divide the world
-        Position div = divideWorld();
-        Position blockSize = new Position(worldSize.getX() / div.getX(), worldSize.getY() / div.getY());
-        Thread[] threads = new Thread[sims.length];
-        for(int i = 0; i < div.getX(); i++){
-            for(int j = 0; j < div.getY(); j++){
-                //calculate the simulators topLeft and size
-                Position topLeft = new Position(i * blockSize.getX(), j * blockSize.getY());
-                Position size = blockSize;
-                if(i == div.getX() - 1){
-                    size = size.add(new Position(worldSize.getX() - div.getX() * blockSize.getX(), 0));
-                }
-                if(i == div.getY() - 1){
-                    size = size.add(new Position(0, worldSize.getY() - div.getY() * blockSize.getY()));
-                }
+        Position[] homes = new Position[people.length];
+        for(int i = 0; i < people.length; i++){
+            homes[i] = people[i].getHome();
+        }
+        RoutingTable areas;
+        try{
+            areas = WorldPartitioner.partition(worldSize, homes, capacityWeights());
+        }catch(IllegalArgumentException e){
+            log.severe("World can't be divided between the simulators: " + e.getMessage());
+            handleError(e);
+            return;
+        }
+        //set up all simulators at once
+        runPhase("setUp", (sim, i) -> sim.initSimulator(areas.getTopLeft(i), areas.getSize(i), seed));
+    }
 
-                //set up the simulator in separate thread
-                Position finalSize = size;
-                int simIndex = i * div.getY() + j;
-                threads[simIndex] = new Thread(() -> {
-                    try {
-                        sims[simIndex].initSimulator(topLeft, finalSize);
-                    } catch (SimulatorConnectionException e) {
-                        handleCommunicationError();
-                    }
-                });
-                threads[simIndex].start();
+    /**
+     * Returns weights of the simulators by their reported capacities, equal weights if some simulator didn't report it.
+     * @return double[] - weights of the simulators by index.
+     */
+    private double[] capacityWeights(){
+        SimulatorCapacity[] capacities = new SimulatorCapacity[sims.length];
+        for(int i = 0; i < sims.length; i++){
+            capacities[i] = sims[i].getCapacity();
+            if(capacities[i] == null){
+                double[] weights = new double[sims.length];
+                Arrays.fill(weights, 1);
+                return weights;
             }
         }
-        waitForThreads(threads);
+        return SimulatorCapacity.weights(capacities);
+    }
+
+    /**
+     * Makes simulators with adjacent areas open peer connections to exchange people directly.
+     * Of every adjacent pair, the simulator with lower index connects to the other one.
+     */
+    private void linkPeers(){
+        int[] expected = new int[sims.length];
+        List<List<PeerAddress>> connectTo = SimulatorConnection.peerLinks(sims, expected);
+        runAsyncPhase("linkPeers", (sim, i) -> sim.sendPeers(expected[i], connectTo.get(i)));
     }
 
     /**
      * Sets contagion parameters to the simulators
      */
     private void setUpContagionParameters(){
-        Thread[] threads = new Thread[sims.length];
-        for(int i = 0; i < sims.length; i++){
-            int finalI = i;
-            threads[i] = new Thread(() -> {
-                try {
-                    sims[finalI].sendContagionParameters(parameters);
-                } catch (SimulatorConnectionException e) {
-                    handleCommunicationError();
-                }
-            });
-            threads[i].start();
-        }
-        waitForThreads(threads);
+        runAsyncPhase("contagionParameters", (sim, i) -> sim.sendContagionParameters(parameters));
     }
 
     /**
      * Handles communication error between the generator and the simulators.
      */
-    private synchronized void handleCommunicationError(){
+    private void handleCommunicationError(){
+        handleError(new CommunicationException());
+    }
+
+    /**
+     * Reports the error to the subscribers and ends the simulators, only the first error is reported.
+     * @param t error that stopped the world generation.
+     */
+    private synchronized void handleError(Throwable t){
         if(!error){
-            errorToAll(new CommunicationException());
+            errorToAll(t);
             error = true;
             exitSims();
         }
@@ -488,36 +486,29 @@ public class WorldGenerator implements Flow.Publisher{
     }
 
     /**
-     * Joins all thread in the passed array.
-     * @param threads array with thread to join.
+     * Runs the blocking phase on all simulators, handles communication error if it fails.
+     * @param name name of the phase.
+     * @param phase task running the phase on a simulator.
      */
-    private void waitForThreads(Thread[] threads){
-        for(Thread t: threads){
-            try {
-                t.join();
-            } catch (InterruptedException e) {
-                log.severe("Threads interrupted");
-            }
+    private void runPhase(String name, PhaseExecutor.BlockingTask phase){
+        try {
+            phases.runBlocking(name, phase);
+        } catch (SimulatorConnectionException e) {
+            handleCommunicationError();
         }
     }
 
     /**
-     * Calculates how to optimally divide the simulated world into connected simulators
-     * @return Position - recommended number of blocks on x and y axis
+     * Runs the asynchronous phase on all simulators, handles communication error if it fails.
+     * @param name name of the phase.
+     * @param phase task starting the phase on a simulator.
      */
-    private Position divideWorld(){
-        int bestDiv = 1;
-        for(int i = 2; i <= sqrt(sims.length); i++){
-            if (sims.length % i == 0){
-                bestDiv= i;
-            }
+    private void runAsyncPhase(String name, PhaseExecutor.AsyncTask phase){
+        try {
+            phases.run(name, phase);
+        } catch (SimulatorConnectionException e) {
+            handleCommunicationError();
         }
-
-        int shortEdgeDiv = bestDiv;
-        int longEdgeDiv = sims.length / bestDiv;
-
-        return worldSize.getX() < worldSize.getY() ?
-                new Position(shortEdgeDiv, longEdgeDiv) : new Position(longEdgeDiv, shortEdgeDiv);
     }
 
     private void publishToAll(int segment){
@@ -0,0 +1,172 @@
+import java.util.Arrays;
+
+/**
+ * Divides the world into areas of simulators by recursive coordinate bisection over the population.
+ * <p>The area is cut across its longer side, so that the number of people in both parts is proportional to the sum
+ * of weights of simulators the part is further divided into. The parts are divided recursively until every simulator
+ * has its area, so every simulator gets number of people proportional to its weight regardless of where they live.</p>
+ */
+public final class WorldPartitioner {
+
+    /** Static class, not to be instantiated. */
+    private WorldPartitioner(){
+    }
+
+    /**
+     * Divides the world into areas with roughly the same number of people.
+     * @param worldSize size of the world.
+     * @param people positions of the people (their homes), positions outside of the world are ignored.
+     * @param parts number of areas (simulators).
+     * @return RoutingTable with the areas, simulator i gets i-th area.
+     * @throws IllegalArgumentException if the world can't be divided to the number of areas.
+     */
+    public static RoutingTable partition(Position worldSize, Position[] people, int parts){
+        if(parts <= 0)
+            throw new IllegalArgumentException("World can't be divided to " + parts + " simulators.");
+        double[] weights = new double[parts];
+        Arrays.fill(weights, 1);
+        return partition(worldSize, people, weights);
+    }
+
+    /**
+     * Divides the world into areas with numbers of people proportional to the weights.
+     * @param worldSize size of the world.
+     * @param people positions of the people (their homes), positions outside of the world are ignored.
+     * @param weights positive weights of the simulators, for example their capacities.
+     * @return RoutingTable with the areas, simulator i gets i-th area.
+     * @throws IllegalArgumentException if the world can't be divided to the number of areas.
+     */
+    public static RoutingTable partition(Position worldSize, Position[] people, double[] weights){
+        int parts = weights.length;
+        if(parts <= 0 || (long) worldSize.getX() * worldSize.getY() < parts)
+            throw new IllegalArgumentException("World can't be divided to " + parts + " simulators.");
+        Position topLeft = new Position(0, 0);
+        int inWorld = 0;
+        int[] indices = new int[people.length];
+        for(int i = 0; i < people.length; i++){
+            if(people[i].isInArea(topLeft, worldSize))
+                indices[inWorld++] = i;
+        }
+        Position[] topLefts = new Position[parts];
+        Position[] sizes = new Position[parts];
+        bisect(people, weights, Arrays.copyOf(indices, inWorld), topLeft, worldSize, 0, parts, topLefts, sizes);
+        return new RoutingTable(topLefts, sizes);
+    }
+
+    /**
+     * Divides the area to the number of parts and stores them to the arrays.
+     * @param people positions of all people.
+     * @param weights weights of all simulators.
+     * @param indices indices of the people in the area.
+     * @param topLeft top-left corner of the area.
+     * @param size size of the area.
+     * @param first index of the first part of the area in the arrays.
+     * @param parts number of parts to divide the area to.
+     * @param topLefts array to store top-left corners of the parts to.
+     * @param sizes array to store sizes of the parts to.
+     */
+    private static void bisect(Position[] people, double[] weights, int[] indices, Position topLeft, Position size,
+                               int first, int parts, Position[] topLefts, Position[] sizes){
+        if(parts == 1){
+            topLefts[first] = topLeft;
+            sizes[first] = size;
+            return;
+        }
+        int lowParts = parts / 2;
+        boolean vertical = size.getX() >= size.getY();
+        int extent = vertical ? size.getX() : size.getY();
+        int other = vertical ? size.getY() : size.getX();
+        int start = vertical ? topLeft.getX() : topLeft.getY();
+        //both parts need at least one tile for every simulator
+        int minCut = (lowParts + other - 1) / other;
+        int maxCut = extent - (parts - lowParts + other - 1) / other;
+        if(minCut > maxCut)
+            throw new IllegalArgumentException("Area " + size + " can't be divided to " + parts + " simulators.");
+
+        int[] histogram = new int[extent];
+        for(int index : indices){
+            histogram[coordinate(people[index], vertical) - start]++;
+        }
+        int cut = findCut(histogram, indices.length, share(weights, first, lowParts, parts), minCut, maxCut);
+
+        int low = 0;
+        for(int c = 0; c < cut; c++){
+            low += histogram[c];
+        }
+        int[] lowIndices = new int[low];
+        int[] highIndices = new int[indices.length - low];
+        int l = 0;
+        int h = 0;
+        for(int index : indices){
+            if(coordinate(people[index], vertical) - start < cut)
+                lowIndices[l++] = index;
+            else
+                highIndices[h++] = index;
+        }
+        Position lowSize = vertical ? new Position(cut, other) : new Position(other, cut);
+        Position highTopLeft = vertical ? new Position(start + cut, topLeft.getY()) : new Position(topLeft.getX(), start + cut);
+        Position highSize = vertical ? new Position(extent - cut, other) : new Position(other, extent - cut);
+        bisect(people, weights, lowIndices, topLeft, lowSize, first, lowParts, topLefts, sizes);
+        bisect(people, weights, highIndices, highTopLeft, highSize, first + lowParts, parts - lowParts, topLefts, sizes);
+    }
+
+    /**
+     * Returns share of weight of the first simulators of the area in the weight of all its simulators.
+     * @param weights weights of all simulators.
+     * @param first index of the first simulator of the area.
+     * @param lowParts number of simulators before the cut.
+     * @param parts number of simulators of the area.
+     * @return share of the simulators before the cut, by their count if the weights don't sum to a positive number.
+     */
+    private static double share(double[] weights, int first, int lowParts, int parts){
+        double low = 0;
+        double total = 0;
+        for(int i = first; i < first + parts; i++){
+            if(i < first + lowParts)
+                low += weights[i];
+            total += weights[i];
+        }
+        return total > 0 ? low / total : (double) lowParts / parts;
+    }
+
+    /**
+     * Finds the cut that leaves the closest number of people to the share before it.
+     * If there are no people, the area is cut by the share of its length.
+     * @param histogram number of people on each coordinate of the area.
+     * @param total number of people in the area.
+     * @param share wanted share of people before the cut.
+     * @param minCut lowest allowed cut.
+     * @param maxCut highest allowed cut.
+     * @return length of the area before the cut.
+     */
+    private static int findCut(int[] histogram, int total, double share, int minCut, int maxCut){
+        if(total == 0)
+            return Math.max(minCut, Math.min(maxCut, (int) Math.round(histogram.length * share)));
+        double target = total * share;
+        long before = 0;
+        for(int c = 0; c < minCut; c++){
+            before += histogram[c];
+        }
+        int best = minCut;
+        double bestDifference = Math.abs(before - target);
+        for(int cut = minCut + 1; cut <= maxCut && before < target; cut++){
+            before += histogram[cut - 1];
+            double difference = Math.abs(before - target);
+            if(difference < bestDifference){
+                best = cut;
+                bestDifference = difference;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns coordinate of the position along the axis.
+     * @param position position.
+     * @param vertical true for the x coordinate, false for the y coordinate.
+     * @return coordinate of the position.
+     */
+    private static int coordinate(Position position, boolean vertical){
+        return vertical ? position.getX() : position.getY();
+    }
+}
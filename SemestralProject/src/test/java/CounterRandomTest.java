@@ -0,0 +1,103 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CounterRandomTest {
+
+    @Test
+    void draw() {
+        long key = CounterRandom.key(CounterRandom.key(7, 12), 3, CounterRandom.Purpose.move);
+        assertEquals(CounterRandom.draw(key, 5), CounterRandom.draw(key, 5));
+        assertNotEquals(CounterRandom.draw(key, 5), CounterRandom.draw(key, 6));
+        assertNotEquals(key, CounterRandom.key(CounterRandom.key(7, 12), 3, CounterRandom.Purpose.infection));
+        assertNotEquals(key, CounterRandom.key(CounterRandom.key(7, 12), 4, CounterRandom.Purpose.move));
+
+        int[] counts = new int[10];
+        for(int i = 0; i < 100000; i++){
+            float f = CounterRandom.toFloat(CounterRandom.draw(key, i));
+            assertTrue(f >= 0 && f < 1);
+            counts[CounterRandom.toInt(CounterRandom.draw(key, i), counts.length)]++;
+        }
+        for(int count : counts){
+            assertEquals(10000, count, 500);
+        }
+    }
+
+    @Test
+    void nextInt() {
+        CounterRandom a = new CounterRandom(99);
+        CounterRandom b = new CounterRandom(99);
+        for(int i = 0; i < 100; i++){
+            assertEquals(a.nextInt(1000), b.nextInt(1000));
+        }
+    }
+
+    /** Generates the same world on simulators in this process and runs the rounds, returns the stats columns. */
+    private int[][] simulate(int simulatorCount, int threads, boolean closedFormSpread, int rounds){
+        SimulatorConnection[] sims = new SimulatorConnection[simulatorCount];
+        for(int i = 0; i < simulatorCount; i++){
+            sims[i] = new LocalSimulatorConnection(threads);
+        }
+        ContagionParameters parameters = new ContagionParameters();
+        parameters.defaultSpreadChance = 0.05f;
+        parameters.recoveryChance = 0.01f;
+        parameters.deathChance = 0.001f;
+        parameters.quarantineChance = 0.01f;
+        parameters.restaurantsOpen = true;
+        parameters.workOnSite = true;
+        parameters.schoolsOpen = true;
+        parameters.homeSpreadMultiplier = 1;
+        parameters.workplaceSpreadMultiplier = 1;
+        parameters.schoolSpreadMultiplier = 1;
+        parameters.restaurantSpreadMultiplier = 1;
+        parameters.masksMultiplier = 1;
+        parameters.closedFormSpread = closedFormSpread;
+        Position worldSize = new Position(80, 80);
+        WorldGenerator generator = new WorldGenerator(sims);
+        generator.setUpGenerator(worldSize, parameters, 300, 10, 5, 20, 1000, 0.05f, 0.0f, 0.1f, 42);
+        generator.generateWorld();
+        assertFalse(generator.raisedError());
+
+        Master master = new Master(sims, worldSize);
+        master.simsGetStats();
+        for(int round = 0; round < rounds; round++){
+            master.makeRound();
+        }
+        RoundHistory history = master.getStatsHistory();
+        int[][] columns = new int[PersonHealth.values().length][];
+        for(PersonHealth health : PersonHealth.values()){
+            columns[health.ordinal()] = history.getColumn(health, 0, history.getRoundCount());
+        }
+        master.exitSims();
+        return columns;
+    }
+
+    @Test
+    void partitionInvariance() {
+        for(boolean closedFormSpread : new boolean[]{false, true}){
+            int[][] expected = simulate(1, 1, closedFormSpread, 30);
+            assertEquals(31, expected[0].length);
+            assertNotEquals(expected[PersonHealth.infected.ordinal()][0], expected[PersonHealth.infected.ordinal()][30]);
+            assertArrayEquals(expected, simulate(1, 4, closedFormSpread, 30));
+            assertArrayEquals(expected, simulate(3, 1, closedFormSpread, 30));
+            assertArrayEquals(expected, simulate(3, 4, closedFormSpread, 30));
+        }
+    }
+
+    @Test
+    void setSeed() {
+        ContagionParameters parameters = new ContagionParameters();
+        PeopleTable first = new PeopleTable(1234);
+        PeopleTable second = new PeopleTable(1234);
+        int a = first.add(new Person(5, PersonHealth.healthy, new Position(0, 0), new Timetable()));
+        second.add(new Person(9, PersonHealth.healthy, new Position(0, 0), new Timetable()));
+        int b = second.add(new Person(5, PersonHealth.healthy, new Position(0, 0), new Timetable()));
+        first.visit(a, new Location(new Position(0, 0)), parameters);
+        second.visit(b, new Location(new Position(0, 0)), parameters);
+        for(int round = 0; round < 50; round++){
+            first.setRound(round);
+            second.setRound(round);
+            assertEquals(first.move(a, parameters), second.move(b, parameters));
+        }
+    }
+}
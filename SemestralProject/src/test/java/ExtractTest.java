@@ -0,0 +1,62 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExtractTest {
+
+    @Test
+    void sharesChunksWithPrevious() {
+        Position topLeft = new Position(10, 10);
+        Position size = new Position(70, 40);
+        Extract previous = new Extract(topLeft, size);
+        previous.addExtractedLocation(PackedPosition.pack(10, 10), ExtractLocation.Type.homeL, new Stats());
+        previous.addExtractedLocation(PackedPosition.pack(79, 49), ExtractLocation.Type.schoolL, new Stats());
+
+        Extract extract = new Extract(topLeft, size, previous);
+        extract.addExtractedLocation(PackedPosition.pack(11, 10), ExtractLocation.Type.restaurantL, new Stats());
+        extract.removeExtractedLocation(PackedPosition.pack(79, 49));
+
+        //changes of the new extract don't leak to the previous one
+        assertEquals(ExtractLocation.Type.homeL, extract.getExtractedLocation(0, 0).getType());
+        assertEquals(ExtractLocation.Type.restaurantL, extract.getExtractedLocation(1, 0).getType());
+        assertNull(extract.getExtractedLocation(69, 39));
+        assertNull(previous.getExtractedLocation(1, 0));
+        assertEquals(ExtractLocation.Type.schoolL, previous.getExtractedLocation(69, 39).getType());
+        assertNull(extract.getExtractedLocation(PackedPosition.pack(80, 49)));
+    }
+
+    @Test
+    void copiesLocationCounts() {
+        Location restaurant = new LocationRestaurant(new Position(3, 4));
+        ContagionParameters parameters = new ContagionParameters();
+        parameters.restaurantsOpen = true;
+        PeopleTable people = new PeopleTable(0);
+        people.visit(people.add(new Person(1, PersonHealth.infected, new Position(3, 4), new Timetable())), restaurant, parameters);
+        people.visit(people.add(new Person(2, PersonHealth.vaccinated, new Position(3, 4), new Timetable())), restaurant, parameters);
+        Extract extract = new Extract(new Position(0, 0), new Position(10, 10));
+        extract.addExtractedLocation(restaurant);
+        extract.addExtractedLocation(new Location(new Position(10, 4)));
+
+        assertEquals(ExtractLocation.Type.restaurantL, extract.getExtractedLocation(3, 4).getType());
+        assertEquals("0,1,0,0,0,1", extract.getExtractedLocation(3, 4).getStats().toString());
+        Stats stats = new Stats();
+        assertTrue(extract.addStats(PackedPosition.pack(3, 4), stats));
+        assertFalse(extract.addStats(PackedPosition.pack(3, 5), stats));
+        assertFalse(extract.addStats(PackedPosition.pack(10, 4), stats));
+        assertEquals("0,1,0,0,0,1", stats.toString());
+    }
+
+    @Test
+    void copiesIntersection() {
+        Extract previous = new Extract(new Position(0, 0), new Position(40, 40));
+        previous.addExtractedLocation(PackedPosition.pack(35, 5), ExtractLocation.Type.workplaceL, new Stats());
+        previous.addExtractedLocation(PackedPosition.pack(5, 5), ExtractLocation.Type.homeL, new Stats());
+
+        Extract extract = new Extract(new Position(30, 0), new Position(40, 40), previous);
+        assertEquals(ExtractLocation.Type.workplaceL, extract.getExtractedLocation(5, 5).getType());
+        assertNull(extract.getExtractedLocation(PackedPosition.pack(5, 5)));
+        extract.clearArea(new Position(0, 0), new Position(40, 10));
+        assertNull(extract.getExtractedLocation(5, 5));
+        assertEquals(ExtractLocation.Type.workplaceL, previous.getExtractedLocation(35, 5).getType());
+    }
+}
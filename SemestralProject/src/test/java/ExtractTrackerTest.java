@@ -0,0 +1,75 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExtractTrackerTest {
+
+    @Test
+    void changed() {
+        ExtractTracker tracker = new ExtractTracker();
+        Position topLeft = new Position(0, 0);
+        Position size = new Position(10, 10);
+        Location first = new Location(new Position(1, 1));
+        Location second = new LocationHome(new Position(2, 2), new Whitelist(0));
+        Location[] area = {first, second};
+
+        assertFalse(tracker.start(topLeft, size, ExtractTracker.NO_VERSION, 0));
+        assertEquals(2, tracker.changed(area).length);
+        assertEquals(0, tracker.removed().length);
+
+        assertTrue(tracker.start(topLeft, size, 0, 1));
+        assertEquals(0, tracker.changed(area).length);
+        PeopleTable people = new PeopleTable(0);
+        people.visit(people.add(new Person(1, PersonHealth.infected, new Position(2, 2), new Timetable())), first, new ContagionParameters());
+        assertTrue(tracker.start(topLeft, size, 1, 2));
+        assertArrayEquals(new Location[]{first}, tracker.changed(area));
+        assertEquals(0, tracker.removed().length);
+    }
+
+    @Test
+    void removed() {
+        ExtractTracker tracker = new ExtractTracker();
+        Position topLeft = new Position(0, 0);
+        Position size = new Position(10, 10);
+        Location first = new Location(new Position(1, 1));
+        Location second = new Location(new Position(2, 3));
+        tracker.start(topLeft, size, ExtractTracker.NO_VERSION, 0);
+        tracker.changed(new Location[]{first, second});
+
+        assertTrue(tracker.start(topLeft, size, 0, 1));
+        assertEquals(0, tracker.changed(new Location[]{first}).length);
+        assertArrayEquals(new long[]{PackedPosition.pack(2, 3)}, tracker.removed());
+
+        //master holding other version or asking for other area gets full extract
+        assertFalse(tracker.start(topLeft, size, 0, 2));
+        assertEquals(1, tracker.changed(new Location[]{first}).length);
+        assertFalse(tracker.start(topLeft, new Position(5, 5), 2, 3));
+    }
+
+    @Test
+    void removedFromOtherChunks() {
+        ExtractTracker tracker = new ExtractTracker();
+        Position topLeft = new Position(100, 50);
+        Position size = new Position(40, 40);
+        Location first = new Location(new Position(100, 50));
+        Location second = new Location(new Position(139, 71));
+        Location third = new Location(new Position(117, 89));
+        tracker.start(topLeft, size, ExtractTracker.NO_VERSION, 0);
+        assertEquals(3, tracker.changed(new Location[]{first, second, third}).length);
+
+        assertTrue(tracker.start(topLeft, size, 0, 1));
+        assertEquals(0, tracker.changed(new Location[]{first}).length);
+        long[] removed = tracker.removed();
+        Arrays.sort(removed);
+        long[] expected = {PackedPosition.pack(second.getPosition()), PackedPosition.pack(third.getPosition())};
+        Arrays.sort(expected);
+        assertArrayEquals(expected, removed);
+
+        //forgotten locations are new again
+        assertTrue(tracker.start(topLeft, size, 1, 2));
+        assertArrayEquals(new Location[]{third}, tracker.changed(new Location[]{first, third}));
+        assertEquals(0, tracker.removed().length);
+    }
+}
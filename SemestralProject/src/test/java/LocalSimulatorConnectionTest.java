@@ -0,0 +1,37 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LocalSimulatorConnectionTest {
+
+    @Test
+    void resolveWaitingPeople() throws SimulatorConnectionException {
+        LocalSimulatorConnection left = new LocalSimulatorConnection(1);
+        LocalSimulatorConnection right = new LocalSimulatorConnection(2);
+        left.initSimulator(new Position(0, 0), new Position(10, 10), 1);
+        right.initSimulator(new Position(10, 0), new Position(10, 10), 1);
+        SimulatorConnection.await(right.sendContagionParameters(new ContagionParameters()));
+
+        Person person = new Person(3, PersonHealth.infected, new Position(12, 3), new Timetable());
+        right.addToWaitingPeople(new WaitingPerson(person, new Position(12, 3), null));
+        right.addToWaitingPeople(new WaitingPerson(person, new Position(5, 3), null));
+        SimulatorConnection.await(right.resolveWaitingPeople());
+
+        Master master = new Master(new SimulatorConnection[]{left, right}, new Position(20, 10));
+        master.simsGetStats();
+        assertEquals("0,1,0,0,0,0", master.getStatsHistory().getLast().toString());
+        left.sendExitSim();
+        right.sendExitSim();
+    }
+
+    @Test
+    void sendExitSim() {
+        LocalSimulatorConnection connection = new LocalSimulatorConnection(1);
+        assertTrue(connection.pingSimulator());
+        connection.sendExitSim();
+        assertFalse(connection.pingSimulator());
+        assertThrows(CompletionException.class, () -> connection.sendCalculateHealthCommand().join());
+    }
+}
@@ -0,0 +1,92 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LocationTest {
+
+    private ContagionParameters parameters;
+    private Location location;
+
+    @BeforeEach
+    void setUp(){
+        parameters = new ContagionParameters();
+        location = new Location(new Position(0, 0));
+    }
+
+    /** Fills the location with infectious and healthy people, returns the healthy ones. */
+    private Person[] fillLocation(int infectious, int healthy){
+        location = new Location(new Position(0, 0));
+        int personalNumber = 0;
+        for(int i = 0; i < infectious; i++){
+            Person p = new Person(personalNumber++, PersonHealth.infected, new Position(0, 0), new Timetable());
+            p.visitLocation(location, parameters);
+        }
+        Person[] healthyPeople = new Person[healthy];
+        for(int i = 0; i < healthy; i++){
+            healthyPeople[i] = new Person(personalNumber++, PersonHealth.healthy, new Position(0, 0), new Timetable());
+            healthyPeople[i].visitLocation(location, parameters);
+        }
+        return healthyPeople;
+    }
+
+    private int countInfected(Person[] people){
+        int infected = 0;
+        for(Person p : people){
+            if(p.getHealth() == PersonHealth.infected)
+                infected++;
+        }
+        return infected;
+    }
+
+    @Test
+    void visit() {
+        Person person = new Person(1, PersonHealth.healthy, new Position(0, 0), new Timetable());
+        assertTrue(location.visit(person, parameters));
+        assertFalse(location.visit(person, parameters));
+        location.leave(person);
+        assertTrue(location.visit(person, parameters));
+    }
+
+    @Test
+    void calculateVisitorsHealthPerPair() {
+        parameters.closedFormSpread = false;
+        parameters.defaultSpreadChance = 0;
+        Person[] healthy = fillLocation(3, 100);
+        location.calculateVisitorsHealth(parameters);
+        assertEquals(0, countInfected(healthy));
+        parameters.defaultSpreadChance = 1;
+        healthy = fillLocation(3, 100);
+        location.calculateVisitorsHealth(parameters);
+        assertEquals(100, countInfected(healthy));
+    }
+
+    @Test
+    void calculateVisitorsHealthClosedForm() {
+        parameters.closedFormSpread = true;
+        parameters.defaultSpreadChance = 0;
+        Person[] healthy = fillLocation(3, 100);
+        location.calculateVisitorsHealth(parameters);
+        assertEquals(0, countInfected(healthy));
+        parameters.defaultSpreadChance = 1;
+        healthy = fillLocation(3, 100);
+        location.calculateVisitorsHealth(parameters);
+        assertEquals(100, countInfected(healthy));
+        healthy = fillLocation(0, 100);
+        location.calculateVisitorsHealth(parameters);
+        assertEquals(0, countInfected(healthy));
+    }
+
+    @Test
+    void closedFormChance() {
+        parameters.closedFormSpread = true;
+        parameters.defaultSpreadChance = 0.2f;
+        int infected = 0;
+        for(int i = 0; i < 100; i++){
+            Person[] healthy = fillLocation(3, 100);
+            location.calculateVisitorsHealth(parameters);
+            infected += countInfected(healthy);
+        }
+        assertEquals(1 - Math.pow(1 - 0.2f, 3), infected / 10000.0, 0.03);
+    }
+}
@@ -0,0 +1,42 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PackedPositionTest {
+
+    @Test
+    void add() {
+        long sum = PackedPosition.add(PackedPosition.pack(-3, 7), PackedPosition.pack(5, -10));
+        assertEquals(new Position(2, -3), PackedPosition.toPosition(sum));
+        long difference = PackedPosition.subtract(PackedPosition.pack(-3, 7), PackedPosition.pack(5, -10));
+        assertEquals(new Position(-8, 17), PackedPosition.toPosition(difference));
+    }
+
+    @Test
+    void isInArea() {
+        long topLeft = PackedPosition.pack(10, 20);
+        long size = PackedPosition.pack(5, 3);
+        for(int x = 0; x < 20; x++){
+            for(int y = 15; y < 30; y++){
+                boolean expected = new Position(x, y).isInArea(new Position(10, 20), new Position(5, 3));
+                assertEquals(expected, PackedPosition.isInArea(PackedPosition.pack(x, y), topLeft, size));
+            }
+        }
+        assertFalse(PackedPosition.isInArea(PackedPosition.pack(Integer.MIN_VALUE, 21), topLeft, size));
+    }
+
+    @Test
+    void index() {
+        long topLeft = PackedPosition.pack(10, 20);
+        long size = PackedPosition.pack(5, 3);
+        assertEquals(0, PackedPosition.index(topLeft, topLeft, size));
+        assertEquals(2 * 3 + 1, PackedPosition.index(PackedPosition.pack(12, 21), topLeft, size));
+        assertEquals(-1, PackedPosition.index(PackedPosition.pack(15, 21), topLeft, size));
+    }
+
+    @Test
+    void parse() {
+        assertEquals(PackedPosition.pack(-12, 345), PackedPosition.parse("-12,345"));
+        assertEquals(new Position(7, 0), PackedPosition.toPosition(PackedPosition.parse(new Position(7, 0).toString())));
+    }
+}
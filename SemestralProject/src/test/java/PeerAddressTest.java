@@ -0,0 +1,16 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PeerAddressTest {
+
+    @Test
+    void areAdjacent() {
+        Position size = new Position(10, 10);
+        assertTrue(PeerAddress.areAdjacent(new Position(0, 0), size, new Position(10, 0), size));
+        assertTrue(PeerAddress.areAdjacent(new Position(0, 0), size, new Position(10, 10), size));
+        assertTrue(PeerAddress.areAdjacent(new Position(10, 10), size, new Position(0, 20), size));
+        assertFalse(PeerAddress.areAdjacent(new Position(0, 0), size, new Position(20, 0), size));
+        assertFalse(PeerAddress.areAdjacent(new Position(0, 0), size, new Position(5, 11), size));
+    }
+}
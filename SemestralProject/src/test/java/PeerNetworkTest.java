@@ -0,0 +1,88 @@
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PeerNetworkTest {
+
+    @Test
+    void exchangeBinary() throws Exception {
+        exchange(true);
+    }
+
+    @Test
+    void exchangeText() throws Exception {
+        exchange(false);
+    }
+
+    /** Links two simulators with adjacent areas over loopback and moves one accepted and one rejected person between them. */
+    private void exchange(boolean allowBinary) throws Exception {
+        Position size = new Position(10, 10);
+        Simulator left = new Simulator(2);
+        Simulator right = new Simulator(1);
+        left.setSimulator(new Position(0, 0), size, 1);
+        right.setSimulator(new Position(10, 0), size, 1);
+        left.setContagionParameters(new ContagionParameters());
+        right.setContagionParameters(new ContagionParameters());
+
+        //person 3 moves to an open tile of right, person 4 to a home of right that doesn't let it in
+        Whitelist family = new Whitelist();
+        family.add(3);
+        right.addLocation(new LocationHome(new Position(12, 5), family));
+        Timetable toOpen = new Timetable();
+        toOpen.setOccupation(1, new Position(12, 3));
+        Timetable toHome = new Timetable();
+        toHome.setOccupation(1, new Position(12, 5));
+        assertTrue(left.addPerson(new Person(3, PersonHealth.healthy, new Position(8, 3), toOpen), new Position(8, 3)));
+        assertTrue(left.addPerson(new Person(4, PersonHealth.infected, new Position(9, 5), toHome), new Position(9, 5)));
+
+        PeerNetwork leftPeers = new PeerNetwork(allowBinary);
+        PeerNetwork rightPeers = new PeerNetwork(allowBinary);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            //right accepts the connection of left
+            Future<?> accepted = executor.submit(() -> {
+                rightPeers.link(new PeerAddress[0], 1, new Position(10, 0), size);
+                return null;
+            });
+            PeerAddress rightAddress = new PeerAddress(InetAddress.getLoopbackAddress(), rightPeers.getPort(), new Position(10, 0), size);
+            leftPeers.link(new PeerAddress[]{rightAddress}, 0, new Position(0, 0), size);
+            accepted.get();
+            assertEquals(1, leftPeers.getPeerCount());
+            assertEquals(1, rightPeers.getPeerCount());
+            left.setPeers(leftPeers);
+            right.setPeers(rightPeers);
+
+            //both simulators wait for each other in the exchange
+            Future<List<WaitingPerson>> leftMoved = executor.submit(left::movePeople);
+            Future<List<WaitingPerson>> rightMoved = executor.submit(right::movePeople);
+            assertTrue(leftMoved.get().isEmpty());
+            assertTrue(rightMoved.get().isEmpty());
+        } finally {
+            leftPeers.shutdown();
+            rightPeers.shutdown();
+            executor.shutdown();
+        }
+
+        //the accepted person was removed from left by it's confirmation, the rejected one stays on it's tile
+        assertEquals("0,1,0,0,0,0", left.getStats().toString());
+        assertEquals("1,0,0,0,0,0", right.getStats().toString());
+        assertEquals("0,1,0,0,0,0", statsAt(left, new Position(9, 5)));
+        assertEquals("0,0,0,0,0,0", statsAt(left, new Position(8, 3)));
+        assertEquals("1,0,0,0,0,0", statsAt(right, new Position(12, 3)));
+        assertEquals("0,0,0,0,0,0", statsAt(right, new Position(12, 5)));
+        left.shutdown();
+        right.shutdown();
+    }
+
+    /** Returns stats of the tile, zeros if the tile isn't materialized. */
+    private String statsAt(Simulator simulator, Position position){
+        Location[] area = simulator.getArea(position, new Position(1, 1));
+        return area.length == 0 ? new Stats().toString() : area[0].getStats().toString();
+    }
+}
@@ -0,0 +1,49 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PeopleIndexTest {
+    PeopleIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new PeopleIndex();
+    }
+
+    @Test
+    void add() {
+        assertTrue(index.add(42, 7));
+        assertFalse(index.add(42, 8));
+        assertEquals(7, index.get(42));
+        assertEquals(PeopleIndex.FREE, index.get(43));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    void remove() {
+        Random random = new Random(5);
+        Map<Integer, Integer> expected = new HashMap<>();
+        for(int i = 0; i < 20000; i++){
+            int pn = random.nextInt(3000);
+            if(random.nextBoolean()){
+                assertEquals(!expected.containsKey(pn), index.add(pn, i));
+                expected.putIfAbsent(pn, i);
+            }else{
+                assertEquals(expected.getOrDefault(pn, PeopleIndex.FREE), index.remove(pn));
+                expected.remove(pn);
+            }
+        }
+        assertEquals(expected.size(), index.size());
+        for(int slot = 0; slot < index.size(); slot++){
+            assertTrue(expected.containsValue(index.getAt(slot)));
+        }
+        for(Map.Entry<Integer, Integer> entry : expected.entrySet()){
+            assertEquals(entry.getValue(), index.get(entry.getKey()));
+        }
+    }
+}
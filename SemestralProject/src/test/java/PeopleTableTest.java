@@ -0,0 +1,145 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PeopleTableTest {
+
+    private PeopleTable people;
+    private Position home;
+
+    @BeforeEach
+    void setUp(){
+        people = new PeopleTable(7);
+        home = new Position(40, 60);
+    }
+
+    @Test
+    void visit() {
+        Location location = new Location(new Position(0,0));
+        int row = people.add(new Person(1, PersonHealth.healthy, home, new Timetable()));
+        assertTrue(people.visit(row, location, new ContagionParameters()));
+        assertTrue(location.visitors.contains(people, row));
+        assertSame(location, people.getLocation(row));
+        assertEquals(PackedPosition.pack(0, 0), people.getPackedTile(row));
+
+        Location closed = new LocationRestaurant(new Position(1, 1));
+        assertFalse(people.visit(row, closed, new ContagionParameters()));
+        assertSame(location, people.getLocation(row));
+        assertTrue(location.visitors.contains(people, row));
+
+        people.leaveLocation(row);
+        assertFalse(location.visitors.contains(people, row));
+        assertNull(people.getLocation(row));
+        assertDoesNotThrow(() -> people.leaveLocation(row));
+    }
+
+    @Test
+    void move() {
+        ContagionParameters parameters = new ContagionParameters();
+        Location location = new Location(new Position(0,0));
+        Timetable timetable = new Timetable();
+        parameters.freeTimeBan = false;
+        int row = people.add(new Person(1, PersonHealth.deceased, home, timetable));
+        people.visit(row, location, parameters);
+        assertEquals(PackedPosition.pack(location.getPosition()), people.move(row, parameters));
+        row = people.add(new Person(2, PersonHealth.quarantined, home, timetable));
+        people.visit(row, location, parameters);
+        assertEquals(PackedPosition.pack(home), people.move(row, parameters));
+        row = people.add(new Person(3, PersonHealth.healthy, home, timetable));
+        people.visit(row, location, parameters);
+        assertTrue(PackedPosition.toPosition(people.move(row, parameters)).isInArea(new Position(-5,-5), new Position(11,11)));
+        timetable.setOccupation(0, new Position(333,666));
+        row = people.add(new Person(4, PersonHealth.healthy, home, timetable));
+        people.visit(row, location, parameters);
+        assertEquals(PackedPosition.pack(333, 666), people.move(row, parameters));
+        parameters.freeTimeBan = true;
+        people.setRound(1);
+        assertEquals(PackedPosition.pack(home), people.move(row, parameters));
+    }
+
+    @Test
+    void tryInfect() {
+        for(int i = 0; i < 100; i++){
+            int row = people.add(new Person(i, PersonHealth.healthy, home, new Timetable()));
+            people.tryInfect(row, 0.0);
+            assertEquals(PersonHealth.healthy, people.getHealth(row));
+            people.tryInfect(row, 1);
+            assertEquals(PersonHealth.infected, people.getHealth(row));
+        }
+    }
+
+    @Test
+    void tryChangeHealth() {
+        ContagionParameters parameters = new ContagionParameters();
+        parameters.quarantineChance = 0.15f;
+        parameters.deathChance = 0.15f;
+        parameters.recoveryChance = 0.15f;
+        int infected = 0;
+        int cured = 0;
+        int quarantined = 0;
+        int deceased = 0;
+        for(int i = 0; i < 10000; i++){
+            int row = people.add(new Person(i, PersonHealth.infected, home, new Timetable()));
+            people.tryChangeHealth(row, parameters);
+            switch (people.getHealth(row)){
+                case infected -> infected++;
+                case cured -> cured++;
+                case quarantined -> quarantined++;
+                case deceased -> deceased++;
+                default -> fail("Health changed to " + people.getHealth(row).toString());
+            }
+        }
+
+        assertEquals(0.55, infected / 10000.0, 0.03);
+        assertEquals(0.15, cured / 10000.0, 0.015);
+        assertEquals(0.15, quarantined / 10000.0, 0.015);
+        assertEquals(0.15, deceased / 10000.0, 0.015);
+    }
+
+    @Test
+    void healthCounts() {
+        Location location = new Location(new Position(0,0));
+        int row = people.add(new Person(1, PersonHealth.healthy, home, new Timetable()));
+        people.visit(row, location, new ContagionParameters());
+        people.tryInfect(row, 1);
+        assertEquals("0,1,0,0,0,0", location.getStats().toString());
+        assertTrue(location.hasInfectiousVisitors());
+        people.remove(row);
+        assertEquals("0,0,0,0,0,0", location.getStats().toString());
+        assertEquals(0, people.size());
+    }
+
+    @Test
+    void removeAndReuse() {
+        //timetables with different anchor counts, removed rows and anchors are reused
+        Random random = new Random(3);
+        List<Person> expected = new ArrayList<>();
+        List<Integer> rows = new ArrayList<>();
+        for(int i = 0; i < 5000; i++){
+            if(!rows.isEmpty() && random.nextInt(3) == 0){
+                int index = random.nextInt(rows.size());
+                people.remove(rows.remove(index));
+                expected.remove(index);
+            }else{
+                Timetable timetable = new Timetable();
+                for(int h = random.nextInt(4); h < 24; h += 1 + random.nextInt(8)){
+                    timetable.setOccupation(h, new Position(random.nextInt(100), random.nextInt(100)));
+                }
+                Person person = new Person(i, PersonHealth.values()[i % PersonHealth.values().length],
+                        new Position(i, -i), timetable);
+                expected.add(person);
+                rows.add(people.add(person));
+            }
+        }
+        assertEquals(expected.size(), people.size());
+        for(int i = 0; i < rows.size(); i++){
+            Person person = people.toPerson(rows.get(i));
+            assertEquals(expected.get(i).toString(), person.toString());
+        }
+    }
+}
@@ -0,0 +1,54 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PhaseExecutorTest {
+
+    @Test
+    void run() throws SimulatorConnectionException {
+        PhaseExecutor executor = new PhaseExecutor(new SimulatorConnection[3]);
+        AtomicInteger started = new AtomicInteger();
+        executor.run("phase", (sim, i) -> {
+            started.incrementAndGet();
+            return CompletableFuture.completedFuture(null);
+        });
+        assertEquals(3, started.get());
+        assertEquals(3, executor.getLatencies("phase").length);
+        assertNull(executor.getLatencies("other"));
+    }
+
+    @Test
+    void runFailure() {
+        PhaseExecutor executor = new PhaseExecutor(new SimulatorConnection[3]);
+        CompletableFuture<Void> pending = new CompletableFuture<>();
+        assertThrows(SimulatorConnectionException.class, () -> executor.run("phase", (sim, i) -> {
+            if(i == 0)
+                return pending;
+            return CompletableFuture.failedFuture(new SimulatorConnectionException());
+        }));
+        assertTrue(pending.isCancelled());
+    }
+
+    @Test
+    void runTimeout() {
+        PhaseExecutor executor = new PhaseExecutor(new SimulatorConnection[2], 50);
+        CompletableFuture<Void> pending = new CompletableFuture<>();
+        assertThrows(SimulatorConnectionException.class,
+                () -> executor.run("phase", (sim, i) -> i == 0 ? CompletableFuture.completedFuture(null) : pending));
+        assertTrue(pending.isCancelled());
+    }
+
+    @Test
+    void runBlocking() throws SimulatorConnectionException {
+        PhaseExecutor executor = new PhaseExecutor(new SimulatorConnection[4]);
+        boolean[] ran = new boolean[4];
+        executor.runBlocking("phase", (sim, i) -> ran[i] = true);
+        assertArrayEquals(new boolean[]{true, true, true, true}, ran);
+        assertThrows(SimulatorConnectionException.class, () -> executor.runBlocking("phase", (sim, i) -> {
+            throw new SimulatorConnectionException();
+        }));
+    }
+}
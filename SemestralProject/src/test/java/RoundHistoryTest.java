@@ -0,0 +1,80 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RoundHistoryTest {
+
+    private static Stats round(int i){
+        return new Stats(100 - i, i, 0, 0, 0, 1);
+    }
+
+    @Test
+    void add() {
+        RoundHistory history = new RoundHistory(4);
+        for(int i = 0; i < 10; i++){
+            assertEquals(i, history.add(round(i)));
+        }
+        assertEquals(10, history.getRoundCount());
+        assertEquals(6, history.getFirstRetainedRound());
+        assertEquals("91,9,0,0,0,1", history.getLast().toString());
+        assertEquals("93,7,0,0,0,1", history.get(7).toString());
+        //dropped rounds aren't available without spill file
+        assertThrows(IndexOutOfBoundsException.class, () -> history.get(5));
+        assertThrows(IndexOutOfBoundsException.class, () -> history.get(10));
+    }
+
+    @Test
+    void getRange() throws IOException {
+        Path file = Files.createTempFile("history", ".bin");
+        try {
+            RoundHistory history = new RoundHistory(4, file);
+            for(int i = 0; i < 10; i++){
+                history.add(round(i));
+            }
+            //rounds 2 to 5 are read from the file, 6 and 7 from memory
+            List<Stats> range = history.getRange(2, 8);
+            assertEquals(6, range.size());
+            for(int i = 0; i < range.size(); i++){
+                assertEquals(round(i + 2).toString(), range.get(i).toString());
+            }
+            assertArrayEquals(new int[]{0, 1, 2}, history.getColumn(PersonHealth.infected, 0, 3));
+            history.close();
+            assertEquals(10L * 6 * Integer.BYTES, Files.size(file));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void downsample() {
+        RoundHistory history = new RoundHistory(100);
+        for(int i = 0; i < 11; i++){
+            history.add(round(i));
+        }
+        RoundHistory.Samples samples = history.downsample(0, 11, 4);
+        assertEquals(4, samples.getCount());
+        assertEquals(0, samples.getRound(0));
+        assertEquals(4, samples.getRound(1));
+        assertEquals(8, samples.getRound(2));
+        assertEquals(10, samples.getRound(3));
+        assertEquals(10, samples.get(PersonHealth.infected, 3));
+        assertEquals(11, history.downsample(0, 11, 100).getCount());
+        assertEquals(0, history.downsample(5, 5, 4).getCount());
+
+        //rounds no longer held in memory are left out
+        RoundHistory recent = new RoundHistory(5);
+        for(int i = 0; i < 11; i++){
+            recent.add(round(i));
+        }
+        samples = recent.downsample(100);
+        assertEquals(5, samples.getCount());
+        assertEquals(6, samples.getRound(0));
+        assertEquals(6, samples.get(PersonHealth.infected, 0));
+        assertEquals(10, recent.downsample(0, 20, 100).getRound(4));
+    }
+}
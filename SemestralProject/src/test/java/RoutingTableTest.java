@@ -0,0 +1,55 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RoutingTableTest {
+
+    @Test
+    void route() {
+        //left half, top right and bottom right quarter
+        Position[] topLefts = {new Position(0, 0), new Position(10, 0), new Position(10, 5)};
+        Position[] sizes = {new Position(10, 10), new Position(10, 5), new Position(10, 5)};
+        RoutingTable table = new RoutingTable(topLefts, sizes);
+        assertEquals(0, table.route(new Position(0, 0)));
+        assertEquals(0, table.route(new Position(9, 9)));
+        assertEquals(1, table.route(new Position(10, 4)));
+        assertEquals(2, table.route(new Position(10, 5)));
+        assertEquals(2, table.route(new Position(19, 9)));
+        assertEquals(-1, table.route(new Position(20, 0)));
+        assertEquals(-1, table.route(new Position(5, -1)));
+        assertEquals(-1, new RoutingTable(new Position[0], new Position[0]).route(new Position(0, 0)));
+    }
+
+    @Test
+    void rebalance() {
+        Position[] topLefts = {new Position(0, 0), new Position(10, 0), new Position(10, 5)};
+        Position[] sizes = {new Position(10, 10), new Position(10, 5), new Position(10, 5)};
+        RoutingTable table = new RoutingTable(topLefts, sizes);
+        assertNull(table.rebalance(new double[]{1, 1, 1.2}, 1.3, 0));
+        //uneven, but the difference is too small to be worth moving the areas
+        assertNull(table.rebalance(new double[]{1, 3, 3}, 1.3, 2.5));
+
+        //right half is loaded three times more, left half takes over a strip of it
+        RoutingTable rebalanced = table.rebalance(new double[]{1, 3, 3}, 1.3, 0);
+        assertNotNull(rebalanced);
+        int width = rebalanced.getSize(0).getX() - 10;
+        assertTrue(width >= 1 && width <= 9);
+        assertEquals(new Position(10 + width, 0), rebalanced.getTopLeft(1));
+        assertEquals(new Position(10 - width, 5), rebalanced.getSize(1));
+        assertEquals(new Position(10 + width, 5), rebalanced.getTopLeft(2));
+        assertEquals(0, rebalanced.route(new Position(10, 9)));
+        assertEquals(2, rebalanced.route(new Position(19, 9)));
+
+        //the bottom right quarter gives a strip to the top right one
+        rebalanced = table.rebalance(new double[]{2, 1, 3}, 1.3, 0);
+        assertNotNull(rebalanced);
+        assertEquals(sizes[0], rebalanced.getSize(0));
+        assertTrue(rebalanced.getSize(1).getY() > 5);
+        assertEquals(10, rebalanced.getSize(1).getY() + rebalanced.getSize(2).getY());
+
+        //areas one tile wide can't give up any tiles
+        RoutingTable narrow = new RoutingTable(new Position[]{new Position(0, 0), new Position(1, 0)},
+                new Position[]{new Position(1, 10), new Position(1, 10)});
+        assertNull(narrow.rebalance(new double[]{1, 5}, 1.3, 0));
+    }
+}
@@ -0,0 +1,72 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SharedRingTest {
+
+    private static SharedRing ring(int capacity){
+        return new SharedRing(ByteBuffer.allocateDirect(SharedRing.HEADER_SIZE + capacity), capacity);
+    }
+
+    @Test
+    void read() throws IOException {
+        SharedRing ring = ring(8);
+        ByteBuffer dst = ByteBuffer.allocate(16);
+        assertEquals(0, ring.read(dst));
+        //wraps around the end of the data
+        for(int i = 0; i < 3; i++){
+            assertEquals(5, ring.write(ByteBuffer.wrap(new byte[]{1, 2, 3, 4, (byte) i})));
+            dst.clear();
+            assertEquals(5, ring.read(dst));
+            assertArrayEquals(new byte[]{1, 2, 3, 4, (byte) i}, Arrays.copyOf(dst.array(), 5));
+        }
+        ring.write(ByteBuffer.wrap(new byte[]{7}));
+        ring.close();
+        dst.clear();
+        assertEquals(1, ring.read(dst));
+        assertEquals(-1, ring.read(dst));
+    }
+
+    @Test
+    void write() throws IOException {
+        SharedRing ring = ring(8);
+        ByteBuffer src = ByteBuffer.wrap(new byte[12]);
+        assertEquals(8, ring.write(src));
+        assertEquals(4, src.remaining());
+        assertEquals(0, ring.write(src));
+        ring.close();
+        assertThrows(ClosedChannelException.class, () -> ring.write(src));
+        assertThrows(IllegalArgumentException.class, () -> ring(12));
+    }
+
+    @Test
+    void inputStream() throws Exception {
+        SharedMemoryLink master = SharedMemoryLink.create(16);
+        SharedMemoryLink simulator = SharedMemoryLink.open(master.getPath(), 16);
+        byte[] message = new byte[100];
+        for(int i = 0; i < message.length; i++)
+            message[i] = (byte) i;
+        //the message doesn't fit in the ring, the writer waits for the reader
+        Thread writer = new Thread(() -> {
+            try(OutputStream out = master.getToSimulator().outputStream()){
+                out.write(message);
+            } catch (IOException e) {
+                fail(e);
+            }
+        });
+        writer.start();
+        InputStream in = simulator.getToSimulator().inputStream();
+        assertArrayEquals(message, in.readNBytes(message.length));
+        writer.join();
+        master.close();
+        assertEquals(-1, in.read());
+        simulator.close();
+    }
+}
@@ -0,0 +1,34 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SimulatorCapacityTest {
+
+    @Test
+    void weights() {
+        long gigabyte = 1L << 30;
+        //threads are limited by processors, without benchmark of all simulators the threads are used
+        double[] weights = SimulatorCapacity.weights(new SimulatorCapacity[]{
+                new SimulatorCapacity(8, 8, 16 * gigabyte, 0),
+                new SimulatorCapacity(64, 128, 128 * gigabyte, 5)});
+        assertEquals(1.0 / 9, weights[0], 1e-9);
+        assertEquals(8.0 / 9, weights[1], 1e-9);
+
+        //benchmark scores are used if all simulators ran it, share is limited by share of memory
+        weights = SimulatorCapacity.weights(new SimulatorCapacity[]{
+                new SimulatorCapacity(8, 8, 16 * gigabyte, 100),
+                new SimulatorCapacity(64, 64, 16 * gigabyte, 300)});
+        assertEquals(0.25 / 0.75, weights[0], 1e-9);
+        assertEquals(0.5 / 0.75, weights[1], 1e-9);
+    }
+
+    @Test
+    void parseCapacity() {
+        SimulatorCapacity capacity = SimulatorCapacity.parseCapacity(new SimulatorCapacity(4, 2, 1L << 33, 12.5).toString());
+        assertEquals(4, capacity.getProcessors());
+        assertEquals(2, capacity.getThreads());
+        assertEquals(1L << 33, capacity.getMaxMemory());
+        assertEquals(12.5, capacity.getBenchmarkScore());
+        assertTrue(SimulatorCapacity.measure(1, true).getBenchmarkScore() > 0);
+    }
+}
@@ -0,0 +1,48 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SimulatorTest {
+
+    @Test
+    void resize() {
+        Simulator left = new Simulator(2);
+        Simulator right = new Simulator(1);
+        left.setSimulator(new Position(0, 0), new Position(10, 10), 1);
+        right.setSimulator(new Position(10, 0), new Position(10, 10), 1);
+        left.setContagionParameters(new ContagionParameters());
+        right.setContagionParameters(new ContagionParameters());
+        Whitelist family = new Whitelist();
+        family.add(5);
+        family.add(7);
+        left.addLocation(new LocationHome(new Position(8, 3), family));
+        left.addLocation(new LocationHome(new Position(2, 3), family));
+        assertTrue(left.addPerson(new Person(5, PersonHealth.infected, new Position(8, 3), new Timetable()), new Position(8, 3)));
+        assertTrue(left.addPerson(new Person(2, PersonHealth.healthy, new Position(9, 7), new Timetable()), new Position(9, 7)));
+        assertTrue(left.addPerson(new Person(7, PersonHealth.healthy, new Position(2, 3), new Timetable()), new Position(2, 3)));
+
+        //left gives the strip x = 8..9 to right
+        List<Location> locations = new ArrayList<>();
+        List<WaitingPerson> people = new ArrayList<>();
+        left.resize(new Position(0, 0), new Position(8, 10), locations, people);
+        right.resize(new Position(8, 0), new Position(12, 10), new ArrayList<>(), new ArrayList<>());
+        assertEquals(1, locations.size());
+        assertEquals(new Position(8, 3), locations.get(0).getPosition());
+        assertEquals(2, people.size());
+        assertEquals(2, people.get(0).getPerson().getPersonalNumber());
+        assertEquals(new Position(9, 7), people.get(0).getTargetPosition());
+        assertEquals(5, people.get(1).getPerson().getPersonalNumber());
+        assertEquals("1,0,0,0,0,0", left.getStats().toString());
+        assertEquals(1, left.getArea(new Position(0, 0), new Position(10, 10)).length);
+
+        right.addLocation(locations.get(0));
+        right.adoptPeople(people);
+        assertEquals("1,1,0,0,0,0", right.getStats().toString());
+        assertEquals(2, right.getArea(new Position(8, 0), new Position(2, 10)).length);
+        left.shutdown();
+        right.shutdown();
+    }
+}
@@ -0,0 +1,117 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TileGridTest {
+
+    private TileGrid grid;
+
+    @BeforeEach
+    void setUp(){
+        grid = new TileGrid();
+    }
+
+    @Test
+    void getOrCreate() {
+        assertNull(grid.get(5, 7));
+        Location location = grid.getOrCreate(5, 7);
+        assertEquals(new Position(5, 7), location.getPosition());
+        assertSame(location, grid.get(5, 7));
+        assertSame(location, grid.getOrCreate(5, 7));
+        assertEquals(1, grid.getChunkCount());
+    }
+
+    @Test
+    void put() {
+        grid.getOrCreate(3, 3);
+        LocationRestaurant restaurant = new LocationRestaurant(new Position(3, 3));
+        grid.put(restaurant);
+        assertSame(restaurant, grid.get(3, 3));
+        grid.put(new LocationRestaurant(new Position(-40, 1000)));
+        assertEquals(2, grid.getChunkCount());
+    }
+
+    @Test
+    void reclaim() {
+        Person person = new Person(1, PersonHealth.healthy, new Position(0, 0), new Timetable());
+        grid.getOrCreate(0, 0);
+        grid.getOrCreate(TileGrid.CHUNK_SIZE * 3, 0);
+        person.visitLocation(grid.getOrCreate(1, 1), new ContagionParameters());
+        grid.put(new LocationRestaurant(new Position(TileGrid.CHUNK_SIZE * 5, 0)));
+
+        grid.reclaim();
+        assertNull(grid.get(0, 0));
+        assertNull(grid.get(TileGrid.CHUNK_SIZE * 3, 0));
+        assertNotNull(grid.get(1, 1));
+        assertNotNull(grid.get(TileGrid.CHUNK_SIZE * 5, 0));
+        assertEquals(2, grid.getChunkCount());
+
+        person.leaveCurrentLocation();
+        grid.reclaim();
+        assertNull(grid.get(1, 1));
+        assertEquals(1, grid.getChunkCount());
+    }
+
+    @Test
+    void forEachActive() {
+        Person sick = new Person(1, PersonHealth.infected, new Position(0, 0), new Timetable());
+        Person healthy = new Person(2, PersonHealth.healthy, new Position(0, 0), new Timetable());
+        healthy.visitLocation(grid.getOrCreate(2, 2), new ContagionParameters());
+        sick.visitLocation(grid.getOrCreate(3, 3), new ContagionParameters());
+        assertEquals(1, grid.getActiveCount());
+
+        List<Location> visited = new ArrayList<>();
+        grid.forEachActive(visited::add);
+        assertEquals(List.of(grid.get(3, 3)), visited);
+
+        sick.visitLocation(grid.getOrCreate(2, 2), new ContagionParameters());
+        visited.clear();
+        grid.forEachActive(visited::add);
+        assertEquals(List.of(grid.get(2, 2)), visited);
+        assertEquals(1, grid.getActiveCount());
+    }
+
+    @Test
+    void addStats() {
+        Person sick = new Person(1, PersonHealth.infected, new Position(0, 0), new Timetable());
+        Person healthy = new Person(2, PersonHealth.healthy, new Position(0, 0), new Timetable());
+        healthy.visitLocation(grid.getOrCreate(2, 2), new ContagionParameters());
+        sick.visitLocation(grid.getOrCreate(3, 3), new ContagionParameters());
+        Stats stats = new Stats();
+        grid.addStats(stats);
+        assertEquals("1,1,0,0,0,0", stats.toString());
+
+        Location moved = grid.get(3, 3);
+        grid.put(new Location(new Position(3, 3)));
+        stats = new Stats();
+        grid.addStats(stats);
+        assertEquals("1,0,0,0,0,0", stats.toString());
+        assertEquals("0,1,0,0,0,0", moved.getStats().toString());
+    }
+
+    @Test
+    void addArea() {
+        for(int x = 0; x < 100; x += 7){
+            for(int y = 0; y < 100; y += 5){
+                grid.getOrCreate(x, y);
+            }
+        }
+        List<Location> area = new ArrayList<>();
+        grid.addArea(new Position(10, 10), new Position(20, 30), area);
+        int expected = 0;
+        for(int x = 0; x < 100; x += 7){
+            for(int y = 0; y < 100; y += 5){
+                if(new Position(x, y).isInArea(new Position(10, 10), new Position(20, 30)))
+                    expected++;
+            }
+        }
+        assertEquals(expected, area.size());
+        for(Location location : area){
+            assertTrue(location.getPosition().isInArea(new Position(10, 10), new Position(20, 30)));
+        }
+    }
+}
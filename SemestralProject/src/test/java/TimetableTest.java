@@ -72,4 +72,35 @@ class TimetableTest {
 
         assertEquals(timetableString, timetable.toString());
     }
+
+    @Test
+    void toCompactString() {
+        for(int i = 0; i < 24; i++){
+            timetable.setOccupation(i, occupations[i]);
+        }
+        Timetable parsed = Timetable.parseTimetable(timetable.toCompactString());
+
+        assertSame(timetable.getPattern(), parsed.getPattern());
+        for(int i = 0; i < 24; i++){
+            assertEquals(occupations[i], parsed.getOccupation(i));
+        }
+    }
+
+    @Test
+    void getPattern() {
+        Timetable other = new Timetable();
+        for(int h = 0; h < 6; h++){
+            timetable.setOccupation(h, new Position(1, 1));
+            other.setOccupation(h, new Position(2, 2));
+        }
+        timetable.setOccupation(8, new Position(3, 3));
+        other.setOccupation(8, new Position(4, 4));
+        assertSame(timetable.getPattern(), other.getPattern());
+        assertEquals(2, timetable.getPattern().getAnchorCount());
+
+        timetable.setOccupation(8, null);
+        assertEquals(1, timetable.getPattern().getAnchorCount());
+        assertEquals(new Position(1, 1), timetable.getOccupation(5));
+        assertNull(timetable.getOccupation(8));
+    }
 }
\ No newline at end of file
@@ -0,0 +1,78 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VisitorSetTest {
+    VisitorSet set;
+    Person[] people;
+
+    @BeforeEach
+    void setUp() {
+        set = new VisitorSet();
+        people = new Person[10];
+        for(int i = 0; i < people.length; i++){
+            people[i] = new Person(i, PersonHealth.healthy, new Position(0, 0), new Timetable());
+        }
+    }
+
+    @Test
+    void add() {
+        for(Person p : people){
+            assertTrue(set.add(p));
+        }
+        assertFalse(set.add(people[3]));
+        assertEquals(people.length, set.size());
+        for(Person p : people){
+            assertTrue(set.contains(p));
+        }
+    }
+
+    @Test
+    void remove() {
+        for(Person p : people){
+            set.add(p);
+        }
+        assertTrue(set.remove(people[2]));
+        assertFalse(set.remove(people[2]));
+        assertFalse(set.contains(people[2]));
+        assertTrue(set.contains(people[people.length - 1]));
+        assertEquals(people.length - 1, set.size());
+
+        VisitorSet other = new VisitorSet();
+        other.add(people[2]);
+        assertFalse(set.contains(people[2]));
+        assertTrue(other.contains(people[2]));
+
+        int count = 0;
+        for(Person p : set){
+            assertNotSame(people[2], p);
+            count++;
+        }
+        assertEquals(people.length - 1, count);
+    }
+
+    @Test
+    void sortByPersonalNumber() {
+        //personal numbers in scrambled order, more than one insertion sort range
+        PeopleTable table = new PeopleTable(0);
+        int[] members = new int[100];
+        for(int i = 0; i < members.length; i++){
+            members[i] = table.add(new Person((i * 37) % members.length, PersonHealth.healthy, new Position(0, 0), new Timetable()));
+            set.add(table, members[i]);
+        }
+        set.remove(table, members[50]);
+        set.sortByPersonalNumber(table);
+
+        assertEquals(members.length - 1, set.size());
+        for(int i = 1; i < set.size(); i++){
+            assertTrue(table.getPersonalNumber(set.get(i - 1)) < table.getPersonalNumber(set.get(i)));
+        }
+        //slots follow the members
+        for(int i = 0; i < members.length; i++){
+            assertEquals(i != 50, set.contains(table, members[i]));
+        }
+        assertTrue(set.remove(table, members[0]));
+        assertEquals(members.length - 2, set.size());
+    }
+}
@@ -0,0 +1,34 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WhitelistTest {
+
+    @Test
+    void contains() {
+        Random random = new Random(3);
+        Whitelist whitelist = new Whitelist();
+        boolean[] added = new boolean[500];
+        for(int i = 0; i < 200; i++){
+            int pn = random.nextInt(added.length);
+            assertEquals(!added[pn], whitelist.add(pn));
+            added[pn] = true;
+        }
+        for(int pn = 0; pn < added.length; pn++){
+            assertEquals(added[pn], whitelist.contains(pn));
+        }
+    }
+
+    @Test
+    void parseWhitelist() {
+        Whitelist whitelist = Whitelist.parseWhitelist("12,3,7");
+        assertEquals(3, whitelist.size());
+        assertTrue(whitelist.contains(7));
+        assertFalse(whitelist.contains(8));
+        assertEquals("3,7,12", whitelist.toString());
+        assertEquals(whitelist.toString(), Whitelist.parseWhitelist(whitelist.toString()).toString());
+        assertEquals(0, Whitelist.parseWhitelist("").size());
+    }
+}
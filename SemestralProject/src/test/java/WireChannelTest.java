@@ -0,0 +1,208 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WireChannelTest {
+    private Socket masterSocket;
+    private Socket simulatorSocket;
+    private WireChannel master;
+    private WireChannel simulator;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        try(ServerSocket server = new ServerSocket(0)){
+            masterSocket = new Socket("127.0.0.1", server.getLocalPort());
+            simulatorSocket = server.accept();
+        }
+        master = new WireChannel(masterSocket.getInputStream(), masterSocket.getOutputStream());
+        simulator = new WireChannel(simulatorSocket.getInputStream(), simulatorSocket.getOutputStream());
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        masterSocket.close();
+        simulatorSocket.close();
+    }
+
+    /** Negotiates the protocol, simulator answers on another thread. */
+    private boolean negotiate(boolean preferBinary, boolean allowBinary) throws Exception {
+        CompletableFuture<WireMessage> answered = CompletableFuture.supplyAsync(() -> {
+            try {
+                WireMessage received = simulator.receive();
+                simulator.answerProtocol(allowBinary);
+                return received;
+            } catch (IOException e) {
+                return null;
+            }
+        });
+        boolean binary = master.requestProtocol(preferBinary);
+        assertEquals(WireMessage.Protocol, answered.get());
+        return binary;
+    }
+
+    @Test
+    void requestProtocol() throws Exception {
+        assertFalse(negotiate(true, false));
+        assertFalse(simulator.isBinary());
+        assertTrue(negotiate(true, true));
+        assertTrue(simulator.isBinary());
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    void sendPerson(boolean binary) throws Exception {
+        assertEquals(binary, negotiate(binary, true));
+        Timetable timetable = new Timetable();
+        timetable.setOccupation(8, new Position(3, 4));
+        timetable.setOccupation(9, new Position(3, 4));
+        timetable.setOccupation(18, new Position(-5, 6));
+        master.sendPerson(new Person(7, PersonHealth.quarantined, new Position(1, 2), timetable), new Position(10, 11));
+        master.sendPersonConfirmation(8, true);
+        master.flush();
+
+        assertEquals(WireMessage.Person, simulator.receive());
+        WaitingPerson wp = simulator.readPerson(null);
+        assertEquals(new Position(10, 11), wp.getTargetPosition());
+        assertEquals(7, wp.getPerson().getPersonalNumber());
+        assertEquals(PersonHealth.quarantined, wp.getPerson().getHealth());
+        assertEquals(new Position(1, 2), wp.getPerson().getHome());
+        assertEquals(new Position(3, 4), wp.getPerson().getOccupation(9));
+        assertEquals(new Position(-5, 6), wp.getPerson().getOccupation(18));
+        assertFalse(wp.getPerson().hasOccupation(10));
+
+        assertEquals(WireMessage.PersonConfirmation, simulator.receive());
+        WaitingPersonConfirmation wc = simulator.readPersonConfirmation();
+        assertEquals(8, wc.getPersonalNumber());
+        assertTrue(wc.getConfirmation());
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    void sendPersonBatch(boolean binary) throws Exception {
+        assertEquals(binary, negotiate(binary, true));
+        List<WaitingPerson> people = new ArrayList<>();
+        List<WaitingPersonConfirmation> confirmations = new ArrayList<>();
+        for(int i = 0; i < 11; i++){
+            Timetable timetable = new Timetable();
+            timetable.setOccupation(8, new Position(i, 4));
+            people.add(new WaitingPerson(new Person(i, PersonHealth.infected, new Position(i, 0), timetable), new Position(i, 5), null));
+            confirmations.add(new WaitingPersonConfirmation(100 + i, i % 3 == 0));
+        }
+        master.sendPersonBatch(people);
+        master.sendPersonBatch(new ArrayList<>());
+        master.sendPersonConfirmations(confirmations);
+        master.flush();
+
+        assertEquals(WireMessage.PersonBatch, simulator.receive());
+        List<WaitingPerson> received = simulator.readPersonBatch(null);
+        assertEquals(11, received.size());
+        assertEquals(10, received.get(10).getPerson().getPersonalNumber());
+        assertEquals(new Position(10, 5), received.get(10).getTargetPosition());
+        assertEquals(new Position(7, 4), received.get(7).getPerson().getOccupation(8));
+        assertEquals(WireMessage.PersonBatch, simulator.receive());
+        assertTrue(simulator.readPersonBatch(null).isEmpty());
+
+        assertEquals(WireMessage.PersonConfirmations, simulator.receive());
+        List<WaitingPersonConfirmation> receivedConfirmations = simulator.readPersonConfirmations();
+        assertEquals(11, receivedConfirmations.size());
+        for(int i = 0; i < 11; i++){
+            assertEquals(100 + i, receivedConfirmations.get(i).getPersonalNumber());
+            assertEquals(i % 3 == 0, receivedConfirmations.get(i).getConfirmation());
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    void poll(boolean binary) throws Exception {
+        assertEquals(binary, negotiate(binary, true));
+        master.sendStats(new Stats(1, 2, 3, 4, 5, 6));
+        master.sendStats(new Stats(7, 8, 9, 10, 11, 12));
+        master.flush();
+        int length = binary ? 2 * (Integer.BYTES + 1 + 6 * Integer.BYTES) : 2 * "Stats:1,2,3,4,5,6\n".length() + 3;
+        byte[] bytes = simulatorSocket.getInputStream().readNBytes(length);
+
+        ByteBuffer inbound = ByteBuffer.allocate(length);
+        inbound.put(bytes, 0, length - 3).flip();
+        assertEquals(WireMessage.Stats, simulator.poll(inbound));
+        assertEquals("1,2,3,4,5,6", simulator.readStats().toString());
+        assertNull(simulator.poll(inbound));
+        inbound.compact().put(bytes, length - 3, 3).flip();
+        assertEquals(WireMessage.Stats, simulator.poll(inbound));
+        assertEquals("7,8,9,10,11,12", simulator.readStats().toString());
+        assertFalse(inbound.hasRemaining());
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    void sendExtract(boolean binary) throws Exception {
+        assertEquals(binary, negotiate(binary, true));
+        Location[] area = new Location[300];
+        for(int i = 0; i < area.length; i++){
+            area[i] = new LocationRestaurant(new Position(i % 20, i / 20));
+        }
+        ContagionParameters parameters = new ContagionParameters();
+        parameters.restaurantsOpen = true;
+        PeopleTable people = new PeopleTable(0);
+        people.visit(people.add(new Person(1, PersonHealth.infected, new Position(0, 0), new Timetable())), area[25], parameters);
+        simulator.sendExtract(area);
+        simulator.flush();
+
+        assertEquals(WireMessage.Extract, master.receive());
+        Extract extract = new Extract(new Position(0, 0), new Position(20, 20));
+        master.readExtract(extract);
+        assertEquals(ExtractLocation.Type.restaurantL, extract.getExtractedLocation(19, 14).getType());
+        assertEquals("0,1,0,0,0,0", extract.getExtractedLocation(5, 1).getStats().toString());
+        assertNull(extract.getExtractedLocation(0, 15));
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    void sendRoundDone(boolean binary) throws Exception {
+        assertEquals(binary, negotiate(binary, true));
+        Location[] changed = {new LocationRestaurant(new Position(3, 4))};
+        long[] removed = {PackedPosition.pack(new Position(7, 8))};
+        simulator.sendRoundDone(Stats.parseStats("10,2,3,0,1,4"), 5, false, changed, removed);
+        simulator.flush();
+
+        assertEquals(WireMessage.RoundDone, master.receive());
+        Extract extract = new Extract(new Position(0, 0), new Position(20, 20));
+        extract.addExtractedLocation(PackedPosition.pack(new Position(7, 8)), ExtractLocation.Type.homeL, new Stats());
+        assertEquals("10,2,3,0,1,4", master.readStats().toString());
+        assertEquals(5, master.readExtractDelta(extract, new Position(0, 0), new Position(20, 20)));
+        assertEquals(ExtractLocation.Type.restaurantL, extract.getExtractedLocation(3, 4).getType());
+        assertNull(extract.getExtractedLocation(7, 8));
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    void sendPeers(boolean binary) throws Exception {
+        assertEquals(binary, negotiate(binary, true));
+        master.sendPeers(2, List.of(
+                new PeerAddress(InetAddress.getByName("127.0.0.1"), 4000, new Position(0, 50), new Position(50, 50)),
+                new PeerAddress(InetAddress.getByName("::1"), 4001, new Position(50, 0), new Position(25, 50))));
+        master.flush();
+
+        assertEquals(WireMessage.Peers, simulator.receive());
+        assertEquals(2, simulator.readInt());
+        PeerAddress[] peers = simulator.readPeerAddresses();
+        assertEquals(2, peers.length);
+        assertEquals(InetAddress.getByName("127.0.0.1"), peers[0].getHost());
+        assertEquals(new Position(0, 50), peers[0].getTopLeft());
+        assertEquals(InetAddress.getByName("::1"), peers[1].getHost());
+        assertEquals(4001, peers[1].getPort());
+        assertEquals(new Position(25, 50), peers[1].getSize());
+    }
+}
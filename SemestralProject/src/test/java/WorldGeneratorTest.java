@@ -0,0 +1,21 @@
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WorldGeneratorTest {
+
+    @Test
+    void worldSmallerThanSimulators() {
+        //3 simulators can't share 2 tiles, the generator has to report it instead of waiting forever
+        SimulatorConnection[] sims = new SimulatorConnection[3];
+        for(int i = 0; i < sims.length; i++){
+            sims[i] = new LocalSimulatorConnection(1);
+        }
+        WorldGenerator generator = new WorldGenerator(sims);
+        generator.setUpGenerator(new Position(2, 1), new ContagionParameters(), 1, 0, 0, 1, 5, 0.1f, 0f, 0f, 42);
+        assertTimeoutPreemptively(Duration.ofSeconds(10), generator::generateWorld);
+        assertTrue(generator.raisedError());
+    }
+}
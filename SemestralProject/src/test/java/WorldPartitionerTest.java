@@ -0,0 +1,64 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WorldPartitionerTest {
+
+    @Test
+    void partition() {
+        //all people live in the left tenth of the world
+        Position worldSize = new Position(100, 50);
+        Position[] people = new Position[700];
+        for(int i = 0; i < people.length; i++){
+            people[i] = new Position(i % 10, i % 50);
+        }
+        RoutingTable areas = WorldPartitioner.partition(worldSize, people, 7);
+        assertEquals(7, areas.getCount());
+        int[] perArea = new int[7];
+        for(Position person : people){
+            perArea[areas.route(person)]++;
+        }
+        for(int count : perArea){
+            assertTrue(count >= 50 && count <= 150, "unbalanced areas " + Arrays.toString(perArea));
+        }
+        //areas cover the whole world without overlapping
+        long tiles = 0;
+        for(int i = 0; i < 7; i++){
+            tiles += (long) areas.getSize(i).getX() * areas.getSize(i).getY();
+        }
+        assertEquals(100 * 50, tiles);
+        for(int x = 0; x < 100; x++){
+            for(int y = 0; y < 50; y++){
+                assertNotEquals(-1, areas.route(new Position(x, y)));
+            }
+        }
+        assertThrows(IllegalArgumentException.class, () -> WorldPartitioner.partition(new Position(2, 2), people, 5));
+    }
+
+    @Test
+    void partitionWeighted() {
+        Position worldSize = new Position(60, 60);
+        Position[] people = new Position[3600];
+        for(int i = 0; i < people.length; i++){
+            people[i] = new Position(i % 60, i / 60);
+        }
+        RoutingTable areas = WorldPartitioner.partition(worldSize, people, new double[]{1, 3, 2});
+        int[] perArea = new int[3];
+        for(Position person : people){
+            perArea[areas.route(person)]++;
+        }
+        assertEquals(600, perArea[0], 60);
+        assertEquals(1800, perArea[1], 60);
+        assertEquals(1200, perArea[2], 60);
+    }
+
+    @Test
+    void partitionEmptyWorld() {
+        RoutingTable areas = WorldPartitioner.partition(new Position(90, 30), new Position[0], 3);
+        for(int i = 0; i < 3; i++){
+            assertEquals(new Position(30, 30), areas.getSize(i));
+        }
+    }
+}